@@ -0,0 +1,83 @@
+package edu.harvard.iq.dataverse;
+
+import java.io.Serializable;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * The CRC-32 of the content of a file (or of its saved original, for a
+ * tabular file), as needed in a zip file. The checksums saved with the files
+ * (MD5, SHA-1 ...) are of no use there, so the CRCs are worked out the first
+ * time the files go into a {@link edu.harvard.iq.dataverse.dataaccess.ZipBundle},
+ * and kept for the next times.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"datafile_id", "original"}))
+@NamedQueries({
+    @NamedQuery(name = "DataFileCrc.findByDataFileIds",
+            query = "SELECT o FROM DataFileCrc o WHERE o.dataFileId IN :dataFileIds")
+})
+public class DataFileCrc implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "datafile_id", nullable = false)
+    private Long dataFileId;
+
+    /**
+     * Whether this is the CRC of the saved original of a tabular file.
+     */
+    @Column(nullable = false)
+    private boolean original;
+
+    @Column(nullable = false)
+    private long crc;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDataFileId() {
+        return dataFileId;
+    }
+
+    public void setDataFileId(Long dataFileId) {
+        this.dataFileId = dataFileId;
+    }
+
+    public boolean isOriginal() {
+        return original;
+    }
+
+    public void setOriginal(boolean original) {
+        this.original = original;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public void setCrc(long crc) {
+        this.crc = crc;
+    }
+
+    @Override
+    public String toString() {
+        return "DataFileCrc[ dataFileId=" + dataFileId + ", original=" + original + " ]";
+    }
+}
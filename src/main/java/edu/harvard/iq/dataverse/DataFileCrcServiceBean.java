@@ -0,0 +1,53 @@
+package edu.harvard.iq.dataverse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.inject.Named;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
+
+/**
+ * Reads and writes the {@link DataFileCrc}s.
+ */
+@Named
+@Stateless
+public class DataFileCrcServiceBean {
+
+    private static final Logger logger = Logger.getLogger(DataFileCrcServiceBean.class.getCanonicalName());
+
+    // keeps the number of parameters of the IN (...) queries reasonable
+    private static final int BATCH_SIZE = 1000;
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    public List<DataFileCrc> findByDataFileIds(List<Long> dataFileIds) {
+        List<DataFileCrc> crcs = new ArrayList<>();
+        for (int i = 0; i < dataFileIds.size(); i += BATCH_SIZE) {
+            crcs.addAll(em.createNamedQuery("DataFileCrc.findByDataFileIds", DataFileCrc.class)
+                    .setParameter("dataFileIds", dataFileIds.subList(i, Math.min(i + BATCH_SIZE, dataFileIds.size())))
+                    .getResultList());
+        }
+        return crcs;
+    }
+
+    /**
+     * Saves a CRC in its own transaction, as soon as it is known, while the
+     * bundle it was worked out for is still being written. The same CRC may
+     * be worked out by two downloads at once: the second one is left out.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public void save(Long dataFileId, boolean original, long crc) {
+        logger.fine("saving the CRC of datafile " + dataFileId + (original ? " (original)" : ""));
+        em.createNativeQuery("INSERT INTO datafilecrc (datafile_id, original, crc) VALUES (?, ?, ?) ON CONFLICT DO NOTHING")
+                .setParameter(1, dataFileId)
+                .setParameter(2, original)
+                .setParameter(3, crc)
+                .executeUpdate();
+    }
+}
@@ -17,6 +17,7 @@ import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -39,6 +40,7 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.PersistenceContext;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  *
@@ -399,13 +401,13 @@ public class DataFileServiceBean implements java.io.Serializable {
         return dataFilesFound;
     }
 
-    public DataFile findCheapAndEasy(Long id) {
-        DataFile dataFile;
+    private static final String CHEAP_AND_EASY_QUERY = "SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID)) AND ";
 
+    public DataFile findCheapAndEasy(Long id) {
         Object[] result;
 
         try {
-            result = (Object[]) em.createNativeQuery("SELECT t0.ID, t0.CREATEDATE, t0.INDEXTIME, t0.MODIFICATIONTIME, t0.PERMISSIONINDEXTIME, t0.PERMISSIONMODIFICATIONTIME, t0.PUBLICATIONDATE, t0.CREATOR_ID, t0.RELEASEUSER_ID, t0.PREVIEWIMAGEAVAILABLE, t1.CONTENTTYPE, t0.STORAGEIDENTIFIER, t1.FILESIZE, t1.INGESTSTATUS, t1.CHECKSUMVALUE, t1.RESTRICTED, t3.ID, t2.AUTHORITY, t2.IDENTIFIER, t1.CHECKSUMTYPE, t1.PREVIOUSDATAFILEID, t1.ROOTDATAFILEID, t0.AUTHORITY, T0.PROTOCOL, T0.IDENTIFIER, t2.PROTOCOL FROM DVOBJECT t0, DATAFILE t1, DVOBJECT t2, DATASET t3 WHERE ((t0.ID = " + id + ") AND (t0.OWNER_ID = t2.ID) AND (t2.ID = t3.ID) AND (t1.ID = t0.ID))").getSingleResult();
+            result = (Object[]) em.createNativeQuery(CHEAP_AND_EASY_QUERY + "t0.ID = " + id).getSingleResult();
         } catch (Exception ex) {
             return null;
         }
@@ -414,6 +416,60 @@ public class DataFileServiceBean implements java.io.Serializable {
             return null;
         }
 
+        DataFile dataFile = cheapAndEasyDataFile(result);
+        if (isTabularContentType(dataFile.getContentType())) {
+            addDataTables(Map.of(dataFile.getId(), dataFile));
+        }
+        return dataFile;
+    }
+
+    /**
+     * Same as {@link #findCheapAndEasy(Long)}, but for many files at once: in
+     * one query (plus 2 more if any of them are tabular), instead of one (or
+     * 3) per file.
+     *
+     * @return the files found, by id
+     */
+    public Map<Long, DataFile> findCheapAndEasy(Collection<Long> ids) {
+        Map<Long, DataFile> dataFiles = new HashMap<>();
+        findCheapAndEasy(ids, dataFiles);
+        return dataFiles;
+    }
+
+    /**
+     * @return the number of queries run
+     */
+    private int findCheapAndEasy(Collection<Long> ids, Map<Long, DataFile> dataFiles) {
+        if (ids == null || ids.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> results;
+        try {
+            results = em.createNativeQuery(CHEAP_AND_EASY_QUERY + "t0.ID IN (" + StringUtils.join(ids, ", ") + ")").getResultList();
+        } catch (Exception ex) {
+            logger.warning("Exception looking up " + ids.size() + " files: " + ex.getMessage());
+            return 1;
+        }
+
+        Map<Long, DataFile> tabularFiles = new HashMap<>();
+        for (Object[] result : results) {
+            DataFile dataFile = cheapAndEasyDataFile(result);
+            dataFiles.put(dataFile.getId(), dataFile);
+            if (isTabularContentType(dataFile.getContentType())) {
+                tabularFiles.put(dataFile.getId(), dataFile);
+            }
+        }
+        return 1 + addDataTables(tabularFiles);
+    }
+
+    private static boolean isTabularContentType(String contentType) {
+        return MIME_TYPE_TSV.equalsIgnoreCase(contentType) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(contentType);
+    }
+
+    private DataFile cheapAndEasyDataFile(Object[] result) {
+        DataFile dataFile;
+
         Integer file_id = (Integer) result[0];
 
         dataFile = new DataFile();
@@ -554,60 +610,83 @@ public class DataFileServiceBean implements java.io.Serializable {
         
         dataFile.setOwner(owner);
 
-        // If content type indicates it's tabular data, spend 2 extra queries 
-        // looking up the data table and tabular tags objects:
-        
-        if (MIME_TYPE_TSV.equalsIgnoreCase(contentType) || MIME_TYPE_TSV_ALT.equalsIgnoreCase(contentType)) {
-            Object[] dtResult;
-            try {
-                dtResult = (Object[]) em.createNativeQuery("SELECT ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE FROM dataTable WHERE DATAFILE_ID = " + id).getSingleResult();
-            } catch (Exception ex) {
-                dtResult = null;
+        return dataFile;
+    }
+
+    /**
+     * Looks up the data tables, and the tabular tags, of the (tabular) files
+     * given; 2 queries, however many files there are.
+     *
+     * @return the number of queries run
+     */
+    private int addDataTables(Map<Long, DataFile> tabularFiles) {
+        if (tabularFiles.isEmpty()) {
+            return 0;
+        }
+        String fileIds = StringUtils.join(tabularFiles.keySet(), ", ");
+
+        List<Object[]> dtResults;
+        try {
+            dtResults = em.createNativeQuery("SELECT DATAFILE_ID, ID, UNF, CASEQUANTITY, VARQUANTITY, ORIGINALFILEFORMAT, ORIGINALFILESIZE FROM dataTable WHERE DATAFILE_ID IN (" + fileIds + ")").getResultList();
+        } catch (Exception ex) {
+            return 1;
+        }
+
+        Map<Long, DataFile> filesWithTables = new HashMap<>();
+        for (Object[] dtResult : dtResults) {
+            DataFile dataFile = tabularFiles.get(((Number) dtResult[0]).longValue());
+            if (dataFile == null || dataFile.getDataTable() != null) {
+                continue;
             }
-        
-            if (dtResult != null) {
-                DataTable dataTable = new DataTable(); 
+            DataTable dataTable = new DataTable();
 
-                dataTable.setId(((Integer) dtResult[0]).longValue());
-            
-                dataTable.setUnf((String)dtResult[1]);
-            
-                dataTable.setCaseQuantity((Long)dtResult[2]);
-            
-                dataTable.setVarQuantity((Long)dtResult[3]);
-            
-                dataTable.setOriginalFileFormat((String)dtResult[4]);
-                
-                dataTable.setOriginalFileSize((Long)dtResult[5]);
-                
-                dataTable.setDataFile(dataFile);
-                dataFile.setDataTable(dataTable);
-                
-                // tabular tags: 
-                
-                List<Object[]> tagResults;
-                try {
-                    tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID = " + id).getResultList();
-                } catch (Exception ex) {
-                    logger.info("EXCEPTION looking up tags.");
-                    tagResults = null;
-                }
-                
-                if (tagResults != null) {
-                    List<String> fileTagLabels = DataFileTag.listTags();
-                    
-                    for (Object[] tagResult : tagResults) {
-                        Integer tagId = (Integer)tagResult[0];
-                        DataFileTag tag = new DataFileTag();
-                        tag.setTypeByLabel(fileTagLabels.get(tagId));
-                        tag.setDataFile(dataFile);
-                        dataFile.addTag(tag);
-                    }
+            dataTable.setId(((Number) dtResult[1]).longValue());
+
+            dataTable.setUnf((String) dtResult[2]);
+
+            dataTable.setCaseQuantity((Long) dtResult[3]);
+
+            dataTable.setVarQuantity((Long) dtResult[4]);
+
+            dataTable.setOriginalFileFormat((String) dtResult[5]);
+
+            dataTable.setOriginalFileSize((Long) dtResult[6]);
+
+            dataTable.setDataFile(dataFile);
+            dataFile.setDataTable(dataTable);
+            filesWithTables.put(dataFile.getId(), dataFile);
+        }
+
+        if (filesWithTables.isEmpty()) {
+            return 1;
+        }
+
+        // tabular tags:
+
+        List<Object[]> tagResults;
+        try {
+            tagResults = em.createNativeQuery("SELECT t.TYPE, t.DATAFILE_ID FROM DATAFILETAG t WHERE t.DATAFILE_ID IN (" + StringUtils.join(filesWithTables.keySet(), ", ") + ")").getResultList();
+        } catch (Exception ex) {
+            logger.info("EXCEPTION looking up tags.");
+            tagResults = null;
+        }
+
+        if (tagResults != null) {
+            List<String> fileTagLabels = DataFileTag.listTags();
+
+            for (Object[] tagResult : tagResults) {
+                DataFile dataFile = filesWithTables.get(((Number) tagResult[1]).longValue());
+                if (dataFile == null) {
+                    continue;
                 }
+                Integer tagId = (Integer) tagResult[0];
+                DataFileTag tag = new DataFileTag();
+                tag.setTypeByLabel(fileTagLabels.get(tagId));
+                tag.setDataFile(dataFile);
+                dataFile.addTag(tag);
             }
         }
-        
-        return dataFile;
+        return 2;
     }
     
     private List<AuthenticatedUser> retrieveFileAccessRequesters(DataFile fileIn) {
@@ -1184,6 +1263,25 @@ public class DataFileServiceBean implements java.io.Serializable {
     public void populateFileSearchCard(SolrSearchResult solrSearchResult) {
         solrSearchResult.setEntity(this.findCheapAndEasy(solrSearchResult.getEntityId()));
     }
+
+    /**
+     * Same as {@link #populateFileSearchCard(SolrSearchResult)}, for all the
+     * file cards of a page at once.
+     *
+     * @return the number of queries run
+     */
+    public int populateFileSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Set<Long> fileIds = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            fileIds.add(solrSearchResult.getEntityId());
+        }
+        Map<Long, DataFile> dataFiles = new HashMap<>();
+        int queries = findCheapAndEasy(fileIds, dataFiles);
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            solrSearchResult.setEntity(dataFiles.get(solrSearchResult.getEntityId()));
+        }
+        return queries;
+    }
     
     public boolean hasBeenDeleted(DataFile df){
         Dataset dataset = df.getOwner();
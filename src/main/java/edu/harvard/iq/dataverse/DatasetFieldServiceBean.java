@@ -1,23 +1,28 @@
 package edu.harvard.iq.dataverse;
 
-import java.io.IOException;
 import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.text.MessageFormat;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.logging.Logger;
 
 import jakarta.ejb.EJB;
+import jakarta.ejb.Schedule;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
@@ -40,16 +45,9 @@ import jakarta.persistence.PersistenceException;
 import jakarta.persistence.TypedQuery;
 
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.httpclient.HttpException;
-import org.apache.http.HttpResponse;
-import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.protocol.HttpContext;
-import org.apache.http.util.EntityUtils;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
+import edu.harvard.iq.dataverse.util.SystemConfig;
 
 /**
  *
@@ -66,6 +64,18 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
 
     @EJB
     SettingsServiceBean settingsService;
+    @EJB
+    SystemConfig systemConfig;
+    @EJB
+    ExternalVocabularyValueCache externalVocabularyValueCache;
+    // This bean, through the container, so that the transaction attributes
+    // of the methods called on it apply
+    @EJB
+    DatasetFieldServiceBean self;
+
+    // Defaults for the dataverse.cvoc.refresh.* JVM options:
+    private static final int DEFAULT_CVOC_REFRESH_AGE_DAYS = 30;
+    private static final int DEFAULT_CVOC_REFRESH_BATCH_SIZE = 200;
 
     private static final String NAME_QUERY = "SELECT dsfType from DatasetFieldType dsfType where dsfType.name= :fieldName";
     
@@ -348,9 +358,10 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
         DatasetFieldType dft =df.getDatasetFieldType(); 
         logger.fine("Registering for field: " + dft.getName());
         JsonObject cvocEntry = getCVocConf(true).get(dft.getId());
+        List<String> terms = new ArrayList<>();
         if (dft.isPrimitive()) {
             for (DatasetFieldValue dfv : df.getDatasetFieldValues()) {
-                registerExternalTerm(cvocEntry, dfv.getValue());
+                terms.add(dfv.getValue());
             }
         } else {
             if (df.getDatasetFieldType().isCompound()) {
@@ -359,12 +370,13 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
                     for (DatasetField cdf : cv.getChildDatasetFields()) {
                         logger.fine("Found term uri field type id: " + cdf.getDatasetFieldType().getId());
                         if (cdf.getDatasetFieldType().equals(termdft)) {
-                            registerExternalTerm(cvocEntry, cdf.getValue());
+                            terms.add(cdf.getValue());
                         }
                     }
                 }
             }
         }
+        registerExternalTerms(cvocEntry, terms);
     }
     
     /**
@@ -383,8 +395,27 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      * @return - a set of indexable strings
      */
     public Set<String> getStringsFor(String termUri) {
+        return getStringsFor(termUri, getExternalVocabularyValue(termUri));
+    }
+
+    /**
+     * Retrieves the indexable strings of several terms, with at most one
+     * query (for the terms that are not cached).
+     * 
+     * @param termUris
+     * @return - the indexable strings of all the terms
+     */
+    public Set<String> getStringsFor(Collection<String> termUris) {
+        Set<String> strings = new HashSet<String>();
+        Map<String, JsonObject> values = getExternalVocabularyValues(termUris);
+        for (String termUri : termUris) {
+            strings.addAll(getStringsFor(termUri, values.get(termUri)));
+        }
+        return strings;
+    }
+
+    private Set<String> getStringsFor(String termUri, JsonObject jo) {
         Set<String> strings = new HashSet<String>();
-        JsonObject jo = getExternalVocabularyValue(termUri);
 
         if (jo != null) {
             try {
@@ -423,26 +454,72 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
     }    
 
     /**
-     * Perform a query to retrieve a cached value from the externalvocabularvalue table
+     * Retrieve a cached value from the externalvocabularvalue table (or from
+     * the copy of the recently used values kept in memory)
      * @param termUri
      * @return - the entry's value as a JsonObject
      */
     public JsonObject getExternalVocabularyValue(String termUri) {
-        try {
-            ExternalVocabularyValue evv = em
-                    .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
-                            ExternalVocabularyValue.class)
-                    .setParameter("uri", termUri).getSingleResult();
-            String valString = evv.getValue();
-            try (JsonReader jr = Json.createReader(new StringReader(valString))) {
-                return jr.readObject();
-            } catch (Exception e) {
-                logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
+        if (termUri == null) {
+            return null;
+        }
+        return getExternalVocabularyValues(List.of(termUri)).get(termUri);
+    }
+
+    /**
+     * Retrieve the cached values of several terms, with one query for those
+     * that are not kept in memory
+     * @param termUris
+     * @return - the entries' values as JsonObjects, by term uri (with no
+     * entry for the terms that have none)
+     */
+    public Map<String, JsonObject> getExternalVocabularyValues(Collection<String> termUris) {
+        Map<String, JsonObject> values = new HashMap<>();
+        Set<String> uncached = new HashSet<>();
+        for (String termUri : termUris) {
+            if (termUri == null) {
+                continue;
             }
-        } catch (NoResultException nre) {
+            Optional<JsonObject> cached = externalVocabularyValueCache.getIfPresent(termUri);
+            if (cached == null) {
+                uncached.add(termUri);
+            } else if (cached.isPresent()) {
+                values.put(termUri, cached.get());
+            }
+        }
+        if (uncached.isEmpty()) {
+            return values;
+        }
+        for (ExternalVocabularyValue evv : findExternalVocabularyValues(uncached).values()) {
+            String termUri = evv.getUri();
+            JsonObject value = null;
+            if (evv.getValue() != null) {
+                try (JsonReader jr = Json.createReader(new StringReader(evv.getValue()))) {
+                    value = jr.readObject();
+                    values.put(termUri, value);
+                } catch (Exception e) {
+                    logger.warning("Problem parsing external vocab value for uri: " + termUri + " : " + e.getMessage());
+                }
+            }
+            externalVocabularyValueCache.put(termUri, value);
+            uncached.remove(termUri);
+        }
+        for (String termUri : uncached) {
             logger.warning("No external vocab value for uri: " + termUri);
+            externalVocabularyValueCache.put(termUri, null);
         }
-        return null;
+        return values;
+    }
+
+    private Map<String, ExternalVocabularyValue> findExternalVocabularyValues(Collection<String> termUris) {
+        Map<String, ExternalVocabularyValue> evvs = new HashMap<>();
+        for (ExternalVocabularyValue evv : em
+                .createQuery("select object(o) from ExternalVocabularyValue as o where o.uri in :uris",
+                        ExternalVocabularyValue.class)
+                .setParameter("uris", termUris).getResultList()) {
+            evvs.put(evv.getUri(), evv);
+        }
+        return evvs;
     }
 
     /**
@@ -452,12 +529,47 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
      */
     @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
     public void registerExternalTerm(JsonObject cvocEntry, String term) {
-        String retrievalUri = cvocEntry.getString("retrieval-uri");
-        String prefix = cvocEntry.getString("prefix", null);
-        if(term.isBlank()) {
-            logger.fine("Ingoring blank term");
+        registerExternalTerms(cvocEntry, Arrays.asList(term));
+    }
+
+    /**
+     * Retrieve information about the term URIs not registered yet from the
+     * external service, all at once (several calls at the same time)
+     * @param cvocEntry - the configuration for the DatasetFieldType associated with these terms
+     * @param terms - the term uris as strings
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void registerExternalTerms(JsonObject cvocEntry, Collection<String> terms) {
+        Set<String> externalTerms = new LinkedHashSet<>();
+        for (String term : terms) {
+            if (isExternalTerm(cvocEntry, term)) {
+                externalTerms.add(term);
+            }
+        }
+        if (externalTerms.isEmpty()) {
             return;
         }
+        Map<String, ExternalVocabularyValue> evvs = findExternalVocabularyValues(externalTerms);
+        Map<String, String> retrievalUris = new LinkedHashMap<>();
+        for (String term : externalTerms) {
+            ExternalVocabularyValue evv = evvs.get(term);
+            if (evv == null || evv.getValue() == null) {
+                String retrievalUri = getRetrievalUri(cvocEntry, term);
+                logger.fine("Didn't find " + term + ", calling " + retrievalUri);
+                retrievalUris.put(term, retrievalUri);
+            }
+        }
+        storeExternalTerms(cvocEntry, evvs, retrievalUris);
+    }
+
+    /**
+     * Whether the term is one of the vocabularies of the service (rather than a free text entry)
+     */
+    private boolean isExternalTerm(JsonObject cvocEntry, String term) {
+        if (term == null || term.isBlank()) {
+            logger.fine("Ingoring blank term");
+            return false;
+        }
         boolean isExternal = false;
         JsonObject vocabs = cvocEntry.getJsonObject("vocabs");
         for (String key: vocabs.keySet()) {
@@ -471,72 +583,127 @@ public class DatasetFieldServiceBean implements java.io.Serializable {
         }
         if (!isExternal) {
             logger.fine("Ignoring free text entry: " + term);
-            return;
+            return false;
         }
-        logger.fine("Registering term: " + term);
         try {
             //Assure the term is in URI form - should be if the uriSpace entry was correct
             new URI(term);
-            ExternalVocabularyValue evv = null;
-            try {
-                evv = em.createQuery("select object(o) from ExternalVocabularyValue as o where o.uri=:uri",
-                        ExternalVocabularyValue.class).setParameter("uri", term).getSingleResult();
-            } catch (NoResultException nre) {
-                evv = new ExternalVocabularyValue(term, null);
-            }
-            if (evv.getValue() == null) {
-                String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
-                retrievalUri = retrievalUri.replace("{0}", adjustedTerm);
-                logger.fine("Didn't find " + term + ", calling " + retrievalUri);
-                try (CloseableHttpClient httpClient = HttpClients.custom()
-                        .addInterceptorLast(new HttpResponseInterceptor() {
-                            @Override
-                            public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
-                                int statusCode = response.getStatusLine().getStatusCode();
-                                if (statusCode == 504) {
-                                    //Throwing an exception triggers the retry handler
-                                    throw new IOException("Retry due to 504 response");
-                                }
-                            }
-                        })
-                        //The retry handler will also do retries for network errors/other things that cause an IOException
-                        .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
-                        .build()) {
-                    HttpGet httpGet = new HttpGet(retrievalUri);
-                    //application/json+ld is for backward compatibility
-                    httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
-
-                    HttpResponse response = httpClient.execute(httpGet);
-                    String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
-                    int statusCode = response.getStatusLine().getStatusCode();
-                    if (statusCode == 200) {
-                        logger.fine("Returned data: " + data);
-                        try (JsonReader jsonReader = Json.createReader(new StringReader(data))) {
-                            String dataObj =filterResponse(cvocEntry, jsonReader.readObject(), term).toString(); 
-                            evv.setValue(dataObj);
-                            evv.setLastUpdateDate(Timestamp.from(Instant.now()));
-                            logger.fine("JsonObject: " + dataObj);
-                            em.merge(evv);
-                            em.flush();
-                            logger.fine("Wrote value for term: " + term);
-                        } catch (JsonException je) {
-                            logger.severe("Error retrieving: " + retrievalUri + " : " + je.getMessage());
-                        } catch (PersistenceException e) {
-                            logger.fine("Problem persisting: " + retrievalUri + " : " + e.getMessage());
-                        }
-                    } else {
-                        logger.severe("Received response code : " + statusCode + " when retrieving " + retrievalUri
-                                + " : " + data);
-                    }
-                } catch (IOException ioe) {
-                    logger.severe("IOException when retrieving url: " + retrievalUri + " : " + ioe.getMessage());
-                }
-
-            }
         } catch (URISyntaxException e) {
             logger.fine("Term is not a URI: " + term);
+            return false;
+        }
+        logger.fine("Registering term: " + term);
+        return true;
+    }
+
+    private String getRetrievalUri(JsonObject cvocEntry, String term) {
+        String prefix = cvocEntry.getString("prefix", null);
+        String adjustedTerm = (prefix==null)? term: term.replace(prefix, "");
+        return cvocEntry.getString("retrieval-uri").replace("{0}", adjustedTerm);
+    }
+
+    /**
+     * Retrieves the terms from the external service, and stores their
+     * filtered values; the terms that could not be retrieved are left as they
+     * were
+     * @param evvs - the existing entries, by term uri
+     * @param retrievalUris - the terms to retrieve, with the URL to retrieve each of them from
+     * @return - the terms that were retrieved and stored
+     */
+    private Set<String> storeExternalTerms(JsonObject cvocEntry, Map<String, ExternalVocabularyValue> evvs, Map<String, String> retrievalUris) {
+        Set<String> stored = new HashSet<>();
+        if (retrievalUris.isEmpty()) {
+            return stored;
+        }
+        Map<String, String> responses = externalVocabularyValueCache.fetch(retrievalUris);
+        Map<String, JsonObject> values = new HashMap<>();
+        for (Map.Entry<String, String> response : responses.entrySet()) {
+            String term = response.getKey();
+            try (JsonReader jsonReader = Json.createReader(new StringReader(response.getValue()))) {
+                JsonObject filtered = filterResponse(cvocEntry, jsonReader.readObject(), term);
+                if (filtered == null) {
+                    continue;
+                }
+                ExternalVocabularyValue evv = evvs.get(term);
+                if (evv == null) {
+                    evv = new ExternalVocabularyValue(term, null);
+                }
+                String dataObj = filtered.toString();
+                evv.setValue(dataObj);
+                evv.setLastUpdateDate(Timestamp.from(Instant.now()));
+                logger.fine("JsonObject: " + dataObj);
+                em.merge(evv);
+                values.put(term, filtered);
+            } catch (JsonException je) {
+                logger.severe("Error retrieving: " + retrievalUris.get(term) + " : " + je.getMessage());
+            }
+        }
+        try {
+            em.flush();
+            values.forEach(externalVocabularyValueCache::put);
+            stored.addAll(values.keySet());
+            logger.fine("Wrote values for terms: " + String.join(", ", stored));
+        } catch (PersistenceException e) {
+            logger.fine("Problem persisting: " + String.join(", ", values.keySet()) + " : " + e.getMessage());
+        }
+        return stored;
+    }
+
+    /**
+     * Once an hour, the timer server retrieves again the external vocabulary
+     * terms retrieved more than dataverse.cvoc.refresh.age days ago. The
+     * refresh is committed on its own (and the timer itself runs outside of
+     * a transaction).
+     */
+    @Schedule(hour = "*", minute = "40", persistent = false)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void refreshExternalVocabularyValuesTimer() {
+        int maxAgeDays = JvmSettings.CVOC_REFRESH_AGE.lookupOptional(Integer.class).orElse(DEFAULT_CVOC_REFRESH_AGE_DAYS);
+        if (maxAgeDays <= 0 || !systemConfig.isTimerServer() || getCVocConf(false).isEmpty()) {
+            return;
         }
+        int batchSize = JvmSettings.CVOC_REFRESH_BATCH_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_CVOC_REFRESH_BATCH_SIZE);
+        int refreshed = self.refreshExternalVocabularyValues(Timestamp.from(Instant.now().minus(maxAgeDays, ChronoUnit.DAYS)), batchSize);
+        logger.info("Refreshed " + refreshed + " external vocabulary values");
+    }
 
+    /**
+     * Retrieves again the terms last retrieved before the cutoff, oldest
+     * first. All the terms considered are marked as retrieved now - including
+     * those that could not be retrieved, or whose vocabulary is no longer
+     * configured - so that they do not hold up the others; they will be tried
+     * again once they are stale again.
+     * @param cutoff - the terms retrieved before that are stale
+     * @param max - how many stale terms to consider, at most
+     * @return - how many terms were retrieved
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int refreshExternalVocabularyValues(Timestamp cutoff, int max) {
+        List<ExternalVocabularyValue> stale = em
+                .createQuery("select object(o) from ExternalVocabularyValue as o where o.lastUpdateDate < :cutoff order by o.lastUpdateDate",
+                        ExternalVocabularyValue.class)
+                .setParameter("cutoff", cutoff).setMaxResults(max).getResultList();
+        // The terms, by the configuration of their service
+        Map<JsonObject, Map<String, ExternalVocabularyValue>> evvsByCvocEntry = new IdentityHashMap<>();
+        Collection<JsonObject> cvocEntries = getCVocConf(false).values();
+        for (ExternalVocabularyValue evv : stale) {
+            for (JsonObject cvocEntry : cvocEntries) {
+                if (isExternalTerm(cvocEntry, evv.getUri())) {
+                    evvsByCvocEntry.computeIfAbsent(cvocEntry, entry -> new HashMap<>()).put(evv.getUri(), evv);
+                    break;
+                }
+            }
+            evv.setLastUpdateDate(Timestamp.from(Instant.now()));
+        }
+        int refreshed = 0;
+        for (Map.Entry<JsonObject, Map<String, ExternalVocabularyValue>> entry : evvsByCvocEntry.entrySet()) {
+            Map<String, String> retrievalUris = new LinkedHashMap<>();
+            for (String term : entry.getValue().keySet()) {
+                retrievalUris.put(term, getRetrievalUri(entry.getKey(), term));
+            }
+            refreshed += storeExternalTerms(entry.getKey(), entry.getValue(), retrievalUris).size();
+        }
+        return refreshed;
     }
 
     /**
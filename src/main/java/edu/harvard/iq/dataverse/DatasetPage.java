@@ -4553,9 +4553,15 @@ public class DatasetPage implements java.io.Serializable {
     }
 
     public void updateVersionDifferences(DatasetVersion newVersion, DatasetVersion originalVersion) {
+        loadVariableMetadata(newVersion);
         if (originalVersion == null) {
+            DatasetVersion previousVersion = newVersion.getPreviousVersionForDifference();
+            if (previousVersion != null) {
+                loadVariableMetadata(previousVersion);
+            }
             setDatasetVersionDifference(newVersion.getDefaultVersionDifference());
         } else {
+            loadVariableMetadata(originalVersion);
             setDatasetVersionDifference(new DatasetVersionDifference(newVersion, originalVersion));
         }
     }
@@ -4567,13 +4573,10 @@ public class DatasetPage implements java.io.Serializable {
         //if (true)return null;
         List<DatasetVersion> retList = new ArrayList<>();
 
+        Set<DatasetVersion> withVariableMetadata = new HashSet<>();
         if (permissionService.on(dataset).has(Permission.ViewUnpublishedDataset)) {
             for (DatasetVersion version : dataset.getVersions()) {
-                Collection<FileMetadata> fml = version.getFileMetadatas();
-                for (FileMetadata fm : fml) {
-                    fm.setVariableMetadatas(variableService.findVarMetByFileMetaId(fm.getId()));
-                    fm.setVarGroups(variableService.findAllGroupsByFileMetadata(fm.getId()));
-                }
+                prepareDifferenceSummary(version, withVariableMetadata);
                 version.setContributorNames(datasetVersionService.getContributorsNames(version));
                 retList.add(version);
             }
@@ -4581,6 +4584,7 @@ public class DatasetPage implements java.io.Serializable {
         } else {
             for (DatasetVersion version : dataset.getVersions()) {
                 if (version.isReleased() || version.isDeaccessioned()) {
+                    prepareDifferenceSummary(version, withVariableMetadata);
                     version.setContributorNames(datasetVersionService.getContributorsNames(version));
                     retList.add(version);
                 }
@@ -4589,6 +4593,39 @@ public class DatasetPage implements java.io.Serializable {
         return retList;
     }
 
+    /**
+     * Gets the summary of the differences with the previous version ready for
+     * the versions table. Published versions keep theirs, so the versions
+     * only need to be compared here for a draft, or for a version published
+     * before the summaries were kept (whose summary is then saved).
+     */
+    private void prepareDifferenceSummary(DatasetVersion version, Set<DatasetVersion> withVariableMetadata) {
+        if (version.isDeaccessioned() || version.isDifferenceSummaryStored()) {
+            return;
+        }
+        DatasetVersion previousVersion = version.getPreviousVersionForDifference();
+        if (previousVersion == null) {
+            return;
+        }
+        if (withVariableMetadata.add(version)) {
+            loadVariableMetadata(version);
+        }
+        if (withVariableMetadata.add(previousVersion)) {
+            loadVariableMetadata(previousVersion);
+        }
+        if (version.isReleased()) {
+            version.updateDifferenceSummary();
+            datasetVersionService.saveDifferenceSummary(version);
+        }
+    }
+
+    private void loadVariableMetadata(DatasetVersion version) {
+        for (FileMetadata fm : version.getFileMetadatas()) {
+            fm.setVariableMetadatas(variableService.findVarMetByFileMetaId(fm.getId()));
+            fm.setVarGroups(variableService.findAllGroupsByFileMetadata(fm.getId()));
+        }
+    }
+
 
 
     private boolean existReleasedVersion;
@@ -5,6 +5,9 @@ import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.authorization.users.User;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpointServiceBean;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpointer;
 import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
@@ -16,20 +19,25 @@ import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
 import edu.harvard.iq.dataverse.engine.command.impl.DestroyDatasetCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.FinalizeDatasetPublicationCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.GetDatasetStorageSizeCommand;
+import edu.harvard.iq.dataverse.export.ExportAllProgress;
 import edu.harvard.iq.dataverse.export.ExportService;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.harvest.server.OAIRecordServiceBean;
 import edu.harvard.iq.dataverse.pidproviders.PidProvider;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.json.JsonPrinter;
+import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 import edu.harvard.iq.dataverse.workflows.WorkflowComment;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,6 +48,9 @@ import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Named;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.LockModeType;
 import jakarta.persistence.NoResultException;
@@ -60,6 +71,15 @@ import org.apache.commons.lang3.StringUtils;
 public class DatasetServiceBean implements java.io.Serializable {
 
     private static final Logger logger = Logger.getLogger(DatasetServiceBean.class.getCanonicalName());
+
+    private static final int DEFAULT_EXPORT_ALL_THREADS = 4;
+    private static final int DEFAULT_EXPORT_ALL_CHECKPOINT_INTERVAL_SECONDS = 60;
+    // How many ids "export all" reads from the database at a time
+    private static final int EXPORT_ALL_ID_PAGE_SIZE = 1000;
+
+    // The "export all" (or "reexport all") run in progress on this server
+    private static final AtomicReference<ExportAllProgress> EXPORT_ALL_IN_PROGRESS = new AtomicReference<>();
+
     @EJB
     IndexServiceBean indexService;
 
@@ -96,6 +116,9 @@ public class DatasetServiceBean implements java.io.Serializable {
     @EJB
     UserNotificationServiceBean userNotificationService;
 
+    @EJB
+    BatchCheckpointServiceBean batchCheckpointService;
+
     private static final SimpleDateFormat logFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss");
 
     @PersistenceContext(unitName = "VDCNet-ejbPU")
@@ -226,6 +249,23 @@ public class DatasetServiceBean implements java.io.Serializable {
         return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null ORDER BY o.id", Long.class).getResultList();
     }
 
+    /**
+     * @return the ids of the local (not harvested) datasets after the given
+     * one, in ascending order.
+     */
+    public List<Long> findLocalDatasetIds(long afterId, int maxResults) {
+        return em.createQuery("SELECT o.id FROM Dataset o WHERE o.harvestedFrom IS null AND o.id > :afterId ORDER BY o.id", Long.class)
+                .setParameter("afterId", afterId)
+                .setMaxResults(maxResults)
+                .getResultList();
+    }
+
+    public long countLocalDatasets(long afterId) {
+        return em.createQuery("SELECT COUNT(o) FROM Dataset o WHERE o.harvestedFrom IS null AND o.id > :afterId", Long.class)
+                .setParameter("afterId", afterId)
+                .getSingleResult();
+    }
+
     public List<Long> findAllUnindexed() {
         return em.createQuery("SELECT o.id FROM Dataset o WHERE o.indexTime IS null ORDER BY o.id DESC", Long.class).getResultList();
     }
@@ -242,66 +282,37 @@ public class DatasetServiceBean implements java.io.Serializable {
      * @param numPartitions
      * @param partitionId
      * @param skipIndexed
-     * @return a list of datasets
-     * @see DataverseServiceBean#findAllOrSubset(long, long, boolean)
+     * @param afterId
+     * @param maxResults
+     * @return the ids of the datasets
+     * @see DataverseServiceBean#findAllOrSubset(long, long, boolean, long, int)
      */
-    public List<Long> findAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed) {
+    public List<Long> findAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, long afterId, int maxResults) {
         if (numPartitions < 1) {
             long saneNumPartitions = 1;
             numPartitions = saneNumPartitions;
         }
         String skipClause = skipIndexed ? "AND o.indexTime is null " : "";
-        TypedQuery<Long> typedQuery = em.createQuery("SELECT o.id FROM Dataset o WHERE MOD( o.id, :numPartitions) = :partitionId " +
+        TypedQuery<Long> typedQuery = em.createQuery("SELECT o.id FROM Dataset o WHERE MOD( o.id, :numPartitions) = :partitionId AND o.id > :afterId " +
                 skipClause +
                 "ORDER BY o.id", Long.class);
         typedQuery.setParameter("numPartitions", numPartitions);
         typedQuery.setParameter("partitionId", partitionId);
+        typedQuery.setParameter("afterId", afterId);
+        if (maxResults > 0) {
+            typedQuery.setMaxResults(maxResults);
+        }
         return typedQuery.getResultList();
     }
 
-        /**
-     * For docs, see the equivalent method on the DataverseServiceBean.
-     * @param numPartitions
-     * @param partitionId
-     * @param skipIndexed
-     * @return a list of datasets
-     * @see DataverseServiceBean#findAllOrSubset(long, long, boolean)
-     */
-    public List<Long> findAllOrSubsetOrderByFilesOwned(boolean skipIndexed) {
-        /*
-        Disregards deleted or replaced files when determining 'size' of dataset.
-        Could possibly make more efficient by getting file metadata counts
-        of latest published/draft version.
-        Also disregards partitioning which is no longer supported.
-        SEK - 11/09/2021
-        */
-
-        String skipClause = skipIndexed ? "AND o.indexTime is null " : "";
-        Query query = em.createNativeQuery(" Select distinct(o.id), count(f.id) as numFiles FROM dvobject o " +
-            "left join dvobject f on f.owner_id = o.id  where o.dtype = 'Dataset' "
-                + skipClause
-                + " group by o.id "
-                + "ORDER BY count(f.id) asc, o.id");
-
-        List<Object[]> queryResults;
-        queryResults = query.getResultList();
-
-        List<Long> retVal = new ArrayList();
-        for (Object[] result : queryResults) {
-            Long dsId;
-            if (result[0] != null) {
-                try {
-                    dsId = Long.parseLong(result[0].toString()) ;
-                } catch (Exception ex) {
-                    dsId = null;
-                }
-                if (dsId == null) {
-                    continue;
-                }
-                retVal.add(dsId);
-            }
-        }
-        return retVal;
+    public long countForIndexing(long numPartitions, long partitionId, boolean skipIndexed, long afterId) {
+        String skipClause = skipIndexed ? "AND o.indexTime IS null " : "";
+        return em.createQuery("SELECT COUNT(o) FROM Dataset o WHERE MOD(o.id, :numPartitions) = :partitionId AND o.id > :afterId " +
+                skipClause, Long.class)
+                .setParameter("numPartitions", Math.max(1, numPartitions))
+                .setParameter("partitionId", partitionId)
+                .setParameter("afterId", afterId)
+                .getSingleResult();
     }
 
     /**
@@ -672,12 +683,12 @@ public class DatasetServiceBean implements java.io.Serializable {
     // reExportAll *forces* a reexport on all published datasets; whether they
     // have the "last export" time stamp set or not.
     @Asynchronous
-    public void reExportAllAsync() {
-        exportAllDatasets(true);
+    public void reExportAllAsync(boolean resume) {
+        exportAllDatasets(true, resume);
     }
 
     public void reExportAll() {
-        exportAllDatasets(true);
+        exportAllDatasets(true, false);
     }
 
 
@@ -685,18 +696,26 @@ public class DatasetServiceBean implements java.io.Serializable {
     // and trust the "last export" time stamp).
 
     @Asynchronous
-    public void exportAllAsync() {
-        exportAllDatasets(false);
+    public void exportAllAsync(boolean resume) {
+        exportAllDatasets(false, resume);
     }
 
     public void exportAll() {
-        exportAllDatasets(false);
+        exportAllDatasets(false, false);
     }
 
-    public void exportAllDatasets(boolean forceReExport) {
-        Integer countAll = 0;
-        Integer countSuccess = 0;
-        Integer countError = 0;
+    /**
+     * Exports the published local datasets that need it (all of them if
+     * {@code forceReExport}) with a pool of threads - see
+     * {@code dataverse.export-all.threads}. How far the run got is recorded
+     * in a {@link BatchCheckpoint} every so often.
+     *
+     * @param resume If true, and a run of the same kind was interrupted, pick
+     * up where it left off; otherwise start over. Either way, nothing is done
+     * while the checkpoint is in use (see
+     * {@link #findExportAllCheckpointInUse(boolean)}).
+     */
+    public void exportAllDatasets(boolean forceReExport, boolean resume) {
         String logTimestamp = logFormatter.format(new Date());
         Logger exportLogger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.DatasetServiceBean." + "ExportAll" + logTimestamp);
         String logFileName = "../logs" + File.separator + "export_" + logTimestamp + ".log";
@@ -717,49 +736,125 @@ public class DatasetServiceBean implements java.io.Serializable {
             exportLogger = logger;
         }
 
-        exportLogger.info("Starting an export all job");
-
-        for (Long datasetId : findAllLocalDatasetIds()) {
-            // Potentially, there's a godzillion datasets in this Dataverse.
-            // This is why we go through the list of ids here, and instantiate
-            // only one dataset at a time.
-            Dataset dataset = this.find(datasetId);
-            if (dataset != null) {
-                // Accurate "is published?" test - ?
-                // Answer: Yes, it is! We can't trust dataset.isReleased() alone; because it is a dvobject method
-                // that returns (publicationDate != null). And "publicationDate" is essentially
-                // "the first publication date"; that stays the same as versions get
-                // published and/or deaccessioned. But in combination with !isDeaccessioned()
-                // it is indeed an accurate test.
-                if (dataset.isReleased() && dataset.getReleasedVersion() != null && !dataset.isDeaccessioned()) {
-
-                    // can't trust dataset.getPublicationDate(), no.
-                    Date publicationDate = dataset.getReleasedVersion().getReleaseTime(); // we know this dataset has a non-null released version! Maybe not - SEK 8/19 (We do now! :)
-                    if (forceReExport || (publicationDate != null
-                            && (dataset.getLastExportTime() == null
-                            || dataset.getLastExportTime().before(publicationDate)))) {
-                        countAll++;
-                        try {
-                            recordService.exportAllFormatsInNewTransaction(dataset);
-                            exportLogger.info("Success exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString());
-                            countSuccess++;
-                        } catch (Exception ex) {
-                            exportLogger.log(Level.INFO, "Error exporting dataset: " + dataset.getDisplayName() + " " + dataset.getGlobalId().asString() + "; " + ex.getMessage(), ex);
-                            countError++;
-                        }
-                    }
-                }
-            }
+        BatchCheckpoint inUse = findExportAllCheckpointInUse(forceReExport);
+        if (inUse != null) {
+            exportLogger.warning("The export all job that last recorded its progress at " + inUse.getLastUpdateTime()
+                    + " may still be running, on this or another server; not starting another one");
+            fileHandler.close();
+            return;
         }
-        exportLogger.info("Datasets processed: " + countAll.toString());
-        exportLogger.info("Datasets exported successfully: " + countSuccess.toString());
-        exportLogger.info("Datasets failures: " + countError.toString());
-        exportLogger.info("Finished export-all job.");
 
-        if (fileHandlerSuceeded) {
+        BatchCheckpoint checkpoint = resume ? batchCheckpointService.findToResume(ExportAllProgress.KIND, ExportAllProgress.jobKey(forceReExport), null) : null;
+        ExportAllProgress progress = checkpoint == null ? new ExportAllProgress(forceReExport, new Date()) : new ExportAllProgress(checkpoint);
+        if (!EXPORT_ALL_IN_PROGRESS.compareAndSet(null, progress)) {
+            exportLogger.warning("An export all job is already running; not starting another one");
             fileHandler.close();
+            return;
+        }
+
+        BatchCheckpointer checkpointer = null;
+        try {
+            if (checkpoint == null) {
+                checkpoint = batchCheckpointService.start(progress, null);
+                exportLogger.info("Starting an export all job");
+            } else {
+                exportLogger.info("Resuming the export all job started " + checkpoint.getStartTime() + " after dataset id "
+                        + checkpoint.getLastId(ExportAllProgress.DATASETS));
+            }
+            checkpointer = new BatchCheckpointer(batchCheckpointService, progress, checkpoint, getExportAllCheckpointIntervalMillis(),
+                    "export all", exportLogger);
+
+            exportDatasets(progress, checkpointer, exportLogger);
+            checkpointer.finish();
+
+            exportLogger.info("Datasets exported successfully: " + progress.getTotal(ExportAllProgress.DATASETS_EXPORTED));
+            exportLogger.info("Datasets already up to date: " + progress.getTotal(ExportAllProgress.DATASETS_UP_TO_DATE));
+            exportLogger.info("Formats already up to date: " + progress.getTotal(ExportAllProgress.FORMATS_UP_TO_DATE));
+            exportLogger.info("Datasets failures: " + progress.getTotal(ExportAllProgress.FAILURES));
+            exportLogger.info("Finished export-all job.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            checkpointer.save();
+            exportLogger.warning("Export all job interrupted; it can be resumed after dataset id " + progress.getLastId(ExportAllProgress.DATASETS));
+        } finally {
+            EXPORT_ALL_IN_PROGRESS.set(null);
+            if (fileHandlerSuceeded) {
+                fileHandler.close();
+            }
+        }
+    }
+
+    /**
+     * @return the checkpoint of the kind of run if a run is still recording
+     * it (see {@link BatchCheckpoint#isInUse(long)}), or null
+     */
+    public BatchCheckpoint findExportAllCheckpointInUse(boolean forceReExport) {
+        return batchCheckpointService.findInUse(ExportAllProgress.KIND, ExportAllProgress.jobKey(forceReExport), getExportAllCheckpointIntervalMillis());
+    }
+
+    private long getExportAllCheckpointIntervalMillis() {
+        return 1000L * Math.max(1, JvmSettings.EXPORT_ALL_CHECKPOINT_INTERVAL.lookupOptional(Integer.class)
+                .orElse(DEFAULT_EXPORT_ALL_CHECKPOINT_INTERVAL_SECONDS));
+    }
+
+    private void exportDatasets(ExportAllProgress progress, BatchCheckpointer checkpointer, Logger exportLogger) throws InterruptedException {
+        Long lastId = progress.getLastId(ExportAllProgress.DATASETS);
+        progress.setDatasetsToCheck(countLocalDatasets(lastId == null ? 0 : lastId));
+
+        int numThreads = Math.max(1, JvmSettings.EXPORT_ALL_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_EXPORT_ALL_THREADS));
+        // Potentially, there's a godzillion datasets in this Dataverse.
+        // This is why we go through the ids a page at a time, and each
+        // worker instantiates only the one dataset it is exporting.
+        checkpointer.runInParallel(ExportAllProgress.DATASETS, afterId -> findLocalDatasetIds(afterId, EXPORT_ALL_ID_PAGE_SIZE), numThreads, id -> {
+            try {
+                Integer formatsUpToDate = recordService.exportAllFormatsInNewTransaction(id, progress.isForceReExport(), progress.getRunStart());
+                if (formatsUpToDate != null) {
+                    exportLogger.info("Success exporting dataset id " + id);
+                }
+                progress.datasetExported(formatsUpToDate);
+            } catch (Exception ex) {
+                exportLogger.log(Level.INFO, "Error exporting dataset id " + id + "; " + ex.getMessage(), ex);
+                progress.datasetFailed();
+            }
+        });
+    }
+
+    /**
+     * @return the live counters of the "export all" run in progress on this
+     * server, if any, and the checkpoints of the runs recorded in the
+     * database.
+     */
+    public JsonObjectBuilder getExportAllProgress() {
+        ExportAllProgress running = EXPORT_ALL_IN_PROGRESS.get();
+        long checkpointIntervalMillis = getExportAllCheckpointIntervalMillis();
+        JsonArrayBuilder checkpoints = Json.createArrayBuilder();
+        for (BatchCheckpoint checkpoint : batchCheckpointService.findAll(ExportAllProgress.KIND)) {
+            boolean runningHere = running != null && running.getJobKey().equals(checkpoint.getJobKey());
+            checkpoints.add(NullSafeJsonBuilder.jsonObjectBuilder()
+                    .add("forceReExport", ExportAllProgress.isForceReExport(checkpoint))
+                    .add("state", checkpoint.getState(runningHere, checkpointIntervalMillis))
+                    .add("lastDatasetId", checkpoint.getLastId(ExportAllProgress.DATASETS))
+                    .add("datasetsExported", checkpoint.getCounter(ExportAllProgress.DATASETS_EXPORTED))
+                    .add("datasetsUpToDate", checkpoint.getCounter(ExportAllProgress.DATASETS_UP_TO_DATE))
+                    .add("formatsUpToDate", checkpoint.getCounter(ExportAllProgress.FORMATS_UP_TO_DATE))
+                    .add("failures", checkpoint.getCounter(ExportAllProgress.FAILURES))
+                    .add("startTime", JsonPrinter.format(checkpoint.getStartTime()))
+                    .add("lastUpdateTime", JsonPrinter.format(checkpoint.getLastUpdateTime()))
+                    .add("finishTime", JsonPrinter.format(checkpoint.getFinishTime())));
         }
+        JsonObjectBuilder json = Json.createObjectBuilder();
+        if (running != null) {
+            json.add("running", running.toJson());
+        }
+        return json.add("checkpoints", checkpoints);
+    }
 
+    /**
+     * Forgets the "export all" checkpoints, so that the next run starts from
+     * the beginning.
+     */
+    public int deleteExportAllCheckpoints() {
+        return batchCheckpointService.deleteAll(ExportAllProgress.KIND);
     }
 
     @Asynchronous
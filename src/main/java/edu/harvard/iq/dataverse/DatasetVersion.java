@@ -186,6 +186,12 @@ public class DatasetVersion implements Serializable {
     // 'success'. See the /api/datasets/{id}/{version}/archivalStatus API calls for more details
     @Column(nullable=true, columnDefinition = "TEXT")
     private String archivalCopyLocation;
+
+    // The summary of the differences with the previous version, as shown in
+    // the versions table (see DatasetVersionDifferenceSummary), serialized as
+    // json. Worked out when the version is published.
+    @Column(nullable=true, columnDefinition = "TEXT")
+    private String differenceSummary;
     
     
     private String deaccessionLink;
@@ -211,6 +217,9 @@ public class DatasetVersion implements Serializable {
     
     @Transient
     private DatasetVersionDifference dvd;
+
+    @Transient
+    private DatasetVersionDifferenceSummary parsedDifferenceSummary;
     
     @Transient 
     private JsonObject archivalStatus;
@@ -495,6 +504,19 @@ public class DatasetVersion implements Serializable {
         if(dvd!=null) {
             return dvd;
         }
+        DatasetVersion previousVersion = getPreviousVersionForDifference();
+        if (previousVersion != null) {
+            dvd = new DatasetVersionDifference(this, previousVersion);
+        }
+        return dvd;
+    }
+
+    /**
+     * @return the version this one is compared with in the versions table:
+     * the one before it that is not deaccessioned; null if there is none, or
+     * if this version is deaccessioned itself
+     */
+    public DatasetVersion getPreviousVersionForDifference() {
         // if version is deaccessioned ignore it for differences purposes
         int index = 0;
         int size = this.getDataset().getVersions().size();
@@ -506,8 +528,7 @@ public class DatasetVersion implements Serializable {
                 if ((index + 1) <= (size - 1)) {
                     for (DatasetVersion dvTest : this.getDataset().getVersions().subList(index + 1, size)) {
                         if (!dvTest.isDeaccessioned()) {
-                            dvd = new DatasetVersionDifference(this, dvTest);
-                            return dvd;
+                            return dvTest;
                         }
                     }
                 }
@@ -516,7 +537,77 @@ public class DatasetVersion implements Serializable {
         }
         return null;
     }
-    
+
+    /**
+     * @return the stored summary of the differences with the previous
+     * version; null if there is none, or if it was worked out against a
+     * version that is not the previous one anymore (e.g. since deaccessioned)
+     */
+    public DatasetVersionDifferenceSummary getStoredDifferenceSummary() {
+        if (parsedDifferenceSummary == null && differenceSummary != null) {
+            try {
+                parsedDifferenceSummary = DatasetVersionDifferenceSummary.fromJson(differenceSummary);
+            } catch (Exception e) {
+                logger.warning("DatasetVersion id: " + id + " has an unreadable difference summary, parsing error: " + e.getMessage());
+                differenceSummary = null;
+                return null;
+            }
+        }
+        if (parsedDifferenceSummary == null) {
+            return null;
+        }
+        DatasetVersion previousVersion = getPreviousVersionForDifference();
+        if (previousVersion == null || previousVersion.getId() == null
+                || !previousVersion.getId().equals(parsedDifferenceSummary.getOriginalVersionId())) {
+            return null;
+        }
+        return parsedDifferenceSummary;
+    }
+
+    /**
+     * @return the summary of the differences with the previous version, for
+     * the versions table: the stored one if it is still current, otherwise
+     * worked out from {@link #getDefaultVersionDifference()}; null if there
+     * is no previous version.
+     */
+    public DatasetVersionDifferenceSummary getDifferenceSummary() {
+        DatasetVersionDifferenceSummary summary = getStoredDifferenceSummary();
+        if (summary == null) {
+            DatasetVersionDifference difference = getDefaultVersionDifference();
+            if (difference != null) {
+                summary = difference.getSummary();
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Works out the summary of the differences with the previous version
+     * again, to be saved with this version.
+     */
+    public void updateDifferenceSummary() {
+        dvd = null;
+        parsedDifferenceSummary = null;
+        DatasetVersionDifference difference = getDefaultVersionDifference();
+        if (difference == null) {
+            differenceSummary = null;
+        } else {
+            parsedDifferenceSummary = difference.getSummary();
+            differenceSummary = parsedDifferenceSummary.toJson().toString();
+        }
+    }
+
+    public String getDifferenceSummaryJson() {
+        return differenceSummary;
+    }
+
+    /**
+     * @return whether the summary of the differences with the previous
+     * version is stored, and still current
+     */
+    public boolean isDifferenceSummaryStored() {
+        return differenceSummary != null && getStoredDifferenceSummary() != null;
+    }
 
     public VersionState getPriorVersionState() {
         int index = 0;
@@ -15,11 +15,24 @@ import org.apache.commons.lang3.StringUtils;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.Map;
 
 /**
+ * The differences between two versions of a dataset.
+ *
+ * The constructor only works out what the versions table needs: the counts of
+ * the fields added, deleted and changed, by block, and of the files added,
+ * removed, replaced and changed. Both versions are indexed by field type and
+ * by DataFile id for that, so that this takes time linear in the size of the
+ * versions. The details (the changed fields grouped by block, the differences
+ * of every file) are only put together when asked for, by the differences
+ * dialog or the edit log.
  *
  * @author skraffmiller
  */
@@ -28,7 +41,11 @@ public final class DatasetVersionDifference {
 
     private DatasetVersion newVersion;
     private DatasetVersion originalVersion;
-    private List<List<DatasetField[]>> detailDataByBlock = new ArrayList<>();
+    // the [original, new] pairs of the fields that differ
+    private List<DatasetField[]> changedFields = new ArrayList<>();
+    // built from changedFields when first asked for
+    private List<List<DatasetField[]>> detailDataByBlock;
+    // both built when first asked for
     private List<datasetFileDifferenceItem> datasetFilesDiffList;
     private List<datasetReplaceFileItem> datasetFilesReplacementList;
     private List<FileMetadata> addedFiles = new ArrayList<>();
@@ -39,6 +56,8 @@ public final class DatasetVersionDifference {
     private List<String[]> changedTermsAccess = new ArrayList<>();
     private List<Object[]> summaryDataForNote = new ArrayList<>();
     private List<Object[]> blockDataForNote = new ArrayList<>();
+    // built when first asked for
+    private DatasetVersionDifferenceSummary summary;
 
     private VariableMetadataUtil variableMetadataUtil;
     
@@ -56,22 +75,23 @@ public final class DatasetVersionDifference {
         setOriginalVersion(originalVersion);
         setNewVersion(newVersion);
         //Compare Data
+        Map<DatasetFieldType, DatasetField> newFieldsByType = new HashMap<>();
+        for (DatasetField dsfn : newVersion.getDatasetFields()) {
+            newFieldsByType.putIfAbsent(dsfn.getDatasetFieldType(), dsfn);
+        }
+        Set<DatasetFieldType> originalFieldTypes = new HashSet<>();
         for (DatasetField dsfo : originalVersion.getDatasetFields()) {
-            boolean deleted = true;
-            for (DatasetField dsfn : newVersion.getDatasetFields()) {
-                if (dsfo.getDatasetFieldType().equals(dsfn.getDatasetFieldType())) {
-                    deleted = false;
-                    if (dsfo.getDatasetFieldType().isPrimitive()) {
-                        if (!dsfo.getDatasetFieldType().getFieldType().equals("email")) {
-                            compareValues(dsfo, dsfn, false);
-                        }
-                    } else {
-                        compareValues(dsfo, dsfn, true);
+            originalFieldTypes.add(dsfo.getDatasetFieldType());
+            DatasetField dsfn = newFieldsByType.get(dsfo.getDatasetFieldType());
+            if (dsfn != null) {
+                if (dsfo.getDatasetFieldType().isPrimitive()) {
+                    if (!dsfo.getDatasetFieldType().getFieldType().equals("email")) {
+                        compareValues(dsfo, dsfn, false);
                     }
-                    break; //if found go to next dataset field
+                } else {
+                    compareValues(dsfo, dsfn, true);
                 }
-            }
-            if (deleted && !dsfo.isEmpty()) {
+            } else if (!dsfo.isEmpty()) {
                 if (dsfo.getDatasetFieldType().isPrimitive()) {
                     if (dsfo.getDatasetFieldType().isControlledVocabulary()) {
                         updateBlockSummary(dsfo, 0, dsfo.getControlledVocabularyValues().size(), 0);
@@ -85,15 +105,7 @@ public final class DatasetVersionDifference {
             }
         }
         for (DatasetField dsfn : newVersion.getDatasetFields()) {
-            boolean added = true;
-            for (DatasetField dsfo : originalVersion.getDatasetFields()) {
-                if (dsfo.getDatasetFieldType().equals(dsfn.getDatasetFieldType())) {
-                    added = false;
-                    break;
-                }
-            }
-
-            if (added && !dsfn.isEmpty()) {
+            if (!originalFieldTypes.contains(dsfn.getDatasetFieldType()) && !dsfn.isEmpty()) {
                 if (dsfn.getDatasetFieldType().isPrimitive()){
                    if (dsfn.getDatasetFieldType().isControlledVocabulary()) {
                        updateBlockSummary(dsfn, dsfn.getControlledVocabularyValues().size(), 0, 0);
@@ -106,70 +118,36 @@ public final class DatasetVersionDifference {
                 addToSummary(null, dsfn);
             }
         }
-        
-        // TODO: ? 
-        // It looks like we are going through the filemetadatas in both versions, 
-        // *sequentially* (i.e. at the cost of O(N*M)), to select the lists of 
-        // changed, deleted and added files between the 2 versions... But why 
-        // are we doing it, if we are doing virtually the same thing inside 
-        // the initDatasetFilesDifferenceList(), below - but in a more efficient 
-        // way (sorting both lists, then goint through them in parallel, at the 
-        // cost of (N+M) max.? 
-        // -- 4.6 Nov. 2016
-        
+
+        // The same file in both versions is the same DataFile (files that are
+        // not saved yet have no id, and are only ever in the new version).
+        Map<Long, FileMetadata> newFilesById = new HashMap<>();
+        for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
+            newFilesById.putIfAbsent(fmdn.getDataFile().getId(), fmdn);
+        }
+        Set<Long> originalFileIds = new HashSet<>();
         for (FileMetadata fmdo : originalVersion.getFileMetadatas()) {
-            boolean deleted = true;
-            for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
-                if (fmdo.getDataFile().equals(fmdn.getDataFile())) {
-                    deleted = false;
-                    if (!compareFileMetadatas(fmdo, fmdn)) {
-                        changedFileMetadata.add(fmdo);
-                        changedFileMetadata.add(fmdn);
-                    }
-                    if (!variableMetadataUtil.compareVariableMetadata(fmdo,fmdn) || !compareVarGroup(fmdo, fmdn)) {
-                        changedVariableMetadata.add(fmdo);
-                        changedVariableMetadata.add(fmdn);
-                    }
-                    break;
-                }
-            }
-            if (deleted) {
+            originalFileIds.add(fmdo.getDataFile().getId());
+            FileMetadata fmdn = newFilesById.get(fmdo.getDataFile().getId());
+            if (fmdn == null) {
                 removedFiles.add(fmdo);
+                continue;
+            }
+            if (!compareFileMetadatas(fmdo, fmdn)) {
+                changedFileMetadata.add(fmdo);
+                changedFileMetadata.add(fmdn);
+            }
+            if (!variableMetadataUtil.compareVariableMetadata(fmdo,fmdn) || !compareVarGroup(fmdo, fmdn)) {
+                changedVariableMetadata.add(fmdo);
+                changedVariableMetadata.add(fmdn);
             }
         }
         for (FileMetadata fmdn : newVersion.getFileMetadatas()) {
-            boolean added = true;
-            for (FileMetadata fmdo : originalVersion.getFileMetadatas()) {
-                if (fmdo.getDataFile().equals(fmdn.getDataFile())) {
-                    added = false;
-                    break;
-                }
-            }
-            if (added) {
+            if (!originalFileIds.contains(fmdn.getDataFile().getId())) {
                 addedFiles.add(fmdn);
             }
         }        
         getReplacedFiles();
-        initDatasetFilesDifferencesList();
-
-        //Sort within blocks by datasetfieldtype dispaly order then....
-        //sort via metadatablock order - citation first...
-        for (List<DatasetField[]> blockList : detailDataByBlock) {
-            Collections.sort(blockList, (DatasetField[] l1, DatasetField[] l2) -> {
-                    DatasetField dsfa = l1[0];  //(DatasetField[]) l1.get(0);
-                    DatasetField dsfb = l2[0];
-                    int a = dsfa.getDatasetFieldType().getDisplayOrder();
-                    int b = dsfb.getDatasetFieldType().getDisplayOrder();
-                return Integer.valueOf(a).compareTo(b);
-            });
-        }
-        Collections.sort(detailDataByBlock, (List l1, List l2) -> {
-                DatasetField dsfa[] = (DatasetField[]) l1.get(0);
-                DatasetField dsfb[] = (DatasetField[]) l2.get(0);
-                int a = dsfa[0].getDatasetFieldType().getMetadataBlock().getId().intValue();
-                int b = dsfb[0].getDatasetFieldType().getMetadataBlock().getId().intValue();
-            return Integer.valueOf(a).compareTo(b);
-        });
         getTermsDifferences();
     }
     
@@ -177,33 +155,26 @@ public final class DatasetVersionDifference {
         if (addedFiles.isEmpty() || removedFiles.isEmpty()) {
             return;
         }
-        List<FileMetadata> addedToReplaced = new ArrayList<>();
-        List<FileMetadata> removedToReplaced = new ArrayList<>();
+        Map<Long, FileMetadata> removedById = new HashMap<>();
+        for (FileMetadata removed : removedFiles) {
+            removedById.putIfAbsent(removed.getDataFile().getId(), removed);
+        }
+        Set<FileMetadata> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
         for (FileMetadata added : addedFiles) {
-            DataFile addedDF = added.getDataFile();
-            Long replacedId = addedDF.getPreviousDataFileId();
-            if (added.getDataFile().getPreviousDataFileId() != null){
-            }
-            for (FileMetadata removed : removedFiles) {
-                DataFile test = removed.getDataFile();
-                if (test.getId().equals(replacedId)) {                  
-                    addedToReplaced.add(added);
-                    removedToReplaced.add(removed);
-                    FileMetadata[] replacedArray = new FileMetadata[2];
-                    replacedArray[0] = removed;
-                    replacedArray[1] = added;
-                    replacedFiles.add(replacedArray);
-                }
+            Long replacedId = added.getDataFile().getPreviousDataFileId();
+            FileMetadata removed = replacedId == null ? null : removedById.get(replacedId);
+            if (removed != null) {
+                FileMetadata[] replacedArray = new FileMetadata[2];
+                replacedArray[0] = removed;
+                replacedArray[1] = added;
+                replacedFiles.add(replacedArray);
+                replaced.add(added);
+                replaced.add(removed);
             }
         }
-        if(addedToReplaced.isEmpty()){
-        } else{
-            addedToReplaced.stream().forEach((delete) -> {
-                addedFiles.remove(delete);
-            });
-            removedToReplaced.stream().forEach((delete) -> {
-                removedFiles.remove(delete);
-            });
+        if (!replaced.isEmpty()) {
+            addedFiles.removeIf(replaced::contains);
+            removedFiles.removeIf(replaced::contains);
         }
     }
        
@@ -478,19 +449,38 @@ public final class DatasetVersionDifference {
             dsfn = new DatasetField();
             dsfn.setDatasetFieldType(dsfo.getDatasetFieldType());
         }
-        boolean addedToAll = false;
-        for (List<DatasetField[]> blockList : detailDataByBlock) {
-            DatasetField dsft[] = blockList.get(0);
-            if (dsft[0].getDatasetFieldType().getMetadataBlock().equals(dsfo.getDatasetFieldType().getMetadataBlock())) {
-                addToList(blockList, dsfo, dsfn);
-                addedToAll = true;
-            }
+        addToList(changedFields, dsfo, dsfn);
+    }
+
+    /**
+     * Groups the changed fields by metadata block; sorts them by display
+     * order within blocks, and the blocks by id - citation first.
+     */
+    private void initDetailDataByBlock() {
+        Map<MetadataBlock, List<DatasetField[]>> byBlock = new LinkedHashMap<>();
+        for (DatasetField[] dsfArray : changedFields) {
+            byBlock.computeIfAbsent(dsfArray[0].getDatasetFieldType().getMetadataBlock(), block -> new ArrayList<>()).add(dsfArray);
         }
-        if (!addedToAll) {
-            List<DatasetField[]> newList = new ArrayList<>();
-            addToList(newList, dsfo, dsfn);
-            detailDataByBlock.add(newList);
+        detailDataByBlock = new ArrayList<>(byBlock.values());
+
+        //Sort within blocks by datasetfieldtype dispaly order then....
+        //sort via metadatablock order - citation first...
+        for (List<DatasetField[]> blockList : detailDataByBlock) {
+            Collections.sort(blockList, (DatasetField[] l1, DatasetField[] l2) -> {
+                    DatasetField dsfa = l1[0];  //(DatasetField[]) l1.get(0);
+                    DatasetField dsfb = l2[0];
+                    int a = dsfa.getDatasetFieldType().getDisplayOrder();
+                    int b = dsfb.getDatasetFieldType().getDisplayOrder();
+                return Integer.valueOf(a).compareTo(b);
+            });
         }
+        Collections.sort(detailDataByBlock, (List l1, List l2) -> {
+                DatasetField dsfa[] = (DatasetField[]) l1.get(0);
+                DatasetField dsfb[] = (DatasetField[]) l2.get(0);
+                int a = dsfa[0].getDatasetFieldType().getMetadataBlock().getId().intValue();
+                int b = dsfb[0].getDatasetFieldType().getMetadataBlock().getId().intValue();
+            return Integer.valueOf(a).compareTo(b);
+        });
     }
 
     private void updateBlockSummary(DatasetField dsf, int added, int deleted, int changed) {
@@ -652,42 +642,52 @@ public final class DatasetVersionDifference {
     }
 
     public String getFileNote() {
+        return getFileNote(addedFiles.size(), removedFiles.size(), replacedFiles.size(),
+                changedFileMetadata.size() / 2, changedVariableMetadata.size() / 2);
+    }
+
+    /**
+     * The note on the files of the versions table, from the counts of the
+     * files added, removed, etc. Shared with
+     * {@link DatasetVersionDifferenceSummary}.
+     */
+    static String getFileNote(int added, int removed, int replaced, int changed, int variableMetadataChanged) {
         String retString = "";
 
-        if (addedFiles.size() > 0) {
-            retString = BundleUtil.getStringFromBundle("dataset.version.file.added", Arrays.asList(addedFiles.size()+""));
+        if (added > 0) {
+            retString = BundleUtil.getStringFromBundle("dataset.version.file.added", Arrays.asList(added+""));
         }
 
-        if (removedFiles.size() > 0) {
+        if (removed > 0) {
             if (retString.isEmpty()) {
-                retString = BundleUtil.getStringFromBundle("dataset.version.file.removed", Arrays.asList(removedFiles.size()+""));
+                retString = BundleUtil.getStringFromBundle("dataset.version.file.removed", Arrays.asList(removed+""));
             } else {
-                retString += BundleUtil.getStringFromBundle("dataset.version.file.removed2", Arrays.asList(removedFiles.size()+""));
+                retString += BundleUtil.getStringFromBundle("dataset.version.file.removed2", Arrays.asList(removed+""));
             }
         }
         
-        if (replacedFiles.size() > 0) {
+        if (replaced > 0) {
             if (retString.isEmpty()) {
-                retString = BundleUtil.getStringFromBundle("dataset.version.file.replaced", Arrays.asList(replacedFiles.size()+""));
+                retString = BundleUtil.getStringFromBundle("dataset.version.file.replaced", Arrays.asList(replaced+""));
             } else {
-                retString += BundleUtil.getStringFromBundle("dataset.version.file.replaced2", Arrays.asList(replacedFiles.size()+""));
+                retString += BundleUtil.getStringFromBundle("dataset.version.file.replaced2", Arrays.asList(replaced+""));
             }
         }
         
 
-        if (changedFileMetadata.size() > 0) {
+        if (changed > 0) {
             if (retString.isEmpty()) {
-                retString = BundleUtil.getStringFromBundle("dataset.version.file.changed", Arrays.asList(changedFileMetadata.size() / 2+""));
+                retString = BundleUtil.getStringFromBundle("dataset.version.file.changed", Arrays.asList(changed+""));
             } else {
-                retString += BundleUtil.getStringFromBundle("dataset.version.file.changed2", Arrays.asList(changedFileMetadata.size() / 2+""));
+                retString += BundleUtil.getStringFromBundle("dataset.version.file.changed2", Arrays.asList(changed+""));
             }
         }
 
-        if (changedVariableMetadata.size()  > 0) {
+        if (variableMetadataChanged > 0) {
             if (retString.isEmpty()) {
-                retString = BundleUtil.getStringFromBundle("dataset.version.variablemetadata.changed", Arrays.asList(changedVariableMetadata.size() / 2+""));
+                retString = BundleUtil.getStringFromBundle("dataset.version.variablemetadata.changed", Arrays.asList(variableMetadataChanged+""));
             } else {
-                retString += BundleUtil.getStringFromBundle("dataset.version.variablemetadata.changed2", Arrays.asList(changedVariableMetadata.size() / 2+""));
+                retString += BundleUtil.getStringFromBundle("dataset.version.variablemetadata.changed2", Arrays.asList(variableMetadataChanged+""));
             }
         }
 
@@ -698,7 +698,38 @@ public final class DatasetVersionDifference {
         return retString;
     }
     
+    /**
+     * @return what the versions table shows of these differences, to be kept
+     * with the new version
+     */
+    public DatasetVersionDifferenceSummary getSummary() {
+        if (summary != null) {
+            return summary;
+        }
+        List<DatasetVersionDifferenceSummary.FieldSummary> fieldSummaries = new ArrayList<>();
+        for (Object[] note : summaryDataForNote) {
+            DatasetFieldType fieldType = ((DatasetField) note[0]).getDatasetFieldType();
+            MetadataBlock block = fieldType.getMetadataBlock();
+            fieldSummaries.add(new DatasetVersionDifferenceSummary.FieldSummary(block == null ? null : block.getName(),
+                    fieldType.getName(), fieldType.getTitle(), fieldType.isAllowMultiples(),
+                    (Integer) note[1], (Integer) note[2], (Integer) note[3]));
+        }
+        List<DatasetVersionDifferenceSummary.BlockSummary> blockSummaries = new ArrayList<>();
+        for (Object[] note : blockDataForNote) {
+            MetadataBlock block = ((DatasetField) note[0]).getDatasetFieldType().getMetadataBlock();
+            blockSummaries.add(new DatasetVersionDifferenceSummary.BlockSummary(block.getName(), block.getDisplayName(),
+                    (Integer) note[1], (Integer) note[2], (Integer) note[3]));
+        }
+        summary = new DatasetVersionDifferenceSummary(originalVersion.getId(), fieldSummaries, blockSummaries,
+                addedFiles.size(), removedFiles.size(), replacedFiles.size(),
+                changedFileMetadata.size() / 2, changedVariableMetadata.size() / 2, !changedTermsAccess.isEmpty());
+        return summary;
+    }
+
     public List<datasetReplaceFileItem> getDatasetFilesReplacementList() {
+        if (datasetFilesReplacementList == null) {
+            initDatasetFilesDifferencesList();
+        }
         return datasetFilesReplacementList;
     }
 
@@ -707,6 +738,9 @@ public final class DatasetVersionDifference {
     }
 
     public List<List<DatasetField[]>> getDetailDataByBlock() {
+        if (detailDataByBlock == null) {
+            initDetailDataByBlock();
+        }
         return detailDataByBlock;
     }
 
@@ -814,11 +848,17 @@ public final class DatasetVersionDifference {
         
         if (!replacedFiles.isEmpty()) {
             
+            Set<FileMetadata> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (FileMetadata[] replacedPair : replacedFiles) {
+                replaced.add(replacedPair[0]);
+                replaced.add(replacedPair[1]);
+            }
+            fileMetadatasNew.removeIf(replaced::contains);
+            fileMetadatasOriginal.removeIf(replaced::contains);
+
             replacedFiles.stream().map((replacedPair) -> {
                 FileMetadata replacedFile = replacedPair[0];
                 FileMetadata newFile = replacedPair[1];
-                fileMetadatasNew.remove(newFile);
-                fileMetadatasOriginal.remove(replacedFile);
                 datasetFileDifferenceItem fdi = selectFileMetadataDiffs(replacedFile, newFile);
                 datasetReplaceFileItem fdr = new datasetReplaceFileItem();
                 String diffLabel = BundleUtil.getStringFromBundle("file.dataFilesTab.versions.replaced");
@@ -1207,8 +1247,8 @@ public final class DatasetVersionDifference {
         String groupString = "";
         
         //Metadata differences displayed by Metdata block
-        if (!this.detailDataByBlock.isEmpty()) {
-            for (List<DatasetField[]> blocks : detailDataByBlock) {
+        if (!this.getDetailDataByBlock().isEmpty()) {
+            for (List<DatasetField[]> blocks : getDetailDataByBlock()) {
                 groupString = System.lineSeparator() + " " + BundleUtil.getStringFromBundle("dataset.versionDifferences.metadataBlock")  ;
                 String blockDisplay = " " +  blocks.get(0)[0].getDatasetFieldType().getMetadataBlock().getDisplayName() + ": " +  System.lineSeparator();
                 groupString += blockDisplay;
@@ -1707,6 +1747,9 @@ public final class DatasetVersionDifference {
     }
 
     public List<datasetFileDifferenceItem> getDatasetFilesDiffList() {
+        if (datasetFilesDiffList == null) {
+            initDatasetFilesDifferencesList();
+        }
         return datasetFilesDiffList;
     }
 
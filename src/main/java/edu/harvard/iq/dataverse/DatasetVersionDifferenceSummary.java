@@ -0,0 +1,260 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.util.BundleUtil;
+import edu.harvard.iq.dataverse.util.json.JsonUtil;
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonNumber;
+import jakarta.json.JsonObject;
+import jakarta.json.JsonValue;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.MissingResourceException;
+
+/**
+ * What the versions table shows of the differences between a version and the
+ * one before it: how many values were added, removed and changed per field
+ * (for the fields shown on create) and per metadata block (for the others),
+ * how many files were added, removed, replaced and changed, and whether the
+ * terms changed.
+ *
+ * It is worked out from a {@link DatasetVersionDifference} when a version is
+ * published, and kept with the version, as json, so that the table does not
+ * have to compare every version with the previous one each time it is shown.
+ */
+public class DatasetVersionDifferenceSummary implements Serializable {
+
+    public static class FieldSummary implements Serializable {
+        private final String blockName;
+        private final String name;
+        private final String title;
+        private final boolean allowMultiples;
+        private final int added;
+        private final int deleted;
+        private final int changed;
+
+        FieldSummary(String blockName, String name, String title, boolean allowMultiples, int added, int deleted, int changed) {
+            this.blockName = blockName;
+            this.name = name;
+            this.title = title;
+            this.allowMultiples = allowMultiples;
+            this.added = added;
+            this.deleted = deleted;
+            this.changed = changed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @see DatasetFieldType#getLocaleTitle()
+         */
+        public String getDisplayName() {
+            if (blockName == null) {
+                return title;
+            }
+            try {
+                return BundleUtil.getStringFromPropertyFile("datasetfieldtype." + name + ".title", blockName);
+            } catch (MissingResourceException e) {
+                return title;
+            }
+        }
+
+        public boolean isAllowMultiples() {
+            return allowMultiples;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+    }
+
+    public static class BlockSummary implements Serializable {
+        private final String name;
+        private final String displayName;
+        private final int added;
+        private final int deleted;
+        private final int changed;
+
+        BlockSummary(String name, String displayName, int added, int deleted, int changed) {
+            this.name = name;
+            this.displayName = displayName;
+            this.added = added;
+            this.deleted = deleted;
+            this.changed = changed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        /**
+         * @see MetadataBlock#getLocaleDisplayName()
+         */
+        public String getLocaleDisplayName() {
+            try {
+                return BundleUtil.getStringFromPropertyFile("metadatablock.displayName", name);
+            } catch (MissingResourceException e) {
+                return displayName;
+            }
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getDeleted() {
+            return deleted;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+    }
+
+    private final Long originalVersionId;
+    private final List<FieldSummary> fieldSummaries;
+    private final List<BlockSummary> blockSummaries;
+    private final int filesAdded;
+    private final int filesRemoved;
+    private final int filesReplaced;
+    private final int filesChanged;
+    private final int variableMetadataChanged;
+    private final boolean termsOfAccessChanged;
+
+    DatasetVersionDifferenceSummary(Long originalVersionId, List<FieldSummary> fieldSummaries, List<BlockSummary> blockSummaries,
+            int filesAdded, int filesRemoved, int filesReplaced, int filesChanged, int variableMetadataChanged,
+            boolean termsOfAccessChanged) {
+        this.originalVersionId = originalVersionId;
+        this.fieldSummaries = Collections.unmodifiableList(fieldSummaries);
+        this.blockSummaries = Collections.unmodifiableList(blockSummaries);
+        this.filesAdded = filesAdded;
+        this.filesRemoved = filesRemoved;
+        this.filesReplaced = filesReplaced;
+        this.filesChanged = filesChanged;
+        this.variableMetadataChanged = variableMetadataChanged;
+        this.termsOfAccessChanged = termsOfAccessChanged;
+    }
+
+    /**
+     * @return the id of the version this one was compared with
+     */
+    public Long getOriginalVersionId() {
+        return originalVersionId;
+    }
+
+    public List<FieldSummary> getFieldSummaries() {
+        return fieldSummaries;
+    }
+
+    public List<BlockSummary> getBlockSummaries() {
+        return blockSummaries;
+    }
+
+    public int getFilesAdded() {
+        return filesAdded;
+    }
+
+    public int getFilesRemoved() {
+        return filesRemoved;
+    }
+
+    public int getFilesReplaced() {
+        return filesReplaced;
+    }
+
+    public int getFilesChanged() {
+        return filesChanged;
+    }
+
+    public int getVariableMetadataChanged() {
+        return variableMetadataChanged;
+    }
+
+    public boolean isTermsOfAccessChanged() {
+        return termsOfAccessChanged;
+    }
+
+    /**
+     * @see DatasetVersionDifference#getFileNote()
+     */
+    public String getFileNote() {
+        return DatasetVersionDifference.getFileNote(filesAdded, filesRemoved, filesReplaced, filesChanged, variableMetadataChanged);
+    }
+
+    public JsonObject toJson() {
+        JsonArrayBuilder fields = Json.createArrayBuilder();
+        for (FieldSummary field : fieldSummaries) {
+            fields.add(Json.createObjectBuilder()
+                    .add("block", nullable(field.blockName))
+                    .add("name", field.name)
+                    .add("title", nullable(field.title))
+                    .add("allowMultiples", field.allowMultiples)
+                    .add("added", field.added)
+                    .add("deleted", field.deleted)
+                    .add("changed", field.changed));
+        }
+        JsonArrayBuilder blocks = Json.createArrayBuilder();
+        for (BlockSummary block : blockSummaries) {
+            blocks.add(Json.createObjectBuilder()
+                    .add("name", block.name)
+                    .add("displayName", nullable(block.displayName))
+                    .add("added", block.added)
+                    .add("deleted", block.deleted)
+                    .add("changed", block.changed));
+        }
+        return Json.createObjectBuilder()
+                .add("originalVersionId", originalVersionId == null ? JsonValue.NULL : Json.createValue(originalVersionId))
+                .add("fields", fields)
+                .add("blocks", blocks)
+                .add("files", Json.createObjectBuilder()
+                        .add("added", filesAdded)
+                        .add("removed", filesRemoved)
+                        .add("replaced", filesReplaced)
+                        .add("changed", filesChanged)
+                        .add("variableMetadataChanged", variableMetadataChanged))
+                .add("termsOfAccessChanged", termsOfAccessChanged)
+                .build();
+    }
+
+    private static JsonValue nullable(String value) {
+        return value == null ? JsonValue.NULL : Json.createValue(value);
+    }
+
+    /**
+     * @throws RuntimeException if the json is not a summary
+     */
+    public static DatasetVersionDifferenceSummary fromJson(String serializedJson) {
+        JsonObject json = JsonUtil.getJsonObject(serializedJson);
+        List<FieldSummary> fields = new ArrayList<>();
+        for (JsonObject field : json.getJsonArray("fields").getValuesAs(JsonObject.class)) {
+            fields.add(new FieldSummary(field.getString("block", null), field.getString("name"), field.getString("title", null),
+                    field.getBoolean("allowMultiples"), field.getInt("added"), field.getInt("deleted"), field.getInt("changed")));
+        }
+        List<BlockSummary> blocks = new ArrayList<>();
+        for (JsonObject block : json.getJsonArray("blocks").getValuesAs(JsonObject.class)) {
+            blocks.add(new BlockSummary(block.getString("name"), block.getString("displayName", null),
+                    block.getInt("added"), block.getInt("deleted"), block.getInt("changed")));
+        }
+        JsonObject files = json.getJsonObject("files");
+        JsonNumber originalVersionId = json.isNull("originalVersionId") ? null : json.getJsonNumber("originalVersionId");
+        return new DatasetVersionDifferenceSummary(originalVersionId == null ? null : originalVersionId.longValue(), fields, blocks,
+                files.getInt("added"), files.getInt("removed"), files.getInt("replaced"), files.getInt("changed"),
+                files.getInt("variableMetadataChanged"), json.getBoolean("termsOfAccessChanged"));
+    }
+}
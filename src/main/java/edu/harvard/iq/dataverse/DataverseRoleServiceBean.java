@@ -48,6 +48,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     IndexAsync indexAsync;
 
     public DataverseRole save(DataverseRole aRole) {
+        PermissionCache.invalidateAll();
         if (aRole.getId() == null) {
             em.persist(aRole);
             /**
@@ -71,6 +72,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
     
     public RoleAssignment save(RoleAssignment assignment, boolean createIndex) {
+        PermissionCache.invalidateAll();
         if (assignment.getId() == null) {
             em.persist(assignment);
         } else {
@@ -103,6 +105,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void delete(Long id) {
+        PermissionCache.invalidateAll();
         em.createNamedQuery("DataverseRole.deleteById", DataverseRole.class)
             .setParameter("id", id)
             .executeUpdate();
@@ -133,6 +136,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(Set<DataverseRole> roles, RoleAssignee assignee, DvObject defPoint) {
+        PermissionCache.invalidateAll();
         for (DataverseRole role : roles) {
             em.createNamedQuery("RoleAssignment.deleteByAssigneeIdentifier_RoleIdDefinition_PointId")
                 .setParameter("assigneeIdentifier", assignee.getIdentifier())
@@ -145,6 +149,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     }
 
     public void revoke(RoleAssignment ra) {
+        PermissionCache.invalidateAll();
         if (!em.contains(ra)) {
             ra = em.merge(ra);
         }
@@ -160,6 +165,7 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
     // on which the roles were assigned - need to be reindexed for permissions
     // once the role assignments are removed!
     public void revokeAll(RoleAssignee assignee) {
+        PermissionCache.invalidateAll();
         Set<DvObject> reindexSet = new HashSet<>();
 
         for (RoleAssignment ra : roleAssigneeService.getAssignmentsFor(assignee.getIdentifier())) {
@@ -273,6 +279,22 @@ public class DataverseRoleServiceBean implements java.io.Serializable {
                         .getResultList();
     }
 
+    /**
+     * Retrieves the role assignments for {@code roleAssignees} directly on the
+     * children of {@code owner}, e.g. on all the files of a dataset at once.
+     *
+     * @param roleAssignees the role assignees whose assignments we look for
+     * @param owner the parent of the objects where the roles are defined
+     * @return the role assignments on the children of {@code owner}
+     */
+    public List<RoleAssignment> directRoleAssignmentsOnChildren(Set<? extends RoleAssignee> roleAssignees, DvObject owner) {
+        List<String> raIds = roleAssignees.stream().map(roas -> roas.getIdentifier()).collect(Collectors.toList());
+        return em.createNamedQuery("RoleAssignment.listByAssigneeIdentifiers_DefinitionPointOwnerId", RoleAssignment.class)
+                        .setParameter("assigneeIdentifiers", raIds)
+                        .setParameter("ownerId", owner.getId())
+                        .getResultList();
+    }
+
     /**
      * Retrieves the roles assignments for {@code user}, directly on {@code dv}.
      * No traversal on the containment hierarchy is done.
@@ -27,10 +27,13 @@ import java.io.File;
 import java.io.IOException;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.Properties;
 
@@ -168,29 +171,41 @@ public class DataverseServiceBean implements java.io.Serializable {
      * 
      * @param skipIndexed If true, will skip any dvObjects that have a indexTime set 
      *
-     * @return All dataverses if you say numPartitions=1 and partitionId=0.
-     * Otherwise, a subset of dataverses.
+     * @param afterId Only the ids greater than this one are returned; the
+     * ids are returned in ascending order, so that "index all" can page
+     * through them, and resume after the last one it completed.
+     *
+     * @param maxResults The page size; all remaining ids if 0 or less.
+     *
+     * @return The ids of all dataverses if you say numPartitions=1 and
+     * partitionId=0. Otherwise, of a subset of dataverses.
      */
-    public List<Dataverse> findAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed) {
+    public List<Long> findAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, long afterId, int maxResults) {
         if (numPartitions < 1) {
             long saneNumPartitions = 1;
             numPartitions = saneNumPartitions;
         }
         String skipClause = skipIndexed ? "AND o.indexTime is null " : "";
-        TypedQuery<Dataverse> typedQuery = em.createQuery("SELECT OBJECT(o) FROM Dataverse AS o WHERE MOD( o.id, :numPartitions) = :partitionId " +
+        TypedQuery<Long> typedQuery = em.createQuery("SELECT o.id FROM Dataverse AS o WHERE MOD( o.id, :numPartitions) = :partitionId AND o.id > :afterId " +
                 skipClause +
-                "ORDER BY o.id", Dataverse.class);
+                "ORDER BY o.id", Long.class);
         typedQuery.setParameter("numPartitions", numPartitions);
         typedQuery.setParameter("partitionId", partitionId);
+        typedQuery.setParameter("afterId", afterId);
+        if (maxResults > 0) {
+            typedQuery.setMaxResults(maxResults);
+        }
         return typedQuery.getResultList();
     }
-    
-    public List<Long> findDataverseIdsForIndexing(boolean skipIndexed) {
-        if (skipIndexed) {
-            return em.createQuery("SELECT o.id FROM Dataverse o WHERE o.indexTime IS null ORDER BY o.id", Long.class).getResultList();
-        }
-        return em.createQuery("SELECT o.id FROM Dataverse o ORDER BY o.id", Long.class).getResultList();
-        
+
+    public long countForIndexing(long numPartitions, long partitionId, boolean skipIndexed, long afterId) {
+        String skipClause = skipIndexed ? "AND o.indexTime IS null " : "";
+        return em.createQuery("SELECT COUNT(o) FROM Dataverse o WHERE MOD(o.id, :numPartitions) = :partitionId AND o.id > :afterId " +
+                skipClause, Long.class)
+                .setParameter("numPartitions", Math.max(1, numPartitions))
+                .setParameter("partitionId", partitionId)
+                .setParameter("afterId", afterId)
+                .getSingleResult();
     }
 
     public List<Dataverse> findByCreatorId(Long creatorId) {
@@ -344,8 +359,18 @@ public class DataverseServiceBean implements java.io.Serializable {
     }
     
     public String getDataverseLogoThumbnailAsBase64ById(Long dvId) {
-     
-        File dataverseLogoFile = getLogoById(dvId);
+        return getDataverseLogoThumbnailAsBase64(getLogoById(dvId));
+    }
+
+    /**
+     * Same as {@link #getDataverseLogoThumbnailAsBase64ById(Long)}, with the
+     * name of the logo already looked up (see {@link #findLogoFileNames}).
+     */
+    public String getDataverseLogoThumbnailAsBase64ById(Long dvId, String logoFileName) {
+        return getDataverseLogoThumbnailAsBase64(getLogoFile(dvId, logoFileName));
+    }
+
+    private String getDataverseLogoThumbnailAsBase64(File dataverseLogoFile) {
         
         if (dataverseLogoFile != null) {
             String logoThumbNailPath;
@@ -387,7 +412,37 @@ public class DataverseServiceBean implements java.io.Serializable {
         } catch (Exception ex) {
             return null;
         }
-        
+
+        return getLogoFile(id, logoFileName);
+    }
+
+    /**
+     * Looks up the names of the logos of the given dataverses, in one query.
+     *
+     * @return the names of the logos, by dataverse id (for the dataverses
+     * that have one)
+     */
+    public Map<Long, String> findLogoFileNames(Collection<Long> ids) {
+        Map<Long, String> logoFileNames = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return logoFileNames;
+        }
+        List<Object[]> results;
+        try {
+            results = em.createNativeQuery("SELECT dataverse_id, logo FROM dataversetheme WHERE dataverse_id IN (" + StringUtils.join(ids, ", ") + ")").getResultList();
+        } catch (Exception ex) {
+            logger.warning("Exception looking up the logos of " + ids.size() + " dataverses: " + ex.getMessage());
+            return logoFileNames;
+        }
+        for (Object[] result : results) {
+            if (result[1] != null) {
+                logoFileNames.put(((Number) result[0]).longValue(), (String) result[1]);
+            }
+        }
+        return logoFileNames;
+    }
+
+    private File getLogoFile(Long id, String logoFileName) {
         if (logoFileName != null && !logoFileName.isEmpty()) {
             Properties p = System.getProperties();
             String domainRoot = p.getProperty("com.sun.aas.instanceRoot");
@@ -705,6 +760,56 @@ public class DataverseServiceBean implements java.io.Serializable {
         }
     }
     
+    /**
+     * Same as {@link #populateDvSearchCard(SolrSearchResult)}, for all the
+     * dataverse cards of a page at once, in one query.
+     *
+     * @return the number of queries run
+     */
+    public int populateDvSearchCards(List<SolrSearchResult> solrSearchResults) {
+        Set<Long> dvIds = new HashSet<>();
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            if (solrSearchResult.getEntityId() != null) {
+                dvIds.add(solrSearchResult.getEntityId());
+            }
+        }
+        if (dvIds.isEmpty()) {
+            return 0;
+        }
+
+        List<Object[]> searchResults;
+        try {
+            searchResults = em.createNativeQuery("SELECT t0.ID, t0.AFFILIATION, t0.ALIAS, t2.ALIAS FROM DATAVERSE t0 JOIN DVOBJECT t1 ON (t0.ID = t1.ID) LEFT JOIN DATAVERSE t2 ON (t2.ID = t1.OWNER_ID) WHERE t0.ID IN ("
+                    + StringUtils.join(dvIds, ", ") + ")").getResultList();
+        } catch (Exception ex) {
+            logger.warning("Exception looking up " + dvIds.size() + " dataverse cards: " + ex.getMessage());
+            return 1;
+        }
+
+        Map<Long, Object[]> searchResultsById = new HashMap<>();
+        for (Object[] searchResult : searchResults) {
+            searchResultsById.put(((Number) searchResult[0]).longValue(), searchResult);
+        }
+
+        for (SolrSearchResult solrSearchResult : solrSearchResults) {
+            Object[] searchResult = searchResultsById.get(solrSearchResult.getEntityId());
+            if (searchResult == null) {
+                continue;
+            }
+            if (searchResult[1] != null) {
+                solrSearchResult.setDataverseAffiliation((String) searchResult[1]);
+            }
+            if (searchResult[2] != null) {
+                solrSearchResult.setDataverseAlias((String) searchResult[2]);
+            }
+            // (as above, only if the card has a parent)
+            if (solrSearchResult.getParent().get("id") != null && searchResult[3] != null) {
+                solrSearchResult.setDataverseParentAlias((String) searchResult[3]);
+            }
+        }
+        return 1;
+    }
+    
     // function to recursively find ids of all children of a dataverse that 
     // are also of type dataverse
     public List<Long> findAllDataverseDataverseChildren(Long dvId) {
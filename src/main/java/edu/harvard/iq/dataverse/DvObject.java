@@ -24,6 +24,8 @@ import jakarta.persistence.*;
             query = "SELECT o FROM DvObject o ORDER BY o.id"),
     @NamedQuery(name = "DvObject.findById",
             query = "SELECT o FROM DvObject o WHERE o.id=:id"),
+    @NamedQuery(name = "DvObject.findByIds",
+            query = "SELECT o FROM DvObject o WHERE o.id IN :ids"),
     @NamedQuery(name = "DvObject.checkExists", 
             query = "SELECT count(o) from DvObject o WHERE o.id=:id"),
     @NamedQuery(name = "DvObject.ownedObjectsById",
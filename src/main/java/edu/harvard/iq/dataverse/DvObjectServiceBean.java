@@ -6,6 +6,7 @@ import edu.harvard.iq.dataverse.pidproviders.PidProviderFactoryBean;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -66,6 +67,25 @@ public class DvObjectServiceBean implements java.io.Serializable {
         }
     }
 
+    /**
+     * Finds the objects with the given ids, in one query rather than one per
+     * object.
+     *
+     * @return the objects found, by id
+     */
+    public Map<Long, DvObject> findDvObjects(Collection<Long> ids) {
+        Map<Long, DvObject> dvObjects = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return dvObjects;
+        }
+        for (DvObject dvObject : em.createNamedQuery("DvObject.findByIds", DvObject.class)
+                .setParameter("ids", ids)
+                .getResultList()) {
+            dvObjects.put(dvObject.getId(), dvObject);
+        }
+        return dvObjects;
+    }
+
     public List<DvObject> findAll() {
         return em.createNamedQuery("DvObject.findAll", DvObject.class).getResultList();
     }
@@ -0,0 +1,204 @@
+package edu.harvard.iq.dataverse;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.json.JsonObject;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Keeps the recently used values of the externalvocabularyvalue table in
+ * memory, so that indexing or exporting a dataset with many external
+ * vocabulary terms does not query the table once per term. The values are
+ * kept for dataverse.cvoc.cache.ttl seconds: a value fetched again by another
+ * server of a cluster may be used for that long.
+ *
+ * Also retrieves the new terms from the external vocabulary services, with
+ * one pooled HTTP client, several terms at the same time (see
+ * {@link DatasetFieldServiceBean#registerExternalTerms}).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ExternalVocabularyValueCache {
+
+    private static final Logger logger = Logger.getLogger(ExternalVocabularyValueCache.class.getCanonicalName());
+
+    // Defaults for the dataverse.cvoc.* JVM options:
+    private static final int DEFAULT_MAX_SIZE = 10000;
+    private static final int DEFAULT_TTL_SECONDS = 600;
+    private static final int DEFAULT_FETCH_THREADS = 8;
+
+    // null if disabled; the terms with no (usable) value are cached as empty
+    private Cache<String, Optional<JsonObject>> cache;
+    // null if the terms are fetched by the calling thread
+    private ExecutorService executor;
+    private CloseableHttpClient httpClient;
+
+    @PostConstruct
+    public void init() {
+        configure(JvmSettings.CVOC_CACHE_MAX_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_MAX_SIZE),
+                JvmSettings.CVOC_CACHE_TTL.lookupOptional(Integer.class).orElse(DEFAULT_TTL_SECONDS),
+                JvmSettings.CVOC_FETCH_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_FETCH_THREADS));
+    }
+
+    void configure(int maxSize, int ttlSeconds, int fetchThreads) {
+        if (maxSize > 0) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                    .build();
+        } else {
+            logger.info("External vocabulary values are not cached");
+            cache = null;
+        }
+        if (fetchThreads > 1) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "cvoc-fetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = Executors.newFixedThreadPool(fetchThreads, threadFactory);
+        } else {
+            executor = null;
+        }
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setDefaultMaxPerRoute(Math.max(2, fetchThreads));
+        connectionManager.setMaxTotal(Math.max(20, fetchThreads));
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .addInterceptorLast((HttpResponse response, HttpContext context) -> {
+                    int statusCode = response.getStatusLine().getStatusCode();
+                    if (statusCode == 504) {
+                        //Throwing an exception triggers the retry handler
+                        throw new IOException("Retry due to 504 response");
+                    }
+                })
+                //The retry handler will also do retries for network errors/other things that cause an IOException
+                .setRetryHandler(new DefaultHttpRequestRetryHandler(3, false))
+                .build();
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.fine("Problem closing the external vocabulary HTTP client: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the cached value of the term - empty if it has none - or null
+     * if it is not cached
+     */
+    public Optional<JsonObject> getIfPresent(String termUri) {
+        return cache == null ? null : cache.getIfPresent(termUri);
+    }
+
+    /**
+     * @param value null if the term has no (usable) value
+     */
+    public void put(String termUri, JsonObject value) {
+        if (cache != null) {
+            cache.put(termUri, Optional.ofNullable(value));
+        }
+    }
+
+    /**
+     * Retrieves the terms from their external vocabulary services, several
+     * at a time; returns once they have all been retrieved (or failed).
+     *
+     * @param retrievalUrisByTerm the URL to retrieve each term from
+     * @return the body of each successful (200) response, by term
+     */
+    public Map<String, String> fetch(Map<String, String> retrievalUrisByTerm) {
+        Map<String, String> responses = new LinkedHashMap<>();
+        if (executor == null || retrievalUrisByTerm.size() < 2) {
+            retrievalUrisByTerm.forEach((term, retrievalUri) -> {
+                String data = fetch(retrievalUri);
+                if (data != null) {
+                    responses.put(term, data);
+                }
+            });
+            return responses;
+        }
+        List<String> terms = new ArrayList<>(retrievalUrisByTerm.keySet());
+        List<Future<String>> futures = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            String retrievalUri = retrievalUrisByTerm.get(term);
+            futures.add(executor.submit(() -> fetch(retrievalUri)));
+        }
+        try {
+            for (int i = 0; i < terms.size(); i++) {
+                String data = futures.get(i).get();
+                if (data != null) {
+                    responses.put(terms.get(i), data);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+        } catch (ExecutionException e) {
+            // (fetch() does not throw)
+            logger.log(Level.WARNING, "Unexpected failure retrieving external vocabulary terms", e.getCause());
+        }
+        return responses;
+    }
+
+    /**
+     * @return the body of the response, or null if the status was not 200
+     */
+    private String fetch(String retrievalUri) {
+        try {
+            HttpGet httpGet = new HttpGet(retrievalUri);
+            //application/json+ld is for backward compatibility
+            httpGet.addHeader("Accept", "application/ld+json, application/json+ld, application/json");
+            try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+                String data = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == 200) {
+                    logger.fine("Returned data: " + data);
+                    return data;
+                }
+                logger.severe("Received response code : " + statusCode + " when retrieving " + retrievalUri
+                        + " : " + data);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("Exception when retrieving url: " + retrievalUri + " : " + e.getMessage());
+        }
+        return null;
+    }
+}
@@ -15,9 +15,12 @@ import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.JsfHelper;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.faces.view.ViewScoped;
@@ -59,6 +62,7 @@ public class FileDownloadHelper implements java.io.Serializable {
     GlobusServiceBean globusService;
 
     private final Map<Long, Boolean> fileDownloadPermissionMap = new HashMap<>(); // { FileMetadata.id : Boolean } 
+    private final Set<Long> versionsWithDownloadPermissionsLoaded = new HashSet<>(); // { DatasetVersion.id }
 
     public FileDownloadHelper() {
         this.filesForRequestAccess = new ArrayList<>();
@@ -250,6 +254,13 @@ public class FileDownloadHelper implements java.io.Serializable {
             return true;
         }
         
+        // The permissions of the other restricted files of the version are going
+        // to be needed as well (e.g. on the dataset page), look them all up at once:
+        loadDownloadFilePermissions(fileMetadata.getDatasetVersion());
+        if (this.fileDownloadPermissionMap.containsKey(fid)) {
+            return this.fileDownloadPermissionMap.get(fid);
+        }
+
         // See if the DataverseRequest, which contains IP Groups, has permission to download the file.
         if (permissionService.requestOn(dvRequestService.getDataverseRequest(), fileMetadata.getDataFile()).has(Permission.DownloadFile)) {
             logger.fine("The DataverseRequest (User plus IP address) has access to download the file.");
@@ -261,6 +272,30 @@ public class FileDownloadHelper implements java.io.Serializable {
         return false;
     }
 
+    /**
+     * Checks the download permission on all the restricted or embargoed files
+     * of a version with a single call to the {@link PermissionServiceBean},
+     * rather than one per file.
+     */
+    private void loadDownloadFilePermissions(DatasetVersion version) {
+        if (version == null || version.getId() == null || !versionsWithDownloadPermissionsLoaded.add(version.getId())) {
+            return;
+        }
+        Map<DataFile, FileMetadata> toCheck = new HashMap<>();
+        for (FileMetadata fmd : version.getFileMetadatas()) {
+            if (fmd.getId() != null && fmd.getDataFile() != null && fmd.getDataFile().getId() != null
+                    && !fileDownloadPermissionMap.containsKey(fmd.getId())
+                    && (fmd.isRestricted() || fmd.getDataFile().isRestricted() || FileUtil.isActivelyEmbargoed(fmd))) {
+                toCheck.put(fmd.getDataFile(), fmd);
+            }
+        }
+        if (toCheck.isEmpty()) {
+            return;
+        }
+        Map<DvObject, Boolean> permitted = permissionService.hasPermissionsFor(dvRequestService.getDataverseRequest(), toCheck.keySet(), EnumSet.of(Permission.DownloadFile));
+        permitted.forEach((dataFile, canDownload) -> fileDownloadPermissionMap.put(toCheck.get(dataFile).getId(), canDownload));
+    }
+
     public boolean isRestrictedOrEmbargoed(FileMetadata fileMetadata) {
         return fileMetadata.isRestricted() || FileUtil.isActivelyEmbargoed(fileMetadata);
     }
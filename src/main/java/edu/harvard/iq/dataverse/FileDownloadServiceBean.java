@@ -60,6 +60,8 @@ public class FileDownloadServiceBean implements java.io.Serializable {
     @EJB
     GuestbookResponseServiceBean guestbookResponseService;
     @EJB
+    GuestbookResponseWriter guestbookResponseWriter;
+    @EJB
     DatasetServiceBean datasetService;
     @EJB
     DatasetVersionServiceBean datasetVersionService;
@@ -238,24 +240,19 @@ public class FileDownloadServiceBean implements java.io.Serializable {
     }
     
     public void writeGuestbookResponseRecord(GuestbookResponse guestbookResponse) {
-        try {
-            CreateGuestbookResponseCommand cmd = new CreateGuestbookResponseCommand(dvRequestService.getDataverseRequest(), guestbookResponse, guestbookResponse.getDataset());
-            commandEngine.submit(cmd);
-            DatasetVersion version = guestbookResponse.getDatasetVersion();
-            
-            //Sometimes guestbookResponse doesn't have a version, so we grab the released version
-            if (null == version) {
-                version = guestbookResponse.getDataset().getReleasedVersion();
-            }
-            MakeDataCountEntry entry = new MakeDataCountEntry(FacesContext.getCurrentInstance(), dvRequestService, version, guestbookResponse.getDataFile());
-            //As the api download url is not available at this point we construct it manually
-            entry.setTargetUrl("/api/access/datafile/" + guestbookResponse.getDataFile().getId());
-            entry.setRequestUrl("/api/access/datafile/" + guestbookResponse.getDataFile().getId());
-            mdcLogService.logEntry(entry);
-        } catch (CommandException e) {
-            //if an error occurs here then download won't happen no need for response recs...
-            logger.warning("Exception writing GuestbookResponse for file: " + guestbookResponse.getDataFile().getId() + " : " + e.getLocalizedMessage());
-        }
+        // saved in the background (see GuestbookResponseWriter):
+        guestbookResponseWriter.write(guestbookResponse, dvRequestService.getDataverseRequest());
+        DatasetVersion version = guestbookResponse.getDatasetVersion();
+
+        //Sometimes guestbookResponse doesn't have a version, so we grab the released version
+        if (null == version) {
+            version = guestbookResponse.getDataset().getReleasedVersion();
+        }
+        MakeDataCountEntry entry = new MakeDataCountEntry(FacesContext.getCurrentInstance(), dvRequestService, version, guestbookResponse.getDataFile());
+        //As the api download url is not available at this point we construct it manually
+        entry.setTargetUrl("/api/access/datafile/" + guestbookResponse.getDataFile().getId());
+        entry.setRequestUrl("/api/access/datafile/" + guestbookResponse.getDataFile().getId());
+        mdcLogService.logEntry(entry);
     }
     
     public void writeGuestbookResponseRecordForRequestAccess(GuestbookResponse guestbookResponse) {
@@ -176,8 +176,10 @@ public class GuestbookResponse implements Serializable {
         this.setDatasetVersion(source.getDatasetVersion());
         this.setAuthenticatedUser(source.getAuthenticatedUser());
         this.setSessionId(source.getSessionId());
+        this.setDataFile(source.getDataFile());
+        this.setEventType(source.getEventType());
         List <CustomQuestionResponse> customQuestionResponses = new ArrayList<>();
-        if (!source.getCustomQuestionResponses().isEmpty()){
+        if (source.getCustomQuestionResponses() != null){
             for (CustomQuestionResponse customQuestionResponse : source.getCustomQuestionResponses() ){
                 CustomQuestionResponse customQuestionResponseAdd = new CustomQuestionResponse();
                 customQuestionResponseAdd.setResponse(customQuestionResponse.getResponse());  
@@ -903,6 +903,17 @@ public class GuestbookResponseServiceBean {
     public void save(GuestbookResponse guestbookResponse) {
         em.persist(guestbookResponse);
     }
+
+    /**
+     * Saves the responses queued by the {@link GuestbookResponseWriter}, in
+     * one transaction.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void saveAll(List<GuestbookResponse> guestbookResponses) {
+        for (GuestbookResponse guestbookResponse : guestbookResponses) {
+            em.persist(guestbookResponse);
+        }
+    }
     
     
     /*
@@ -912,10 +923,15 @@ public class GuestbookResponseServiceBean {
      * previewers (where eventtype is the previewer name)
      */
         
+    /*
+     * The counts are read from the downloadcount table, kept up to date by a
+     * trigger on guestbookresponse: one row per file (and per dataset) and
+     * per day with downloads, rather than a count of all the responses.
+     */
+
     public Long getDownloadCountByDataFileId(Long dataFileId) {
         // datafile id is null, will return 0
-        Query query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.datafile_id  = " + dataFileId + " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        return (Long) query.getSingleResult();
+        return getDownloadCount(dataFileId, null);
     }
     
     public Long getDownloadCountByDatasetId(Long datasetId) {
@@ -924,14 +940,26 @@ public class GuestbookResponseServiceBean {
     
     public Long getDownloadCountByDatasetId(Long datasetId, LocalDate date) {
         // dataset id is null, will return 0        
+        return getDownloadCount(datasetId, date);
+    }
+
+    /**
+     * @param date if not null, only the downloads before that day are counted
+     */
+    private Long getDownloadCount(Long dvObjectId, LocalDate date) {
+        if (dvObjectId == null) {
+            return 0L;
+        }
         Query query;
-        if(date != null) {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId + " and responsetime < '" + date.toString() + "' and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
-        }else {
-            query = em.createNativeQuery("select count(o.id) from GuestbookResponse  o  where o.dataset_id  = " + datasetId+ " and eventtype != '" + GuestbookResponse.ACCESS_REQUEST +"'");
+        if (date != null) {
+            query = em.createNativeQuery("select coalesce(sum(o.downloads), 0)::bigint from downloadcount o where o.dvobject_id = ?1 and o.responsedate < ?2")
+                    .setParameter(2, java.sql.Date.valueOf(date));
+        } else {
+            query = em.createNativeQuery("select coalesce(sum(o.downloads), 0)::bigint from downloadcount o where o.dvobject_id = ?1");
         }
-        return (Long) query.getSingleResult();
-    }    
+        query.setParameter(1, dvObjectId);
+        return ((Number) query.getSingleResult()).longValue();
+    }
 
     public Long getTotalDownloadCount() {
         // dataset id is null, will return 0  
@@ -0,0 +1,194 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
+import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.engine.command.impl.CreateGuestbookResponseCommand;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.DependsOn;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+
+/**
+ * Saves the guestbook responses of the downloads in the background, rather
+ * than in the download requests: the responses are queued, and a single
+ * thread saves them, as many at a time as have been queued in the meantime
+ * (up to the batch size), each batch in one transaction.
+ *
+ * The responses still queued are saved when the application is shut down.
+ * When the queue is full, or the writer is disabled, the responses are saved
+ * right away, by the requests, as before.
+ *
+ * The download counts are kept up to date by the database (see the
+ * downloadcount table), whichever way the responses are saved.
+ *
+ * The downloads that used to be recorded by a
+ * {@link CreateGuestbookResponseCommand} are written to the action log right
+ * away, as the command engine would have (see
+ * {@link #write(GuestbookResponse, DataverseRequest)}); the response itself is
+ * not saved yet at that point.
+ */
+@Singleton
+@Startup
+@DependsOn("StartupFlywayMigrator")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GuestbookResponseWriter {
+
+    private static final Logger logger = Logger.getLogger(GuestbookResponseWriter.class.getCanonicalName());
+
+    private static final long POLL_INTERVAL_SECONDS = 1;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    @EJB
+    GuestbookResponseServiceBean guestbookResponseService;
+
+    @EJB
+    ActionLogServiceBean actionLogService;
+
+    private BlockingQueue<GuestbookResponse> queue;
+    private int batchSize;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init() {
+        if (JvmSettings.GUESTBOOK_WRITER_ENABLED.lookupOptional(Boolean.class).orElse(true)) {
+            start(JvmSettings.GUESTBOOK_WRITER_BATCH_SIZE.lookupOptional(Integer.class).orElse(500),
+                    JvmSettings.GUESTBOOK_WRITER_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000));
+        } else {
+            logger.info("Guestbook responses are saved by the download requests.");
+        }
+    }
+
+    void start(int batchSize, int queueSize) {
+        this.batchSize = Math.max(1, batchSize);
+        queue = new LinkedBlockingQueue<>(Math.max(1, queueSize));
+        running = true;
+        writerThread = new Thread(this::run, "guestbook-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Saves what is still queued before letting the application stop.
+     */
+    @PreDestroy
+    public void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // whatever the thread could not get to:
+        List<GuestbookResponse> left = new ArrayList<>();
+        queue.drainTo(left);
+        if (!left.isEmpty()) {
+            logger.info("Saving the last " + left.size() + " guestbook responses");
+            save(left);
+        }
+        writerThread = null;
+    }
+
+    /**
+     * Records a download. The response is copied, so the caller can go on
+     * using it (e.g. for the next file of a multiple file download); its
+     * time is now.
+     */
+    public void write(GuestbookResponse guestbookResponse) {
+        GuestbookResponse copy = new GuestbookResponse(guestbookResponse);
+        copy.setResponseTime(new Timestamp(new Date().getTime()));
+        if (!running || !queue.offer(copy)) {
+            guestbookResponseService.save(copy);
+        }
+    }
+
+    /**
+     * Records a download, as {@link #write(GuestbookResponse)} does, and
+     * writes the action log row of a {@link CreateGuestbookResponseCommand}
+     * submitted by that request.
+     */
+    public void write(GuestbookResponse guestbookResponse, DataverseRequest request) {
+        write(guestbookResponse);
+        Dataset dataset = guestbookResponse.getDataset() != null ? guestbookResponse.getDataset()
+                : guestbookResponse.getDataFile().getOwner();
+        ActionLogRecord logRec = new ActionLogRecord(ActionLogRecord.ActionType.Command, CreateGuestbookResponseCommand.class.getCanonicalName());
+        logRec.setUserIdentifier(request.getUser().getIdentifier());
+        logRec.setInfo(new CreateGuestbookResponseCommand(request, guestbookResponse, dataset).describe());
+        logRec.setActionResult(ActionLogRecord.Result.OK);
+        logRec.setEndTime(new Date());
+        actionLogService.log(logRec);
+    }
+
+    /**
+     * @return the number of responses waiting to be saved
+     */
+    public int getQueueSize() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    private void run() {
+        List<GuestbookResponse> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                GuestbookResponse first = queue.poll(POLL_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                save(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Unexpected failure saving guestbook responses", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Saves a batch in one transaction; if that fails, saves the responses
+     * one by one, so that only the ones at fault are lost.
+     */
+    private void save(List<GuestbookResponse> batch) {
+        try {
+            guestbookResponseService.saveAll(batch);
+            logger.fine("saved " + batch.size() + " guestbook responses");
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Failed to save a batch of " + batch.size() + " guestbook responses; saving them one by one", e);
+            for (GuestbookResponse guestbookResponse : batch) {
+                // (the ids given in the transaction that was rolled back)
+                guestbookResponse.setId(null);
+                for (CustomQuestionResponse customQuestionResponse : guestbookResponse.getCustomQuestionResponses()) {
+                    customQuestionResponse.setId(null);
+                }
+                try {
+                    guestbookResponseService.save(guestbookResponse);
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Failed to save the guestbook response for datafile "
+                            + (guestbookResponse.getDataFile() == null ? null : guestbookResponse.getDataFile().getId()), ex);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Memoizes the expensive parts of a permission check: the groups of a
+ * request/user in the context of a Dataverse collection, the permissions
+ * granted by role assignments on an object and its permission ancestors, the
+ * ids of the files in a released dataset version, and the groups of a request
+ * as they go into the Solr permission filter query.
+ *
+ * A request gets its own instance (see {@link RequestPermissionCache}), which
+ * may fall back to a {@link #shared} instance whose entries are kept for a
+ * configured time across requests. Any change to role assignments, roles or
+ * group memberships, or to where an object inherits its permissions from,
+ * calls {@link #invalidateAll()}, which discards all the entries of all the
+ * instances in this JVM - right away, and again once the transaction is over.
+ * Other servers of a cluster only notice such a change once their shared
+ * entries expire.
+ *
+ * @see PermissionServiceBean
+ */
+public class PermissionCache {
+
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * Entries of one kind a cache holds before starting over, so that a cache
+     * that lives long does not grow without bounds.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    private static volatile PermissionCache shared;
+
+    private static final class Entry<T> {
+        final T value;
+        final long generation;
+        final long createdAt;
+
+        Entry(T value, long generation, long createdAt) {
+            this.value = value;
+            this.generation = generation;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final PermissionCache parent;
+    private final Map<String, Entry<Set<RoleAssignee>>> assignees = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Set<Permission>>> permissions = new ConcurrentHashMap<>();
+    private final Map<String, Entry<Map<Long, Set<Permission>>>> filePermissions = new ConcurrentHashMap<>();
+    private final Map<Long, Entry<Set<Long>>> releasedFileIds = new ConcurrentHashMap<>();
+    private final Map<String, Entry<String>> searchGroupFilters = new ConcurrentHashMap<>();
+
+    /**
+     * @param ttlMillis how long an entry is used for; {@code 0} or less means
+     * until the next {@link #invalidateAll()}.
+     * @param parent a longer-lived cache to look in on a miss, or {@code null}
+     */
+    public PermissionCache(long ttlMillis, PermissionCache parent) {
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0;
+        this.parent = parent;
+    }
+
+    /**
+     * Discards everything cached so far, in all the caches. To be called
+     * whenever role assignments, roles or group memberships change, or where
+     * an object inherits its permissions from.
+     */
+    public static void invalidateAll() {
+        invalidateAll(lookupTransactionSynchronizationRegistry());
+    }
+
+    /**
+     * Discards everything right away, and again once the current transaction,
+     * if any, is over: what other requests load in the meantime is from before
+     * the change is committed.
+     */
+    static void invalidateAll(TransactionSynchronizationRegistry registry) {
+        GENERATION.incrementAndGet();
+        if (registry == null || registry.getTransactionKey() == null
+                || registry.getResource(PermissionCache.class) != null) {
+            return;
+        }
+        registry.putResource(PermissionCache.class, Boolean.TRUE);
+        registry.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                GENERATION.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * (The callers are beans and commands alike, so the registry is looked up
+     * here rather than injected into each of them.)
+     *
+     * @return the registry, or null outside of a container, e.g. in tests
+     */
+    private static TransactionSynchronizationRegistry lookupTransactionSynchronizationRegistry() {
+        try {
+            return (TransactionSynchronizationRegistry) new InitialContext().lookup("java:comp/TransactionSynchronizationRegistry");
+        } catch (NamingException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the cross-request cache, or {@code null} if {@code ttlMillis}
+     * is not positive.
+     */
+    public static PermissionCache shared(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return null;
+        }
+        PermissionCache cache = shared;
+        if (cache == null || cache.ttlNanos != TimeUnit.MILLISECONDS.toNanos(ttlMillis)) {
+            synchronized (PermissionCache.class) {
+                cache = shared;
+                if (cache == null || cache.ttlNanos != TimeUnit.MILLISECONDS.toNanos(ttlMillis)) {
+                    cache = new PermissionCache(ttlMillis, null);
+                    shared = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * @return a key identifying a set of role assignees, independent of the
+     * order they come in.
+     */
+    public static String keyOf(Set<? extends RoleAssignee> ras) {
+        return ras.stream().map(RoleAssignee::getIdentifier).sorted().collect(Collectors.joining(","));
+    }
+
+    /**
+     * @param key who is asking in which context, e.g. the user, source address
+     * and the Dataverse collection whose explicit groups apply.
+     */
+    public Set<RoleAssignee> assignees(String key, Supplier<Set<RoleAssignee>> loader) {
+        return get(assignees, key, () -> parent == null ? loader.get() : parent.assignees(key, loader),
+                Collections::unmodifiableSet);
+    }
+
+    /**
+     * @return the permissions granted to the role assignees of
+     * {@code assigneesKey} by role assignments on the object and its
+     * permission ancestors.
+     */
+    public Set<Permission> permissions(String assigneesKey, Long dvObjectId, Supplier<Set<Permission>> loader) {
+        String key = assigneesKey + "@" + dvObjectId;
+        return copy(get(permissions, key, () -> parent == null ? loader.get() : parent.permissions(assigneesKey, dvObjectId, loader),
+                Collections::unmodifiableSet));
+    }
+
+    /**
+     * @return whether the permissions of the role assignees of
+     * {@code assigneesKey} on the object are cached.
+     */
+    public boolean hasPermissions(String assigneesKey, Long dvObjectId) {
+        return isValid(permissions.get(assigneesKey + "@" + dvObjectId))
+                || (parent != null && parent.hasPermissions(assigneesKey, dvObjectId));
+    }
+
+    /**
+     * @return the permissions granted to the role assignees of
+     * {@code assigneesKey} by role assignments directly on the files of a
+     * dataset, by file id. Files without such assignments are left out.
+     */
+    public Map<Long, Set<Permission>> filePermissions(String assigneesKey, Long datasetId, Supplier<Map<Long, Set<Permission>>> loader) {
+        String key = assigneesKey + "@" + datasetId;
+        return get(filePermissions, key, () -> parent == null ? loader.get() : parent.filePermissions(assigneesKey, datasetId, loader),
+                Collections::unmodifiableMap);
+    }
+
+    /**
+     * @return the ids of the files in a released dataset version.
+     */
+    public Set<Long> releasedFileIds(Long datasetVersionId, Supplier<Set<Long>> loader) {
+        return get(releasedFileIds, datasetVersionId, () -> parent == null ? loader.get() : parent.releasedFileIds(datasetVersionId, loader),
+                Collections::unmodifiableSet);
+    }
+
+    /**
+     * @param key who is searching, e.g. the user and the IP groups of their
+     * source address.
+     * @return the groups part of the Solr permission filter query.
+     */
+    public String searchGroupFilter(String key, Supplier<String> loader) {
+        return get(searchGroupFilters, key, () -> parent == null ? loader.get() : parent.searchGroupFilter(key, loader),
+                UnaryOperator.identity());
+    }
+
+    private boolean isValid(Entry<?> entry) {
+        return entry != null && entry.generation == GENERATION.get()
+                && (ttlNanos == 0 || System.nanoTime() - entry.createdAt < ttlNanos);
+    }
+
+    private <K, T> T get(Map<K, Entry<T>> entries, K key, Supplier<T> loader, UnaryOperator<T> freeze) {
+        long generation = GENERATION.get();
+        long now = System.nanoTime();
+        Entry<T> entry = entries.get(key);
+        if (isValid(entry)) {
+            return entry.value;
+        }
+        T value = freeze.apply(loader.get());
+        // not cached if something changed while loading
+        if (GENERATION.get() == generation) {
+            if (entries.size() >= MAX_ENTRIES) {
+                entries.clear();
+            }
+            entries.put(key, new Entry<>(value, generation, now));
+        }
+        return value;
+    }
+
+    private static Set<Permission> copy(Set<Permission> permissions) {
+        return permissions.isEmpty() ? EnumSet.noneOf(Permission.class) : EnumSet.copyOf(permissions);
+    }
+}
@@ -18,6 +18,7 @@ import java.util.Set;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
+import jakarta.enterprise.context.ContextNotActiveException;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import java.util.HashSet;
@@ -34,9 +35,13 @@ import edu.harvard.iq.dataverse.workflow.PendingWorkflowInvocation;
 import edu.harvard.iq.dataverse.workflow.WorkflowServiceBean;
 
 import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import static java.util.stream.Collectors.toList;
@@ -97,6 +102,9 @@ public class PermissionServiceBean {
     @Inject
     DataverseRequestServiceBean dvRequestService;
 
+    @Inject
+    RequestPermissionCache requestPermissionCache;
+
     /**
      * A request-level permission query (e.g includes IP ras).
      */
@@ -326,9 +334,87 @@ public class PermissionServiceBean {
             }
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(user);
-        return hasGroupPermissionsFor(ras, dvo, required);
+        return hasGroupPermissionsFor(roleAssigneesFor(req, dvo), dvo, required);
+    }
+
+    /**
+     * Checks the permissions of a request over many objects at once, e.g. over
+     * all the files of a dataset. The answer for each object is the same as
+     * that of {@link #hasPermissionsFor(DataverseRequest, DvObject, Set)}, but
+     * the groups and role assignments are looked up for all of them together:
+     * in one query for the datasets and Dataverse collections involved, plus
+     * one for the files of each dataset.
+     *
+     * @param req The request whose permissions are queried
+     * @param dvos The objects to check
+     * @param required The permissions {@code req} needs over each of them
+     * @return whether {@code req} has {@code required} over each of
+     * {@code dvos}, in the order of {@code dvos}.
+     */
+    public Map<DvObject, Boolean> hasPermissionsFor(DataverseRequest req, Collection<? extends DvObject> dvos, Set<Permission> required) {
+        Map<DvObject, Boolean> result = new LinkedHashMap<>();
+        User user = req.getUser();
+        if (user.isSuperuser()) {
+            dvos.forEach(dvo -> result.put(dvo, true));
+            return result;
+        } else if (!user.isAuthenticated() && required.stream().anyMatch(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY::contains)) {
+            dvos.forEach(dvo -> result.put(dvo, false));
+            return result;
+        }
+
+        // objects in the same Dataverse collection share their role assignees
+        Map<Dataverse, List<DvObject>> byGroupContext = new LinkedHashMap<>();
+        for (DvObject dvo : dvos) {
+            Dataverse context = groupContextOf(dvo);
+            if (context == null || context.getId() == null) {
+                result.put(dvo, rolePermissionsFor(roleAssigneesFor(req, dvo), dvo).containsAll(required));
+            } else {
+                result.put(dvo, false);
+                byGroupContext.computeIfAbsent(context, dv -> new ArrayList<>()).add(dvo);
+            }
+        }
+
+        PermissionCache cache = cache();
+        for (List<DvObject> inContext : byGroupContext.values()) {
+            Set<RoleAssignee> ras = roleAssigneesFor(req, inContext.get(0));
+            String rasKey = PermissionCache.keyOf(ras);
+            Map<Long, Set<Permission>> preloaded = preloadDirectRolePermissions(ras, rasKey, inContext, cache);
+            for (DvObject dvo : inContext) {
+                result.put(dvo, rolePermissionsFor(ras, rasKey, dvo, cache, preloaded).containsAll(required));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up the role assignments of {@code ras} directly on the passed
+     * objects (the datasets of the files, rather than the files themselves)
+     * and on their permission ancestors, in a single query. Objects whose
+     * permissions are cached already are skipped, together with their
+     * ancestors.
+     *
+     * @return the permissions granted on each of the objects looked at, by id.
+     */
+    private Map<Long, Set<Permission>> preloadDirectRolePermissions(Set<RoleAssignee> ras, String rasKey, Collection<DvObject> dvos, PermissionCache cache) {
+        Set<DvObject> toLoad = new HashSet<>();
+        for (DvObject dvo : dvos) {
+            DvObject d = (dvo instanceof DataFile) ? dvo.getOwner() : dvo;
+            while (d != null && d.getId() != null && !cache.hasPermissions(rasKey, d.getId()) && toLoad.add(d)) {
+                if (isPermissionRoot(d)) {
+                    break;
+                }
+                d = d.getOwner();
+            }
+        }
+        Map<Long, Set<Permission>> preloaded = new HashMap<>();
+        if (toLoad.isEmpty()) {
+            return preloaded;
+        }
+        toLoad.forEach(d -> preloaded.put(d.getId(), EnumSet.noneOf(Permission.class)));
+        for (RoleAssignment asmnt : roleService.directRoleAssignments(ras, toLoad)) {
+            preloaded.get(asmnt.getDefinitionPoint().getId()).addAll(asmnt.getRole().permissions());
+        }
+        return preloaded;
     }
 
     public boolean hasPermissionsFor(RoleAssignee ra, DvObject dvo, Set<Permission> required) {
@@ -349,15 +435,11 @@ public class PermissionServiceBean {
             return true;
         }
         
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
-        ras.add(ra);
-        return hasGroupPermissionsFor(ras, dvo, required);
+        return hasGroupPermissionsFor(roleAssigneesFor(ra, dvo), dvo, required);
     }
     
     private boolean hasGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> required) {
-        for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
-            required.removeAll(asmnt.getRole().permissions());
-        }
+        required.removeAll(rolePermissionsFor(ras, dvo));
         return required.isEmpty();
     }
 
@@ -377,9 +459,7 @@ public class PermissionServiceBean {
         Set<Permission> permissions = getInferredPermissions(dvo);
 
         // Add permissions gained from ras
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
-        ras.add(req.getUser());
-        addGroupPermissionsFor(ras, dvo, permissions);
+        addGroupPermissionsFor(roleAssigneesFor(req, dvo), dvo, permissions);
 
         if (!req.getUser().isAuthenticated()) {
             permissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
@@ -403,9 +483,7 @@ public class PermissionServiceBean {
 
         Set<Permission> permissions = getInferredPermissions(dvo);
 
-        Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
-        ras.add(ra);
-        addGroupPermissionsFor(ras, dvo, permissions);
+        addGroupPermissionsFor(roleAssigneesFor(ra, dvo), dvo, permissions);
 
         if ((ra instanceof User) && (!((User) ra).isAuthenticated())) {
             permissions.removeAll(PERMISSIONS_FOR_AUTHENTICATED_USERS_ONLY);
@@ -414,9 +492,127 @@ public class PermissionServiceBean {
     }
     
     private void addGroupPermissionsFor(Set<RoleAssignee> ras, DvObject dvo, Set<Permission> permissions) {
-        for (RoleAssignment asmnt : assignmentsFor(ras, dvo)) {
+        permissions.addAll(rolePermissionsFor(ras, dvo));
+    }
+
+    /**
+     * @return the cache of the current request, or, outside of a request
+     * (e.g. in a timer), one for just the current check.
+     */
+    private PermissionCache cache() {
+        try {
+            return requestPermissionCache.getCache();
+        } catch (ContextNotActiveException e) {
+            return new PermissionCache(0, PermissionCache.shared(RequestPermissionCache.getSharedTtlMillis()));
+        }
+    }
+
+    /**
+     * The groups a role assignee belongs to only depend on the object through
+     * the explicit groups of its Dataverse collection and their ancestors, so
+     * all the files and datasets of a collection share the same entry.
+     */
+    private static Dataverse groupContextOf(DvObject dvo) {
+        while (dvo != null && !(dvo instanceof Dataverse)) {
+            dvo = dvo.getOwner();
+        }
+        return (Dataverse) dvo;
+    }
+
+    /**
+     * @return the user of {@code req} and all the groups it belongs to in the
+     * context of {@code dvo}, including request-level ones (e.g. IP groups).
+     */
+    private Set<RoleAssignee> roleAssigneesFor(DataverseRequest req, DvObject dvo) {
+        Supplier<Set<RoleAssignee>> loader = () -> {
+            Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(req, dvo));
+            ras.add(req.getUser());
+            return ras;
+        };
+        Dataverse context = groupContextOf(dvo);
+        if (context == null || context.getId() == null) {
+            return loader.get();
+        }
+        return cache().assignees("request:" + req.getUser().getIdentifier() + "@" + req.getSourceAddress() + "|" + context.getId(), loader);
+    }
+
+    private Set<RoleAssignee> roleAssigneesFor(RoleAssignee ra, DvObject dvo) {
+        Supplier<Set<RoleAssignee>> loader = () -> {
+            Set<RoleAssignee> ras = new HashSet<>(groupService.groupsFor(ra, dvo));
+            ras.add(ra);
+            return ras;
+        };
+        Dataverse context = groupContextOf(dvo);
+        if (context == null || context.getId() == null) {
+            return loader.get();
+        }
+        return cache().assignees("assignee:" + ra.getIdentifier() + "|" + context.getId(), loader);
+    }
+
+    /**
+     * @return the permissions granted to {@code ras} by the role assignments
+     * on {@code dvo} and its permission ancestors - i.e., the permissions of
+     * {@link #assignmentsFor(java.util.Set, edu.harvard.iq.dataverse.DvObject)}.
+     * Each ancestor is only looked at once per cache, and the role
+     * assignments on the files of a dataset are all looked up at once.
+     */
+    private Set<Permission> rolePermissionsFor(Set<RoleAssignee> ras, DvObject dvo) {
+        return rolePermissionsFor(ras, PermissionCache.keyOf(ras), dvo, cache(), Collections.emptyMap());
+    }
+
+    /**
+     * @param preloaded the permissions granted by role assignments directly on
+     * objects, by id, for the objects they have already been looked up for.
+     */
+    private Set<Permission> rolePermissionsFor(Set<RoleAssignee> ras, String rasKey, DvObject dvo, PermissionCache cache, Map<Long, Set<Permission>> preloaded) {
+        if (dvo == null) {
+            return EnumSet.noneOf(Permission.class);
+        }
+        Supplier<Set<Permission>> loader = () -> {
+            Set<Permission> permissions = directRolePermissionsFor(ras, rasKey, dvo, cache, preloaded);
+            if (!isPermissionRoot(dvo)) {
+                permissions.addAll(rolePermissionsFor(ras, rasKey, dvo.getOwner(), cache, preloaded));
+            }
+            return permissions;
+        };
+        if (dvo.getId() == null) {
+            return loader.get();
+        }
+        return cache.permissions(rasKey, dvo.getId(), loader);
+    }
+
+    private static boolean isPermissionRoot(DvObject dvo) {
+        return dvo instanceof Dataverse && ((Dataverse) dvo).isEffectivelyPermissionRoot();
+    }
+
+    private Set<Permission> directRolePermissionsFor(Set<RoleAssignee> ras, String rasKey, DvObject dvo, PermissionCache cache, Map<Long, Set<Permission>> preloaded) {
+        Set<Permission> permissions = EnumSet.noneOf(Permission.class);
+        if (dvo.getId() == null) {
+            return permissions;
+        }
+        if (preloaded.containsKey(dvo.getId())) {
+            permissions.addAll(preloaded.get(dvo.getId()));
+            return permissions;
+        }
+        DvObject dataset = dvo.getOwner();
+        if (dvo instanceof DataFile && dataset != null && dataset.getId() != null) {
+            Set<Permission> filePermissions = cache.filePermissions(rasKey, dataset.getId(), () -> {
+                Map<Long, Set<Permission>> byFile = new HashMap<>();
+                for (RoleAssignment asmnt : roleService.directRoleAssignmentsOnChildren(ras, dataset)) {
+                    byFile.computeIfAbsent(asmnt.getDefinitionPoint().getId(), id -> EnumSet.noneOf(Permission.class))
+                            .addAll(asmnt.getRole().permissions());
+                }
+                return byFile;
+            }).get(dvo.getId());
+            if (filePermissions != null) {
+                permissions.addAll(filePermissions);
+            }
+            return permissions;
+        }
+        for (RoleAssignment asmnt : roleService.directRoleAssignments(ras, Collections.singleton(dvo))) {
             permissions.addAll(asmnt.getRole().permissions());
         }
+        return permissions;
     }
 
 
@@ -450,13 +646,20 @@ public class PermissionServiceBean {
             DataFile df = (DataFile) dvo;
 
             if (!df.isRestricted()) {
-                if (df.getOwner().getReleasedVersion() != null) {
-                    List<FileMetadata> fileMetadatas = df.getOwner().getReleasedVersion().getFileMetadatas();
-                    if (fileMetadatas != null) {
-                        for (FileMetadata fm : fileMetadatas) {
-                            if (df.equals(fm.getDataFile())) {
-                                return true;
-                            }
+                DatasetVersion releasedVersion = df.getOwner().getReleasedVersion();
+                if (releasedVersion != null && releasedVersion.getFileMetadatas() != null) {
+                    if (df.getId() != null && releasedVersion.getId() != null) {
+                        // looked up once per released version, rather than scanning
+                        // all of its files for each of them
+                        return cache().releasedFileIds(releasedVersion.getId(), () -> releasedVersion.getFileMetadatas().stream()
+                                .map(FileMetadata::getDataFile)
+                                .filter(dataFile -> dataFile != null && dataFile.getId() != null)
+                                .map(DataFile::getId)
+                                .collect(Collectors.toSet())).contains(df.getId());
+                    }
+                    for (FileMetadata fm : releasedVersion.getFileMetadatas()) {
+                        if (df.equals(fm.getDataFile())) {
+                            return true;
                         }
                     }
                 }
@@ -852,16 +1055,8 @@ public class PermissionServiceBean {
         if (hasUnrestrictedReleasedFiles(datasetVersion)) {
             return true;
         }
-        List<FileMetadata> fileMetadatas = datasetVersion.getFileMetadatas();
-        for (FileMetadata fileMetadata : fileMetadatas) {
-            DataFile dataFile = fileMetadata.getDataFile();
-            Set<RoleAssignee> roleAssignees = new HashSet<>(groupService.groupsFor(dataverseRequest, dataFile));
-            roleAssignees.add(dataverseRequest.getUser());
-            if (hasGroupPermissionsFor(roleAssignees, dataFile, EnumSet.of(Permission.DownloadFile))) {
-                return true;
-            }
-        }
-        return false;
+        List<DataFile> dataFiles = datasetVersion.getFileMetadatas().stream().map(FileMetadata::getDataFile).collect(toList());
+        return hasPermissionsFor(dataverseRequest, dataFiles, EnumSet.of(Permission.DownloadFile)).containsValue(true);
     }
 
     /**
@@ -0,0 +1,30 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.RequestScoped;
+
+/**
+ * The {@link PermissionCache} of the current request, so that e.g. checking
+ * the download permission of every file of a dataset looks up the groups and
+ * role assignments only once. Entries are also kept across requests when
+ * {@link JvmSettings#PERMISSIONS_CACHE_TTL} is set.
+ */
+@RequestScoped
+public class RequestPermissionCache {
+
+    private PermissionCache cache;
+
+    @PostConstruct
+    protected void setup() {
+        cache = new PermissionCache(0, PermissionCache.shared(getSharedTtlMillis()));
+    }
+
+    public PermissionCache getCache() {
+        return cache;
+    }
+
+    public static long getSharedTtlMillis() {
+        return JvmSettings.PERMISSIONS_CACHE_TTL.lookupOptional(Long.class).orElse(0L) * 1000;
+    }
+}
@@ -39,6 +39,8 @@ import jakarta.persistence.UniqueConstraint;
 				 query = "SELECT r FROM RoleAssignment r WHERE r.assigneeIdentifier=:assigneeIdentifier" ),
 	@NamedQuery( name  = "RoleAssignment.listByAssigneeIdentifiers",
 				 query = "SELECT r FROM RoleAssignment r WHERE r.assigneeIdentifier in :assigneeIdentifiers AND r.definitionPoint.id in :definitionPointIds" ),
+	@NamedQuery( name  = "RoleAssignment.listByAssigneeIdentifiers_DefinitionPointOwnerId",
+				 query = "SELECT r FROM RoleAssignment r WHERE r.assigneeIdentifier in :assigneeIdentifiers AND r.definitionPoint.owner.id=:ownerId" ),
 	@NamedQuery( name  = "RoleAssignment.listByDefinitionPointId",
 				 query = "SELECT r FROM RoleAssignment r WHERE r.definitionPoint.id=:definitionPointId" ),
 	@NamedQuery( name  = "RoleAssignment.listByRoleId",
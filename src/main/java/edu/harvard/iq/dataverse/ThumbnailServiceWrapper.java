@@ -13,6 +13,7 @@ import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Logger;
@@ -47,6 +48,8 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
     private Map<Long, String> dvobjectThumbnailsMap = new HashMap<>();
     private Map<Long, DvObject> dvobjectViewMap = new HashMap<>();
     private Map<Long, Boolean> hasThumbMap = new HashMap<>();
+    // the names of the dataverse logos, if looked up ahead of time
+    private Map<Long, String> dataverseLogoFileNamesMap = null;
 
     // it's the responsibility of the user - to make sure the search result
     // passed to this method is of the Datafile type!
@@ -202,13 +205,25 @@ public class ThumbnailServiceWrapper implements java.io.Serializable  {
     // it's the responsibility of the user - to make sure the search result
     // passed to this method is of the Dataverse type!
     public String getDataverseCardImageAsBase64Url(SolrSearchResult result) {
+        if (dataverseLogoFileNamesMap != null) {
+            return dataverseService.getDataverseLogoThumbnailAsBase64ById(result.getEntityId(), dataverseLogoFileNamesMap.get(result.getEntityId()));
+        }
         return dataverseService.getDataverseLogoThumbnailAsBase64ById(result.getEntityId());
     }
+
+    /**
+     * Looks up the logos of all the dataverse cards of a page at once, rather
+     * than one by one in {@link #getDataverseCardImageAsBase64Url}.
+     */
+    public void prefetchDataverseLogos(Collection<Long> dataverseIds) {
+        dataverseLogoFileNamesMap = dataverseService.findLogoFileNames(dataverseIds);
+    }
     
     public void resetObjectMaps() {
         dvobjectThumbnailsMap = new HashMap<>();
         dvobjectViewMap = new HashMap<>();
         hasThumbMap = new HashMap<>();
+        dataverseLogoFileNamesMap = null;
     }
 
     
@@ -10,6 +10,8 @@ import edu.harvard.iq.dataverse.AuxiliaryFile;
 import edu.harvard.iq.dataverse.AuxiliaryFileServiceBean;
 import edu.harvard.iq.dataverse.DataCitation;
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileCrc;
+import edu.harvard.iq.dataverse.DataFileCrcServiceBean;
 import edu.harvard.iq.dataverse.FileAccessRequest;
 import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.DataFileServiceBean;
@@ -26,6 +28,7 @@ import edu.harvard.iq.dataverse.DataverseTheme;
 import edu.harvard.iq.dataverse.FileDownloadServiceBean;
 import edu.harvard.iq.dataverse.GuestbookResponse;
 import edu.harvard.iq.dataverse.GuestbookResponseServiceBean;
+import edu.harvard.iq.dataverse.GuestbookResponseWriter;
 import edu.harvard.iq.dataverse.PermissionServiceBean;
 import edu.harvard.iq.dataverse.PermissionsWrapper;
 import edu.harvard.iq.dataverse.RoleAssignment;
@@ -47,6 +50,8 @@ import edu.harvard.iq.dataverse.dataaccess.DataAccess;
 import edu.harvard.iq.dataverse.dataaccess.DataAccessRequest;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.DataFileZipper;
+import edu.harvard.iq.dataverse.dataaccess.Range;
+import edu.harvard.iq.dataverse.dataaccess.ZipBundle;
 import edu.harvard.iq.dataverse.dataaccess.GlobusAccessibleStore;
 import edu.harvard.iq.dataverse.dataaccess.OptionalAccessService;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
@@ -67,6 +72,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.UpdateDatasetVersionCommand;
 import edu.harvard.iq.dataverse.export.DDIExportServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import edu.harvard.iq.dataverse.util.FileUtil;
@@ -77,18 +83,26 @@ import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 import java.util.logging.Logger;
 import jakarta.ejb.EJB;
 import java.io.InputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.logging.Level;
 import jakarta.inject.Inject;
 import jakarta.json.Json;
@@ -180,6 +194,8 @@ public class Access extends AbstractApiBean {
     @EJB
     GuestbookResponseServiceBean guestbookResponseService;
     @EJB
+    GuestbookResponseWriter guestbookResponseWriter;
+    @EJB
     DataverseRoleServiceBean roleService;
     @EJB
     UserNotificationServiceBean userNotificationService;
@@ -191,6 +207,8 @@ public class Access extends AbstractApiBean {
     PermissionsWrapper permissionsWrapper;
     @Inject
     MakeDataCountLoggingServiceBean mdcLogService;
+    @EJB
+    DataFileCrcServiceBean dataFileCrcService;
     
     //@EJB
     
@@ -215,7 +233,7 @@ public class Access extends AbstractApiBean {
             //This calls findUserOrDie which will retrieve the key param or api token header, or the workflow token header.
             User apiTokenUser = findAPITokenUser(getRequestUser(crc));
             gbr = guestbookResponseService.initAPIGuestbookResponse(df.getOwner(), df, session, apiTokenUser);
-            guestbookResponseService.save(gbr);
+            guestbookResponseWriter.write(gbr);
             MakeDataCountEntry entry = new MakeDataCountEntry(uriInfo, headers, dvRequestService, df);
             mdcLogService.logEntry(entry);
         }
@@ -720,28 +738,7 @@ public class Access extends AbstractApiBean {
         try {
             DataverseRequest req = createDataverseRequest(getRequestUser(crc));
             final Dataset ds = execCommand(new GetDatasetCommand(req, findDatasetOrDie(datasetIdOrPersistentId)));
-            DatasetVersion dsv = execCommand(handleVersion(versionId, new Datasets.DsVersionHandler<Command<DatasetVersion>>() {
-
-                @Override
-                public Command<DatasetVersion> handleLatest() {
-                    return new GetLatestAccessibleDatasetVersionCommand(req, ds);
-                }
-
-                @Override
-                public Command<DatasetVersion> handleDraft() {
-                    return new GetDraftDatasetVersionCommand(req, ds);
-                }
-
-                @Override
-                public Command<DatasetVersion> handleSpecific(long major, long minor) {
-                    return new GetSpecificPublishedDatasetVersionCommand(req, ds, major, minor);
-                }
-
-                @Override
-                public Command<DatasetVersion> handleLatestPublished() {
-                    return new GetLatestPublishedDatasetVersionCommand(req, ds);
-                }
-            }));
+            DatasetVersion dsv = execCommand(getDatasetVersionCommand(req, ds, versionId));
             if (dsv == null) {
                 // (A "Not Found" would be more appropriate here, I believe, than a "Bad Request". 
                 // But we've been using the latter for a while, and it's a popular API... 
@@ -762,6 +759,228 @@ public class Access extends AbstractApiBean {
         }
     }
 
+    private Command<DatasetVersion> getDatasetVersionCommand(DataverseRequest req, Dataset ds, String versionId) throws WrappedResponse {
+        return handleVersion(versionId, new Datasets.DsVersionHandler<Command<DatasetVersion>>() {
+
+            @Override
+            public Command<DatasetVersion> handleLatest() {
+                return new GetLatestAccessibleDatasetVersionCommand(req, ds);
+            }
+
+            @Override
+            public Command<DatasetVersion> handleDraft() {
+                return new GetDraftDatasetVersionCommand(req, ds);
+            }
+
+            @Override
+            public Command<DatasetVersion> handleSpecific(long major, long minor) {
+                return new GetSpecificPublishedDatasetVersionCommand(req, ds, major, minor);
+            }
+
+            @Override
+            public Command<DatasetVersion> handleLatestPublished() {
+                return new GetLatestPublishedDatasetVersionCommand(req, ds);
+            }
+        });
+    }
+
+    /**
+     * The files of a version, as a zip bundle whose layout is worked out up
+     * front (see {@link ZipBundle}): the files are stored as they are, in the
+     * same order every time, so the bundle has a known size, and the same
+     * bytes every time. Range requests are honored, so that an interrupted
+     * download can be resumed, or a bundle fetched over several connections.
+     */
+    @GET
+    @AuthRequired
+    @Path("dataset/{id}/versions/{versionId}/bundle")
+    @Produces({"application/zip"})
+    public Response downloadBundleFromVersion(@Context ContainerRequestContext crc, @PathParam("id") String datasetIdOrPersistentId, @PathParam("versionId") String versionId, @QueryParam("gbrecs") boolean gbrecs, @QueryParam("format") String format, @Context UriInfo uriInfo, @Context HttpHeaders headers) throws WebApplicationException {
+        try {
+            User user = getRequestUser(crc);
+            DataverseRequest req = createDataverseRequest(user);
+            final Dataset ds = execCommand(new GetDatasetCommand(req, findDatasetOrDie(datasetIdOrPersistentId)));
+            DatasetVersion dsv = execCommand(getDatasetVersionCommand(req, ds, versionId));
+            if (dsv == null) {
+                return error(BAD_REQUEST, BundleUtil.getStringFromBundle("access.api.exception.version.not.found"));
+            }
+
+            // (in an order that does not change from one request to the next)
+            List<FileMetadata> versionFileMetadatas = dsv.getFileMetadatasSortedByLabelAndFolder();
+            List<DataFile> files = new ArrayList<>();
+            for (FileMetadata fileMetadata : versionFileMetadatas) {
+                files.add(fileMetadata.getDataFile());
+            }
+            Set<Long> authorizedFileIds = findAccessAuthorizedFileIds(user, files);
+            List<FileMetadata> fileMetadatas = new ArrayList<>();
+            for (FileMetadata fileMetadata : versionFileMetadatas) {
+                if (authorizedFileIds.contains(fileMetadata.getDataFile().getId())) {
+                    fileMetadatas.add(fileMetadata);
+                }
+            }
+            if (fileMetadatas.isEmpty()) {
+                throw new ForbiddenException();
+            }
+
+            ZipBundle bundle = makeZipBundle(dsv, fileMetadatas, "original".equals(format));
+            long sizeTotal = 0L;
+            for (ZipBundle.Entry entry : bundle.getEntries()) {
+                sizeTotal += entry.getSize();
+            }
+            if (sizeTotal > systemConfig.getZipDownloadLimit()) {
+                return error(BAD_REQUEST, BundleUtil.getStringFromBundle("access.api.exception.bundle.too.large",
+                        List.of(String.valueOf(systemConfig.getZipDownloadLimit()))));
+            }
+
+            // the whole bundle, unless a range of it is asked for - of this
+            // very bundle, if the client says which one it has the start of.
+            // Ranges are only offered once the CRCs of all the files are
+            // known: a range of the central directory needs all of them, and
+            // would otherwise read every file before sending anything. A
+            // whole download works them out as it goes, and saves them.
+            String etag = "\"" + bundle.getEtag() + "\"";
+            boolean rangesSupported = bundle.hasAllCrcs();
+            String rangeHeader = headers.getHeaderString("Range");
+            String ifRange = headers.getHeaderString("If-Range");
+            boolean partial = rangesSupported && rangeHeader != null && (ifRange == null || ifRange.equals(etag));
+            long start = 0L;
+            long end = bundle.getSize();
+            if (partial) {
+                try {
+                    Range range = Range.parse(rangeHeader, bundle.getSize()).get(0);
+                    start = Math.max(0L, range.getStart());
+                    end = range.getEnd() + 1;
+                } catch (RuntimeException ex) {
+                    logger.fine("Exception caught processing Range header: " + ex.getLocalizedMessage());
+                    return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header("Content-Range", "bytes */" + bundle.getSize())
+                            .build();
+                }
+            }
+
+            // The downloads are counted once, rather than once per range: when
+            // the start of the bundle is asked for.
+            // (As with the other zipped downloads, the downloads from drafts
+            // are not counted.)
+            if (!gbrecs && !dsv.isDraft() && start == 0L) {
+                User apiTokenUser = findAPITokenUser(user);
+                for (FileMetadata fileMetadata : fileMetadatas) {
+                    DataFile file = fileMetadata.getDataFile();
+                    if (file.isReleased()) {
+                        GuestbookResponse gbr = guestbookResponseService.initAPIGuestbookResponse(file.getOwner(), file, session, apiTokenUser);
+                        guestbookResponseWriter.write(gbr);
+                        MakeDataCountEntry entry = new MakeDataCountEntry(uriInfo, headers, dvRequestService, file);
+                        mdcLogService.logEntry(entry);
+                    }
+                }
+            }
+
+            final long from = start;
+            final long to = end;
+            StreamingOutput stream = os -> bundle.write(os, from, to);
+            Response.ResponseBuilder response = Response.status(partial ? Response.Status.PARTIAL_CONTENT : Response.Status.OK)
+                    .entity(stream)
+                    .header("Content-disposition", "attachment; filename=\"dataverse_files.zip\"")
+                    .header("Content-Type", "application/zip; name=\"dataverse_files.zip\"")
+                    .header("Content-Length", to - from)
+                    .header("ETag", etag);
+            if (rangesSupported) {
+                response.header("Accept-Ranges", "bytes");
+            }
+            if (dsv.getLastUpdateTime() != null) {
+                response.lastModified(dsv.getLastUpdateTime());
+            }
+            if (partial) {
+                response.header("Content-Range", "bytes " + from + "-" + (to - 1) + "/" + bundle.getSize());
+            }
+            return response.build();
+        } catch (WrappedResponse wr) {
+            return wr.getResponse();
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to lay out the zip bundle of dataset " + datasetIdOrPersistentId, ex);
+            throw new ServiceUnavailableException();
+        }
+    }
+
+    /**
+     * Lays out the files (or their saved originals, for the tabular files
+     * that have one) in a {@link ZipBundle}, under their folders, with the
+     * CRCs already known; those that are not are saved when worked out.
+     */
+    private ZipBundle makeZipBundle(DatasetVersion dsv, List<FileMetadata> fileMetadatas, boolean getOriginal) throws IOException {
+        List<Long> fileIds = new ArrayList<>();
+        for (FileMetadata fileMetadata : fileMetadatas) {
+            fileIds.add(fileMetadata.getDataFile().getId());
+        }
+        Map<Long, Long> crcs = new HashMap<>();
+        Map<Long, Long> originalCrcs = new HashMap<>();
+        for (DataFileCrc dataFileCrc : dataFileCrcService.findByDataFileIds(fileIds)) {
+            (dataFileCrc.isOriginal() ? originalCrcs : crcs).put(dataFileCrc.getDataFileId(), dataFileCrc.getCrc());
+        }
+
+        Set<Long> originals = new HashSet<>();
+        Set<String> names = new HashSet<>();
+        List<ZipBundle.Entry> entries = new ArrayList<>();
+        for (FileMetadata fileMetadata : fileMetadatas) {
+            DataFile file = fileMetadata.getDataFile();
+            StorageIO<DataFile> storageIO = DataAccess.getStorageIO(file);
+            String fileName = fileMetadata.getLabel();
+            String folderName = fileMetadata.getDirectoryLabel();
+
+            if (getOriginal && file.isTabularData() && !StringUtil.isEmpty(file.getDataTable().getOriginalFileFormat())) {
+                long size;
+                if (file.getDataTable().getOriginalFileSize() != null) {
+                    size = file.getDataTable().getOriginalFileSize();
+                } else {
+                    size = storageIO.getAuxObjectSize(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
+                    file.getDataTable().setOriginalFileSize(size);
+                    fileService.saveDataTable(file.getDataTable());
+                }
+                originals.add(file.getId());
+                entries.add(new ZipBundle.Entry(file.getId(), DataFileZipper.getUniqueZipEntryName(folderName, file.getOriginalFileName(), names), size,
+                        originalCrcs.get(file.getId()),
+                        offset -> {
+                            InputStream in = storageIO.getAuxFileAsInputStream(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION, offset, size - offset);
+                            if (in == null) {
+                                throw new IOException("Could not open the saved original of datafile " + file.getId());
+                            }
+                            return in;
+                        }));
+            } else {
+                // The variable names that go at the top of the tabular files
+                // saved without them:
+                byte[] varHeader = new byte[0];
+                if (file.isTabularData() && "text/tab-separated-values".equals(file.getContentType())
+                        && !file.getDataTable().isStoredWithVariableHeader()) {
+                    String header = storageIO.generateVariableHeader(file.getDataTable().getDataVariables());
+                    if (header != null) {
+                        varHeader = header.getBytes(StandardCharsets.UTF_8);
+                    }
+                }
+                final byte[] header = varHeader;
+                entries.add(new ZipBundle.Entry(file.getId(), DataFileZipper.getUniqueZipEntryName(folderName, fileName, names), header.length + file.getFilesize(),
+                        crcs.get(file.getId()),
+                        offset -> {
+                            DataAccessRequest daReq = new DataAccessRequest();
+                            daReq.setParameter("noVarHeader", "true");
+                            StorageIO<DataFile> fileIO = DataAccess.getStorageIO(file, daReq);
+                            fileIO.open();
+                            if (offset >= header.length) {
+                                // (a ranged read, so that resuming near the
+                                // end of a large file does not fetch all of it)
+                                return fileIO.getInputStream(offset - header.length, file.getFilesize() - (offset - header.length));
+                            }
+                            return new SequenceInputStream(new ByteArrayInputStream(header, (int) offset, header.length - (int) offset), fileIO.getInputStream());
+                        }));
+            }
+        }
+
+        Date lastModified = dsv.getLastUpdateTime() != null ? dsv.getLastUpdateTime() : dsv.getCreateTime();
+        ZipBundle bundle = new ZipBundle(entries, lastModified.toInstant());
+        bundle.setCrcListener((entry, crc) -> dataFileCrcService.save((Long) entry.getKey(), originals.contains((Long) entry.getKey()), crc));
+        return bundle;
+    }
+
     private static String getFileIdsAsCommaSeparated(List<FileMetadata> fileMetadatas) {
         List<String> ids = new ArrayList<>();
         for (FileMetadata fileMetadata : fileMetadatas) {
@@ -843,124 +1062,157 @@ public class Access extends AbstractApiBean {
                 String fileManifest = "";
                 long sizeTotal = 0L;
                 
-                if (fileIdParams != null && fileIdParams.length > 0) {
-                    logger.fine(fileIdParams.length + " tokens;");
-                    for (int i = 0; i < fileIdParams.length; i++) {
-                        logger.fine("token: " + fileIdParams[i]);
-                        Long fileId = null;
-                        try {
-                            fileId = Long.parseLong(fileIdParams[i]);
-                        } catch (NumberFormatException nfe) {
-                            fileId = null;
+                try {
+                    if (fileIdParams != null && fileIdParams.length > 0) {
+                        logger.fine(fileIdParams.length + " tokens;");
+                        // check the access to all the files at once, rather than one by one below
+                        List<DataFile> requestedFiles = new ArrayList<>();
+                        // (by id, null if not found; each is looked up once)
+                        Map<Long, DataFile> foundFiles = new HashMap<>();
+                        for (String fileIdParam : fileIdParams) {
+                            try {
+                                Long fileId = Long.parseLong(fileIdParam);
+                                DataFile file = foundFiles.containsKey(fileId) ? foundFiles.get(fileId) : dataFileService.find(fileId);
+                                foundFiles.put(fileId, file);
+                                if (file != null) {
+                                    requestedFiles.add(file);
+                                }
+                            } catch (NumberFormatException nfe) {
+                                // skipped below as well
+                            }
                         }
-                        if (fileId != null) {
-                            logger.fine("attempting to look up file id " + fileId);
-                            DataFile file = dataFileService.find(fileId);
-                            if (file != null) {
-                                if (isAccessAuthorized(user, file)) {
-
-                                    logger.fine("adding datafile (id=" + file.getId() + ") to the download list of the ZippedDownloadInstance.");
-                                    //downloadInstance.addDataFile(file);
-                                    if (donotwriteGBResponse != true && file.isReleased()){
-                                        GuestbookResponse  gbr = guestbookResponseService.initAPIGuestbookResponse(file.getOwner(), file, session, apiTokenUser);
-                                        guestbookResponseService.save(gbr);
-                                        MakeDataCountEntry entry = new MakeDataCountEntry(uriInfo, headers, dvRequestService, file);                                        
-                                        mdcLogService.logEntry(entry);
-                                    }
+                        Set<Long> authorizedFileIds = findAccessAuthorizedFileIds(user, requestedFiles);
+                        // the files to open ahead of time, while the ones before them are being zipped
+                        List<DataFile> authorizedFiles = new ArrayList<>();
+                        for (DataFile file : requestedFiles) {
+                            if (authorizedFileIds.contains(file.getId())) {
+                                authorizedFiles.add(file);
+                            }
+                        }
+                        for (int i = 0; i < fileIdParams.length; i++) {
+                            logger.fine("token: " + fileIdParams[i]);
+                            Long fileId = null;
+                            try {
+                                fileId = Long.parseLong(fileIdParams[i]);
+                            } catch (NumberFormatException nfe) {
+                                fileId = null;
+                            }
+                            if (fileId != null) {
+                                DataFile file = foundFiles.get(fileId);
+                                if (file != null) {
+                                    if (authorizedFileIds.contains(file.getId())) {
+
+                                        logger.fine("adding datafile (id=" + file.getId() + ") to the download list of the ZippedDownloadInstance.");
+                                        //downloadInstance.addDataFile(file);
+                                        if (donotwriteGBResponse != true && file.isReleased()){
+                                            GuestbookResponse  gbr = guestbookResponseService.initAPIGuestbookResponse(file.getOwner(), file, session, apiTokenUser);
+                                            guestbookResponseWriter.write(gbr);
+                                            MakeDataCountEntry entry = new MakeDataCountEntry(uriInfo, headers, dvRequestService, file);                                        
+                                            mdcLogService.logEntry(entry);
+                                        }
                                     
-                                    if (zipper == null) {
-                                        // This is the first file we can serve - so we now know that we are going to be able 
-                                        // to produce some output.
-                                        zipper = new DataFileZipper(os);
-                                        zipper.setFileManifest(fileManifest);
-                                        response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
-                                        response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
-                                    }
+                                        if (zipper == null) {
+                                            // This is the first file we can serve - so we now know that we are going to be able 
+                                            // to produce some output.
+                                            zipper = new DataFileZipper(os);
+                                            zipper.setFileManifest(fileManifest);
+                                            zipper.prefetch(authorizedFiles, getOriginal,
+                                                    JvmSettings.ZIP_DOWNLOAD_PREFETCH.lookupOptional(Integer.class).orElse(4),
+                                                    JvmSettings.ZIP_DOWNLOAD_PREFETCH_MAX_SIZE.lookupOptional(Integer.class).orElse(4 * 1024 * 1024));
+                                            response.setHeader("Content-disposition", "attachment; filename=\"dataverse_files.zip\"");
+                                            response.setHeader("Content-Type", "application/zip; name=\"dataverse_files.zip\"");
+                                        }
                                     
-                                    long size = 0L;
-                                    // is the original format requested, and is this a tabular datafile, with a preserved original?
-                                    if (getOriginal 
-                                            && file.isTabularData() 
-                                            && !StringUtil.isEmpty(file.getDataTable().getOriginalFileFormat())) {
-                                        //This size check is probably fairly inefficient as we have to get all the AccessObjects
-                                        //We do this again inside the zipper. I don't think there is a better solution
-                                        //without doing a large deal of rewriting or architecture redo.
-                                        //The previous size checks for non-original download is still quick.
-                                        //-MAD 4.9.2
-                                        // OK, here's the better solution: we now store the size of the original file in 
-                                        // the database (in DataTable), so we get it for free. 
-                                        // However, there may still be legacy datatables for which the size is not saved. 
-                                        // so the "inefficient" code is kept, below, as a fallback solution. 
-                                        // -- L.A., 4.10
+                                        long size = 0L;
+                                        // is the original format requested, and is this a tabular datafile, with a preserved original?
+                                        if (getOriginal 
+                                                && file.isTabularData() 
+                                                && !StringUtil.isEmpty(file.getDataTable().getOriginalFileFormat())) {
+                                            //This size check is probably fairly inefficient as we have to get all the AccessObjects
+                                            //We do this again inside the zipper. I don't think there is a better solution
+                                            //without doing a large deal of rewriting or architecture redo.
+                                            //The previous size checks for non-original download is still quick.
+                                            //-MAD 4.9.2
+                                            // OK, here's the better solution: we now store the size of the original file in 
+                                            // the database (in DataTable), so we get it for free. 
+                                            // However, there may still be legacy datatables for which the size is not saved. 
+                                            // so the "inefficient" code is kept, below, as a fallback solution. 
+                                            // -- L.A., 4.10
                                         
-                                        if (file.getDataTable().getOriginalFileSize() != null) {
-                                            size = file.getDataTable().getOriginalFileSize();
+                                            if (file.getDataTable().getOriginalFileSize() != null) {
+                                                size = file.getDataTable().getOriginalFileSize();
+                                            } else {
+                                                DataAccessRequest daReq = new DataAccessRequest();
+                                                StorageIO<DataFile> storageIO = DataAccess.getStorageIO(file, daReq);
+                                                storageIO.open();
+                                                size = storageIO.getAuxObjectSize(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
+
+                                                // save it permanently: 
+                                                file.getDataTable().setOriginalFileSize(size);
+                                                fileService.saveDataTable(file.getDataTable());
+                                            }
+                                            if (size == 0L){
+                                                throw new IOException("Invalid file size or accessObject when checking limits of zip file");
+                                            }
                                         } else {
-                                            DataAccessRequest daReq = new DataAccessRequest();
-                                            StorageIO<DataFile> storageIO = DataAccess.getStorageIO(file, daReq);
-                                            storageIO.open();
-                                            size = storageIO.getAuxObjectSize(FileUtil.SAVED_ORIGINAL_FILENAME_EXTENSION);
-
-                                            // save it permanently: 
-                                            file.getDataTable().setOriginalFileSize(size);
-                                            fileService.saveDataTable(file.getDataTable());
-                                        }
-                                        if (size == 0L){
-                                            throw new IOException("Invalid file size or accessObject when checking limits of zip file");
+                                            size = file.getFilesize();
                                         }
-                                    } else {
-                                        size = file.getFilesize();
-                                    }
-                                    if (sizeTotal + size < zipDownloadSizeLimit) {
-                                        sizeTotal += zipper.addFileToZipStream(file, getOriginal);
-                                    } else {
-                                        String fileName = file.getFileMetadata().getLabel();
-                                        String mimeType = file.getContentType();
+                                        if (sizeTotal + size < zipDownloadSizeLimit) {
+                                            sizeTotal += zipper.addFileToZipStream(file, getOriginal);
+                                        } else {
+                                            String fileName = file.getFileMetadata().getLabel();
+                                            String mimeType = file.getContentType();
                                         
-                                        zipper.addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + zipDownloadSizeLimit + " bytes.\r\n");
-                                    }
-                                } else { 
-                                    boolean embargoed = FileUtil.isActivelyEmbargoed(file);
-                                    if (file.isRestricted() || embargoed) {
-                                        if (zipper == null) {
-                                            fileManifest = fileManifest + file.getFileMetadata().getLabel() + " IS "
-                                                    + (embargoed ? "EMBARGOED" : "RESTRICTED")
-                                                    + " AND CANNOT BE DOWNLOADED\r\n";
+                                            zipper.addToManifest(fileName + " (" + mimeType + ") " + " skipped because the total size of the download bundle exceeded the limit of " + zipDownloadSizeLimit + " bytes.\r\n");
+                                        }
+                                    } else { 
+                                        boolean embargoed = FileUtil.isActivelyEmbargoed(file);
+                                        if (file.isRestricted() || embargoed) {
+                                            if (zipper == null) {
+                                                fileManifest = fileManifest + file.getFileMetadata().getLabel() + " IS "
+                                                        + (embargoed ? "EMBARGOED" : "RESTRICTED")
+                                                        + " AND CANNOT BE DOWNLOADED\r\n";
+                                            } else {
+                                                zipper.addToManifest(file.getFileMetadata().getLabel() + " IS "
+                                                        + (embargoed ? "EMBARGOED" : "RESTRICTED")
+                                                        + " AND CANNOT BE DOWNLOADED\r\n");
+                                            }
                                         } else {
-                                            zipper.addToManifest(file.getFileMetadata().getLabel() + " IS "
-                                                    + (embargoed ? "EMBARGOED" : "RESTRICTED")
-                                                    + " AND CANNOT BE DOWNLOADED\r\n");
+                                            fileId = null;
                                         }
-                                    } else {
-                                        fileId = null;
                                     }
-                                }
                             
-                            } if (null == fileId) {
-                                // As of now this errors out.
-                                // This is bad because the user ends up with a broken zip and manifest
-                                // This is good in that the zip ends early so the user does not wait for the results
-                                String errorMessage = "Datafile " + fileId + ": no such object available";
-                                throw new NotFoundException(errorMessage);
+                                } if (null == fileId) {
+                                    // As of now this errors out.
+                                    // This is bad because the user ends up with a broken zip and manifest
+                                    // This is good in that the zip ends early so the user does not wait for the results
+                                    String errorMessage = "Datafile " + fileId + ": no such object available";
+                                    throw new NotFoundException(errorMessage);
+                                }
                             }
                         }
+                    } else {
+                        throw new BadRequestException();
                     }
-                } else {
-                    throw new BadRequestException();
-                }
 
-                if (zipper == null) {
-                    // If the DataFileZipper object is still NULL, it means that 
-                    // there were file ids supplied - but none of the corresponding 
-                    // files were accessible for this user. 
-                    // In which casew we don't bother generating any output, and 
-                    // just give them a 403:
-                    throw new ForbiddenException();
-                }
+                    if (zipper == null) {
+                        // If the DataFileZipper object is still NULL, it means that 
+                        // there were file ids supplied - but none of the corresponding 
+                        // files were accessible for this user. 
+                        // In which casew we don't bother generating any output, and 
+                        // just give them a 403:
+                        throw new ForbiddenException();
+                    }
 
-                // This will add the generated File Manifest to the zipped output, 
-                // then flush and close the stream:
-                zipper.finalizeZipStream();
+                    // This will add the generated File Manifest to the zipped output, 
+                    // then flush and close the stream:
+                    zipper.finalizeZipStream();
+                } finally {
+                    if (zipper != null) {
+                        // stops opening files ahead of time, if the download failed half way
+                        zipper.close();
+                    }
+                }
                 
                 //os.flush();
                 //os.close();
@@ -1728,6 +1980,96 @@ public class Access extends AbstractApiBean {
     
 
     private boolean isAccessAuthorized(User requestUser, DataFile df) {
+        Permission needed = getPermissionNeededForAccess(df);
+
+        //The one case where we don't need to check permissions
+        if (needed == null) {
+            return true;
+        }
+
+        DataverseRequest dvr = createAccessRequest(requestUser);
+        if (dvr == null) {
+            return false;
+        }
+
+        if (needed == Permission.ViewUnpublishedDataset) { // and restricted or embargoed (implied by earlier processing)
+            // If the file is not published, they can still download the file, if the user
+            // has the permission to view unpublished versions:
+
+            // This line handles all three authenticated session user, token user, and guest cases.
+            if (permissionService.requestOn(dvr, df.getOwner()).has(Permission.ViewUnpublishedDataset)) {
+                // it's not unthinkable, that a GuestUser could be given
+                // the ViewUnpublished permission!
+                logger.log(Level.FINE,
+                        "Session-based auth: user {0} has access rights on the non-restricted, unpublished datafile.",
+                        dvr.getUser().getIdentifier());
+                return true;
+            }
+        } else { // published and restricted and/or embargoed
+            // This line also handles all three authenticated session user, token user, and guest cases.
+            if (permissionService.requestOn(dvr, df).has(Permission.DownloadFile)) {
+                return true;
+            }
+        }
+        logger.log(Level.FINE, "User {0} has NO access rights on the requested datafile.", dvr.getUser().getIdentifier());
+        return false; 
+    }
+
+    /**
+     * The same as {@link #isAccessAuthorized(User, DataFile)} for many files,
+     * e.g. for a zip download: the files that need a permission check are
+     * checked all together.
+     *
+     * @return the ids of the files the user can access
+     */
+    private Set<Long> findAccessAuthorizedFileIds(User requestUser, List<DataFile> files) {
+        Set<Long> authorized = new HashSet<>();
+        List<DataFile> published = new ArrayList<>();
+        Map<Dataset, List<DataFile>> unpublished = new HashMap<>();
+        for (DataFile df : files) {
+            Permission needed = getPermissionNeededForAccess(df);
+            if (needed == null) {
+                authorized.add(df.getId());
+            } else if (needed == Permission.ViewUnpublishedDataset) {
+                unpublished.computeIfAbsent(df.getOwner(), dataset -> new ArrayList<>()).add(df);
+            } else {
+                published.add(df);
+            }
+        }
+        if (published.isEmpty() && unpublished.isEmpty()) {
+            return authorized;
+        }
+
+        DataverseRequest dvr = createAccessRequest(requestUser);
+        if (dvr == null) {
+            return authorized;
+        }
+        if (!unpublished.isEmpty()) {
+            permissionService.hasPermissionsFor(dvr, unpublished.keySet(), EnumSet.of(Permission.ViewUnpublishedDataset))
+                    .forEach((dataset, permitted) -> {
+                        if (permitted) {
+                            unpublished.get(dataset).forEach(df -> authorized.add(df.getId()));
+                        }
+                    });
+        }
+        if (!published.isEmpty()) {
+            permissionService.hasPermissionsFor(dvr, published, EnumSet.of(Permission.DownloadFile))
+                    .forEach((df, permitted) -> {
+                        if (permitted) {
+                            authorized.add(df.getId());
+                        }
+                    });
+        }
+        return authorized;
+    }
+
+    /**
+     * @return the permission the user needs to access the file:
+     * {@link Permission#DownloadFile} on the file, or
+     * {@link Permission#ViewUnpublishedDataset} on its dataset; or
+     * {@code null} if anybody can access it.
+     */
+    private Permission getPermissionNeededForAccess(DataFile df) {
     // First, check if the file belongs to a released Dataset version: 
         
         boolean published = false; 
@@ -1804,10 +2146,24 @@ public class Access extends AbstractApiBean {
         if (!restricted && !embargoed && published) {
             // If they are not published, they can still be downloaded, if the user
             // has the permission to view unpublished versions! (this case will 
-            // be handled below)
-            return true;
+            // be handled by the caller)
+            return null;
         }
-        
+
+        /*
+         * Since published and not restricted/embargoed is handled above, the main split
+         * now is whether it is published or not. If it's published, the only case left
+         * is with restricted/embargoed. With unpublished, both the restricted/embargoed
+         * and not restricted/embargoed both get handled the same way.
+         */
+        return published ? Permission.DownloadFile : Permission.ViewUnpublishedDataset;
+    }
+
+    /**
+     * @return the request to check the permissions of, or {@code null} if
+     * there is no user at all.
+     */
+    private DataverseRequest createAccessRequest(User requestUser) {
         //For permissions check decide if we have a session user, or an API user
         User sessionUser = null;
         
@@ -1848,50 +2204,15 @@ public class Access extends AbstractApiBean {
         //If we don't have a user, nothing more to do. (Note session could have returned GuestUser)
         if (sessionUser == null && apiUser == null) {
             logger.warning("Unable to find a user via session or with a token.");
-            return false;
+            return null;
         }
 
-        /*
-         * Since published and not restricted/embargoed is handled above, the main split
-         * now is whether it is published or not. If it's published, the only case left
-         * is with restricted/embargoed. With unpublished, both the restricted/embargoed
-         * and not restricted/embargoed both get handled the same way.
-         */
-
-        DataverseRequest dvr = null;
         if (apiUser != null) {
-            dvr = createDataverseRequest(apiUser);
+            return createDataverseRequest(apiUser);
         } else {
             // used in JSF context, user may be Guest
-            dvr = dvRequestService.getDataverseRequest();
+            return dvRequestService.getDataverseRequest();
         }
-        if (!published) { // and restricted or embargoed (implied by earlier processing)
-            // If the file is not published, they can still download the file, if the user
-            // has the permission to view unpublished versions:
-
-            // This line handles all three authenticated session user, token user, and guest cases.
-            if (permissionService.requestOn(dvr, df.getOwner()).has(Permission.ViewUnpublishedDataset)) {
-                // it's not unthinkable, that a GuestUser could be given
-                // the ViewUnpublished permission!
-                logger.log(Level.FINE,
-                        "Session-based auth: user {0} has access rights on the non-restricted, unpublished datafile.",
-                        dvr.getUser().getIdentifier());
-                return true;
-            }
-        } else { // published and restricted and/or embargoed
-            // This line also handles all three authenticated session user, token user, and guest cases.
-            if (permissionService.requestOn(dvr, df).has(Permission.DownloadFile)) {
-                return true;
-            }
-        }
-        if (sessionUser != null) {
-            logger.log(Level.FINE, "Session-based auth: user {0} has NO access rights on the requested datafile.", sessionUser.getIdentifier());
-        } 
-        
-        if (apiUser != null) {
-            logger.log(Level.FINE, "Token-based auth: user {0} has NO access rights on the requested datafile.", apiUser.getIdentifier());
-        } 
-        return false; 
     }   
     
 
@@ -1942,7 +2263,7 @@ public class Access extends AbstractApiBean {
                         logger.fine("adding datafile (id=" + file.getId() + ") to the download list of the ZippedDownloadInstance.");
                         if (donotwriteGBResponse != true && file.isReleased()) {
                             GuestbookResponse gbr = guestbookResponseService.initAPIGuestbookResponse(file.getOwner(), file, session, apiTokenUser);
-                            guestbookResponseService.save(gbr);
+                            guestbookResponseWriter.write(gbr);
                             MakeDataCountEntry entry = new MakeDataCountEntry(uriInfo, headers, dvRequestService, file);
                             mdcLogService.logEntry(entry);
                         }
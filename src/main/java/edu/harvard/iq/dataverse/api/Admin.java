@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.api;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import edu.harvard.iq.dataverse.BannerMessage;
 import edu.harvard.iq.dataverse.BannerMessageServiceBean;
 import edu.harvard.iq.dataverse.BannerMessageText;
@@ -33,6 +34,7 @@ import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.AuthenticationProviderRow;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUser;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
+import edu.harvard.iq.dataverse.authorization.providers.oauth2.oidc.OIDCAuthProvider;
 import edu.harvard.iq.dataverse.authorization.providers.shib.ShibAuthenticationProvider;
 import edu.harvard.iq.dataverse.authorization.providers.shib.ShibServiceBean;
 import edu.harvard.iq.dataverse.authorization.providers.shib.ShibUtil;
@@ -47,6 +49,7 @@ import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.engine.command.impl.AbstractSubmitToArchiveCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.PublishDataverseCommand;
 import edu.harvard.iq.dataverse.settings.Setting;
+import edu.harvard.iq.dataverse.settings.SettingsCache;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObjectBuilder;
@@ -96,6 +99,7 @@ import edu.harvard.iq.dataverse.engine.command.impl.DeactivateUserCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.DeleteRoleCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.DeleteTemplateCommand;
 import edu.harvard.iq.dataverse.engine.command.impl.RegisterDvObjectCommand;
+import edu.harvard.iq.dataverse.ingest.IngestScheduler;
 import edu.harvard.iq.dataverse.ingest.IngestServiceBean;
 import edu.harvard.iq.dataverse.pidproviders.handle.HandlePidProvider;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
@@ -150,6 +154,10 @@ public class Admin extends AbstractApiBean {
     @EJB
     IngestServiceBean ingestService;
     @EJB
+    IngestScheduler ingestScheduler;
+    @EJB
+    SettingsCache settingsCache;
+    @EJB
     DataFileServiceBean fileService;
     @EJB
     DatasetServiceBean datasetService;
@@ -227,6 +235,16 @@ public class Admin extends AbstractApiBean {
 		settingsSvc.delete(name, lang);
 		return ok("Setting " + name + " - " + lang + " deleted.");
 	}
+
+    /**
+     * How many times the settings were loaded into memory on this server, and
+     * how long it took the last time.
+     */
+    @Path("settings/cache/stats")
+    @GET
+    public Response getSettingsCacheStats() {
+        return ok(Json.createObjectBuilder(settingsCache.getStats()));
+    }
         
     @Path("template/{id}")
     @DELETE
@@ -407,6 +425,28 @@ public class Admin extends AbstractApiBean {
 		}
 	}
 
+	/**
+	 * How many bearer tokens an OIDC provider checked locally, and how often
+	 * it found the others in its cache.
+	 */
+	@GET
+	@Path("authenticationProviders/{id}/bearerTokenStats")
+	public Response getBearerTokenStats(@PathParam("id") String id) {
+		AuthenticationProvider provider = authSvc.getAuthenticationProvider(id);
+		if (!(provider instanceof OIDCAuthProvider)) {
+			return notFound("Can't find an OIDC provider with id '" + id + "'.");
+		}
+		OIDCAuthProvider oidcProvider = (OIDCAuthProvider) provider;
+		CacheStats cacheStats = oidcProvider.getBearerTokenCacheStats();
+		return ok(Json.createObjectBuilder()
+				.add("jwtAccepted", oidcProvider.getJwtAcceptedCount())
+				.add("jwtRejected", oidcProvider.getJwtRejectedCount())
+				.add("cacheHits", cacheStats.hitCount())
+				.add("cacheMisses", cacheStats.missCount())
+				.add("cacheEvictions", cacheStats.evictionCount())
+				.add("cacheSize", oidcProvider.getBearerTokenCacheSize()));
+	}
+
 	@DELETE
 	@Path("authenticationProviders/{id}/")
 	public Response deleteAuthenticationProvider(@PathParam("id") String id) {
@@ -1419,6 +1459,16 @@ public class Admin extends AbstractApiBean {
         return ok(info);
     }
 
+    /**
+     * How many files are waiting for the ingest workers, how long they
+     * waited, and how fast each format has been ingested.
+     */
+    @Path("ingest/stats")
+    @GET
+    public Response getIngestStats() {
+        return ok(Json.createObjectBuilder(ingestScheduler.getStats()));
+    }
+
 	/**
 	 * This method is used in API tests, called from UtilIt.java.
 	 */
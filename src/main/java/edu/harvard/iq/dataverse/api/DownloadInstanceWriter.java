@@ -22,19 +22,19 @@ import jakarta.ws.rs.ext.MessageBodyWriter;
 import jakarta.ws.rs.ext.Provider;
 
 import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.GuestbookResponseWriter;
 import edu.harvard.iq.dataverse.dataaccess.*;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
-import edu.harvard.iq.dataverse.engine.command.Command;
-import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
-import edu.harvard.iq.dataverse.engine.command.impl.CreateGuestbookResponseCommand;
 import edu.harvard.iq.dataverse.globus.GlobusServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
 import edu.harvard.iq.dataverse.util.FileUtil;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
@@ -66,6 +66,8 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
     SystemConfig systemConfig;
     @Inject
     GlobusServiceBean globusService;
+    @Inject
+    GuestbookResponseWriter guestbookResponseWriter;
 
     private static final Logger logger = Logger.getLogger(DownloadInstanceWriter.class.getCanonicalName());
 
@@ -249,14 +251,10 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                     if (redirect_uri != null) {
                         // increment the download count, if necessary:
                         if (di.getGbr() != null && !(isThumbnailDownload(di) || isPreprocessedMetadataDownload(di))) {
-                            try {
-                                logger.fine("writing guestbook response, for a download redirect.");
-                                Command<?> cmd = new CreateGuestbookResponseCommand(di.getDataverseRequestService().getDataverseRequest(), di.getGbr(), di.getGbr().getDataFile().getOwner());
-                                di.getCommand().submit(cmd);
-                                MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
-                                mdcLogService.logEntry(entry);
-                            } catch (CommandException e) {
-                            }
+                            logger.fine("writing guestbook response, for a download redirect.");
+                            guestbookResponseWriter.write(di.getGbr(), di.getDataverseRequestService().getDataverseRequest());
+                            MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
+                            mdcLogService.logEntry(entry);
                         }
 
                         // finally, issue the redirect:
@@ -369,18 +367,36 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
 
                                     try {
                                         File tempSubsetFile = File.createTempFile("tempSubsetFile", ".tmp");
-                                        TabularSubsetGenerator tabularSubsetGenerator = new TabularSubsetGenerator();
                                         
-                                        long numberOfLines = dataFile.getDataTable().getCaseQuantity();
-                                        if (dataFile.getDataTable().isStoredWithVariableHeader()) {
-                                            numberOfLines++;
+                                        // If the columnar copy of the file is available, 
+                                        // we only need to read the requested columns: 
+                                        ColumnarTabularFile columnarFile = null;
+                                        try {
+                                            columnarFile = ColumnarTabularFile.open(storageIO);
+                                        } catch (IOException ioex) {
+                                            logger.warning("Failed to open the columnar copy of the tabular file " + dataFile.getId() + "; " + ioex.getMessage());
                                         }
                                         
-                                        tabularSubsetGenerator.subsetFile(storageIO.getInputStream(), 
-                                                tempSubsetFile.getAbsolutePath(), 
-                                                variablePositionIndex, 
-                                                numberOfLines, 
-                                                "\t");
+                                        if (columnarFile != null) {
+                                            logger.fine("subsetting the columnar copy of the tabular file.");
+                                            try (ColumnarTabularFile columnar = columnarFile;
+                                                    OutputStream subsetOut = new BufferedOutputStream(new FileOutputStream(tempSubsetFile))) {
+                                                columnar.subset(variablePositionIndex, subsetOut);
+                                            }
+                                        } else {
+                                            TabularSubsetGenerator tabularSubsetGenerator = new TabularSubsetGenerator();
+
+                                            long numberOfLines = dataFile.getDataTable().getCaseQuantity();
+                                            if (dataFile.getDataTable().isStoredWithVariableHeader()) {
+                                                numberOfLines++;
+                                            }
+
+                                            tabularSubsetGenerator.subsetFile(storageIO.getInputStream(), 
+                                                    tempSubsetFile.getAbsolutePath(), 
+                                                    variablePositionIndex, 
+                                                    numberOfLines, 
+                                                    "\t");
+                                        }
 
                                         if (tempSubsetFile.exists()) {
                                             FileInputStream subsetStream = new FileInputStream(tempSubsetFile);
@@ -609,14 +625,10 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
                         // "preprocessed metadata" records for tabular data files are NOT considered "real" downloads, 
                         // so these should not produce guestbook entries: 
                         if (di.getGbr() != null && !(isThumbnailDownload(di) || isPreprocessedMetadataDownload(di))) {
-                            try {
-                                logger.fine("writing guestbook response.");
-                                Command<?> cmd = new CreateGuestbookResponseCommand(di.getDataverseRequestService().getDataverseRequest(), di.getGbr(), di.getGbr().getDataFile().getOwner());
-                                di.getCommand().submit(cmd);
-                                MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
-                                mdcLogService.logEntry(entry);
-                            } catch (CommandException e) {
-                            }
+                            logger.fine("writing guestbook response.");
+                            guestbookResponseWriter.write(di.getGbr(), di.getDataverseRequestService().getDataverseRequest());
+                            MakeDataCountEntry entry = new MakeDataCountEntry(di.getRequestUriInfo(), di.getRequestHttpHeaders(), di.getDataverseRequestService(), di.getGbr().getDataFile());
+                            mdcLogService.logEntry(entry);
                         } else {
                             logger.fine("not writing guestbook response");
                         }
@@ -742,75 +754,13 @@ public class DownloadInstanceWriter implements MessageBodyWriter<DownloadInstanc
     }
 
     /**
-     * @param range "bytes 0-10" for example. Found in the "Range" HTTP header.
-     * @param fileSize File size in bytes.
-     * @throws RunTimeException on any problems processing the Range header.
+     * @see Range#parse(String, long)
      */
     public List<Range> getRanges(String range, long fileSize) {
-        // Inspired by https://gist.github.com/davinkevin/b97e39d7ce89198774b4
-        // via https://stackoverflow.com/questions/28427339/how-to-implement-http-byte-rangeHeader-requests-in-spring-mvc/28479001#28479001
-        List<Range> ranges = new ArrayList<>();
-
         if (range != null) {
             logger.fine("Range header supplied: " + range);
-
-            // Technically this regex supports multiple ranges.
-            // Below we have a check to enforce a single range.
-            if (!range.matches("^bytes=\\d*-\\d*(,\\d*-\\d*)*$")) {
-                throw new RuntimeException("The format is bytes=<range-start>-<range-end> where start and end are optional.");
-            }
-
-            // The 6 is to remove "bytes="
-            String[] parts = range.substring(6).split(",");
-            if (parts.length > 1) {
-                // Only allow a single range.
-                throw new RuntimeException("Only one range is allowed.");
-            }
-            // This loop is here in case we ever want to support multiple ranges.
-            for (String part : parts) {
-
-                long start = getRangeStart(part);
-                long end = getRangeEnd(part);
-
-                if (start == -1) {
-                    // start does not exist. Base start off of how many bytes from end.
-                    start = fileSize - end;
-                    end = fileSize - 1;
-                } else if (end == -1 || end > fileSize - 1) {
-                    // Set end when it doesn't exist.
-                    // Also, automatically set end to size of file if end is beyond
-                    // the file size (rather than throwing an error).
-                    end = fileSize - 1;
-                }
-
-                if (start > end) {
-                    throw new RuntimeException("Start is larger than end or size of file.");
-                }
-
-                ranges.add(new Range(start, end));
-
-            }
         }
-
-        return ranges;
-    }
-
-    /**
-     * @return Return a positive long or -1 if start does not exist.
-     */
-    public static long getRangeStart(String part) {
-        // Get everything before the "-".
-        String start = part.substring(0, part.indexOf("-"));
-        return (start.length() > 0) ? Long.parseLong(start) : -1;
-    }
-
-    /**
-     * @return Return a positive long or -1 if end does not exist.
-     */
-    public static long getRangeEnd(String part) {
-        // Get everything after the "-".
-        String end = part.substring(part.indexOf("-") + 1, part.length());
-        return (end.length() > 0) ? Long.parseLong(end) : -1;
+        return Range.parse(range, fileSize);
     }
 
 }
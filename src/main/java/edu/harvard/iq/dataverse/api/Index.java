@@ -23,6 +23,7 @@ import edu.harvard.iq.dataverse.search.SolrField;
 import edu.harvard.iq.dataverse.search.SolrQueryResponse;
 import edu.harvard.iq.dataverse.search.SolrSearchResult;
 import edu.harvard.iq.dataverse.authorization.users.User;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
 import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.search.DvObjectSolrDoc;
 import edu.harvard.iq.dataverse.search.FacetCategory;
@@ -35,6 +36,7 @@ import edu.harvard.iq.dataverse.search.SearchException;
 import edu.harvard.iq.dataverse.search.SearchFields;
 import edu.harvard.iq.dataverse.search.SearchFilesServiceBean;
 import edu.harvard.iq.dataverse.search.SearchUtil;
+import edu.harvard.iq.dataverse.search.SolrClientService;
 import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
 import edu.harvard.iq.dataverse.search.SortBy;
 import edu.harvard.iq.dataverse.util.ConstraintViolationUtil;
@@ -93,6 +95,8 @@ public class Index extends AbstractApiBean {
     @EJB
     SearchServiceBean searchService;
     @EJB
+    SolrClientService solrClientService;
+    @EJB
     DatasetFieldServiceBean datasetFieldService;
     @EJB
     SearchFilesServiceBean searchFilesService;
@@ -103,17 +107,48 @@ public class Index extends AbstractApiBean {
     public static String permsIndexed = "permsIndexed";
 
     @GET
-    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly);
+    public Response indexAllOrSubset(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("resume") boolean resume) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, false, previewOnly, resume);
     }
 
     @GET
     @Path("continue")
-    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly) {
-        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly);
+    public Response indexAllOrSubsetContinue(@QueryParam("numPartitions") Long numPartitionsSelected, @QueryParam("partitionIdToProcess") Long partitionIdToProcess, @QueryParam("previewOnly") boolean previewOnly, @QueryParam("resume") boolean resume) {
+        return indexAllOrSubset(numPartitionsSelected, partitionIdToProcess, true, previewOnly, resume);
+    }
+
+    /**
+     * Reports the progress and throughput of the "index all" runs in progress
+     * on this server, and the checkpoints recorded by all runs.
+     */
+    @GET
+    @Path("progress")
+    public Response indexAllProgress() {
+        return ok(indexBatchService.getIndexAllProgress());
     }
 
-    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly) {
+    /**
+     * Reports the queue depth, batch sizes and latencies of the buffer the
+     * documents of datasets are sent to Solr through.
+     */
+    @GET
+    @Path("solr/buffer")
+    public Response solrIndexBufferMetrics() {
+        return ok(solrClientService.getIndexBuffer().getMetrics());
+    }
+
+    /**
+     * Deletes the "index all" checkpoints, so that interrupted runs start over
+     * instead of resuming.
+     */
+    @DELETE
+    @Path("checkpoints")
+    public Response deleteIndexAllCheckpoints() {
+        int numDeleted = indexBatchService.deleteIndexAllCheckpoints();
+        return ok("Deleted " + numDeleted + " index all checkpoint(s).");
+    }
+
+    private Response indexAllOrSubset(Long numPartitionsSelected, Long partitionIdToProcess, boolean skipIndexed, boolean previewOnly, boolean resume) {
         try {
             long numPartitions = 1;
             if (numPartitionsSelected != null) {
@@ -153,7 +188,15 @@ public class Index extends AbstractApiBean {
                 availablePartitionIdsBuilder.add(i);
             }
 
-            JsonObjectBuilder preview = indexBatchService.indexAllOrSubsetPreview(numPartitions, partitionIdToProcess, skipIndexed);
+            if (!previewOnly) {
+                BatchCheckpoint inUse = indexBatchService.findCheckpointInUse(numPartitions, partitionIdToProcess);
+                if (inUse != null) {
+                    return error(Status.CONFLICT, "The index all of partition " + partitionIdToProcess + " of " + numPartitions + " recorded its progress at "
+                            + inUse.getLastUpdateTime() + " and may still be running, on this or another server. Try again later, or check /api/admin/index/progress.");
+                }
+            }
+
+            JsonObjectBuilder preview = indexBatchService.indexAllOrSubsetPreview(numPartitions, partitionIdToProcess, skipIndexed, resume);
             if (previewOnly) {
                 preview.add("args", args);
                 preview.add("availablePartitionIds", availablePartitionIdsBuilder);
@@ -167,7 +210,7 @@ public class Index extends AbstractApiBean {
              * @todo How can we expose the String returned from "index all" via
              * the API?
              */
-            Future<JsonObjectBuilder> indexAllFuture = indexBatchService.indexAllOrSubset(numPartitions, partitionIdToProcess, skipIndexed, previewOnly);
+            Future<JsonObjectBuilder> indexAllFuture = indexBatchService.indexAllOrSubset(numPartitions, partitionIdToProcess, skipIndexed, previewOnly, resume);
             JsonObject workloadPreview = preview.build().getJsonObject("previewOfPartitionWorkload");
             int dataverseCount = workloadPreview.getInt("dataverseCount");
             int datasetCount = workloadPreview.getInt("datasetCount");
@@ -7,6 +7,7 @@ import edu.harvard.iq.dataverse.makedatacount.DatasetExternalCitations;
 import edu.harvard.iq.dataverse.makedatacount.DatasetExternalCitationsServiceBean;
 import edu.harvard.iq.dataverse.makedatacount.DatasetMetrics;
 import edu.harvard.iq.dataverse.makedatacount.DatasetMetricsServiceBean;
+import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLogWriter;
 import edu.harvard.iq.dataverse.pidproviders.PidProvider;
 import edu.harvard.iq.dataverse.pidproviders.PidUtil;
 import edu.harvard.iq.dataverse.pidproviders.doi.datacite.DataCiteDOIProvider;
@@ -29,6 +30,7 @@ import jakarta.json.JsonArrayBuilder;
 import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.json.JsonValue;
+import jakarta.ws.rs.GET;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
@@ -52,6 +54,8 @@ public class MakeDataCountApi extends AbstractApiBean {
     DatasetServiceBean datasetService;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    MakeDataCountLogWriter logWriter;
 
     /**
      * TODO: For each dataset, send the following:
@@ -83,6 +87,16 @@ public class MakeDataCountApi extends AbstractApiBean {
         return ok(msg);
     }
 
+    /**
+     * Reports how many log entries are waiting to be written, and how many
+     * have been written, dropped or failed since the server started.
+     */
+    @GET
+    @Path("logWriter")
+    public Response getLogWriterStatus() {
+        return ok(logWriter.getStatus());
+    }
+
     @POST
     @Path("{id}/addUsageMetricsFromSushiReport")
     public Response addUsageMetricsFromSushiReport(@PathParam("id") String id, @QueryParam("reportOnDisk") String reportOnDisk) {
@@ -44,11 +44,15 @@ public class Metadata extends AbstractApiBean {
     // datasets *that haven't been exported yet* - which is determined by
     // checking the lastexporttime value of the dataset; if it's null, or < the last 
     // publication date = "unexported" - and export them. 
+    // With resume=true, a job that was interrupted picks up where it left off.
     @GET
     @Path("/exportAll")
     @Produces("application/json")
-    public Response exportAll() {
-        datasetService.exportAllAsync();
+    public Response exportAll(@QueryParam("resume") boolean resume) {
+        if (datasetService.findExportAllCheckpointInUse(false) != null) {
+            return exportAllInUse();
+        }
+        datasetService.exportAllAsync(resume);
         return this.accepted();
     }
     
@@ -57,11 +61,42 @@ public class Metadata extends AbstractApiBean {
     @GET
     @Path("/reExportAll")
     @Produces("application/json")
-    public Response reExportAll() {
-        datasetService.reExportAllAsync();
+    public Response reExportAll(@QueryParam("resume") boolean resume) {
+        if (datasetService.findExportAllCheckpointInUse(true) != null) {
+            return exportAllInUse();
+        }
+        datasetService.reExportAllAsync(resume);
         return this.accepted();
     }
 
+    private Response exportAllInUse() {
+        return error(Response.Status.CONFLICT, "An export all job of this kind recorded its progress recently and may still be running, "
+                + "on this or another server. Try again later, or check /api/admin/metadata/exportAll/status.");
+    }
+
+    /**
+     * Reports the progress and throughput of the export all (or reexport all)
+     * job running on this server, and the checkpoints recorded by the jobs.
+     */
+    @GET
+    @Path("/exportAll/status")
+    @Produces("application/json")
+    public Response exportAllStatus() {
+        return ok(datasetService.getExportAllProgress());
+    }
+
+    /**
+     * Deletes the export all checkpoints, so that interrupted jobs start over
+     * instead of resuming.
+     */
+    @DELETE
+    @Path("/exportAll/checkpoints")
+    @Produces("application/json")
+    public Response deleteExportAllCheckpoints() {
+        int numDeleted = datasetService.deleteExportAllCheckpoints();
+        return ok("Deleted " + numDeleted + " export all checkpoint(s).");
+    }
+
     @GET
     @Path("{id}/reExportDataset")
     public Response indexDatasetByPersistentId(@PathParam("id") String id) {
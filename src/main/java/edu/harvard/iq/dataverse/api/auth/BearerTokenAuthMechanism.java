@@ -43,7 +43,7 @@ public class BearerTokenAuthMechanism implements AuthMechanism {
             }
             
             // Validate and verify provided Bearer Token, and retrieve UserRecordIdentifier
-            // TODO: Get the identifier from an invalidating cache to avoid lookup bursts of the same token. Tokens in the cache should be removed after some (configurable) time.
+            // (JWTs are checked locally, other tokens are cached by the providers, see OIDCAuthProvider.getUserIdentifier)
             UserRecordIdentifier userInfo = verifyOidcBearerTokenAndGetUserIdentifier(bearerToken.get());
 
             // retrieve Authenticated User from AuthService
@@ -0,0 +1,158 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Remembers which user each recently used API token belongs to (and until
+ * when, and whether it is disabled), so that the API calls do not have to look
+ * the token up in the database each time. Only the SHA-256 hashes of the
+ * tokens are kept.
+ *
+ * A token is forgotten as soon as it is changed or removed on this server
+ * (see {@link AuthenticationServiceBean}). The other servers of a cluster are
+ * told by way of a version stamp in the database, increased in the same
+ * transaction, which each server checks every few seconds: when it has
+ * changed, all the tokens are forgotten. Whether the user is deactivated is
+ * not cached, but read with the user each time.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ApiTokenCache {
+
+    private static final Logger logger = Logger.getLogger(ApiTokenCache.class.getCanonicalName());
+
+    /**
+     * What is remembered of a token.
+     */
+    public static final class Entry {
+        private final long userId;
+        private final long expireTime;
+        private final boolean disabled;
+
+        Entry(long userId, long expireTime, boolean disabled) {
+            this.userId = userId;
+            this.expireTime = expireTime;
+            this.disabled = disabled;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public boolean isDisabled() {
+            return disabled;
+        }
+
+        public boolean isExpired() {
+            return expireTime < System.currentTimeMillis();
+        }
+    }
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    // null if disabled
+    private Cache<String, Entry> cache;
+    private long checkIntervalMillis;
+    private final AtomicLong nextVersionCheck = new AtomicLong();
+    private volatile long version = -1;
+
+    @PostConstruct
+    public void init() {
+        configure(JvmSettings.API_TOKEN_CACHE_MAX_SIZE.lookupOptional(Integer.class).orElse(10000),
+                JvmSettings.API_TOKEN_CACHE_TTL.lookupOptional(Integer.class).orElse(600),
+                JvmSettings.API_TOKEN_CACHE_CHECK_INTERVAL.lookupOptional(Integer.class).orElse(5));
+    }
+
+    void configure(int maxSize, int ttlSeconds, int checkIntervalSeconds) {
+        if (maxSize <= 0) {
+            logger.info("API tokens are not cached");
+            cache = null;
+            return;
+        }
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+        checkIntervalMillis = checkIntervalSeconds * 1000L;
+    }
+
+    /**
+     * @return what is remembered of the token, or null
+     */
+    public Entry get(String tokenString) {
+        if (cache == null) {
+            return null;
+        }
+        checkVersion();
+        return cache.getIfPresent(hash(tokenString));
+    }
+
+    public void put(ApiToken apiToken) {
+        if (cache == null || apiToken.getAuthenticatedUser() == null || apiToken.getAuthenticatedUser().getId() == null) {
+            return;
+        }
+        cache.put(hash(apiToken.getTokenString()), new Entry(apiToken.getAuthenticatedUser().getId(),
+                apiToken.getExpireTime() == null ? Long.MAX_VALUE : apiToken.getExpireTime().getTime(),
+                apiToken.isDisabled()));
+    }
+
+    /**
+     * Forgets the token, on this server right away, and on the others once
+     * the current transaction is committed.
+     */
+    public void invalidate(ApiToken apiToken) {
+        if (apiToken == null) {
+            return;
+        }
+        if (cache != null) {
+            cache.invalidate(hash(apiToken.getTokenString()));
+        }
+        // (even if this server does not cache the tokens, the others may)
+        em.createNativeQuery("UPDATE apitokencacheversion SET version = version + 1").executeUpdate();
+    }
+
+    /**
+     * Forgets all the tokens if the version stamp has changed since it was
+     * last checked - at most once per check interval, by one thread.
+     */
+    private void checkVersion() {
+        long now = System.currentTimeMillis();
+        long next = nextVersionCheck.get();
+        if (now < next || !nextVersionCheck.compareAndSet(next, now + checkIntervalMillis)) {
+            return;
+        }
+        long current = ((Number) em.createNativeQuery("SELECT version FROM apitokencacheversion").getSingleResult()).longValue();
+        if (current != version) {
+            // (including the changes made on this server: a token looked up
+            // while it was being removed may have been cached again)
+            cache.invalidateAll();
+            version = current;
+        }
+    }
+
+    private static String hash(String tokenString) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(tokenString.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
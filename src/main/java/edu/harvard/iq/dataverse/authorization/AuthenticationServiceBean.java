@@ -119,6 +119,9 @@ public class AuthenticationServiceBean {
     @EJB 
     ExplicitGroupServiceBean explicitGroupService;
 
+    @EJB
+    ApiTokenCache apiTokenCache;
+
     @EJB
     SavedSearchServiceBean savedSearchService;
 
@@ -126,7 +129,7 @@ public class AuthenticationServiceBean {
     PrivateUrlServiceBean privateUrlService;
  
     @PersistenceContext(unitName = "VDCNet-ejbPU")
-    private EntityManager em;
+    EntityManager em;
         
         
     public AbstractOAuth2AuthenticationProvider getOAuth2Provider( String id ) {
@@ -174,6 +177,7 @@ public class AuthenticationServiceBean {
         if (user!=null) {
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
+                apiTokenCache.invalidate(apiToken);
                 em.remove(apiToken);
             }
         }
@@ -205,6 +209,7 @@ public class AuthenticationServiceBean {
         if (user != null) {
             ApiToken apiToken = findApiTokenByUser(user);
             if (apiToken != null) {
+                apiTokenCache.invalidate(apiToken);
                 em.remove(apiToken);
             }
             // @todo: this should be handed down to the service instead of doing it here.
@@ -388,8 +393,10 @@ public class AuthenticationServiceBean {
                 } else {
                     Timestamp time = token.getExpireTime();
                     if (time.before(newestToken.getExpireTime())) {
+                        apiTokenCache.invalidate(token);
                         em.remove(token);
                     } else {
+                        apiTokenCache.invalidate(newestToken);
                         em.remove(newestToken);
                         newestToken = token;
                     }
@@ -426,19 +433,37 @@ public class AuthenticationServiceBean {
     }
 
     public AuthenticatedUser lookupUser( String apiToken ) {
+        // A token used recently only needs the user to be read
+        ApiTokenCache.Entry cached = apiTokenCache.get(apiToken);
+        if ( cached != null && cached.isDisabled() ) return null;
+        if ( cached != null && !cached.isExpired() ) {
+            AuthenticatedUser user = findByID(cached.getUserId());
+            if ( user != null ) {
+                return activeUser(user, apiToken);
+            }
+        }
+        
         ApiToken tkn = findApiToken(apiToken);
         if ( tkn == null ) return null;
         
-        if ( tkn.isDisabled() ) return null;
+        if ( tkn.isDisabled() ) {
+            apiTokenCache.put(tkn);
+            return null;
+        }
         if ( tkn.getExpireTime() != null ) {
             if ( tkn.getExpireTime().before( new Timestamp(new Date().getTime())) ) {
+                apiTokenCache.invalidate(tkn);
                 em.remove(tkn);
 		logger.info("attempted access with expired token: " + apiToken);
                 return null;
             }
         }
+        apiTokenCache.put(tkn);
         
-        AuthenticatedUser user = tkn.getAuthenticatedUser();
+        return activeUser(tkn.getAuthenticatedUser(), apiToken);
+    }
+    
+    private AuthenticatedUser activeUser( AuthenticatedUser user, String apiToken ) {
         if (!user.isDeactivated()) {
             return user;
         } else {
@@ -553,6 +578,7 @@ public class AuthenticationServiceBean {
             em.persist(aToken);
             return aToken;
         } else { 
+            apiTokenCache.invalidate(aToken);
             return em.merge( aToken );
             
         }
@@ -182,6 +182,25 @@ public class GroupServiceBean {
                              .collect( toSet());
     }
     
+    /**
+     * The part of {@link #groupsFor(DataverseRequest)} that depends on where
+     * the request comes from, rather than on who makes it: the IP groups.
+     */
+    public Set<IpGroup> ipGroupsFor( DataverseRequest req ) {
+        return ipGroupProvider.groupsFor(req);
+    }
+
+    /**
+     * The rest of {@link #groupsFor(DataverseRequest)}: all the groups of
+     * the request but the IP groups.
+     */
+    public Set<Group> groupsForIgnoringAddress( DataverseRequest req ) {
+        return groupProviders.values().stream()
+                             .filter(gp -> gp != ipGroupProvider)
+                             .flatMap(gp->(Stream<Group>)gp.groupsFor(req).stream())
+                             .collect( toSet());
+    }
+    
     /**
      * Collections of groups may include {@link ExplicitGroup}s, which have a 
      * recursive structure (more precisely, a Composite Pattern}. This has many 
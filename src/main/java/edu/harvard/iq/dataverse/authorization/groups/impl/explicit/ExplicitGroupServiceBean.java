@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.explicit;
 
 import edu.harvard.iq.dataverse.DvObject;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -75,6 +76,7 @@ public class ExplicitGroupServiceBean {
     }
     
     public ExplicitGroup persist( ExplicitGroup g ) {
+        PermissionCache.invalidateAll();
         if ( g.getId() == null ) {
             em.persist( g );
             return g;
@@ -125,6 +127,7 @@ public class ExplicitGroupServiceBean {
     }
 
     public void removeGroup(ExplicitGroup explicitGroup) {
+        PermissionCache.invalidateAll();
         em.remove( explicitGroup );
     }
     
@@ -272,6 +275,7 @@ public class ExplicitGroupServiceBean {
      * @param assignee User or Group 
      */
     public void revokeAllGroupsForAssignee(RoleAssignee assignee) {
+        PermissionCache.invalidateAll();
         if (assignee instanceof AuthenticatedUser) {
             em.createNativeQuery("DELETE FROM explicitgroup_authenticateduser WHERE containedauthenticatedusers_id=" + ((AuthenticatedUser) assignee).getId()).executeUpdate();
         } else if (assignee instanceof ExplicitGroup) {
@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.ipaddress;
 
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
@@ -43,6 +44,7 @@ public class IpGroupsServiceBean {
      * @return Managed version of the group. The provider might be un-set.
      */
     public IpGroup store( IpGroup grp ) {
+        PermissionCache.invalidateAll();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "ipCreate");
         if ( grp.getGroupProvider() != null ) {
             alr.setInfo( grp.getIdentifier());
@@ -127,6 +129,7 @@ public class IpGroupsServiceBean {
      * @see RoleAssigneeServiceBean#getAssignmentsFor(java.lang.String) 
      */
     public void deleteGroup( IpGroup grp ) {
+        PermissionCache.invalidateAll();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "ipDelete");
         alr.setInfo( grp.getIdentifier() );
         if ( roleAssigneeSvc.getAssignmentsFor(grp.getIdentifier()).isEmpty() ) {
@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.maildomain;
 
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -54,6 +55,7 @@ public class MailDomainGroupServiceBean {
      */
     @Lock(LockType.WRITE)
     public void updateGroups() {
+        PermissionCache.invalidateAll();
         List<MailDomainGroup> all = findAll();
         this.simpleGroups = all.stream().filter(mg -> !mg.isRegEx()).collect(Collectors.toList());
         this.regexGroups = all.stream()
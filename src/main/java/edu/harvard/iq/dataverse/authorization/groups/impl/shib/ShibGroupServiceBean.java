@@ -1,5 +1,6 @@
 package edu.harvard.iq.dataverse.authorization.groups.impl.shib;
 
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
@@ -60,6 +61,7 @@ public class ShibGroupServiceBean {
     }
 
     public ShibGroup save(String name, String shibIdpAttribute, String shibIdp) {
+        PermissionCache.invalidateAll();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "shibCreate");
         alr.setInfo(name + ": " + shibIdp + "/" + shibIdpAttribute);
 
@@ -96,6 +98,7 @@ public class ShibGroupServiceBean {
     }
 
     public boolean delete(ShibGroup doomed) throws Exception {
+        PermissionCache.invalidateAll();
         ActionLogRecord alr = new ActionLogRecord(ActionLogRecord.ActionType.GlobalGroups, "shibDelete");
         alr.setInfo(doomed.getName() + ":" + doomed.getIdentifier());
 
@@ -2,7 +2,24 @@ package edu.harvard.iq.dataverse.authorization.providers.oauth2.oidc;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.scribejava.core.builder.api.DefaultApi20;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.source.RemoteJWKSet;
+import com.nimbusds.jose.proc.BadJOSEException;
+import com.nimbusds.jose.proc.DefaultJOSEObjectTypeVerifier;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.JWT;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.jwt.proc.BadJWTException;
+import com.nimbusds.jwt.proc.ConfigurableJWTProcessor;
+import com.nimbusds.jwt.proc.DefaultJWTClaimsVerifier;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
 import com.nimbusds.oauth2.sdk.AuthorizationCode;
 import com.nimbusds.oauth2.sdk.AuthorizationCodeGrant;
 import com.nimbusds.oauth2.sdk.AuthorizationGrant;
@@ -42,15 +59,23 @@ import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -82,6 +107,25 @@ public class OIDCAuthProvider extends AbstractOAuth2AuthenticationProvider {
         .expireAfterWrite(Duration.of(JvmSettings.OIDC_PKCE_CACHE_MAXAGE.lookup(Integer.class), ChronoUnit.SECONDS))
         .build();
     
+    /**
+     * Bearer tokens that are not JWTs (or not ones we can check ourselves) can only be checked by asking the
+     * provider for the user info. To not do so for every API call, remember which user a token belongs to, for a
+     * while. Only a hash of the token is kept. Tokens revoked at the provider are accepted until their entry expires.
+     */
+    private final Cache<String,UserRecordIdentifier> bearerTokenCache = Caffeine.newBuilder()
+        .maximumSize(JvmSettings.OIDC_BEARER_CACHE_MAXSIZE.lookup(Integer.class))
+        .expireAfterWrite(Duration.of(JvmSettings.OIDC_BEARER_CACHE_MAXAGE.lookup(Integer.class), ChronoUnit.SECONDS))
+        .recordStats()
+        .build();
+    
+    /**
+     * Checks the signature (with the provider's keys, fetched and cached as needed), the issuer, the expiry and the
+     * client of JWT access tokens, without asking the provider. Null if disabled or if the provider publishes no keys.
+     */
+    private final ConfigurableJWTProcessor<SecurityContext> jwtProcessor;
+    private final LongAdder jwtAccepted = new LongAdder();
+    private final LongAdder jwtRejected = new LongAdder();
+    
     public OIDCAuthProvider(String aClientId, String aClientSecret, String issuerEndpointURL,
                             boolean pkceEnabled, String pkceMethod) throws AuthorizationSetupException {
         this.clientSecret = aClientSecret; // nedded for state creation
@@ -92,6 +136,62 @@ public class OIDCAuthProvider extends AbstractOAuth2AuthenticationProvider {
         
         this.pkceEnabled = pkceEnabled;
         this.pkceMethod = CodeChallengeMethod.parse(pkceMethod);
+        
+        this.jwtProcessor = JvmSettings.OIDC_BEARER_VALIDATE_JWT.lookup(Boolean.class) ? createJwtProcessor() : null;
+    }
+    
+    /**
+     * Setup the local validation of JWT access tokens. The keys are only retrieved from the provider when the first
+     * token needs them (and again when a token is signed with a key we do not know yet, e.g. after a key rotation).
+     * @return The processor, or null if the provider does not publish its keys
+     */
+    ConfigurableJWTProcessor<SecurityContext> createJwtProcessor() {
+        if (idpMetadata.getJWKSetURI() == null) {
+            logger.info("OIDC provider at " + issuer.getValue() + " does not publish its keys, bearer tokens will be checked with the provider.");
+            return null;
+        }
+        try {
+            // Asymmetric algorithms only: the tokens are signed with the provider's private keys.
+            Set<JWSAlgorithm> algorithms = new HashSet<>(JWSAlgorithm.Family.RSA);
+            algorithms.addAll(JWSAlgorithm.Family.EC);
+            algorithms.addAll(JWSAlgorithm.Family.ED);
+            
+            DefaultJWTProcessor<SecurityContext> processor = new DefaultJWTProcessor<>();
+            // Plain JWTs (e.g. Keycloak) as well as RFC 9068 access tokens. ID tokens are plain JWTs as well, they
+            // are told apart by their claims below.
+            processor.setJWSTypeVerifier(new DefaultJOSEObjectTypeVerifier<>(JOSEObjectType.JWT, new JOSEObjectType("at+jwt"), null));
+            processor.setJWSKeySelector(new JWSVerificationKeySelector<>(algorithms,
+                new RemoteJWKSet<>(idpMetadata.getJWKSetURI().toURL())));
+            
+            String clientId = clientAuth.getClientID().getValue();
+            DefaultJWTClaimsVerifier<SecurityContext> claimsVerifier = new DefaultJWTClaimsVerifier<>(
+                // (the audience is checked below, as the client may be named by "azp" instead)
+                null,
+                new JWTClaimsSet.Builder().issuer(issuer.getValue()).build(),
+                Set.of("sub", "exp"),
+                // only found in ID tokens, which must not be accepted as access tokens
+                Set.of("nonce", "at_hash"));
+            processor.setJWTClaimsSetVerifier((claims, context) -> {
+                claimsVerifier.verify(claims, context);
+                if (!isIssuedFor(claims, clientId)) {
+                    throw new BadJWTException("JWT audience and authorized party do not match client " + clientId);
+                }
+            });
+            return processor;
+        } catch (MalformedURLException e) {
+            logger.warning("OIDC provider at " + issuer.getValue() + " has an invalid JWKS URI, bearer tokens will be checked with the provider: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * @return Whether the token was issued for this client: it is named in the audience ("aud"), or is the
+     *         authorized party ("azp") the token was issued to (e.g. Keycloak, whose access tokens are meant for
+     *         other audiences).
+     */
+    static boolean isIssuedFor(JWTClaimsSet claims, String clientId) {
+        return (claims.getAudience() != null && claims.getAudience().contains(clientId))
+            || clientId.equals(claims.getClaim("azp"));
     }
     
     /**
@@ -319,6 +419,8 @@ public class OIDCAuthProvider extends AbstractOAuth2AuthenticationProvider {
 
     /**
      * Trades an access token for an {@link UserRecordIdentifier} (if valid).
+     * JWT access tokens issued by this provider are checked locally; other tokens are checked by asking the provider
+     * for the user info, and the answer is cached for a while.
      *
      * @apiNote The resulting {@link UserRecordIdentifier} may be used with
      *          {@link edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean#lookupUser(UserRecordIdentifier)}
@@ -330,6 +432,90 @@ public class OIDCAuthProvider extends AbstractOAuth2AuthenticationProvider {
      * @throws IOException In case communication with the endpoint fails to succeed for an I/O reason
      */
     public Optional<UserRecordIdentifier> getUserIdentifier(BearerAccessToken accessToken) throws IOException {
+        // A JWT issued by this provider can be checked right here
+        Optional<JWT> jwt = jwtProcessor == null ? Optional.empty() : parseOwnJwt(accessToken);
+        if (jwt.isPresent()) {
+            try {
+                JWTClaimsSet claims = jwtProcessor.process(jwt.get(), null);
+                jwtAccepted.increment();
+                return Optional.of(new UserRecordIdentifier(getId(), claims.getSubject()));
+            } catch (BadJOSEException e) {
+                // Bad signature, expired, ...
+                jwtRejected.increment();
+                logger.log(Level.FINE, "Bearer token rejected by provider {0}: {1}", List.of(getId(), e.getMessage()).toArray());
+                return Optional.empty();
+            } catch (JOSEException e) {
+                // Most likely, the keys could not be retrieved - let the provider decide then
+                logger.log(Level.WARNING, "Could not check bearer token locally for provider {0}, asking the provider: {1}",
+                    List.of(getId(), e.getMessage()).toArray());
+            }
+        }
+        
+        String cacheKey = hash(accessToken.getValue());
+        UserRecordIdentifier cached = bearerTokenCache.getIfPresent(cacheKey);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<UserRecordIdentifier> identifier = getUserIdentifierFromUserInfo(accessToken);
+        identifier.ifPresent(userRecordIdentifier -> bearerTokenCache.put(cacheKey, userRecordIdentifier));
+        return identifier;
+    }
+    
+    /**
+     * Parse the access token as a signed JWT issued by this provider. (The issuer is checked again, together with the
+     * signature, when processing it.)
+     * @return The JWT, or empty if the token is no such thing (e.g. an opaque token, or one of another provider).
+     */
+    Optional<JWT> parseOwnJwt(BearerAccessToken accessToken) {
+        try {
+            JWT jwt = JWTParser.parse(accessToken.getValue());
+            if (jwt instanceof SignedJWT && issuer.getValue().equals(jwt.getJWTClaimsSet().getIssuer())) {
+                return Optional.of(jwt);
+            }
+        } catch (java.text.ParseException e) {
+            logger.log(Level.FINER, "Bearer token is not a JWT: {0}", e.getMessage());
+        }
+        return Optional.empty();
+    }
+    
+    private static String hash(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // Every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * @return The number of JWT access tokens accepted without asking the provider
+     */
+    public long getJwtAcceptedCount() {
+        return jwtAccepted.sum();
+    }
+    
+    /**
+     * @return The number of JWT access tokens rejected without asking the provider
+     */
+    public long getJwtRejectedCount() {
+        return jwtRejected.sum();
+    }
+    
+    /**
+     * @return Hits and misses of the cache of the tokens checked by the provider
+     */
+    public CacheStats getBearerTokenCacheStats() {
+        return bearerTokenCache.stats();
+    }
+    
+    public long getBearerTokenCacheSize() {
+        return bearerTokenCache.estimatedSize();
+    }
+    
+    /**
+     * Trades an access token for an {@link UserRecordIdentifier} (if valid) by asking for the user info.
+     */
+    Optional<UserRecordIdentifier> getUserIdentifierFromUserInfo(BearerAccessToken accessToken) throws IOException {
         OAuth2UserRecord userRecord;
         try {
             // Try to retrieve with given token (throws if invalid token)
@@ -0,0 +1,207 @@
+package edu.harvard.iq.dataverse.batch.checkpoint;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import jakarta.persistence.Column;
+import jakarta.persistence.ElementCollection;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
+import jakarta.persistence.Table;
+import jakarta.persistence.Temporal;
+import jakarta.persistence.TemporalType;
+import jakarta.persistence.UniqueConstraint;
+
+/**
+ * The persisted progress of a long running batch job that goes through
+ * objects in ascending id order, such as "index all" or "export all".
+ * Everything up to and including the last id of each of its id streams (e.g.
+ * "dataverses" and "datasets") is known to be done, so a run that was
+ * interrupted (e.g. by a server restart) can pick up right after these ids.
+ *
+ * There is at most one checkpoint per job: a kind of job (e.g. "indexAll")
+ * and a key telling the runs of that kind apart (e.g. the partition). A run
+ * only continues the checkpoint of a run that had the same options. A
+ * checkpoint with a finish time is a record of a completed run and is not
+ * resumed.
+ *
+ * @see BatchProgress
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"kind", "jobKey"}))
+@NamedQueries({
+    @NamedQuery(name = "BatchCheckpoint.findByJob",
+            query = "SELECT o FROM BatchCheckpoint o WHERE o.kind = :kind AND o.jobKey = :jobKey"),
+    @NamedQuery(name = "BatchCheckpoint.findByKind",
+            query = "SELECT o FROM BatchCheckpoint o WHERE o.kind = :kind ORDER BY o.jobKey"),
+    @NamedQuery(name = "BatchCheckpoint.deleteByKind",
+            query = "DELETE FROM BatchCheckpoint o WHERE o.kind = :kind")
+})
+public class BatchCheckpoint implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String kind;
+
+    @Column(nullable = false)
+    private String jobKey;
+
+    private String options;
+
+    // the id up to which each stream of objects is done
+    @ElementCollection(fetch = FetchType.EAGER)
+    private Map<String, Long> lastIds = new HashMap<>();
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    private Map<String, Long> counters = new HashMap<>();
+
+    @Temporal(value = TemporalType.TIMESTAMP)
+    private Date startTime;
+
+    @Temporal(value = TemporalType.TIMESTAMP)
+    private Date lastUpdateTime;
+
+    @Temporal(value = TemporalType.TIMESTAMP)
+    private Date finishTime;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public String getJobKey() {
+        return jobKey;
+    }
+
+    public void setJobKey(String jobKey) {
+        this.jobKey = jobKey;
+    }
+
+    public String getOptions() {
+        return options;
+    }
+
+    public void setOptions(String options) {
+        this.options = options;
+    }
+
+    public Map<String, Long> getLastIds() {
+        return lastIds;
+    }
+
+    public void setLastIds(Map<String, Long> lastIds) {
+        this.lastIds = lastIds;
+    }
+
+    /**
+     * @return the id up to which the objects of the stream are done, or null
+     * if none of them has been started
+     */
+    public Long getLastId(String stream) {
+        return lastIds.get(stream);
+    }
+
+    public Map<String, Long> getCounters() {
+        return counters;
+    }
+
+    public void setCounters(Map<String, Long> counters) {
+        this.counters = counters;
+    }
+
+    public long getCounter(String name) {
+        return counters.getOrDefault(name, 0L);
+    }
+
+    public Date getStartTime() {
+        return startTime;
+    }
+
+    public void setStartTime(Date startTime) {
+        this.startTime = startTime;
+    }
+
+    public Date getLastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    public void setLastUpdateTime(Date lastUpdateTime) {
+        this.lastUpdateTime = lastUpdateTime;
+    }
+
+    public Date getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(Date finishTime) {
+        this.finishTime = finishTime;
+    }
+
+    public boolean isFinished() {
+        return finishTime != null;
+    }
+
+    /**
+     * @return whether a run with these options may pick up where this one
+     * left off
+     */
+    public boolean isResumableWith(String options) {
+        return !isFinished() && Objects.equals(this.options, options);
+    }
+
+    /**
+     * A run keeps updating its checkpoint every checkpoint interval, so an
+     * unfinished checkpoint updated more recently than twice that is taken to
+     * belong to a run still going on, here or on another server, which must
+     * neither be resumed nor replaced.
+     */
+    public boolean isInUse(long checkpointIntervalMillis) {
+        return !isFinished() && lastUpdateTime != null
+                && System.currentTimeMillis() - lastUpdateTime.getTime() < 2 * checkpointIntervalMillis;
+    }
+
+    /**
+     * @param runningHere whether the run of the job is in progress on this
+     * server
+     * @return "finished", "running", "runningElsewhere" (updated recently,
+     * most likely by another server) or "resumable"
+     */
+    public String getState(boolean runningHere, long checkpointIntervalMillis) {
+        if (isFinished()) {
+            return "finished";
+        } else if (runningHere) {
+            return "running";
+        } else if (isInUse(checkpointIntervalMillis)) {
+            return "runningElsewhere";
+        }
+        return "resumable";
+    }
+
+    @Override
+    public String toString() {
+        return "BatchCheckpoint[ " + kind + " " + jobKey + ", lastIds=" + lastIds + ", counters=" + counters + " ]";
+    }
+}
@@ -0,0 +1,102 @@
+package edu.harvard.iq.dataverse.batch.checkpoint;
+
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.inject.Named;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import static jakarta.ejb.TransactionAttributeType.NOT_SUPPORTED;
+import static jakarta.ejb.TransactionAttributeType.REQUIRES_NEW;
+
+/**
+ * Reads and writes {@link BatchCheckpoint}s. Every write happens in its own
+ * transaction, so that a checkpoint is committed right away and survives a
+ * crash of the (very long running) job that is recording it.
+ */
+@Named
+@Stateless
+public class BatchCheckpointServiceBean {
+
+    private static final Logger logger = Logger.getLogger(BatchCheckpointServiceBean.class.getCanonicalName());
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    private EntityManager em;
+
+    /**
+     * @return the checkpoint, detached, so that the caller can keep updating
+     * it and pass it to {@link #save(BatchCheckpoint)}
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public BatchCheckpoint find(String kind, String jobKey) {
+        List<BatchCheckpoint> checkpoints = em.createNamedQuery("BatchCheckpoint.findByJob", BatchCheckpoint.class)
+                .setParameter("kind", kind)
+                .setParameter("jobKey", jobKey)
+                .getResultList();
+        return checkpoints.isEmpty() ? null : checkpoints.get(0);
+    }
+
+    public List<BatchCheckpoint> findAll(String kind) {
+        return em.createNamedQuery("BatchCheckpoint.findByKind", BatchCheckpoint.class)
+                .setParameter("kind", kind)
+                .getResultList();
+    }
+
+    /**
+     * @return the checkpoint of the job if it is in use (see
+     * {@link BatchCheckpoint#isInUse(long)}), or null
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public BatchCheckpoint findInUse(String kind, String jobKey, long checkpointIntervalMillis) {
+        BatchCheckpoint checkpoint = find(kind, jobKey);
+        return checkpoint != null && checkpoint.isInUse(checkpointIntervalMillis) ? checkpoint : null;
+    }
+
+    /**
+     * @return the checkpoint of the unfinished earlier run of the job, if a
+     * run with these options can pick up where it left off, or null
+     */
+    @TransactionAttribute(NOT_SUPPORTED)
+    public BatchCheckpoint findToResume(String kind, String jobKey, String options) {
+        BatchCheckpoint checkpoint = find(kind, jobKey);
+        return checkpoint != null && checkpoint.isResumableWith(options) ? checkpoint : null;
+    }
+
+    /**
+     * Replaces any existing checkpoint of the job of the run with a fresh
+     * one.
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public BatchCheckpoint start(BatchProgress progress, String options) {
+        BatchCheckpoint existing = find(progress.getKind(), progress.getJobKey());
+        if (existing != null) {
+            em.remove(existing);
+            em.flush();
+        }
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setKind(progress.getKind());
+        checkpoint.setJobKey(progress.getJobKey());
+        checkpoint.setOptions(options);
+        checkpoint.setStartTime(progress.getRunStart());
+        checkpoint.setLastUpdateTime(new Date());
+        em.persist(checkpoint);
+        return checkpoint;
+    }
+
+    @TransactionAttribute(REQUIRES_NEW)
+    public BatchCheckpoint save(BatchCheckpoint checkpoint) {
+        checkpoint.setLastUpdateTime(new Date());
+        logger.fine("saving " + checkpoint);
+        return em.merge(checkpoint);
+    }
+
+    @TransactionAttribute(REQUIRES_NEW)
+    public int deleteAll(String kind) {
+        return em.createNamedQuery("BatchCheckpoint.deleteByKind")
+                .setParameter("kind", kind)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,124 @@
+package edu.harvard.iq.dataverse.batch.checkpoint;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+import java.util.logging.Logger;
+
+/**
+ * Records the progress of a run in its {@link BatchCheckpoint} every
+ * checkpoint interval, and goes through the objects of a stream with a pool
+ * of workers while doing so.
+ *
+ * A checkpoint that is not updated for twice the interval is taken for that
+ * of an abandoned run (see {@link BatchCheckpoint#isInUse(long)}), so the
+ * checkpoint keeps being saved while the run waits for its workers.
+ */
+public class BatchCheckpointer {
+
+    private final BatchCheckpointServiceBean checkpointService;
+    private final BatchProgress progress;
+    private final long checkpointIntervalMillis;
+    private final String description;
+    private final Logger logger;
+    private BatchCheckpoint checkpoint;
+    private long lastSaveTime = System.currentTimeMillis();
+
+    /**
+     * @param description what the run is, for the log
+     * @param logger where the progress of the run is logged
+     */
+    public BatchCheckpointer(BatchCheckpointServiceBean checkpointService, BatchProgress progress, BatchCheckpoint checkpoint,
+            long checkpointIntervalMillis, String description, Logger logger) {
+        this.checkpointService = checkpointService;
+        this.progress = progress;
+        this.checkpoint = checkpoint;
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.description = description;
+        this.logger = logger;
+    }
+
+    public BatchCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    public void save() {
+        progress.updateCheckpoint(checkpoint);
+        logger.info(description + ": " + checkpoint.getCounters() + ", done up to " + checkpoint.getLastIds());
+        try {
+            checkpoint = checkpointService.save(checkpoint);
+        } catch (Exception e) {
+            // Not being able to resume is no reason to stop the run
+            logger.warning("Could not save the checkpoint of " + description + ": " + e.getMessage());
+        }
+        lastSaveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Saves the checkpoint if the interval has passed since it last was.
+     */
+    public void saveIfDue() {
+        if (System.currentTimeMillis() - lastSaveTime >= checkpointIntervalMillis) {
+            save();
+        }
+    }
+
+    /**
+     * Records the run as completed; its checkpoint will not be resumed.
+     */
+    public void finish() {
+        progress.setFinished(true);
+        checkpoint.setFinishTime(new Date());
+        save();
+    }
+
+    /**
+     * Hands the objects of the stream, after its last id, to a fixed pool of
+     * workers in ascending id order, and waits for all of them to be done.
+     *
+     * @param nextPage the next ids of the stream after the given one, in
+     * ascending order; empty when there are no more
+     * @param work what is done with an object; it is marked done in the
+     * progress afterwards, whatever happens
+     */
+    public void runInParallel(String stream, LongFunction<List<Long>> nextPage, int numThreads, LongConsumer work) throws InterruptedException {
+        long afterId = progress.getLastId(stream) == null ? 0 : progress.getLastId(stream);
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        // Keeps the workers busy without queuing up the whole stream
+        Semaphore slots = new Semaphore(2 * numThreads);
+        try {
+            List<Long> ids;
+            while (!(ids = nextPage.apply(afterId)).isEmpty()) {
+                for (Long id : ids) {
+                    // Keeps the checkpoint fresh while all the workers are
+                    // busy, so that the run is not taken for an abandoned one
+                    while (!slots.tryAcquire(checkpointIntervalMillis, TimeUnit.MILLISECONDS)) {
+                        save();
+                    }
+                    progress.started(stream, id);
+                    executor.execute(() -> {
+                        try {
+                            work.accept(id);
+                        } finally {
+                            progress.done(stream, id);
+                            slots.release();
+                        }
+                    });
+                    saveIfDue();
+                }
+                afterId = ids.get(ids.size() - 1);
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(checkpointIntervalMillis, TimeUnit.MILLISECONDS)) {
+                save();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
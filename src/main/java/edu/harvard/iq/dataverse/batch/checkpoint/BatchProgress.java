@@ -0,0 +1,159 @@
+package edu.harvard.iq.dataverse.batch.checkpoint;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live progress and counters of a run of a batch job, which can be recorded
+ * in a {@link BatchCheckpoint} and continued from there.
+ *
+ * The objects of a stream (e.g. "datasets") are handed to the workers in
+ * ascending id order but may finish in any order. The ids that are still
+ * being worked on are tracked so that {@link #getLastId(String)} can tell
+ * the highest id up to which every object is done, which is what gets
+ * persisted as the resume point.
+ *
+ * The counters of a resumed run start from those of the checkpoint:
+ * {@link #getTotal(String)} includes them, {@link #getCount(String)} (which
+ * goes into the throughput) does not.
+ */
+public class BatchProgress {
+
+    private final String kind;
+    private final String jobKey;
+    private final Date runStart;
+    private final long startTime = System.currentTimeMillis();
+
+    private final Map<String, ConcurrentSkipListSet<Long>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastStarted = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    // counts of the interrupted run(s) this one continues
+    private final Map<String, Long> previousCounters = new HashMap<>();
+    private volatile boolean finished;
+
+    /**
+     * @param runStart when the run began
+     */
+    public BatchProgress(String kind, String jobKey, Date runStart) {
+        this.kind = kind;
+        this.jobKey = jobKey;
+        this.runStart = runStart;
+    }
+
+    /**
+     * Continues where a previous run left off; the run start is that of the
+     * run being continued.
+     */
+    public BatchProgress(BatchCheckpoint checkpoint) {
+        this(checkpoint.getKind(), checkpoint.getJobKey(), checkpoint.getStartTime());
+        lastStarted.putAll(checkpoint.getLastIds());
+        previousCounters.putAll(checkpoint.getCounters());
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getJobKey() {
+        return jobKey;
+    }
+
+    public Date getRunStart() {
+        return runStart;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+
+    /**
+     * Must be called, in ascending id order, before an object of the stream
+     * is handed to a worker.
+     */
+    public void started(String stream, long id) {
+        inFlight.computeIfAbsent(stream, s -> new ConcurrentSkipListSet<>()).add(id);
+        lastStarted.put(stream, id);
+    }
+
+    public void done(String stream, long id) {
+        ConcurrentSkipListSet<Long> ids = inFlight.get(stream);
+        if (ids != null) {
+            ids.remove(id);
+        }
+    }
+
+    /**
+     * @return the id after which the stream can safely resume: every object
+     * with an id up to and including it is done. Null if none has been
+     * started yet.
+     */
+    public Long getLastId(String stream) {
+        ConcurrentSkipListSet<Long> ids = inFlight.get(stream);
+        Long oldestInFlight = ids == null ? null : ids.ceiling(Long.MIN_VALUE);
+        return oldestInFlight == null ? lastStarted.get(stream) : Long.valueOf(oldestInFlight - 1);
+    }
+
+    public int getInProgress(String stream) {
+        ConcurrentSkipListSet<Long> ids = inFlight.get(stream);
+        return ids == null ? 0 : ids.size();
+    }
+
+    public void increment(String counter) {
+        add(counter, 1);
+    }
+
+    public void add(String counter, long n) {
+        counters.computeIfAbsent(counter, c -> new AtomicLong()).addAndGet(n);
+    }
+
+    /**
+     * @return the count of this run alone
+     */
+    public long getCount(String counter) {
+        AtomicLong count = counters.get(counter);
+        return count == null ? 0 : count.get();
+    }
+
+    /**
+     * @return the count including that of the run(s) being continued
+     */
+    public long getTotal(String counter) {
+        return previousCounters.getOrDefault(counter, 0L) + getCount(counter);
+    }
+
+    public long getElapsedMillis() {
+        return Math.max(1, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @return how many per second of the count of this run, to two decimals
+     */
+    public double getPerSecond(long count) {
+        return Math.round(count * 100000.0 / getElapsedMillis()) / 100.0;
+    }
+
+    /**
+     * Copies the resume points and the counters, including those of the
+     * run(s) being continued, into the checkpoint.
+     */
+    public void updateCheckpoint(BatchCheckpoint checkpoint) {
+        Map<String, Long> lastIds = new HashMap<>();
+        for (String stream : lastStarted.keySet()) {
+            lastIds.put(stream, getLastId(stream));
+        }
+        checkpoint.setLastIds(lastIds);
+        Map<String, Long> totals = new HashMap<>(previousCounters);
+        for (String counter : counters.keySet()) {
+            totals.put(counter, getTotal(counter));
+        }
+        checkpoint.setCounters(totals);
+    }
+}
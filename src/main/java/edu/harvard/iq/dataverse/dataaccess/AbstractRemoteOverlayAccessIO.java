@@ -97,6 +97,11 @@ public abstract class AbstractRemoteOverlayAccessIO<T extends DvObject> extends
         return baseStore.getAuxObjectSize(auxItemTag);
     }
 
+    @Override
+    public Long getAuxObjectLastModified(String auxItemTag) throws IOException {
+        return baseStore.getAuxObjectLastModified(auxItemTag);
+    }
+
     @Override
     public Path getAuxObjectAsPath(String auxItemTag) throws IOException {
         return baseStore.getAuxObjectAsPath(auxItemTag);
@@ -152,6 +157,11 @@ public abstract class AbstractRemoteOverlayAccessIO<T extends DvObject> extends
         return baseStore.getAuxFileAsInputStream(auxItemTag);
     }
 
+    @Override
+    public InputStream getAuxFileAsInputStream(String auxItemTag, long offset, long length) throws IOException {
+        return baseStore.getAuxFileAsInputStream(auxItemTag, offset, length);
+    }
+
     protected int getUrlExpirationMinutes() {
         String optionValue = getConfigParam(URL_EXPIRATION_MINUTES);
         if (optionValue != null) {
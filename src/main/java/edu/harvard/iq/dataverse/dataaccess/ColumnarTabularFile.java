@@ -0,0 +1,607 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * A column-oriented, binary copy of an ingested tab-delimited file, saved
+ * next to it as an auxiliary object. Every column is stored as one
+ * contiguous block, and the table of byte offsets of the blocks is stored
+ * at the beginning of the file, so that individual columns can be read
+ * without touching the rest of the data - via a memory-mapped buffer when
+ * the aux object is on the local filesystem, or with ranged reads (ranged
+ * GETs on S3) otherwise.
+ *
+ * (This is more or less the "90 deg. rotated" copy of the tab file that
+ * we used to produce for the fixed-width files in DVN 3, see the comment
+ * in TabularSubsetGenerator.)
+ *
+ * Layout (all numbers big-endian):
+ * <pre>
+ *   "DVCOLS01" | int numColumns | long numCases | long headerOffset | long headerLength
+ *   numColumns x ( byte encoding | long blockOffset | long blockLength )
+ *   column blocks ...
+ *   variable name header, if the tab file was stored with one
+ * </pre>
+ * Column blocks are encoded either as primitive vectors, with a bitmap of
+ * the missing values followed by the 8-byte values (only used when every
+ * value in the column can be restored byte-for-byte from its binary
+ * representation), or as the raw tokens from the tab file: (numCases + 1)
+ * offsets followed by the UTF-8 bytes. Either way, the original tab-delimited
+ * representation can be reproduced exactly.
+ */
+public class ColumnarTabularFile implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(ColumnarTabularFile.class.getCanonicalName());
+
+    public static final String AUX_TAG = "columnar";
+
+    static final byte[] MAGIC = "DVCOLS01".getBytes(StandardCharsets.US_ASCII);
+    static final int FIXED_HEADER_LENGTH = MAGIC.length + 4 + 8 + 8 + 8;
+    static final int INDEX_ENTRY_LENGTH = 1 + 8 + 8;
+
+    static final byte ENCODING_TOKENS = 0;
+    static final byte ENCODING_LONG = 1;
+    static final byte ENCODING_DOUBLE = 2;
+
+    // How many values are read from a column block at a time:
+    private static final int ROWS_PER_CHUNK = 65536;
+    // How many bytes worth of raw column values will be collected in memory
+    // at once while the columnar file is being created:
+    private static final long WRITE_BUFFER_BUDGET = 256L * 1024 * 1024;
+    // The most bytes of raw values of one column (they are collected in one
+    // array); no columnar copy is made of a file with a larger column:
+    private static final int MAX_COLUMN_BYTES = Integer.MAX_VALUE - 8;
+
+    private final ByteSource source;
+    private final int numColumns;
+    private final int numCases;
+    private final byte[] encodings;
+    private final long[] blockOffsets;
+    private final String[] headerNames;
+
+    ColumnarTabularFile(ByteSource source) throws IOException {
+        this.source = source;
+
+        ByteBuffer header = source.read(0, FIXED_HEADER_LENGTH);
+        byte[] magic = new byte[MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a columnar tabular data file (or an unsupported version)");
+        }
+        numColumns = header.getInt();
+        numCases = (int) header.getLong();
+        long headerOffset = header.getLong();
+        long headerLength = header.getLong();
+
+        encodings = new byte[numColumns];
+        blockOffsets = new long[numColumns];
+        ByteBuffer index = source.read(FIXED_HEADER_LENGTH, numColumns * INDEX_ENTRY_LENGTH);
+        for (int i = 0; i < numColumns; i++) {
+            encodings[i] = index.get();
+            blockOffsets[i] = index.getLong();
+            index.getLong(); // block length; not needed for reading
+        }
+
+        if (headerLength > 0) {
+            String headerLine = StandardCharsets.UTF_8.decode(source.read(headerOffset, (int) headerLength)).toString();
+            headerNames = headerLine.split("\t", -1);
+        } else {
+            headerNames = null;
+        }
+    }
+
+    /**
+     * Opens the columnar copy of an ingested tabular file, if one has been
+     * saved.
+     *
+     * @return the file, or null if the columnar aux object does not exist
+     */
+    public static ColumnarTabularFile open(StorageIO<DataFile> storageIO) throws IOException {
+        if (!storageIO.isAuxObjectCached(AUX_TAG)) {
+            return null;
+        }
+        if (storageIO.isLocalFile()) {
+            try {
+                Path path = storageIO.getAuxObjectAsPath(AUX_TAG);
+                if (path != null) {
+                    return new ColumnarTabularFile(new MappedFileSource(path));
+                }
+            } catch (UnsupportedDataAccessOperationException uoe) {
+                // fall through to the ranged reads
+            }
+        }
+        return new ColumnarTabularFile(new RangedAuxObjectSource(storageIO, AUX_TAG));
+    }
+
+    public static ColumnarTabularFile open(Path path) throws IOException {
+        return new ColumnarTabularFile(new MappedFileSource(path));
+    }
+
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    public int getNumCases() {
+        return numCases;
+    }
+
+    /**
+     * @return the variable names from the header line of the tab file, or
+     * null if it was stored without one.
+     */
+    public String[] getHeaderNames() {
+        return headerNames;
+    }
+
+    /**
+     * Reads the requested columns, handing the values to the consumers in
+     * the same form TabularColumnScanner.scan() would. Only the blocks of the
+     * requested columns are read.
+     */
+    public void scan(Collection<? extends TabularColumnScanner.ColumnConsumer> consumers) throws IOException {
+        for (TabularColumnScanner.ColumnConsumer consumer : consumers) {
+            ColumnCursor cursor = openColumn(consumer.getColumn());
+            for (int i = 0; i < numCases; i++) {
+                consumer.accept(i, cursor.next());
+            }
+        }
+    }
+
+    /**
+     * Writes a tab-delimited subset of the file, with the columns in the
+     * order requested, exactly as TabularSubsetGenerator.subsetFile() would
+     * produce it from the tab file.
+     */
+    public void subset(List<Integer> columns, OutputStream out) throws IOException {
+        ColumnCursor[] cursors = new ColumnCursor[columns.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = openColumn(columns.get(i));
+        }
+
+        byte[] tab = "\t".getBytes(StandardCharsets.UTF_8);
+        byte[] newline = "\n".getBytes(StandardCharsets.UTF_8);
+
+        if (headerNames != null) {
+            for (int i = 0; i < cursors.length; i++) {
+                if (i > 0) {
+                    out.write(tab);
+                }
+                out.write(headerNames[columns.get(i)].getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(newline);
+        }
+
+        for (int row = 0; row < numCases; row++) {
+            for (int i = 0; i < cursors.length; i++) {
+                if (i > 0) {
+                    out.write(tab);
+                }
+                cursors[i].writeNext(out);
+            }
+            out.write(newline);
+        }
+    }
+
+    public ColumnCursor openColumn(int column) throws IOException {
+        if (column < 0 || column >= numColumns) {
+            throw new IOException("Column " + column + " is out of range (0-" + (numColumns - 1) + ")");
+        }
+        switch (encodings[column]) {
+            case ENCODING_LONG:
+            case ENCODING_DOUBLE:
+                return new NumericColumnCursor(blockOffsets[column], encodings[column]);
+            case ENCODING_TOKENS:
+                return new TokenColumnCursor(blockOffsets[column]);
+            default:
+                throw new IOException("Unknown column encoding " + encodings[column] + " for column " + column);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Sequential reader of the values of one column.
+     */
+    public abstract class ColumnCursor {
+        protected int row = 0;
+
+        /**
+         * @return the next value, as it appears in the tab file
+         */
+        public abstract String next() throws IOException;
+
+        void writeNext(OutputStream out) throws IOException {
+            out.write(next().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private class NumericColumnCursor extends ColumnCursor {
+        private final long bitmapOffset;
+        private final long valuesOffset;
+        private final boolean isLong;
+        private ByteBuffer bitmapChunk;
+        private ByteBuffer valuesChunk;
+        private int chunkStart = -1;
+
+        NumericColumnCursor(long blockOffset, byte encoding) {
+            this.bitmapOffset = blockOffset;
+            this.valuesOffset = blockOffset + bitmapLength(numCases);
+            this.isLong = encoding == ENCODING_LONG;
+        }
+
+        @Override
+        public String next() throws IOException {
+            if (row >= numCases) {
+                throw new IOException("Attempted to read past the last case");
+            }
+            if (chunkStart < 0 || row >= chunkStart + ROWS_PER_CHUNK) {
+                chunkStart = row;
+                int rows = Math.min(ROWS_PER_CHUNK, numCases - row);
+                // (the chunks always start on a byte boundary of the bitmap,
+                // since ROWS_PER_CHUNK is a multiple of 8)
+                bitmapChunk = source.read(bitmapOffset + chunkStart / 8, bitmapLength(rows));
+                valuesChunk = source.read(valuesOffset + 8L * chunkStart, 8 * rows);
+            }
+            int i = row - chunkStart;
+            row++;
+            if ((bitmapChunk.get(bitmapChunk.position() + i / 8) & (1 << (i % 8))) != 0) {
+                return "";
+            }
+            int position = valuesChunk.position() + 8 * i;
+            return isLong ? Long.toString(valuesChunk.getLong(position)) : Double.toString(valuesChunk.getDouble(position));
+        }
+    }
+
+    private class TokenColumnCursor extends ColumnCursor {
+        private final long offsetsOffset;
+        private final long bytesOffset;
+        private long[] offsets;
+        private ByteBuffer bytesChunk;
+        private int chunkStart = -1;
+
+        TokenColumnCursor(long blockOffset) {
+            this.offsetsOffset = blockOffset;
+            this.bytesOffset = blockOffset + 8L * (numCases + 1);
+        }
+
+        private int position() throws IOException {
+            if (row >= numCases) {
+                throw new IOException("Attempted to read past the last case");
+            }
+            if (chunkStart < 0 || row >= chunkStart + ROWS_PER_CHUNK) {
+                chunkStart = row;
+                int rows = Math.min(ROWS_PER_CHUNK, numCases - row);
+                ByteBuffer offsetsChunk = source.read(offsetsOffset + 8L * chunkStart, 8 * (rows + 1));
+                offsets = new long[rows + 1];
+                offsetsChunk.asLongBuffer().get(offsets);
+                long length = offsets[rows] - offsets[0];
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Column chunk too large to read");
+                }
+                bytesChunk = source.read(bytesOffset + offsets[0], (int) length);
+            }
+            return row++ - chunkStart;
+        }
+
+        @Override
+        public String next() throws IOException {
+            int i = position();
+            int start = (int) (offsets[i] - offsets[0]);
+            int length = (int) (offsets[i + 1] - offsets[i]);
+            ByteBuffer token = bytesChunk.duplicate();
+            token.position(bytesChunk.position() + start);
+            token.limit(bytesChunk.position() + start + length);
+            return StandardCharsets.UTF_8.decode(token).toString();
+        }
+
+        @Override
+        void writeNext(OutputStream out) throws IOException {
+            // no need to decode the raw tokens just to encode them again:
+            int i = position();
+            int start = (int) (offsets[i] - offsets[0]);
+            int length = (int) (offsets[i + 1] - offsets[i]);
+            if (bytesChunk.hasArray()) {
+                out.write(bytesChunk.array(), bytesChunk.arrayOffset() + bytesChunk.position() + start, length);
+            } else {
+                byte[] token = new byte[length];
+                bytesChunk.get(bytesChunk.position() + start, token);
+                out.write(token);
+            }
+        }
+    }
+
+    private static int bitmapLength(int rows) {
+        return (rows + 7) / 8;
+    }
+
+    /*
+     * Byte sources:
+     */
+
+    interface ByteSource extends Closeable {
+        /**
+         * @return a buffer positioned at the first of the requested bytes
+         */
+        ByteBuffer read(long offset, int length) throws IOException;
+    }
+
+    /**
+     * Local files are memory-mapped; as a whole, if small enough, or one
+     * region at a time otherwise.
+     */
+    static class MappedFileSource implements ByteSource {
+        private final FileChannel channel;
+        private final MappedByteBuffer mapped;
+
+        MappedFileSource(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            mapped = channel.size() <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()) : null;
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException {
+            if (mapped != null) {
+                return mapped.slice((int) offset, length);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Remote aux objects are read with ranged requests, via
+     * StorageIO.getAuxFileAsInputStream(tag, offset, length).
+     */
+    static class RangedAuxObjectSource implements ByteSource {
+        private final StorageIO<DataFile> storageIO;
+        private final String auxItemTag;
+
+        RangedAuxObjectSource(StorageIO<DataFile> storageIO, String auxItemTag) {
+            this.storageIO = storageIO;
+            this.auxItemTag = auxItemTag;
+        }
+
+        @Override
+        public ByteBuffer read(long offset, int length) throws IOException {
+            if (length == 0) {
+                return ByteBuffer.allocate(0);
+            }
+            try (InputStream in = storageIO.getAuxFileAsInputStream(auxItemTag, offset, length)) {
+                if (in == null) {
+                    throw new IOException("Failed to open the aux object " + auxItemTag);
+                }
+                byte[] bytes = in.readNBytes(length);
+                if (bytes.length != length) {
+                    throw new IOException("Short read from the aux object " + auxItemTag + " (" + bytes.length + " of " + length + " bytes at offset " + offset + ")");
+                }
+                return ByteBuffer.wrap(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /*
+     * Creating the columnar file:
+     */
+
+    /**
+     * Creates the columnar copy of a tab-delimited file. The tab file is
+     * read once for every group of columns that fits in the memory budget
+     * (i.e., once, for most files).
+     */
+    public static void create(File tabFile, int numColumns, int numCases, boolean storedWithVariableHeader, File outFile) throws IOException {
+        String headerLine = null;
+        if (storedWithVariableHeader) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(tabFile), StandardCharsets.UTF_8))) {
+                headerLine = reader.readLine();
+            }
+            if (headerLine == null) {
+                throw new IOException("Failed to read the variable name header line from the tab-delimited file!");
+            }
+        }
+
+        byte[] encodings = new byte[numColumns];
+        long[] blockOffsets = new long[numColumns];
+        long[] blockLengths = new long[numColumns];
+
+        long indexLength = FIXED_HEADER_LENGTH + (long) numColumns * INDEX_ENTRY_LENGTH;
+        long position = indexLength;
+
+        TabularColumnScanner scanner = new TabularColumnScanner(numCases, storedWithVariableHeader);
+
+        long estimatedBytesPerColumn = tabFile.length() / Math.max(1, numColumns) + 8L * (numCases + 1);
+        int columnsPerGroup = (int) Math.max(1, Math.min(numColumns, WRITE_BUFFER_BUDGET / Math.max(1, estimatedBytesPerColumn)));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile), 65536))) {
+            // placeholder for the index; it will be filled in once the
+            // offsets of the blocks are known:
+            out.write(new byte[(int) indexLength]);
+
+            for (int groupStart = 0; groupStart < numColumns; groupStart += columnsPerGroup) {
+                List<TokenCollector> group = new ArrayList<>();
+                for (int column = groupStart; column < Math.min(numColumns, groupStart + columnsPerGroup); column++) {
+                    group.add(new TokenCollector(column, numCases));
+                }
+                try (FileInputStream in = new FileInputStream(tabFile)) {
+                    scanner.scan(in, group);
+                }
+                for (TokenCollector collector : group) {
+                    if (collector.tooLarge) {
+                        throw new IOException("Column " + collector.column + " has more than " + MAX_COLUMN_BYTES + " bytes of values");
+                    }
+                }
+                for (TokenCollector collector : group) {
+                    encodings[collector.column] = collector.getEncoding();
+                    blockOffsets[collector.column] = position;
+                    long length = collector.writeBlock(out);
+                    blockLengths[collector.column] = length;
+                    position += length;
+                }
+            }
+
+            long headerOffset = position;
+            long headerLength = 0;
+            if (headerLine != null) {
+                byte[] headerBytes = headerLine.getBytes(StandardCharsets.UTF_8);
+                out.write(headerBytes);
+                headerLength = headerBytes.length;
+            }
+            out.flush();
+
+            try (RandomAccessFile raf = new RandomAccessFile(outFile, "rw")) {
+                ByteBuffer index = ByteBuffer.allocate((int) indexLength);
+                index.put(MAGIC);
+                index.putInt(numColumns);
+                index.putLong(numCases);
+                index.putLong(headerOffset);
+                index.putLong(headerLength);
+                for (int i = 0; i < numColumns; i++) {
+                    index.put(encodings[i]);
+                    index.putLong(blockOffsets[i]);
+                    index.putLong(blockLengths[i]);
+                }
+                raf.write(index.array());
+            }
+        }
+        logger.fine("created columnar file for " + numColumns + " columns, " + numCases + " cases; " + outFile.length() + " bytes");
+    }
+
+    /**
+     * Collects the raw tokens of a column, keeping track of whether all of
+     * them can be stored in one of the primitive encodings.
+     */
+    private static class TokenCollector implements TabularColumnScanner.ColumnConsumer {
+        private final int column;
+        private final long[] offsets;
+        private byte[] bytes = new byte[1024];
+        private int length = 0;
+        private boolean longCandidate = true;
+        private boolean doubleCandidate = true;
+        // set (and nothing more collected) once the values do not fit in
+        // the array
+        private boolean tooLarge = false;
+
+        TokenCollector(int column, int numCases) {
+            this.column = column;
+            this.offsets = new long[numCases + 1];
+        }
+
+        @Override
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            if (tooLarge) {
+                return;
+            }
+            // (empty tokens are the missing values, in any encoding)
+            if (!token.isEmpty()) {
+                if (longCandidate) {
+                    try {
+                        longCandidate = Long.toString(Long.parseLong(token)).equals(token);
+                    } catch (NumberFormatException nfe) {
+                        longCandidate = false;
+                    }
+                }
+                if (doubleCandidate) {
+                    try {
+                        doubleCandidate = Double.toString(Double.parseDouble(token)).equals(token);
+                    } catch (NumberFormatException nfe) {
+                        doubleCandidate = false;
+                    }
+                }
+            }
+            byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+            long needed = (long) length + tokenBytes.length;
+            if (needed > MAX_COLUMN_BYTES) {
+                tooLarge = true;
+                bytes = null;
+                return;
+            }
+            if (needed > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(MAX_COLUMN_BYTES, Math.max(2L * bytes.length, needed)));
+            }
+            System.arraycopy(tokenBytes, 0, bytes, length, tokenBytes.length);
+            length += tokenBytes.length;
+            offsets[caseIndex + 1] = length;
+        }
+
+        byte getEncoding() {
+            if (longCandidate) {
+                return ENCODING_LONG;
+            }
+            return doubleCandidate ? ENCODING_DOUBLE : ENCODING_TOKENS;
+        }
+
+        long writeBlock(DataOutputStream out) throws IOException {
+            int numCases = offsets.length - 1;
+            byte encoding = getEncoding();
+            if (encoding == ENCODING_TOKENS) {
+                for (long offset : offsets) {
+                    out.writeLong(offset);
+                }
+                out.write(bytes, 0, length);
+                return 8L * offsets.length + length;
+            }
+
+            byte[] bitmap = new byte[bitmapLength(numCases)];
+            for (int i = 0; i < numCases; i++) {
+                if (offsets[i + 1] == offsets[i]) {
+                    bitmap[i / 8] |= (byte) (1 << (i % 8));
+                }
+            }
+            out.write(bitmap);
+            for (int i = 0; i < numCases; i++) {
+                int start = (int) offsets[i];
+                int end = (int) offsets[i + 1];
+                if (start == end) {
+                    out.writeLong(0L);
+                } else {
+                    String token = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                    if (encoding == ENCODING_LONG) {
+                        out.writeLong(Long.parseLong(token));
+                    } else {
+                        out.writeDouble(Double.parseDouble(token));
+                    }
+                }
+            }
+            return bitmap.length + 8L * numCases;
+        }
+    }
+}
@@ -19,49 +19,96 @@
 */
 package edu.harvard.iq.dataverse.dataaccess;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.InputStream;
 import java.io.IOException;
 
 
 import edu.harvard.iq.dataverse.DataFile;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 
 /**
+ * Writes a zipped bundle of files to a stream, as it goes.
+ *
+ * Content that is compressed already (zip, gzip, images, Parquet etc.) is
+ * not deflated again: small files are written as STORED entries, the others
+ * with no compression. Bundles over 4GB, or with more than 65535 files, are
+ * written in the ZIP64 format.
+ *
+ * When told which files come next (see {@link #prefetch}), the zipper opens
+ * them ahead of time, a few at a time, and reads the small ones in full, so
+ * that the round trips to remote storage (S3, Swift) overlap with the
+ * writing of the bundle instead of adding up.
  *
  * @author Leonid Andreev
  */
-public class DataFileZipper {
+public class DataFileZipper implements AutoCloseable {
     
     private static final Logger logger = Logger.getLogger(DataFileZipper.class.getCanonicalName());
     private static final String MANIFEST_FILE_NAME = "MANIFEST.TXT";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> PRECOMPRESSED_EXTENSIONS = Set.of(
+            "zip", "gz", "tgz", "bz2", "xz", "7z", "zst", "rar", "jar",
+            "jpg", "jpeg", "png", "gif", "webp", "mp3", "mp4", "m4a", "mov", "avi", "mkv",
+            "parquet", "docx", "xlsx", "pptx", "odt", "ods", "odp");
+    private static final Set<String> PRECOMPRESSED_MIME_TYPES = Set.of(
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-bzip2",
+            "application/x-xz", "application/x-7z-compressed", "application/zstd", "application/vnd.rar",
+            "application/java-archive", "application/vnd.apache.parquet", "application/x-parquet");
     
     private OutputStream outputStream = null; 
     private ZipOutputStream zipOutputStream = null;
     
-    private List<String> fileNameList = null; // the list of file names to check for duplicates
+    private Set<String> fileNames = null; // the file names, to check for duplicates
     private List<Long> zippedFilesList = null; // list of successfully zipped files, to update guestbooks and download counts (not yet implemented)
     
-    private String fileManifest = "";
+    private StringBuilder fileManifest = new StringBuilder();
     
     private Set<String> zippedFolders = null; 
 
+    // the files to open ahead of time, see prefetch()
+    private List<DataFile> prefetchFiles = null;
+    private boolean prefetchOriginals;
+    private int prefetchCount;
+    private int prefetchMaxSize;
+    private int nextToPrefetch;
+    private ExecutorService prefetchExecutor = null;
+    private final Deque<PrefetchedFile> prefetched = new ArrayDeque<>();
+
     public DataFileZipper() {
-        fileNameList = new ArrayList<>();
+        fileNames = new HashSet<>();
         zippedFilesList = new ArrayList<>(); 
         zippedFolders = new HashSet<>();
     }
     
     public DataFileZipper(OutputStream outputStream) {
         this.outputStream = outputStream;
-        fileNameList = new ArrayList<>();
+        fileNames = new HashSet<>();
         zippedFilesList = new ArrayList<>();
         zippedFolders = new HashSet<>();
     }
@@ -75,11 +122,11 @@ public class DataFileZipper {
     }
     
     public void setFileManifest(String fileManifest) {
-        this.fileManifest = fileManifest;
+        this.fileManifest = fileManifest == null ? null : new StringBuilder(fileManifest);
     }
     
     public String getFileManifest() {
-        return this.fileManifest; 
+        return fileManifest == null ? null : fileManifest.toString();
     }
     
     public void openZipStream() throws IOException {
@@ -88,6 +135,39 @@ public class DataFileZipper {
         }
         this.zipOutputStream = new ZipOutputStream(outputStream);
     }
+
+    /**
+     * Tells the zipper which files are going to be added next, in that order,
+     * so that it can open them ahead of time. Files may still be left out
+     * (e.g. once the bundle is over the size limit); what was read of them is
+     * then dropped.
+     *
+     * @param count how many files are opened ahead of time; 0 or less to
+     * open each file only when it is added
+     * @param maxSize files up to that size are read in full ahead of time
+     * (so, up to count times that much is held in memory); of the larger
+     * ones, only that much is.
+     */
+    public void prefetch(List<DataFile> dataFiles, boolean getOriginal, int count, int maxSize) {
+        if (count <= 0 || dataFiles.size() < 2) {
+            return;
+        }
+        discardPrefetched();
+        prefetchFiles = dataFiles;
+        prefetchOriginals = getOriginal;
+        prefetchCount = count;
+        prefetchMaxSize = Math.max(0, maxSize);
+        nextToPrefetch = 0;
+        if (prefetchExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+            prefetchExecutor = Executors.newFixedThreadPool(count, runnable -> {
+                Thread thread = new Thread(runnable, "zip-prefetch-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        fillPrefetched();
+    }
     
     public long addFileToZipStream(DataFile dataFile) throws IOException {
         return addFileToZipStream(dataFile, false);
@@ -100,94 +180,39 @@ public class DataFileZipper {
 
         boolean createManifest = fileManifest != null;
         
-        DataAccessRequest daReq = new DataAccessRequest();
-        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
-
-        if (accessObject != null) {
-            Boolean gotOriginal = false;
-            if(getOriginal) {
-                StoredOriginalFile sof = new StoredOriginalFile();
-                StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
-                if(null != tempAccessObject) { //If there is an original, use it
-                    gotOriginal = true;
-                    accessObject = tempAccessObject; 
-                } 
-            }
-            if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
-                accessObject.open();
+        try (OpenedFile openedFile = takeOpenedFile(dataFile, getOriginal)) {
+            if (openedFile == null) {
+                return 0L;
             }
 
             long byteSize = 0;
 
-            String fileName = accessObject.getFileName();
-            String mimeType = accessObject.getMimeType();
+            String fileName = openedFile.fileName;
+            String mimeType = openedFile.mimeType;
             if (mimeType == null || mimeType.equals("")) {
                 mimeType = "application/octet-stream";
             }
 
             //if (sizeTotal + fileSize < sizeLimit) {
-            Boolean Success = true;
-
-            InputStream instream = accessObject.getInputStream();
-            if (instream == null) {
+            if (!openedFile.isReadable()) {
                 if (createManifest) {
                     addToManifest(fileName
                             + " (" + mimeType
                             + ") COULD NOT be downloaded because an I/O error has occured. \r\n");
                 }
-
-                Success = false;
             } else {
                 // If any of the files have non-empty DirectoryLabels we'll 
                 // use them to re-create the folders in the Zipped bundle:
-                String folderName = dataFile.getFileMetadata().getDirectoryLabel(); 
-                if (folderName != null) {
-                    // If any of the saved folder names start with with slashes,
-                    // we want to remove them: 
-                    // (i.e., ///foo/bar will become foo/bar)
-                    while (folderName.startsWith("/")) {
-                        folderName = folderName.substring(1);
-                    }
-                    if (!"".equals(folderName)) {
-                        if (!zippedFolders.contains(folderName)) {
-                            ZipEntry d = new ZipEntry(folderName + "/");
-                            zipOutputStream.putNextEntry(d);
-                            zipOutputStream.closeEntry();
-                            zippedFolders.add(folderName);
-                        }
-                        fileName = folderName + "/" + fileName;
-                    }
+                String folderName = getZipFolderName(dataFile.getFileMetadata().getDirectoryLabel());
+                if (folderName != null && !zippedFolders.contains(folderName)) {
+                    ZipEntry d = new ZipEntry(folderName + "/");
+                    zipOutputStream.putNextEntry(d);
+                    zipOutputStream.closeEntry();
+                    zippedFolders.add(folderName);
                 }
                 
-                String zipEntryName = checkZipEntryName(fileName);
-                
-                ZipEntry e = new ZipEntry(zipEntryName);
-                logger.fine("created new zip entry for " + zipEntryName);
-
-                zipOutputStream.putNextEntry(e);
-
-                // before writing out any bytes from the input stream, flush
-                // any extra content, such as the variable header for the 
-                // subsettable files:
-                String varHeaderLine = accessObject.getVarHeader();
-                if (varHeaderLine != null) {
-                    zipOutputStream.write(varHeaderLine.getBytes());
-                    byteSize += (varHeaderLine.getBytes().length);
-                }
-
-                byte[] data = new byte[8192];
-
-                int i = 0;
-                while ((i = instream.read(data)) > 0) {
-                    zipOutputStream.write(data, 0, i);
-                    logger.fine("wrote " + i + " bytes;");
-
-                    byteSize += i;
-                    zipOutputStream.flush();
-                }
-                instream.close();
-                zipOutputStream.closeEntry();
-                logger.fine("closed zip entry for " + zipEntryName);
+                String zipEntryName = getUniqueZipEntryName(folderName, fileName, fileNames);
+                byteSize = writeEntry(zipEntryName, openedFile, isPrecompressed(openedFile.fileName, mimeType));
 
                 if (createManifest) {
                     addToManifest(zipEntryName + " (" + mimeType + ") " + byteSize + " bytes.\r\n");
@@ -202,7 +227,161 @@ public class DataFileZipper {
             //}
             return byteSize;
         }
-        return 0L;
+    }
+
+    /**
+     * Writes one entry. Content read in full that is compressed already goes
+     * in as is (STORED, which needs its size and CRC up front); when only
+     * part of it was read ahead, it is deflated with no compression instead.
+     *
+     * @return the number of bytes of the entry
+     */
+    private long writeEntry(String zipEntryName, OpenedFile openedFile, boolean precompressed) throws IOException {
+        ZipEntry e = new ZipEntry(zipEntryName);
+        boolean noCompression = false;
+        if (precompressed && openedFile.isReadInFull()) {
+            CRC32 crc = new CRC32();
+            crc.update(openedFile.content);
+            e.setMethod(ZipEntry.STORED);
+            e.setSize(openedFile.content.length);
+            e.setCompressedSize(openedFile.content.length);
+            e.setCrc(crc.getValue());
+        } else if (precompressed) {
+            noCompression = true;
+            zipOutputStream.setLevel(Deflater.NO_COMPRESSION);
+        }
+        logger.fine("created new zip entry for " + zipEntryName);
+
+        zipOutputStream.putNextEntry(e);
+        long byteSize = 0;
+        try {
+            if (openedFile.isReadInFull()) {
+                zipOutputStream.write(openedFile.content);
+                byteSize = openedFile.content.length;
+            } else {
+                try (InputStream instream = openedFile.getInputStream()) {
+                    byte[] data = new byte[COPY_BUFFER_SIZE];
+                    int i;
+                    while ((i = instream.read(data)) > 0) {
+                        zipOutputStream.write(data, 0, i);
+                        byteSize += i;
+                    }
+                }
+            }
+            zipOutputStream.closeEntry();
+        } finally {
+            if (noCompression) {
+                zipOutputStream.setLevel(Deflater.DEFAULT_COMPRESSION);
+            }
+        }
+        logger.fine("closed zip entry for " + zipEntryName + ", " + byteSize + " bytes");
+        return byteSize;
+    }
+
+    /**
+     * @return whether the content is compressed already, going by the type or
+     * the extension of the file
+     */
+    static boolean isPrecompressed(String fileName, String mimeType) {
+        if (mimeType != null) {
+            String type = mimeType.toLowerCase(Locale.ROOT);
+            int parameters = type.indexOf(';');
+            if (parameters != -1) {
+                type = type.substring(0, parameters).trim();
+            }
+            if (PRECOMPRESSED_MIME_TYPES.contains(type) || type.startsWith("video/")
+                    || type.equals("image/jpeg") || type.equals("image/png") || type.equals("image/gif") || type.equals("image/webp")
+                    || type.startsWith("application/vnd.openxmlformats-officedocument.")) {
+                return true;
+            }
+        }
+        if (fileName != null) {
+            int extensionIndex = fileName.lastIndexOf('.');
+            if (extensionIndex != -1) {
+                return PRECOMPRESSED_EXTENSIONS.contains(fileName.substring(extensionIndex + 1).toLowerCase(Locale.ROOT));
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the file, opened ahead of time if it was among the next ones to
+     * prefetch, otherwise opened now; null if it has no storage
+     */
+    private OpenedFile takeOpenedFile(DataFile dataFile, boolean getOriginal) throws IOException {
+        if (prefetchFiles == null || getOriginal != prefetchOriginals) {
+            return openFile(dataFile, getOriginal, 0);
+        }
+        // drop the files opened ahead of time that were left out of the bundle:
+        while (!prefetched.isEmpty() && !Objects.equals(prefetched.peekFirst().dataFile.getId(), dataFile.getId())) {
+            prefetched.removeFirst().discard();
+        }
+        if (prefetched.isEmpty()) {
+            // not opened ahead of time; go on from the file after it
+            int index = nextToPrefetch;
+            while (index < prefetchFiles.size() && !Objects.equals(prefetchFiles.get(index).getId(), dataFile.getId())) {
+                index++;
+            }
+            if (index == prefetchFiles.size()) {
+                return openFile(dataFile, getOriginal, 0);
+            }
+            nextToPrefetch = index + 1;
+            fillPrefetched();
+            return openFile(dataFile, getOriginal, 0);
+        }
+        PrefetchedFile next = prefetched.removeFirst();
+        fillPrefetched();
+        return next.get();
+    }
+
+    private void fillPrefetched() {
+        while (prefetched.size() < prefetchCount && nextToPrefetch < prefetchFiles.size()) {
+            DataFile dataFile = prefetchFiles.get(nextToPrefetch++);
+            // The DataFile is not to be used by more than one thread at a time;
+            // load what opening it needs now, in this thread:
+            if (dataFile.isTabularData()) {
+                dataFile.getDataTable().getOriginalFileFormat();
+            }
+            prefetched.addLast(new PrefetchedFile(dataFile,
+                    prefetchExecutor.submit(() -> openFile(dataFile, prefetchOriginals, prefetchMaxSize))));
+        }
+    }
+
+    private void discardPrefetched() {
+        while (!prefetched.isEmpty()) {
+            prefetched.removeFirst().discard();
+        }
+    }
+
+    /**
+     * Opens a file (or its saved original), and reads up to readAheadSize
+     * bytes of it.
+     *
+     * @return null if the file has no storage
+     */
+    OpenedFile openFile(DataFile dataFile, boolean getOriginal, int readAheadSize) throws IOException {
+        DataAccessRequest daReq = new DataAccessRequest();
+        StorageIO<DataFile> accessObject = DataAccess.getStorageIO(dataFile, daReq);
+
+        if (accessObject == null) {
+            return null;
+        }
+        Boolean gotOriginal = false;
+        if(getOriginal) {
+            StoredOriginalFile sof = new StoredOriginalFile();
+            StorageIO<DataFile> tempAccessObject = sof.retreive(accessObject);
+            if(null != tempAccessObject) { //If there is an original, use it
+                gotOriginal = true;
+                accessObject = tempAccessObject; 
+            } 
+        }
+        if(!gotOriginal) { //if we didn't get this from sof.retreive we have to open it
+            accessObject.open();
+        }
+        OpenedFile openedFile = new OpenedFile(dataFile, accessObject.getFileName(), accessObject.getMimeType(),
+                accessObject.getInputStream(), accessObject.getVarHeader());
+        openedFile.readAhead(readAheadSize);
+        return openedFile;
     }
     
     public void finalizeZipStream() throws IOException {
@@ -214,39 +393,190 @@ public class DataFileZipper {
         
         if (createManifest) {
             String manifestEntry = MANIFEST_FILE_NAME; 
-            while (fileNameList.contains(manifestEntry)) {
+            while (fileNames.contains(manifestEntry)) {
                 manifestEntry = "0".concat(manifestEntry); 
             }
             
             ZipEntry e = new ZipEntry(manifestEntry);
 
             zipOutputStream.putNextEntry(e);
-            zipOutputStream.write(fileManifest.getBytes());
+            zipOutputStream.write(fileManifest.toString().getBytes());
             zipOutputStream.closeEntry();
         }
 
         zipOutputStream.flush();
         zipOutputStream.close();
+        close();
+    }
+
+    /**
+     * Stops opening files ahead of time, and closes those that were. Does not
+     * close the zip stream (see {@link #finalizeZipStream()}).
+     */
+    @Override
+    public void close() {
+        discardPrefetched();
+        prefetchFiles = null;
+        if (prefetchExecutor != null) {
+            prefetchExecutor.shutdownNow();
+            prefetchExecutor = null;
+        }
     }
     
     public void addToManifest(String manifestEntry) {
-        this.fileManifest = this.fileManifest + manifestEntry; 
+        if (this.fileManifest == null) {
+            this.fileManifest = new StringBuilder();
+        }
+        this.fileManifest.append(manifestEntry); 
     }
     
-    // check for and process duplicates:
-    private String checkZipEntryName(String originalName) {
+    /**
+     * @return the folder of a file in a zipped bundle: its directory label,
+     * without any leading slashes (i.e., ///foo/bar becomes foo/bar), or null
+     * if it is to go at the top
+     */
+    public static String getZipFolderName(String directoryLabel) {
+        if (directoryLabel == null) {
+            return null;
+        }
+        String folderName = directoryLabel;
+        while (folderName.startsWith("/")) {
+            folderName = folderName.substring(1);
+        }
+        return folderName.isEmpty() ? null : folderName;
+    }
+
+    /**
+     * The name of the entry of a file in a zipped bundle, under its folder.
+     * Names already taken by other entries (as listed in {@code names}, which
+     * the name is added to) get a numbered suffix. Used for both the streamed
+     * and the pre-laid-out ({@link ZipBundle}) bundles, so that the same files
+     * get the same names.
+     *
+     * @param directoryLabel the directory label of the file, as is or as
+     * returned by {@link #getZipFolderName(String)}
+     */
+    public static String getUniqueZipEntryName(String directoryLabel, String fileName, Set<String> names) {
+        String folderName = getZipFolderName(directoryLabel);
+        String originalName = folderName == null ? fileName : folderName + "/" + fileName;
         String name = originalName;
         int fileSuffix = 1;
         int extensionIndex = originalName.lastIndexOf(".");
 
-        while (fileNameList.contains(name)) {
+        while (names.contains(name)) {
             if (extensionIndex != -1) {
                 name = originalName.substring(0, extensionIndex) + "_" + fileSuffix++ + originalName.substring(extensionIndex);
             } else {
                 name = originalName + "_" + fileSuffix++;
             }
         }
-        fileNameList.add(name);
+        names.add(name);
         return name;
     }
+
+    /**
+     * A file opened for the bundle, with what was read of it ahead of time:
+     * all of it, or the first part of it.
+     */
+    static class OpenedFile implements Closeable {
+        final DataFile dataFile;
+        final String fileName;
+        final String mimeType;
+        private InputStream inputStream;
+        // the variable header of a tabular file comes first:
+        private byte[] content;
+        private boolean readInFull = false;
+
+        OpenedFile(DataFile dataFile, String fileName, String mimeType, InputStream inputStream, String varHeader) {
+            this.dataFile = dataFile;
+            this.fileName = fileName;
+            this.mimeType = mimeType;
+            this.inputStream = inputStream;
+            this.content = varHeader == null ? new byte[0] : varHeader.getBytes(StandardCharsets.UTF_8);
+        }
+
+        boolean isReadable() {
+            return inputStream != null || readInFull;
+        }
+
+        boolean isReadInFull() {
+            return readInFull;
+        }
+
+        void readAhead(int size) throws IOException {
+            if (inputStream == null || size <= 0) {
+                return;
+            }
+            byte[] start = inputStream.readNBytes(size + 1);
+            byte[] read = new byte[content.length + Math.min(start.length, size)];
+            System.arraycopy(content, 0, read, 0, content.length);
+            System.arraycopy(start, 0, read, content.length, read.length - content.length);
+            if (start.length <= size) {
+                inputStream.close();
+                inputStream = null;
+                readInFull = true;
+                content = read;
+            } else {
+                content = read;
+                // put back the byte read past the limit:
+                inputStream = new SequenceInputStream(new ByteArrayInputStream(start, size, 1), inputStream);
+            }
+        }
+
+        /**
+         * @return the content not read ahead of time, after what was
+         */
+        InputStream getInputStream() {
+            InputStream rest = inputStream;
+            inputStream = null;
+            return content.length == 0 ? rest : new SequenceInputStream(new ByteArrayInputStream(content), rest);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (inputStream != null) {
+                inputStream.close();
+                inputStream = null;
+            }
+        }
+    }
+
+    private static class PrefetchedFile {
+        final DataFile dataFile;
+        final Future<OpenedFile> openedFile;
+
+        PrefetchedFile(DataFile dataFile, Future<OpenedFile> openedFile) {
+            this.dataFile = dataFile;
+            this.openedFile = openedFile;
+        }
+
+        OpenedFile get() throws IOException {
+            try {
+                return openedFile.get();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                }
+                throw new IOException("Failed to open file " + dataFile.getId(), ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while opening file " + dataFile.getId(), ex);
+            }
+        }
+
+        /**
+         * Closes the file if it was opened already, otherwise keeps it from
+         * being opened.
+         */
+        void discard() {
+            if (openedFile.cancel(false)) {
+                return;
+            }
+            try (OpenedFile file = get()) {
+                // closed
+            } catch (IOException | CancellationException ex) {
+                logger.log(Level.FINE, "Failed to open file " + dataFile.getId() + " ahead of time", ex);
+            }
+        }
+    }
 }
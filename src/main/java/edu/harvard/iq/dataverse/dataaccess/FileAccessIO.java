@@ -301,6 +301,17 @@ public class FileAccessIO<T extends DvObject> extends StorageIO<T> {
         return auxPath.toFile().length();
     }
     
+    @Override
+    public Long getAuxObjectLastModified(String auxItemTag) throws IOException {
+        Path auxPath = getAuxObjectAsPath(auxItemTag);
+        
+        if (!Files.exists(auxPath)) {
+            return null;
+        }
+        
+        return Files.getLastModifiedTime(auxPath).toMillis();
+    }
+    
     @Override
     public Path getAuxObjectAsPath(String auxItemTag) throws IOException {
 
@@ -1,5 +1,8 @@
 package edu.harvard.iq.dataverse.dataaccess;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Range {
 
     // Used to set the offset, how far to skip into the file.
@@ -25,4 +28,75 @@ public class Range {
         return end - start + 1;
     }
 
+    /**
+     * @param range "bytes=0-10" for example. Found in the "Range" HTTP header.
+     * @param fileSize File size in bytes.
+     * @return the range asked for, or none if {@code range} is null
+     * @throws RuntimeException on any problems processing the Range header.
+     */
+    public static List<Range> parse(String range, long fileSize) {
+        // Inspired by https://gist.github.com/davinkevin/b97e39d7ce89198774b4
+        // via https://stackoverflow.com/questions/28427339/how-to-implement-http-byte-rangeHeader-requests-in-spring-mvc/28479001#28479001
+        List<Range> ranges = new ArrayList<>();
+
+        if (range != null) {
+            // Technically this regex supports multiple ranges.
+            // Below we have a check to enforce a single range.
+            if (!range.matches("^bytes=\\d*-\\d*(,\\d*-\\d*)*$")) {
+                throw new RuntimeException("The format is bytes=<range-start>-<range-end> where start and end are optional.");
+            }
+
+            // The 6 is to remove "bytes="
+            String[] parts = range.substring(6).split(",");
+            if (parts.length > 1) {
+                // Only allow a single range.
+                throw new RuntimeException("Only one range is allowed.");
+            }
+            // This loop is here in case we ever want to support multiple ranges.
+            for (String part : parts) {
+
+                long start = getRangeStart(part);
+                long end = getRangeEnd(part);
+
+                if (start == -1) {
+                    // start does not exist. Base start off of how many bytes from end.
+                    start = fileSize - end;
+                    end = fileSize - 1;
+                } else if (end == -1 || end > fileSize - 1) {
+                    // Set end when it doesn't exist.
+                    // Also, automatically set end to size of file if end is beyond
+                    // the file size (rather than throwing an error).
+                    end = fileSize - 1;
+                }
+
+                if (start > end) {
+                    throw new RuntimeException("Start is larger than end or size of file.");
+                }
+
+                ranges.add(new Range(start, end));
+
+            }
+        }
+
+        return ranges;
+    }
+
+    /**
+     * @return Return a positive long or -1 if start does not exist.
+     */
+    private static long getRangeStart(String part) {
+        // Get everything before the "-".
+        String start = part.substring(0, part.indexOf("-"));
+        return (start.length() > 0) ? Long.parseLong(start) : -1;
+    }
+
+    /**
+     * @return Return a positive long or -1 if end does not exist.
+     */
+    private static long getRangeEnd(String part) {
+        // Get everything after the "-".
+        String end = part.substring(part.indexOf("-") + 1, part.length());
+        return (end.length() > 0) ? Long.parseLong(end) : -1;
+    }
+
 }
@@ -309,6 +309,19 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return super.getInputStream();
     }
     
+    @Override
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String mainFileKey = getMainFileKey();
+        try {
+            return s3.getObject(new GetObjectRequest(bucketName, mainFileKey).withRange(offset, offset + length - 1)).getObjectContent();
+        } catch (SdkClientException sce) {
+            throw new IOException("Cannot get S3 object " + mainFileKey + " (ranged read; " + sce.getMessage() + ")");
+        }
+    }
+
     @Override
     public Channel getChannel() throws IOException {
         if(super.getChannel()==null) {
@@ -493,6 +506,19 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         return -1;
     }
 
+    @Override
+    public Long getAuxObjectLastModified(String auxItemTag) throws IOException {
+        open();
+        String destinationKey = getDestinationKey(auxItemTag);
+        try {
+            return s3.getObjectMetadata(bucketName, destinationKey).getLastModified().getTime();
+        } catch (AmazonClientException ase) {
+            // including when there is no such object
+            logger.fine("Caught an AmazonClientException in S3AccessIO.getAuxObjectLastModified:    " + ase.getMessage());
+        }
+        return null;
+    }
+
     @Override
     public Path getAuxObjectAsPath(String auxItemTag) throws UnsupportedDataAccessOperationException {
         throw new UnsupportedDataAccessOperationException("S3AccessIO: this is a remote DataAccess IO object, its Aux objects have no local filesystem Paths associated with it.");
@@ -794,6 +820,24 @@ public class S3AccessIO<T extends DvObject> extends StorageIO<T> {
         }
     }
 
+    @Override
+    public InputStream getAuxFileAsInputStream(String auxItemTag, long offset, long length) throws IOException {
+        if (length <= 0) {
+            return InputStream.nullInputStream();
+        }
+        String destinationKey = getDestinationKey(auxItemTag);
+        try {
+            S3Object s3object = s3.getObject(new GetObjectRequest(bucketName, destinationKey).withRange(offset, offset + length - 1));
+            if (s3object != null) {
+                return s3object.getObjectContent();
+            }
+            return null;
+        } catch (AmazonClientException ase) {
+            logger.fine("Caught an AmazonClientException in S3AccessIO.getAuxFileAsInputStream() (ranged read; object not cached?):    " + ase.getMessage());
+            return null;
+        }
+    }
+
     // Rename this getAuxiliaryKey(), maybe? 
     String getDestinationKey(String auxItemTag) throws IOException {
         if (isDirectAccess() || dvObject instanceof DataFile) {
@@ -26,6 +26,7 @@ import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.util.FileUtil;
+import org.apache.commons.io.input.BoundedInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -152,10 +153,44 @@ public abstract class StorageIO<T extends DvObject> {
     // as inputstream
     public abstract InputStream getAuxFileAsInputStream(String auxItemTag) throws IOException;
 
+    /**
+     * Retrieves a byte range of an auxiliary object. This default
+     * implementation skips to the offset in the full stream (which, for the
+     * local filesystem, is a seek); drivers that can request ranges from the
+     * remote storage natively (S3) override it.
+     * 
+     * @param auxItemTag String representing this Auxiliary type ("extension")
+     * @param offset the first byte of the range
+     * @param length the length of the range
+     * @return InputStream with (at most) length bytes, or null if the aux object does not exist
+     * @throws IOException if anything goes wrong.
+     */
+    public InputStream getAuxFileAsInputStream(String auxItemTag, long offset, long length) throws IOException {
+        InputStream in = getAuxFileAsInputStream(auxItemTag);
+        if (in == null) {
+            return null;
+        }
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException ioex) {
+            in.close();
+            throw ioex;
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     public abstract Channel openAuxChannel(String auxItemTag, DataAccessOption... option) throws IOException;
 
     public abstract long getAuxObjectSize(String auxItemTag) throws IOException;
 
+    /**
+     * @return when the auxiliary object was last written, in milliseconds
+     * since the epoch, or null if it does not exist or the driver cannot tell.
+     */
+    public Long getAuxObjectLastModified(String auxItemTag) throws IOException {
+        return null;
+    }
+
     public abstract Path getAuxObjectAsPath(String auxItemTag) throws IOException;
 
     public abstract boolean isAuxObjectCached(String auxItemTag) throws IOException;
@@ -305,6 +340,33 @@ public abstract class StorageIO<T extends DvObject> {
         return in;
     }
 
+    /**
+     * Retrieves a byte range of the main object, once open() has been called.
+     * As with {@link #getAuxFileAsInputStream(String, long, long)}, this
+     * default implementation skips to the offset in the full stream, and
+     * drivers that can request ranges from the remote storage natively (S3)
+     * override it. The variable header of a tabular file is not part of the
+     * object.
+     *
+     * @param offset the first byte of the range
+     * @param length the length of the range
+     * @return InputStream with (at most) length bytes
+     * @throws IOException if anything goes wrong.
+     */
+    public InputStream getInputStream(long offset, long length) throws IOException {
+        InputStream in = getInputStream();
+        if (in == null) {
+            throw new IOException("Could not skip into InputStream because it is null");
+        }
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException ioex) {
+            in.close();
+            throw ioex;
+        }
+        return new BoundedInputStream(in, length);
+    }
+
     public OutputStream getOutputStream() throws IOException {
         return out;
     }
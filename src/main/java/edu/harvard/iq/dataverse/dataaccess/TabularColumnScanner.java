@@ -0,0 +1,457 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads a generated tab-delimited data file once and hands the values of
+ * any number of columns to per-column consumers. This replaces the pattern
+ * of calling the TabularSubsetGenerator.subset*Vector() methods once per
+ * variable, each of which re-reads (and re-splits) the entire file.
+ *
+ * The column vectors below store the values in primitive arrays, with the
+ * missing values recorded in a BitSet; they are parsed with exactly the
+ * same rules as the corresponding subset*Vector() methods, so the summary
+ * statistics and UNFs calculated on them are identical.
+ */
+public class TabularColumnScanner {
+
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    private final int numCases;
+    private final boolean skipHeader;
+
+    public TabularColumnScanner(int numCases, boolean skipHeader) {
+        this.numCases = numCases;
+        this.skipHeader = skipHeader;
+    }
+
+    /**
+     * Something that receives the values of one column, in case order.
+     */
+    public interface ColumnConsumer {
+        int getColumn();
+        void accept(int caseIndex, String token);
+    }
+
+    /**
+     * Reads the tab file once, dispatching the values of the requested columns
+     * to their consumers. The stream is closed when done.
+     *
+     * @param in the tab-delimited file
+     * @param consumers one or more consumers; multiple consumers may share the same column
+     * @throws IOException if the file is unreadable, or if its structure does
+     * not match the expected number of cases/columns.
+     */
+    public void scan(InputStream in, Collection<? extends ColumnConsumer> consumers) throws IOException {
+        if (consumers == null || consumers.isEmpty()) {
+            return;
+        }
+
+        int maxColumn = -1;
+        for (ColumnConsumer consumer : consumers) {
+            maxColumn = Math.max(maxColumn, consumer.getColumn());
+        }
+
+        // Index the consumers by column; so that each line is walked only
+        // once, and only as far as the last column anyone is interested in:
+        ColumnConsumer[][] byColumn = new ColumnConsumer[maxColumn + 1][];
+        for (ColumnConsumer consumer : consumers) {
+            ColumnConsumer[] existing = byColumn[consumer.getColumn()];
+            if (existing == null) {
+                byColumn[consumer.getColumn()] = new ColumnConsumer[]{consumer};
+            } else {
+                ColumnConsumer[] extended = Arrays.copyOf(existing, existing.length + 1);
+                extended[existing.length] = consumer;
+                byColumn[consumer.getColumn()] = extended;
+            }
+        }
+
+        try (LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            if (skipHeader) {
+                if (reader.readLine() == null) {
+                    throw new IOException("Failed to read the variable name header line from the tab-delimited file!");
+                }
+            }
+
+            for (int caseIndex = 0; caseIndex < numCases; caseIndex++) {
+                String line = reader.readLine();
+                if (line == null) {
+                    throw new IOException("Tab file has fewer rows than the stored number of cases!");
+                }
+                dispatchLine(line, caseIndex, byColumn);
+            }
+
+            int tailIndex = numCases;
+            String nextLine;
+            while ((nextLine = reader.readLine()) != null) {
+                if (!"".equals(nextLine)) {
+                    throw new IOException("Tab file has more nonempty rows than the stored number of cases (" + numCases + ")! current index: " + tailIndex);
+                }
+                tailIndex++;
+            }
+        }
+    }
+
+    private void dispatchLine(String line, int caseIndex, ColumnConsumer[][] byColumn) throws IOException {
+        int start = 0;
+        int column = 0;
+        int lastColumn = byColumn.length - 1;
+
+        while (column <= lastColumn) {
+            int end = line.indexOf('\t', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            ColumnConsumer[] consumers = byColumn[column];
+            if (consumers != null) {
+                String token = line.substring(start, end);
+                for (ColumnConsumer consumer : consumers) {
+                    consumer.accept(caseIndex, token);
+                }
+            }
+            if (end == line.length() && column < lastColumn) {
+                throw new IOException("Tab file line " + caseIndex + " has fewer columns (" + (column + 1) + ") than expected!");
+            }
+            start = end + 1;
+            column++;
+        }
+    }
+
+    /**
+     * Splits the input on '\n' only, the same way the Scanner-based subsetting
+     * methods do (i.e., a stray '\r' stays part of the value).
+     */
+    private static class LineReader implements AutoCloseable {
+        private final Reader reader;
+        private final char[] buffer = new char[READ_BUFFER_SIZE];
+        private int position = 0;
+        private int limit = 0;
+        private final StringBuilder line = new StringBuilder();
+
+        LineReader(Reader reader) {
+            this.reader = new BufferedReader(reader, READ_BUFFER_SIZE);
+        }
+
+        String readLine() throws IOException {
+            line.setLength(0);
+            boolean readAnything = false;
+            while (true) {
+                if (position >= limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        return readAnything ? line.toString() : null;
+                    }
+                }
+                readAnything = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                line.append(buffer, start, position - start);
+                if (position < limit) {
+                    // skip the newline:
+                    position++;
+                    return line.toString();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /*
+     * Column vectors:
+     */
+
+    public abstract static class ColumnVector implements ColumnConsumer {
+        protected final int column;
+        protected final BitSet missing;
+
+        protected ColumnVector(int column, int numCases) {
+            this.column = column;
+            this.missing = new BitSet(numCases);
+        }
+
+        @Override
+        public int getColumn() {
+            return column;
+        }
+
+        public BitSet getMissing() {
+            return missing;
+        }
+
+        public boolean isMissing(int caseIndex) {
+            return missing.get(caseIndex);
+        }
+    }
+
+    public static class DoubleColumnVector extends ColumnVector {
+        private final double[] values;
+
+        public DoubleColumnVector(int column, int numCases) {
+            super(column, numCases);
+            values = new double[numCases];
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            // Same rules as in TabularSubsetGenerator.subsetDoubleVector():
+            if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+                values[caseIndex] = Double.POSITIVE_INFINITY;
+            } else if ("-inf".equalsIgnoreCase(token)) {
+                values[caseIndex] = Double.NEGATIVE_INFINITY;
+            } else if (token.isEmpty()) {
+                missing.set(caseIndex);
+            } else {
+                try {
+                    values[caseIndex] = Double.parseDouble(token);
+                } catch (NumberFormatException ex) {
+                    missing.set(caseIndex);
+                }
+            }
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        public Double[] toBoxedArray() {
+            Double[] ret = new Double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ret[i] = missing.get(i) ? null : values[i];
+            }
+            return ret;
+        }
+    }
+
+    public static class FloatColumnVector extends ColumnVector {
+        private final float[] values;
+
+        public FloatColumnVector(int column, int numCases) {
+            super(column, numCases);
+            values = new float[numCases];
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            // Same rules as in TabularSubsetGenerator.subsetFloatVector():
+            if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+                values[caseIndex] = Float.POSITIVE_INFINITY;
+            } else if ("-inf".equalsIgnoreCase(token)) {
+                values[caseIndex] = Float.NEGATIVE_INFINITY;
+            } else if (token.isEmpty()) {
+                missing.set(caseIndex);
+            } else {
+                try {
+                    values[caseIndex] = Float.parseFloat(token);
+                } catch (NumberFormatException ex) {
+                    missing.set(caseIndex);
+                }
+            }
+        }
+
+        public float[] getValues() {
+            return values;
+        }
+
+        public Float[] toBoxedArray() {
+            Float[] ret = new Float[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ret[i] = missing.get(i) ? null : values[i];
+            }
+            return ret;
+        }
+    }
+
+    public static class LongColumnVector extends ColumnVector {
+        private final long[] values;
+
+        public LongColumnVector(int column, int numCases) {
+            super(column, numCases);
+            values = new long[numCases];
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            // Same as in TabularSubsetGenerator.subsetLongVector() - anything
+            // that isn't a valid long is assumed to be a missing value:
+            try {
+                values[caseIndex] = Long.parseLong(token);
+            } catch (NumberFormatException ex) {
+                missing.set(caseIndex);
+            }
+        }
+
+        public long[] getValues() {
+            return values;
+        }
+
+        public Long[] toBoxedArray() {
+            Long[] ret = new Long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                ret[i] = missing.get(i) ? null : values[i];
+            }
+            return ret;
+        }
+    }
+
+    public static class StringColumnVector extends ColumnVector {
+        private final String[] values;
+
+        public StringColumnVector(int column, int numCases) {
+            super(column, numCases);
+            values = new String[numCases];
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            String value = parseString(token);
+            if (value == null) {
+                missing.set(caseIndex);
+            }
+            values[caseIndex] = value;
+        }
+
+        /**
+         * @return the values, with the missing values represented as nulls.
+         */
+        public String[] getValues() {
+            return values;
+        }
+    }
+
+    /**
+     * Counts the occurrences of the distinct values in a column, without
+     * storing the column itself. Numeric values are counted as Floats, the
+     * way IngestServiceBean.produceFrequencies() has always done it.
+     */
+    public static class FrequencyCounter implements ColumnConsumer {
+        private final int column;
+        private final boolean numeric;
+        private final Map<Object, Double> frequencies = new HashMap<>();
+
+        public FrequencyCounter(int column, boolean numeric) {
+            this.column = column;
+            this.numeric = numeric;
+        }
+
+        @Override
+        public int getColumn() {
+            return column;
+        }
+
+        @Override
+        public void accept(int caseIndex, String token) {
+            Object value = numeric ? parseFloat(token) : parseString(token);
+            if (value != null) {
+                frequencies.merge(value, 1D, Double::sum);
+            }
+        }
+
+        public boolean isNumeric() {
+            return numeric;
+        }
+
+        public Map<Object, Double> getFrequencies() {
+            return frequencies;
+        }
+    }
+
+    /**
+     * Same rules as in TabularSubsetGenerator.subsetFloatVector().
+     * @return the parsed value, or null if missing
+     */
+    static Float parseFloat(String token) {
+        if ("inf".equalsIgnoreCase(token) || "+inf".equalsIgnoreCase(token)) {
+            return Float.POSITIVE_INFINITY;
+        } else if ("-inf".equalsIgnoreCase(token)) {
+            return Float.NEGATIVE_INFINITY;
+        } else if (token.isEmpty()) {
+            return null;
+        }
+        try {
+            return Float.valueOf(token);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Restores a string value as stored in a tab file; equivalent to the
+     * regex-based unescaping in TabularSubsetGenerator.subsetStringVector(),
+     * but done in a single pass over the characters.
+     * @return the value, or null if missing (an empty, unquoted token)
+     */
+    static String parseString(String token) {
+        if (token.isEmpty()) {
+            // An empty string is a string missing value!
+            // An empty string in quotes is an empty string!
+            return null;
+        }
+        int start = 0;
+        int end = token.length();
+        // Strip the outer quotes:
+        if (token.charAt(0) == '"') {
+            start++;
+        }
+        if (end > start && token.charAt(end - 1) == '"') {
+            end--;
+        }
+
+        if (token.indexOf('\\', start) < 0) {
+            return token.substring(start, end);
+        }
+
+        StringBuilder sb = new StringBuilder(end - start);
+        int i = start;
+        while (i < end) {
+            char c = token.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                char next = token.charAt(i + 1);
+                switch (next) {
+                    case '\\':
+                        sb.append('\\');
+                        i += 2;
+                        continue;
+                    case '"':
+                        sb.append('"');
+                        i += 2;
+                        continue;
+                    case 't':
+                        sb.append('\t');
+                        i += 2;
+                        continue;
+                    case 'n':
+                        sb.append('\n');
+                        i += 2;
+                        continue;
+                    case 'r':
+                        sb.append('\r');
+                        i += 2;
+                        continue;
+                    default:
+                        break;
+                }
+            }
+            sb.append(c);
+            i++;
+        }
+        return sb.toString();
+    }
+}
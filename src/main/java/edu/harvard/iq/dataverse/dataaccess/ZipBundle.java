@@ -0,0 +1,435 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A zip file whose layout is worked out before any of it is written, so that
+ * its size is known up front, and any byte range of it can be produced on its
+ * own: the files are STORED (not compressed), with their sizes known, and
+ * the same files always make the same bundle. This is what lets a download
+ * of a whole dataset be resumed, or fetched over several connections.
+ *
+ * The CRC-32 of a file is only needed after its content, in the data
+ * descriptor that follows it and in the central directory at the end. It is
+ * worked out as the content goes by, and handed to a {@link CrcListener} to
+ * be kept, so that it is only worked out once. A range that needs the CRC of
+ * a file whose content it does not start with would have to read all of that
+ * file first, so ranges are best only offered once {@link #hasAllCrcs()}.
+ *
+ * The ZIP64 extensions are used for the files, and the bundles, that need
+ * them (over 4 GB, more than 65535 files).
+ */
+public class ZipBundle {
+
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int DATA_DESCRIPTOR = 0x08074b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR = 0x07064b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    // bit 3: the CRC is in the data descriptor; bit 11: the names are UTF-8
+    private static final int FLAGS = 0x0008 | 0x0800;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Opens the content of a file, from the given offset on.
+     */
+    @FunctionalInterface
+    public interface Content {
+        InputStream open(long offset) throws IOException;
+    }
+
+    /**
+     * Told about the CRC-32 values worked out while writing the bundle.
+     */
+    @FunctionalInterface
+    public interface CrcListener {
+        void crcComputed(Entry entry, long crc);
+    }
+
+    public static class Entry {
+        private final Object key;
+        private final String name;
+        private final byte[] nameBytes;
+        private final long size;
+        private final Content content;
+        private Long crc;
+
+        // the layout:
+        private boolean zip64;
+        private long headerOffset;
+        private long dataOffset;
+        private long descriptorOffset;
+        private long endOffset;
+
+        /**
+         * @param key what the entry stands for (e.g. the id of the file), for
+         * the {@link CrcListener}
+         * @param crc the CRC-32 of the content, if known already; null if not
+         */
+        public Entry(Object key, String name, long size, Long crc, Content content) {
+            this.key = key;
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            this.size = size;
+            this.crc = crc;
+            this.content = content;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public Long getCrc() {
+            return crc;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final long dosTime;
+    private final long centralDirectoryOffset;
+    private final long centralDirectorySize;
+    private final boolean zip64End;
+    private final long size;
+    private CrcListener crcListener = (entry, crc) -> { };
+
+    /**
+     * @param lastModified the time given to all the entries (in UTC, so that
+     * the bundle is the same whatever the time zone of the server)
+     */
+    public ZipBundle(List<Entry> entries, Instant lastModified) {
+        this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        this.dosTime = toDosTime(lastModified);
+        long offset = 0;
+        long directorySize = 0;
+        for (Entry entry : this.entries) {
+            entry.zip64 = entry.size >= ZIP64_MAGIC || offset >= ZIP64_MAGIC;
+            entry.headerOffset = offset;
+            entry.dataOffset = offset + 30 + entry.nameBytes.length + (entry.zip64 ? 20 : 0);
+            entry.descriptorOffset = entry.dataOffset + entry.size;
+            entry.endOffset = entry.descriptorOffset + (entry.zip64 ? 24 : 16);
+            offset = entry.endOffset;
+            directorySize += 46 + entry.nameBytes.length + (entry.zip64 ? 28 : 0);
+        }
+        this.centralDirectoryOffset = offset;
+        this.centralDirectorySize = directorySize;
+        this.zip64End = this.entries.size() >= 0xFFFF || centralDirectoryOffset >= ZIP64_MAGIC || centralDirectorySize >= ZIP64_MAGIC;
+        this.size = centralDirectoryOffset + centralDirectorySize + (zip64End ? 56 + 20 : 0) + 22;
+    }
+
+    public void setCrcListener(CrcListener crcListener) {
+        this.crcListener = crcListener;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * @return whether the CRCs of all the entries are known, so that any
+     * range of the bundle can be written without reading more than it
+     */
+    public boolean hasAllCrcs() {
+        for (Entry entry : entries) {
+            if (entry.crc == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size of the bundle, in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return a tag that changes whenever the bytes of the bundle would: it
+     * is worked out from the keys, names and sizes of the entries, and their
+     * time (the CRC of a given content never changes)
+     */
+    public String getEtag() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Entry entry : entries) {
+                digest.update((entry.key + ":" + entry.size + ":").getBytes(StandardCharsets.UTF_8));
+                digest.update(entry.nameBytes);
+                digest.update((byte) 0);
+            }
+            digest.update(Long.toString(dosTime).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes the whole bundle.
+     */
+    public void write(OutputStream out) throws IOException {
+        write(out, 0, size);
+    }
+
+    /**
+     * Writes the bytes of the bundle from start (included) to end (excluded).
+     */
+    public void write(OutputStream out, long start, long end) throws IOException {
+        if (start < 0 || end > size || start > end) {
+            throw new IllegalArgumentException("Invalid range " + start + "-" + end + " of a bundle of " + size + " bytes");
+        }
+        for (Entry entry : entries) {
+            if (entry.endOffset <= start) {
+                continue;
+            }
+            if (entry.headerOffset >= end) {
+                return;
+            }
+            writePart(out, localFileHeader(entry), entry.headerOffset, start, end);
+            writeData(out, entry, start, end);
+            if (entry.descriptorOffset < end && entry.endOffset > start) {
+                writePart(out, dataDescriptor(entry), entry.descriptorOffset, start, end);
+            }
+        }
+        long offset = centralDirectoryOffset;
+        for (Entry entry : entries) {
+            if (offset >= end) {
+                return;
+            }
+            int recordSize = 46 + entry.nameBytes.length + (entry.zip64 ? 28 : 0);
+            if (offset + recordSize > start) {
+                writePart(out, centralDirectoryHeader(entry), offset, start, end);
+            }
+            offset += recordSize;
+        }
+        if (offset < end) {
+            writePart(out, endOfCentralDirectory(), offset, start, end);
+        }
+    }
+
+    /**
+     * Writes the part of a header (etc.), found at the given offset, that is
+     * between start and end.
+     */
+    private static void writePart(OutputStream out, byte[] bytes, long offset, long start, long end) throws IOException {
+        long from = Math.max(start, offset);
+        long to = Math.min(end, offset + bytes.length);
+        if (from < to) {
+            out.write(bytes, (int) (from - offset), (int) (to - from));
+        }
+    }
+
+    private void writeData(OutputStream out, Entry entry, long start, long end) throws IOException {
+        long from = Math.max(start, entry.dataOffset);
+        long to = Math.min(end, entry.descriptorOffset);
+        if (from >= to) {
+            return;
+        }
+        // the CRC can be worked out along the way when the content is
+        // written from its start:
+        CRC32 crc = entry.crc == null && from == entry.dataOffset ? new CRC32() : null;
+        long left = to - from;
+        try (InputStream in = entry.content.open(from - entry.dataOffset)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (left > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                if (read < 0) {
+                    throw new IOException("The content of " + entry.name + " is shorter than the " + entry.size + " bytes expected");
+                }
+                out.write(buffer, 0, read);
+                if (crc != null) {
+                    crc.update(buffer, 0, read);
+                }
+                left -= read;
+            }
+        }
+        if (crc != null && to == entry.descriptorOffset) {
+            setCrc(entry, crc.getValue());
+        }
+    }
+
+    private long getCrc(Entry entry) throws IOException {
+        if (entry.crc == null) {
+            CRC32 crc = new CRC32();
+            long left = entry.size;
+            try (InputStream in = entry.content.open(0)) {
+                byte[] buffer = new byte[COPY_BUFFER_SIZE];
+                while (left > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, left));
+                    if (read < 0) {
+                        throw new IOException("The content of " + entry.name + " is shorter than the " + entry.size + " bytes expected");
+                    }
+                    crc.update(buffer, 0, read);
+                    left -= read;
+                }
+            }
+            setCrc(entry, crc.getValue());
+        }
+        return entry.crc;
+    }
+
+    private void setCrc(Entry entry, long crc) {
+        entry.crc = crc;
+        crcListener.crcComputed(entry, crc);
+    }
+
+    private byte[] localFileHeader(Entry entry) {
+        Bytes header = new Bytes();
+        header.int32(LOCAL_FILE_HEADER);
+        header.int16(entry.zip64 ? VERSION_ZIP64 : VERSION);
+        header.int16(FLAGS);
+        header.int16(0); // STORED
+        header.int32(dosTime);
+        // the CRC is in the data descriptor, but the sizes are known:
+        header.int32(0);
+        header.int32(entry.zip64 ? ZIP64_MAGIC : entry.size);
+        header.int32(entry.zip64 ? ZIP64_MAGIC : entry.size);
+        header.int16(entry.nameBytes.length);
+        header.int16(entry.zip64 ? 20 : 0);
+        header.bytes(entry.nameBytes);
+        if (entry.zip64) {
+            header.int16(0x0001);
+            header.int16(16);
+            header.int64(entry.size);
+            header.int64(entry.size);
+        }
+        return header.toByteArray();
+    }
+
+    private byte[] dataDescriptor(Entry entry) throws IOException {
+        Bytes descriptor = new Bytes();
+        descriptor.int32(DATA_DESCRIPTOR);
+        descriptor.int32(getCrc(entry));
+        if (entry.zip64) {
+            descriptor.int64(entry.size);
+            descriptor.int64(entry.size);
+        } else {
+            descriptor.int32(entry.size);
+            descriptor.int32(entry.size);
+        }
+        return descriptor.toByteArray();
+    }
+
+    private byte[] centralDirectoryHeader(Entry entry) throws IOException {
+        Bytes header = new Bytes();
+        header.int32(CENTRAL_DIRECTORY_HEADER);
+        header.int16(entry.zip64 ? VERSION_ZIP64 : VERSION); // made by
+        header.int16(entry.zip64 ? VERSION_ZIP64 : VERSION); // needed
+        header.int16(FLAGS);
+        header.int16(0); // STORED
+        header.int32(dosTime);
+        header.int32(getCrc(entry));
+        header.int32(entry.zip64 ? ZIP64_MAGIC : entry.size);
+        header.int32(entry.zip64 ? ZIP64_MAGIC : entry.size);
+        header.int16(entry.nameBytes.length);
+        header.int16(entry.zip64 ? 28 : 0);
+        header.int16(0); // comment
+        header.int16(0); // disk
+        header.int16(0); // internal attributes
+        header.int32(0); // external attributes
+        header.int32(entry.zip64 ? ZIP64_MAGIC : entry.headerOffset);
+        header.bytes(entry.nameBytes);
+        if (entry.zip64) {
+            header.int16(0x0001);
+            header.int16(24);
+            header.int64(entry.size);
+            header.int64(entry.size);
+            header.int64(entry.headerOffset);
+        }
+        return header.toByteArray();
+    }
+
+    private byte[] endOfCentralDirectory() {
+        Bytes end = new Bytes();
+        if (zip64End) {
+            long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+            end.int32(ZIP64_END_OF_CENTRAL_DIRECTORY);
+            end.int64(44);
+            end.int16(VERSION_ZIP64);
+            end.int16(VERSION_ZIP64);
+            end.int32(0);
+            end.int32(0);
+            end.int64(entries.size());
+            end.int64(entries.size());
+            end.int64(centralDirectorySize);
+            end.int64(centralDirectoryOffset);
+
+            end.int32(ZIP64_END_OF_CENTRAL_DIRECTORY_LOCATOR);
+            end.int32(0);
+            end.int64(zip64EndOffset);
+            end.int32(1);
+        }
+        end.int32(END_OF_CENTRAL_DIRECTORY);
+        end.int16(0);
+        end.int16(0);
+        end.int16(zip64End ? 0xFFFF : entries.size());
+        end.int16(zip64End ? 0xFFFF : entries.size());
+        end.int32(zip64End ? ZIP64_MAGIC : centralDirectorySize);
+        end.int32(zip64End ? ZIP64_MAGIC : centralDirectoryOffset);
+        end.int16(0); // comment
+        return end.toByteArray();
+    }
+
+    private static long toDosTime(Instant time) {
+        LocalDateTime local = LocalDateTime.ofInstant(time, ZoneOffset.UTC);
+        if (local.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return ((long) (local.getYear() - 1980) << 25)
+                | ((long) local.getMonthValue() << 21)
+                | ((long) local.getDayOfMonth() << 16)
+                | ((long) local.getHour() << 11)
+                | ((long) local.getMinute() << 5)
+                | ((long) local.getSecond() >> 1);
+    }
+
+    /**
+     * Little-endian, as in zip files.
+     */
+    private static class Bytes extends ByteArrayOutputStream {
+        void int16(int value) {
+            write(value & 0xFF);
+            write((value >>> 8) & 0xFF);
+        }
+
+        void int32(long value) {
+            int16((int) (value & 0xFFFF));
+            int16((int) ((value >>> 16) & 0xFFFF));
+        }
+
+        void int64(long value) {
+            int32(value & 0xFFFFFFFFL);
+            int32(value >>> 32);
+        }
+
+        void bytes(byte[] bytes) {
+            write(bytes, 0, bytes.length);
+        }
+    }
+}
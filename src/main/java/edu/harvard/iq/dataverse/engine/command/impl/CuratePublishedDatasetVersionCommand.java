@@ -154,6 +154,7 @@ public class CuratePublishedDatasetVersionCommand extends AbstractDatasetCommand
 
         // Update modification time on the published version and the dataset
         updateVersion.setLastUpdateTime(getTimestamp());
+        updateVersion.updateDifferenceSummary();
         tempDataset.setModificationTime(getTimestamp());
         ctxt.em().merge(updateVersion);
         Dataset savedDataset = ctxt.em().merge(tempDataset);
@@ -162,6 +162,8 @@ public class FinalizeDatasetPublicationCommand extends AbstractPublishDatasetCom
         theDataset.getLatestVersion().setLastUpdateTime(getTimestamp());
         theDataset.setModificationTime(getTimestamp());
         theDataset.setFileAccessRequest(theDataset.getLatestVersion().getTermsOfUseAndAccess().isFileAccessRequest());
+        // for the versions table:
+        theDataset.getLatestVersion().updateDifferenceSummary();
         
         //Use dataset pub date (which may not be the current date for migrated datasets)
         updateFiles(new Timestamp(theDataset.getLatestVersion().getReleaseTime().getTime()), ctxt);
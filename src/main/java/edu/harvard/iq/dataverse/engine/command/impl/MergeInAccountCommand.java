@@ -10,12 +10,12 @@ import edu.harvard.iq.dataverse.DatasetLock;
 import edu.harvard.iq.dataverse.DatasetVersionUser;
 import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.GuestbookResponse;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.RoleAssignment;
 import edu.harvard.iq.dataverse.UserNotification;
 import edu.harvard.iq.dataverse.authorization.AuthenticatedUserLookup;
 import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUser;
 import edu.harvard.iq.dataverse.authorization.providers.oauth2.OAuth2TokenData;
-import edu.harvard.iq.dataverse.authorization.users.ApiToken;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
 import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
 import edu.harvard.iq.dataverse.confirmemail.ConfirmEmailData;
@@ -178,6 +178,10 @@ public class MergeInAccountCommand extends AbstractVoidCommand {
         ctxt.em().createNativeQuery("Delete from OAuth2TokenData where user_id ="+consumedAU.getId()).executeUpdate();
         
         ctxt.em().createNativeQuery("UPDATE explicitgroup_authenticateduser SET containedauthenticatedusers_id="+ongoingAU.getId()+" WHERE containedauthenticatedusers_id="+consumedAU.getId()).executeUpdate();
+
+        // The role assignments and group memberships were moved without going
+        // through the services that normally discard the cached permissions
+        PermissionCache.invalidateAll();
         
         ctxt.actionLog().changeUserIdentifierInHistory(consumedAU.getIdentifier(), ongoingAU.getIdentifier());
         
@@ -186,10 +190,7 @@ public class MergeInAccountCommand extends AbstractVoidCommand {
         //  authenticated user
         //  AuthenticatedUserLookup
         //  apiToken
-        ApiToken toRemove = ctxt.authentication().findApiTokenByUser(consumedAU);
-        if(null != toRemove) { //not all users have apiTokens
-            ctxt.em().remove(toRemove);
-        }
+        ctxt.authentication().removeApiToken(consumedAU); //not all users have apiTokens
         AuthenticatedUserLookup consumedAUL = consumedAU.getAuthenticatedUserLookup();
         ctxt.em().remove(consumedAUL);
         ctxt.em().remove(consumedAU);
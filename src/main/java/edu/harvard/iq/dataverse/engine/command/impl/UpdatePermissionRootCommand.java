@@ -1,6 +1,7 @@
 package edu.harvard.iq.dataverse.engine.command.impl;
 
 import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.PermissionCache;
 import edu.harvard.iq.dataverse.authorization.Permission;
 import edu.harvard.iq.dataverse.engine.command.AbstractCommand;
 import edu.harvard.iq.dataverse.engine.command.CommandContext;
@@ -33,7 +34,9 @@ public class UpdatePermissionRootCommand extends AbstractCommand<Dataverse> {
 
         } else {
 			dvoc.setPermissionRoot(newValue);
-            return ctxt.dataverses().save(dvoc);
+            Dataverse saved = ctxt.dataverses().save(dvoc);
+            PermissionCache.invalidateAll();
+            return saved;
 		}
 	}
 
@@ -15,7 +15,9 @@ import edu.harvard.iq.dataverse.FileMetadata;
 import edu.harvard.iq.dataverse.datavariable.VariableMetadata;
 import edu.harvard.iq.dataverse.datavariable.CategoryMetadata;
 import edu.harvard.iq.dataverse.datavariable.VarGroup;
+import edu.harvard.iq.dataverse.dataaccess.ColumnarTabularFile;
 import edu.harvard.iq.dataverse.dataaccess.DataConverter;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableRange;
@@ -592,8 +594,19 @@ public class DDIExportServiceBean {
     {
         // @todo: see the comment in the part of the code that calls this method
         try {
+            StorageIO<DataFile> storageIO = df.getStorageIO();
+            storageIO.open();
+            // The columnar copy of the file, if available, allows us to 
+            // only read the columns of the categorical variables: 
+            try (ColumnarTabularFile columnarFile = ColumnarTabularFile.open(storageIO)) {
+                if (columnarFile != null) {
+                    IngestServiceBean.produceFrequencies(columnarFile, vars);
+                    return;
+                }
+            }
+            
             DataConverter dc = new DataConverter();
-            File tabFile = dc.downloadFromStorageIO(df.getStorageIO());
+            File tabFile = dc.downloadFromStorageIO(storageIO);
 
             ingestService.produceFrequencies(tabFile, vars );
 
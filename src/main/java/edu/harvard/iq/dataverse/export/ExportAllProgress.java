@@ -0,0 +1,100 @@
+package edu.harvard.iq.dataverse.export;
+
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchProgress;
+import java.util.Date;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Live progress and throughput counters of an "export all" (or "reexport
+ * all") run.
+ */
+public class ExportAllProgress extends BatchProgress {
+
+    public static final String KIND = "exportAll";
+    public static final String DATASETS = "datasets";
+    public static final String DATASETS_EXPORTED = "datasetsExported";
+    public static final String DATASETS_UP_TO_DATE = "datasetsUpToDate";
+    public static final String FORMATS_UP_TO_DATE = "formatsUpToDate";
+    public static final String FAILURES = "failures";
+
+    private final boolean forceReExport;
+
+    private volatile long datasetsToCheck;
+
+    /**
+     * @param runStart when the run began; datasets exported since then are
+     * not exported again by a resumed run, even if {@code forceReExport}
+     */
+    public ExportAllProgress(boolean forceReExport, Date runStart) {
+        super(KIND, jobKey(forceReExport), runStart);
+        this.forceReExport = forceReExport;
+    }
+
+    /**
+     * Continues where a previous run left off.
+     */
+    public ExportAllProgress(BatchCheckpoint checkpoint) {
+        super(checkpoint);
+        this.forceReExport = isForceReExport(checkpoint);
+    }
+
+    public static String jobKey(boolean forceReExport) {
+        return forceReExport ? "reExportAll" : "exportAll";
+    }
+
+    public static boolean isForceReExport(BatchCheckpoint checkpoint) {
+        return jobKey(true).equals(checkpoint.getJobKey());
+    }
+
+    public boolean isForceReExport() {
+        return forceReExport;
+    }
+
+    /**
+     * @param datasetsToCheck the number of local datasets left to look at
+     * when this run (or resumed run) started
+     */
+    public void setDatasetsToCheck(long datasetsToCheck) {
+        this.datasetsToCheck = datasetsToCheck;
+    }
+
+    /**
+     * @param formatsUpToDate as returned by the export: the number of formats
+     * that did not need to be exported again, or null if the dataset as a
+     * whole did not need to be
+     */
+    public void datasetExported(Integer formatsUpToDate) {
+        if (formatsUpToDate == null) {
+            increment(DATASETS_UP_TO_DATE);
+        } else {
+            increment(DATASETS_EXPORTED);
+            add(FORMATS_UP_TO_DATE, formatsUpToDate);
+        }
+    }
+
+    public void datasetFailed() {
+        increment(FAILURES);
+    }
+
+    public JsonObjectBuilder toJson() {
+        long datasetsDone = getCount(DATASETS_EXPORTED) + getCount(DATASETS_UP_TO_DATE) + getCount(FAILURES);
+        long previousDatasetsDone = getTotal(DATASETS_EXPORTED) + getTotal(DATASETS_UP_TO_DATE) + getTotal(FAILURES) - datasetsDone;
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("forceReExport", forceReExport)
+                .add("finished", isFinished())
+                .add("elapsedSeconds", getElapsedMillis() / 1000)
+                .add("datasetsToCheck", previousDatasetsDone + datasetsToCheck)
+                .add("datasetsExported", getTotal(DATASETS_EXPORTED))
+                .add("datasetsUpToDate", getTotal(DATASETS_UP_TO_DATE))
+                .add("formatsUpToDate", getTotal(FORMATS_UP_TO_DATE))
+                .add("datasetsInProgress", getInProgress(DATASETS))
+                .add("failures", getTotal(FAILURES))
+                .add("datasetsPerSecond", getPerSecond(datasetsDone));
+        if (getLastId(DATASETS) != null) {
+            json.add("lastDatasetId", getLastId(DATASETS));
+        }
+        return json;
+    }
+}
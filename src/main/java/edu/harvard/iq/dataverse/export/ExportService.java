@@ -136,44 +136,9 @@ public class ExportService {
         // The DDI export is limited for restricted and actively embargoed files (no
         // data/file description sections).and when an embargo ends, we need to refresh
         // this export.
-        boolean clearCachedExport = false;
         if (formatName.equals(DDIExporter.PROVIDER_NAME) && (exportInputStream != null)) {
             // We want ddi and there was a cached version
-            LocalDate exportLocalDate = null;
-            Date lastExportDate = dataset.getLastExportTime();
-            // if lastExportDate == null, assume it's not set because were exporting for the
-            // first time now (e.g. during publish) and therefore no changes are needed
-            if (lastExportDate != null) {
-                exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-                logger.fine("Last export date: " + exportLocalDate.toString());
-                // Track which embargoes we've already checked
-                Set<Long> embargoIds = new HashSet<Long>();
-                // Check for all files in the latest released version
-                for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
-                    // ToDo? This loop is necessary because we have not stored the date when the
-                    // next embargo in this datasetversion will end. If we knew that (another
-                    // dataset/datasetversion column), we could make
-                    // one check that nextembargoEnd exists and is after the last export and before
-                    // now versus scanning through files until we potentially find such an embargo.
-                    Embargo e = fm.getDataFile().getEmbargo();
-                    if (e != null) {
-                        logger.fine("Datafile:  " + fm.getDataFile().getId());
-                        logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
-                    }
-                    if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
-                            && e.getDateAvailable().isBefore(LocalDate.now())) {
-                        logger.fine("Request that the ddi export be cleared.");
-                        // The file has been embargoed and the embargo ended after the last export and
-                        // before the current date, so we need to remove the cached DDI export and make
-                        // it refresh
-                        clearCachedExport = true;
-                        break;
-                    } else if (e != null) {
-                        logger.fine("adding embargo to checked list: " + e.getId());
-                        embargoIds.add(e.getId());
-                    }
-                }
-            }
+            boolean clearCachedExport = isCachedDdiExportOutdated(dataset);
             if (clearCachedExport) {
                 try {
                     exportInputStream.close();
@@ -207,6 +172,62 @@ public class ExportService {
 
     }
 
+    /**
+     * Finds the storage holding the cached export of a dataset in the given
+     * format, without reading it yet, so that the read (a round trip when the
+     * storage is remote) can be done elsewhere, e.g. in parallel with others -
+     * see the OAI server. Returns null if the cached export cannot be used as
+     * is; {@link #getExport(Dataset, String)} takes care of that case.
+     */
+    public StorageIO<Dataset> getCachedExportStorageIO(Dataset dataset, String formatName) throws IOException {
+        if (formatName.equals(DDIExporter.PROVIDER_NAME) && isCachedDdiExportOutdated(dataset)) {
+            return null;
+        }
+        return DataAccess.getStorageIO(dataset);
+    }
+
+    public static String getCachedExportName(String formatName) {
+        return "export_" + formatName + ".cached";
+    }
+
+    private boolean isCachedDdiExportOutdated(Dataset dataset) {
+        LocalDate exportLocalDate = null;
+        Date lastExportDate = dataset.getLastExportTime();
+        // if lastExportDate == null, assume it's not set because were exporting for the
+        // first time now (e.g. during publish) and therefore no changes are needed
+        if (lastExportDate != null) {
+            exportLocalDate = lastExportDate.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+            logger.fine("Last export date: " + exportLocalDate.toString());
+            // Track which embargoes we've already checked
+            Set<Long> embargoIds = new HashSet<Long>();
+            // Check for all files in the latest released version
+            for (FileMetadata fm : dataset.getLatestVersionForCopy().getFileMetadatas()) {
+                // ToDo? This loop is necessary because we have not stored the date when the
+                // next embargo in this datasetversion will end. If we knew that (another
+                // dataset/datasetversion column), we could make
+                // one check that nextembargoEnd exists and is after the last export and before
+                // now versus scanning through files until we potentially find such an embargo.
+                Embargo e = fm.getDataFile().getEmbargo();
+                if (e != null) {
+                    logger.fine("Datafile:  " + fm.getDataFile().getId());
+                    logger.fine("Embargo end date: " + e.getFormattedDateAvailable());
+                }
+                if (e != null && !embargoIds.contains(e.getId()) && e.getDateAvailable().isAfter(exportLocalDate)
+                        && e.getDateAvailable().isBefore(LocalDate.now())) {
+                    logger.fine("Request that the ddi export be cleared.");
+                    // The file has been embargoed and the embargo ended after the last export and
+                    // before the current date, so we need to remove the cached DDI export and make
+                    // it refresh
+                    return true;
+                } else if (e != null) {
+                    logger.fine("adding embargo to checked list: " + e.getId());
+                    embargoIds.add(e.getId());
+                }
+            }
+        }
+        return false;
+    }
+
     public String getExportAsString(Dataset dataset, String formatName) {
         InputStream inputStream = null;
         InputStreamReader inp = null;
@@ -241,10 +262,25 @@ public class ExportService {
     // the "chacheExport()" method that will save the produced output
     // in a file in the dataset directory, on each Exporter available.
     public void exportAllFormats(Dataset dataset) throws ExportException {
-        try {
-            clearAllCachedFormats(dataset);
-        } catch (IOException ex) {
-            Logger.getLogger(ExportService.class.getName()).log(Level.SEVERE, null, ex);
+        exportAllFormats(dataset, null);
+    }
+
+    /**
+     * Like {@link #exportAllFormats(Dataset)}, but if {@code upToDateAfter} is
+     * not null, the cached exports written after that time are kept as they
+     * are rather than produced again - e.g. those written by an "export all"
+     * that was interrupted half way through the formats of a dataset.
+     *
+     * @return the number of formats that were up to date
+     */
+    public int exportAllFormats(Dataset dataset, Date upToDateAfter) throws ExportException {
+        int upToDate = 0;
+        if (upToDateAfter == null) {
+            try {
+                clearAllCachedFormats(dataset);
+            } catch (IOException ex) {
+                Logger.getLogger(ExportService.class.getName()).log(Level.SEVERE, null, ex);
+            }
         }
 
         try {
@@ -256,6 +292,11 @@ public class ExportService {
 
             for (Exporter e : exporterMap.values()) {
                 String formatName = e.getFormatName();
+                if (upToDateAfter != null && isCachedExportNewerThan(dataset, formatName, upToDateAfter)) {
+                    logger.fine("Keeping the cached " + formatName + " export of dataset " + dataset.getId());
+                    upToDate++;
+                    continue;
+                }
                 if(e.getPrerequisiteFormatName().isPresent()) {
                     String prereqFormatName = e.getPrerequisiteFormatName().get();
                     try (InputStream preReqStream = getExport(dataset, prereqFormatName)) {
@@ -280,7 +321,26 @@ public class ExportService {
             throw new ExportException(
                     "Unknown runtime exception exporting metadata. " + (e.getMessage() == null ? "" : e.getMessage()));
         }
+        return upToDate;
+    }
 
+    /**
+     * @return whether the cached export in the given format was written after
+     * the given time; false if it does not exist, if the storage driver cannot
+     * tell when it was written, or if it has to be refreshed anyway.
+     */
+    private boolean isCachedExportNewerThan(Dataset dataset, String formatName, Date time) {
+        try {
+            StorageIO<Dataset> storageIO = getCachedExportStorageIO(dataset, formatName);
+            if (storageIO == null) {
+                return false;
+            }
+            Long lastModified = storageIO.getAuxObjectLastModified(getCachedExportName(formatName));
+            return lastModified != null && lastModified > time.getTime();
+        } catch (IOException ex) {
+            logger.fine("Could not tell when the " + formatName + " export of dataset " + dataset.getId() + " was cached: " + ex.getMessage());
+            return false;
+        }
     }
 
     public void clearAllCachedFormats(Dataset dataset) throws IOException {
@@ -444,7 +504,7 @@ public class ExportService {
         InputStream cachedExportInputStream = null;
 
         try {
-            cachedExportInputStream = dataAccess.getAuxFileAsInputStream("export_" + formatName + ".cached");
+            cachedExportInputStream = dataAccess.getAuxFileAsInputStream(getCachedExportName(formatName));
             return cachedExportInputStream;
         } catch (IOException ioex) {
             throw new IOException("IO Exception thrown exporting as " + "export_" + formatName + ".cached", ioex);
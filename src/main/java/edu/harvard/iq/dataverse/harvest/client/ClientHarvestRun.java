@@ -193,6 +193,56 @@ public class ClientHarvestRun implements Serializable {
         this.deletedDatasetCount = deletedDatasetCount;
     }
 
+    // The throughput of each stage of the harvest (see HarvestPipeline): 
+    // the records listed by ListIdentifiers and the time spent paging 
+    // through them; the records fetched and the time spent fetching them, 
+    // summed over the fetching threads; and the time spent importing them.
+    private Long listedRecordCount;
+    private Long fetchedRecordCount;
+    private Long listingMillis;
+    private Long fetchMillis;
+    private Long importMillis;
+
+    public Long getListedRecordCount() {
+        return listedRecordCount;
+    }
+
+    public void setListedRecordCount(Long listedRecordCount) {
+        this.listedRecordCount = listedRecordCount;
+    }
+
+    public Long getFetchedRecordCount() {
+        return fetchedRecordCount;
+    }
+
+    public void setFetchedRecordCount(Long fetchedRecordCount) {
+        this.fetchedRecordCount = fetchedRecordCount;
+    }
+
+    public Long getListingMillis() {
+        return listingMillis;
+    }
+
+    public void setListingMillis(Long listingMillis) {
+        this.listingMillis = listingMillis;
+    }
+
+    public Long getFetchMillis() {
+        return fetchMillis;
+    }
+
+    public void setFetchMillis(Long fetchMillis) {
+        this.fetchMillis = fetchMillis;
+    }
+
+    public Long getImportMillis() {
+        return importMillis;
+    }
+
+    public void setImportMillis(Long importMillis) {
+        this.importMillis = importMillis;
+    }
+
     @Override
     public int hashCode() {
         int hash = 0;
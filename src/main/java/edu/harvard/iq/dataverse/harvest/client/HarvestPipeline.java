@@ -0,0 +1,386 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+/**
+ * Runs a harvest in three stages that overlap: one thread pages through the
+ * identifiers (ListIdentifiers) of the remote server, a pool of threads
+ * fetches the records (GetRecord, or the native metadata API of a remote
+ * Dataverse) and the thread running the pipeline imports them, in the order
+ * they were listed. While a record is being imported, the next ones are
+ * being fetched already.
+ *
+ * The number of records fetched at the same time, and how many requests per
+ * second are sent to the remote server, are limited per harvesting client.
+ * The counters of each stage end up in the {@link ClientHarvestRun}.
+ *
+ * @param <H> the header of a record, as listed
+ * @param <R> the record, as fetched
+ */
+public class HarvestPipeline<H, R> implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(HarvestPipeline.class.getCanonicalName());
+
+    public interface Stages<H, R> {
+
+        /**
+         * @return whether the record needs to be fetched; if not (e.g. a
+         * deleted record), it goes straight to {@link #process}
+         */
+        default boolean isFetchNeeded(H header) {
+            return true;
+        }
+
+        /**
+         * Fetches a record. Called by several threads at the same time.
+         */
+        R fetch(H header) throws Exception;
+
+        /**
+         * Imports a record (or deletes it, etc.). Called by the thread running
+         * the pipeline, for one record at a time, in the order they were
+         * listed.
+         *
+         * @param record null if it was not fetched
+         * @param fetchFailure what fetching the record failed with, or null
+         */
+        void process(H header, R record, Exception fetchFailure) throws StopHarvestException;
+
+        /**
+         * Called before each record is processed.
+         */
+        default void checkIfStopping() throws StopHarvestException {
+        }
+
+        /**
+         * Called instead of {@link #process} for a record that was fetched,
+         * but is not going to be processed because the harvest was stopped,
+         * e.g. to delete the temporary file it was saved in. May be called by
+         * any of the threads, also after {@link HarvestPipeline#run} returned.
+         */
+        default void discard(H header, R record) {
+        }
+    }
+
+    // the states of a record being fetched:
+    private static final int PENDING = 0;
+    private static final int FETCHED = 1;
+    private static final int ABANDONED = 2;
+
+    private static final class Item<H, R> {
+        final H header;
+        // whether the record was handed over once fetched, or abandoned
+        // before that, when the harvest was stopped
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        volatile R fetched;
+        Future<R> record;
+
+        Item(H header) {
+            this.header = header;
+        }
+    }
+
+    private static final Item<?, ?> END = new Item<>(null);
+
+    private final int maxConcurrentRequests;
+    private final RateLimiter rateLimiter;
+    private final ExecutorService fetchers;
+
+    private final AtomicLong listed = new AtomicLong();
+    private final AtomicLong fetched = new AtomicLong();
+    private final AtomicLong fetchFailed = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong listingNanos = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+    private volatile boolean stopped;
+
+    /**
+     * @param maxConcurrentRequests how many records are fetched at the same
+     * time (at least 1)
+     * @param maxRequestsPerSecond how many fetches are started per second; 0
+     * or less for no limit
+     */
+    public HarvestPipeline(int maxConcurrentRequests, int maxRequestsPerSecond) {
+        this.maxConcurrentRequests = Math.max(1, maxConcurrentRequests);
+        this.rateLimiter = maxRequestsPerSecond > 0 ? new RateLimiter(maxRequestsPerSecond) : null;
+        AtomicInteger count = new AtomicInteger();
+        this.fetchers = Executors.newFixedThreadPool(this.maxConcurrentRequests, runnable -> {
+            Thread thread = new Thread(runnable, "harvest-fetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Harvests the records of the headers, until they run out or
+     * {@link Stages#process} or {@link Stages#checkIfStopping} throw a
+     * {@link StopHarvestException}.
+     *
+     * @throws HarvestListingException if paging through the headers failed;
+     * the records listed before that have been processed.
+     */
+    public void run(Iterator<H> headers, Stages<H, R> stages) throws StopHarvestException, HarvestListingException, InterruptedException {
+        // room for the records being fetched, plus as many fetched ones
+        // waiting to be imported:
+        BlockingQueue<Item<H, R>> queue = new ArrayBlockingQueue<>(2 * maxConcurrentRequests);
+        AtomicReference<Throwable> listingFailure = new AtomicReference<>();
+
+        Thread lister = new Thread(() -> {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    boolean hasNext;
+                    H header = null;
+                    try {
+                        hasNext = headers.hasNext();
+                        if (hasNext) {
+                            header = headers.next();
+                        }
+                    } finally {
+                        listingNanos.addAndGet(System.nanoTime() - start);
+                    }
+                    if (!hasNext || stopped) {
+                        break;
+                    }
+                    listed.incrementAndGet();
+                    Item<H, R> item = new Item<>(header);
+                    item.record = stages.isFetchNeeded(header)
+                            ? fetchers.submit(() -> fetch(stages, item))
+                            : CompletableFuture.completedFuture(null);
+                    try {
+                        queue.put(item);
+                    } catch (InterruptedException e) {
+                        abandon(stages, item);
+                        throw e;
+                    }
+                    if (stopped && queue.remove(item)) {
+                        // (queued after the importing thread emptied the queue)
+                        abandon(stages, item);
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped by the importing thread
+                return;
+            } catch (Throwable t) {
+                listingFailure.set(t);
+            }
+            try {
+                queue.put(end());
+            } catch (InterruptedException e) {
+                // stopped by the importing thread
+            }
+        }, "harvest-list");
+        lister.setDaemon(true);
+        lister.start();
+
+        // taken from the queue, but not handed over to process() yet
+        Item<H, R> current = null;
+        try {
+            while (true) {
+                Item<H, R> item = queue.take();
+                if (item == END) {
+                    break;
+                }
+                current = item;
+                stages.checkIfStopping();
+
+                R record = null;
+                Exception fetchFailure = null;
+                try {
+                    record = item.record.get();
+                } catch (ExecutionException e) {
+                    fetchFailure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                current = null;
+
+                long start = System.nanoTime();
+                try {
+                    stages.process(item.header, record, fetchFailure);
+                } finally {
+                    processNanos.addAndGet(System.nanoTime() - start);
+                    processed.incrementAndGet();
+                }
+            }
+        } finally {
+            // The lister may be stuck in a request to the remote server; it
+            // quits once that returns (or times out).
+            stopped = true;
+            lister.interrupt();
+            if (current != null) {
+                abandon(stages, current);
+            }
+            for (Item<H, R> item = queue.poll(); item != null; item = queue.poll()) {
+                if (item != END) {
+                    abandon(stages, item);
+                }
+            }
+        }
+
+        if (listingFailure.get() != null) {
+            throw new HarvestListingException("Failed to list the records after " + listed.get() + " of them: "
+                    + listingFailure.get().getMessage(), listingFailure.get());
+        }
+    }
+
+    private R fetch(Stages<H, R> stages, Item<H, R> item) throws Exception {
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+        long start = System.nanoTime();
+        try {
+            R record = stages.fetch(item.header);
+            fetched.incrementAndGet();
+            item.fetched = record;
+            if (!item.state.compareAndSet(PENDING, FETCHED)) {
+                // abandoned while being fetched
+                discard(stages, item.header, record);
+                return null;
+            }
+            return record;
+        } catch (Exception e) {
+            fetchFailed.incrementAndGet();
+            throw e;
+        } finally {
+            fetchNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Cancels fetching a record that is not going to be processed, or
+     * discards it if fetched already.
+     */
+    private void abandon(Stages<H, R> stages, Item<H, R> item) {
+        if (item.state.compareAndSet(PENDING, ABANDONED)) {
+            // (if fetched after all, the fetching thread discards it)
+            if (item.record != null) {
+                item.record.cancel(true);
+            }
+        } else if (item.state.get() == FETCHED) {
+            discard(stages, item.header, item.fetched);
+        }
+    }
+
+    private void discard(Stages<H, R> stages, H header, R record) {
+        if (record == null) {
+            return;
+        }
+        try {
+            stages.discard(header, record);
+        } catch (RuntimeException e) {
+            logger.warning("Failed to discard a record fetched before the harvest was stopped: " + e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Item<H, R> end() {
+        return (Item<H, R>) END;
+    }
+
+    public long getListedCount() {
+        return listed.get();
+    }
+
+    public long getFetchedCount() {
+        return fetched.get();
+    }
+
+    public long getFetchFailedCount() {
+        return fetchFailed.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * @return the time spent paging through the identifiers
+     */
+    public long getListingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(listingNanos.get());
+    }
+
+    /**
+     * @return the time spent fetching records, summed over the fetching
+     * threads
+     */
+    public long getFetchMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(fetchNanos.get());
+    }
+
+    /**
+     * @return the time spent importing records
+     */
+    public long getProcessMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(processNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        return "listed " + getListedCount() + " in " + getListingMillis() + " ms, "
+                + "fetched " + getFetchedCount() + " (" + getFetchFailedCount() + " failed) in " + getFetchMillis() + " ms, "
+                + "processed " + getProcessedCount() + " in " + getProcessMillis() + " ms";
+    }
+
+    @Override
+    public void close() {
+        fetchers.shutdownNow();
+        try {
+            if (!fetchers.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warning("Harvest fetching threads still running");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Thrown when paging through the identifiers of the remote server fails.
+     */
+    public static class HarvestListingException extends Exception {
+        public HarvestListingException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Spaces out the start of the fetches evenly, so that no more than the
+     * given number start in any second.
+     */
+    static class RateLimiter {
+        private final long intervalNanos;
+        private long next = System.nanoTime();
+
+        RateLimiter(int permitsPerSecond) {
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        }
+
+        void acquire() throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                if (next < now) {
+                    next = now;
+                }
+                wait = next - now;
+                next += intervalNanos;
+            }
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+    }
+}
@@ -40,6 +40,7 @@ import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler;
 import edu.harvard.iq.dataverse.harvest.client.oai.OaiHandlerException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.InputStream;
@@ -89,6 +90,7 @@ public class HarvesterServiceBean {
     public static final String DATAVERSE_PROPRIETARY_METADATA_FORMAT="dataverse_json";
     public static final String DATAVERSE_PROPRIETARY_METADATA_API="/api/datasets/export?exporter="+DATAVERSE_PROPRIETARY_METADATA_FORMAT+"&persistentId=";
     public static final String DATAVERSE_HARVEST_STOP_FILE="../logs/stopharvest_";
+    private static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 4;
 
     public HarvesterServiceBean() {
 
@@ -231,42 +233,83 @@ public class HarvesterServiceBean {
         // We will use this jdk http client to make direct calls to the remote 
         // OAI (or remote Dataverse API) to obtain the metadata records 
         httpClient = HttpClient.newBuilder().followRedirects(HttpClient.Redirect.ALWAYS).build();
+        HttpClient recordHttpClient = httpClient;
         
-        try {
-            for (Iterator<Header> idIter = oaiHandler.runListIdentifiers(); idIter.hasNext();) {
-                // Before each iteration, check if this harvesting job needs to be aborted:
-                if (checkIfStoppingJob(harvestingClient)) {
-                    throw new StopHarvestException("Harvesting stopped by external request");
-                }
+        // The records are fetched by a few threads at the same time, while 
+        // the ones already fetched are imported here, one by one:
+        int maxConcurrentRequests = getMaxConcurrentRequests(harvestingClient);
+        int maxRequestsPerSecond = getMaxRequestsPerSecond(harvestingClient);
+        hdLogger.info("fetching up to " + maxConcurrentRequests + " records at a time" 
+                + (maxRequestsPerSecond > 0 ? ", " + maxRequestsPerSecond + " per second at most" : ""));
+        
+        try (HarvestPipeline<Header, FetchedRecord> pipeline = new HarvestPipeline<>(maxConcurrentRequests, maxRequestsPerSecond)) {
+            try {
+                pipeline.run(oaiHandler.runListIdentifiers(), new HarvestPipeline.Stages<Header, FetchedRecord>() {
+                    @Override
+                    public boolean isFetchNeeded(Header h) {
+                        return !h.isDeleted();
+                    }
 
-                Header h = idIter.next();
-                String identifier = h.getIdentifier();
-                Date dateStamp = Date.from(h.getDatestamp());
-                
-                hdLogger.info("processing identifier: " + identifier + ", date: " + dateStamp);
-                
-                if (h.isDeleted()) {
-                    hdLogger.info("Deleting harvesting dataset for " + identifier + ", per ListIdentifiers.");
+                    @Override
+                    public FetchedRecord fetch(Header h) throws Exception {
+                        return fetchRecord(hdLogger, oaiHandler, h.getIdentifier(), recordHttpClient);
+                    }
 
-                    deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
-                    continue;
-                }
+                    @Override
+                    public void checkIfStopping() throws StopHarvestException {
+                        // Before each record, check if this harvesting job needs to be aborted:
+                        if (checkIfStoppingJob(harvestingClient)) {
+                            throw new StopHarvestException("Harvesting stopped by external request");
+                        }
+                    }
 
-                MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
+                    @Override
+                    public void discard(Header h, FetchedRecord record) {
+                        // fetched, but the harvest was stopped before it was imported
+                        if (record.metadataFile != null) {
+                            record.metadataFile.delete();
+                        }
+                    }
 
-                // Retrieve and process this record with a separate GetRecord call:
-                
-                Long datasetId = processRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, getRecordErrorOccurred, deletedIdentifiers, dateStamp, httpClient);
-                
-                if (datasetId != null) {
-                    harvestedDatasetIds.add(datasetId);
-                }
-                
-                if (getRecordErrorOccurred.booleanValue() == true) {
-                    failedIdentifiers.add(identifier);
-                    //can be uncommented out for testing failure handling:
-                    //throw new IOException("Exception occured, stopping harvest");
-                }
+                    @Override
+                    public void process(Header h, FetchedRecord record, Exception fetchFailure) {
+                        String identifier = h.getIdentifier();
+                        Date dateStamp = Date.from(h.getDatestamp());
+
+                        hdLogger.info("processing identifier: " + identifier + ", date: " + dateStamp);
+
+                        if (h.isDeleted()) {
+                            hdLogger.info("Deleting harvesting dataset for " + identifier + ", per ListIdentifiers.");
+
+                            deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger);
+                            return;
+                        }
+
+                        MutableBoolean getRecordErrorOccurred = new MutableBoolean(false);
+
+                        // Import the record retrieved with a separate GetRecord call:
+                        Long datasetId = importRecord(dataverseRequest, hdLogger, importCleanupLog, oaiHandler, identifier, record, fetchFailure, getRecordErrorOccurred, deletedIdentifiers, dateStamp);
+
+                        if (datasetId != null) {
+                            harvestedDatasetIds.add(datasetId);
+                        }
+
+                        if (getRecordErrorOccurred.booleanValue() == true) {
+                            failedIdentifiers.add(identifier);
+                            //can be uncommented out for testing failure handling:
+                            //throw new IOException("Exception occured, stopping harvest");
+                        }
+                    }
+                });
+            } catch (HarvestPipeline.HarvestListingException e) {
+                throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Harvest interrupted");
+            } finally {
+                hdLogger.info("Harvest stages: " + pipeline);
+                harvestingClientService.setHarvestStageCounts(harvestingClient.getId(), pipeline.getListedCount(), pipeline.getFetchedCount(), 
+                        pipeline.getListingMillis(), pipeline.getFetchMillis(), pipeline.getProcessMillis());
             }
         } catch (OaiHandlerException e) {
             throw new IOException("Failed to run ListIdentifiers: " + e.getMessage());
@@ -276,40 +319,74 @@ public class HarvesterServiceBean {
 
     }    
     
-    private Long processRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp, HttpClient httpClient) {
+    private int getMaxConcurrentRequests(HarvestingClient harvestingClient) {
+        if (harvestingClient.getMaxConcurrentRequests() != null) {
+            return Math.max(1, harvestingClient.getMaxConcurrentRequests());
+        }
+        return Math.max(1, JvmSettings.HARVEST_MAX_CONCURRENT_REQUESTS.lookupOptional(Integer.class).orElse(DEFAULT_MAX_CONCURRENT_REQUESTS));
+    }
+    
+    private int getMaxRequestsPerSecond(HarvestingClient harvestingClient) {
+        if (harvestingClient.getMaxRequestsPerSecond() != null) {
+            return harvestingClient.getMaxRequestsPerSecond();
+        }
+        return JvmSettings.HARVEST_MAX_REQUESTS_PER_SECOND.lookupOptional(Integer.class).orElse(0);
+    }
+    
+    /**
+     * A record as retrieved from the remote server, waiting to be imported.
+     */
+    private static class FetchedRecord {
+        final File metadataFile;
+        final boolean deleted;
+        final String errorMessage;
+
+        FetchedRecord(File metadataFile, boolean deleted, String errorMessage) {
+            this.metadataFile = metadataFile;
+            this.deleted = deleted;
+            this.errorMessage = errorMessage;
+        }
+    }
+    
+    /**
+     * Retrieves a record; called by several threads at the same time. 
+     */
+    private FetchedRecord fetchRecord(Logger hdLogger, OaiHandler oaiHandler, String identifier, HttpClient httpClient) throws IOException, OaiHandlerException {
+        logGetRecord(hdLogger, oaiHandler, identifier);
+        
+        if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
+            // Make direct call to obtain the proprietary Dataverse metadata
+            // in JSON from the remote Dataverse server:
+            String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
+            logger.fine("calling "+metadataApiUrl);
+            return new FetchedRecord(retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl), false, null);
+        }
+        
+        FastGetRecord record = oaiHandler.runGetRecord(identifier, httpClient);
+        return new FetchedRecord(record.getMetadataFile(), record.isDeleted(), record.getErrorMessage());
+    }
+    
+    private Long importRecord(DataverseRequest dataverseRequest, Logger hdLogger, PrintWriter importCleanupLog, OaiHandler oaiHandler, String identifier, FetchedRecord record, Exception fetchFailure, MutableBoolean recordErrorOccurred, List<String> deletedIdentifiers, Date dateStamp) {
         String errMessage = null;
         Dataset harvestedDataset = null;
-        logGetRecord(hdLogger, oaiHandler, identifier);
-        File tempFile = null;
+        File tempFile = record != null ? record.metadataFile : null;
         
         try {
-            boolean deleted = false;
-            
-            if (DATAVERSE_PROPRIETARY_METADATA_FORMAT.equals(oaiHandler.getMetadataPrefix())) {
-                // Make direct call to obtain the proprietary Dataverse metadata
-                // in JSON from the remote Dataverse server:
-                String metadataApiUrl = oaiHandler.getProprietaryDataverseMetadataURL(identifier);
-                logger.fine("calling "+metadataApiUrl);
-                tempFile = retrieveProprietaryDataverseMetadata(httpClient, metadataApiUrl);
-                
-            } else {
-                FastGetRecord record = oaiHandler.runGetRecord(identifier, httpClient);
-                errMessage = record.getErrorMessage();
-                deleted = record.isDeleted();
-                tempFile = record.getMetadataFile();
+            if (fetchFailure != null) {
+                throw fetchFailure;
             }
+            errMessage = record.errorMessage;
 
             if (errMessage != null) {
                 hdLogger.log(Level.SEVERE, "Error calling GetRecord - " + errMessage);
                 
-            } else if (deleted) {
+            } else if (record.deleted) {
                 hdLogger.info("Deleting harvesting dataset for "+identifier+", per GetRecord.");
                 
                 deleteHarvestedDatasetIfExists(identifier, oaiHandler.getHarvestingClient().getDataverse(), dataverseRequest, deletedIdentifiers, hdLogger); 
             } else {
                 hdLogger.info("Successfully retrieved GetRecord response.");
 
-                PrintWriter cleanupLog;
                 harvestedDataset = importService.doImportHarvestedDataset(dataverseRequest, 
                         oaiHandler.getHarvestingClient(),
                         identifier,
@@ -244,6 +244,30 @@ public class HarvestingClient implements Serializable {
         this.customHttpHeaders = customHttpHeaders;
     }
     
+    // How many records are fetched from the remote server at the same time, 
+    // and how many requests per second it gets at most; null for the defaults
+    // set with dataverse.harvest.max-concurrent-requests and 
+    // dataverse.harvest.max-requests-per-second:
+    private Integer maxConcurrentRequests;
+    
+    public Integer getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+    
+    public void setMaxConcurrentRequests(Integer maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+    
+    private Integer maxRequestsPerSecond;
+    
+    public Integer getMaxRequestsPerSecond() {
+        return maxRequestsPerSecond;
+    }
+    
+    public void setMaxRequestsPerSecond(Integer maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+    }
+    
     // TODO: do we need "orphanRemoval=true"? -- L.A. 4.4
     // TODO: should it be @OrderBy("startTime")? -- L.A. 4.4
     @OneToMany(mappedBy="harvestingClient", cascade={CascadeType.REMOVE, CascadeType.MERGE, CascadeType.PERSIST})
@@ -178,6 +178,25 @@ public class HarvestingClientServiceBean implements java.io.Serializable {
         recordHarvestJobStatus(hcId, finishTime, harvestedCount, failedCount, deletedCount, ClientHarvestRun.RunResultType.INTERRUPTED);
     }
     
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void setHarvestStageCounts(Long hcId, long listedCount, long fetchedCount, long listingMillis, long fetchMillis, long importMillis) {
+        HarvestingClient harvestingClient = em.find(HarvestingClient.class, hcId);
+        if (harvestingClient == null) {
+            return;
+        }
+        em.refresh(harvestingClient);
+        
+        ClientHarvestRun currentRun = harvestingClient.getLastRun();
+        
+        if (currentRun != null && currentRun.isInProgress()) {
+            currentRun.setListedRecordCount(listedCount);
+            currentRun.setFetchedRecordCount(fetchedCount);
+            currentRun.setListingMillis(listingMillis);
+            currentRun.setFetchMillis(fetchMillis);
+            currentRun.setImportMillis(importMillis);
+        }
+    }
+    
     public void recordHarvestJobStatus(Long hcId, Date finishTime, int harvestedCount, int failedCount, int deletedCount, ClientHarvestRun.RunResultType result) {
         HarvestingClient harvestingClient = em.find(HarvestingClient.class, hcId);
         if (harvestingClient == null) {
@@ -14,10 +14,12 @@ import io.gdcc.xoai.serviceprovider.parameters.ListIdentifiersParameters;
 import edu.harvard.iq.dataverse.harvest.client.FastGetRecord;
 import static edu.harvard.iq.dataverse.harvest.client.HarvesterServiceBean.DATAVERSE_PROPRIETARY_METADATA_API;
 import edu.harvard.iq.dataverse.harvest.client.HarvestingClient;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import io.gdcc.xoai.serviceprovider.client.JdkHttpOaiClient;
 import java.io.IOException;
 import java.io.Serializable;
 import java.net.http.HttpClient;
+import java.time.Duration;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -37,6 +39,8 @@ import java.util.logging.Logger;
  */
 public class OaiHandler implements Serializable {
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.client.oai.OaiHandler");
+    // seconds, see JvmSettings.HARVEST_REQUEST_TIMEOUT
+    private static final int DEFAULT_REQUEST_TIMEOUT = 120;
     
     public OaiHandler() {
         
@@ -145,7 +149,10 @@ public class OaiHandler implements Serializable {
             context.withBaseUrl(baseOaiUrl);
             context.withGranularity(Granularity.Second);
             
-            JdkHttpOaiClient.Builder xoaiClientBuilder = JdkHttpOaiClient.newBuilder().withBaseUrl(getBaseOaiUrl());
+            // (so that a harvest being stopped is not left waiting on an
+            // unresponsive server)
+            JdkHttpOaiClient.Builder xoaiClientBuilder = JdkHttpOaiClient.newBuilder().withBaseUrl(getBaseOaiUrl())
+                    .withRequestTimeout(Duration.ofSeconds(JvmSettings.HARVEST_REQUEST_TIMEOUT.lookupOptional(Integer.class).orElse(DEFAULT_REQUEST_TIMEOUT)));
             if (getCustomHeaders() != null) {
                 for (String headerName : getCustomHeaders().keySet()) {
                     logger.fine("adding custom header; name: "+headerName+", value: "+getCustomHeaders().get(headerName));
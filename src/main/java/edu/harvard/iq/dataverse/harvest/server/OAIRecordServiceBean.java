@@ -13,6 +13,7 @@ import io.gdcc.spi.export.ExportException;
 import edu.harvard.iq.dataverse.search.IndexServiceBean;
 import edu.harvard.iq.dataverse.settings.SettingsServiceBean;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -270,6 +271,51 @@ public class OAIRecordServiceBean implements java.io.Serializable {
     }
     
     
+    /**
+     * Exports a dataset as part of an "export all" run, if it needs it: it
+     * has to be published and not deaccessioned, and, unless
+     * {@code forceReExport}, exported before its latest release (or never).
+     * The formats cached since that release - or since {@code runStart}, when
+     * forced - are not exported again.
+     *
+     * @param runStart when the (possibly interrupted) run began
+     * @return the number of formats that were up to date, or null if the
+     * dataset did not need to be exported
+     */
+    @TransactionAttribute(REQUIRES_NEW)
+    public Integer exportAllFormatsInNewTransaction(Long datasetId, boolean forceReExport, Date runStart) throws ExportException {
+        Dataset dataset = datasetService.find(datasetId);
+        // See DatasetServiceBean.exportDataset() on why this is the accurate
+        // "is published?" test
+        if (dataset == null || !dataset.isReleased() || dataset.getReleasedVersion() == null || dataset.isDeaccessioned()) {
+            return null;
+        }
+        Date publicationDate = dataset.getReleasedVersion().getReleaseTime();
+        Date lastExportTime = dataset.getLastExportTime();
+        Date upToDateAfter;
+        if (forceReExport) {
+            if (lastExportTime != null && lastExportTime.after(runStart)) {
+                // already done before this run was interrupted
+                return null;
+            }
+            upToDateAfter = runStart;
+        } else {
+            if (publicationDate == null || (lastExportTime != null && !lastExportTime.before(publicationDate))) {
+                return null;
+            }
+            upToDateAfter = publicationDate;
+        }
+        try {
+            int upToDate = ExportService.getInstance().exportAllFormats(dataset, upToDateAfter);
+            datasetService.merge(dataset);
+            logger.fine("Exported dataset " + dataset.getGlobalId().asString() + "; " + upToDate + " format(s) were up to date");
+            return upToDate;
+        } catch (Exception e) {
+            logger.log(Level.FINE, "Caught unknown exception while trying to export", e);
+            throw new ExportException(dataset.getGlobalId().asString() + ": " + e.getMessage());
+        }
+    }
+
     public OAIRecord findOAIRecordBySetNameandGlobalId(String setName, String globalId) {
         OAIRecord oaiRecord = null;
         
@@ -310,10 +356,6 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         return findOaiRecordsBySetName(setName, from, until, false);
     }
     
-    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Instant from, Instant until) {
-        return findOaiRecordsBySetName(setName, from, until, true);
-    }
-    
     public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, boolean excludeSet) {
                 
         if (setName == null) {
@@ -356,6 +398,100 @@ public class OAIRecordServiceBean implements java.io.Serializable {
         }
     }
     
+    /**
+     * Finds one page of the records in a set, in the same order as
+     * {@link #findOaiRecordsBySetName(String, Instant, Instant)}, with the
+     * record id as the tie breaker. When the last record of the previous page
+     * is known, the page starts right after it (keyset pagination), which
+     * spares the database from going through all the records before it;
+     * otherwise it starts at {@code offset}.
+     *
+     * @param afterGlobalId the global id of the last record of the previous page, or {@code null}
+     * @param afterId the id of the last record of the previous page, or {@code null}
+     * @param offset where the page starts, when {@code afterGlobalId} is {@code null}
+     * @param maxResults the size of the page
+     * @return the records of the page, or {@code null} if the query failed
+     */
+    public List<OAIRecord> findOaiRecordsBySetName(String setName, Instant from, Instant until, String afterGlobalId, Long afterId, int offset, int maxResults) {
+        if (setName == null) {
+            setName = "";
+        }
+
+        String queryString = "SELECT object(h) from OAIRecord h where h.setName = :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        queryString += afterGlobalId != null ? " and (h.globalId > :afterGlobalId or (h.globalId = :afterGlobalId and h.id > :afterId))" : "";
+        queryString += " order by h.globalId, h.id";
+
+        logger.fine("Query: "+queryString);
+
+        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class)
+                .setParameter("setName", setName)
+                .setMaxResults(maxResults);
+        setDateRange(query, from, until);
+        if (afterGlobalId != null) {
+            query.setParameter("afterGlobalId", afterGlobalId);
+            query.setParameter("afterId", afterId);
+        } else {
+            query.setFirstResult(offset);
+        }
+
+        try {
+            return query.getResultList();
+        } catch (Exception ex) {
+            logger.fine("Caught exception; returning null.");
+            return null;
+        }
+    }
+
+    public long countOaiRecordsBySetName(String setName, Instant from, Instant until) {
+        if (setName == null) {
+            setName = "";
+        }
+
+        String queryString = "SELECT count(h) from OAIRecord h where h.setName = :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+
+        TypedQuery<Long> query = em.createQuery(queryString, Long.class).setParameter("setName", setName);
+        setDateRange(query, from, until);
+        return query.getSingleResult();
+    }
+
+    /**
+     * Finds the records in sets other than {@code setName} for the given
+     * global ids - i.e., the other sets the records of a page are also in.
+     */
+    public List<OAIRecord> findOaiRecordsNotInThisSet(String setName, Instant from, Instant until, Collection<String> globalIds) {
+        if (globalIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (setName == null) {
+            setName = "";
+        }
+
+        String queryString = "SELECT object(h) from OAIRecord h where h.globalId in :globalIds"
+                + " and h.setName is not null and h.setName != '' and h.setName != :setName";
+        queryString += from != null ? " and h.lastUpdateTime >= :from" : "";
+        queryString += until != null ? " and h.lastUpdateTime<=:until" : "";
+        queryString += " order by h.globalId";
+
+        TypedQuery<OAIRecord> query = em.createQuery(queryString, OAIRecord.class)
+                .setParameter("globalIds", globalIds)
+                .setParameter("setName", setName);
+        setDateRange(query, from, until);
+        return query.getResultList();
+    }
+
+    private static void setDateRange(TypedQuery<?> query, Instant from, Instant until) {
+        if (from != null) {
+            query.setParameter("from", Date.from(from), TemporalType.TIMESTAMP);
+        }
+        if (until != null) {
+            query.setParameter("until", Date.from(until), TemporalType.TIMESTAMP);
+        }
+    }
+
     // This method is to only get the records NOT marked as "deleted":
     public List<OAIRecord> findActiveOaiRecordsBySetName(String setName) {
         
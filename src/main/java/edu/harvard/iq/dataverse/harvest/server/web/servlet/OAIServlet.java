@@ -12,7 +12,6 @@ import io.gdcc.xoai.dataprovider.model.Context;
 import io.gdcc.xoai.dataprovider.model.MetadataFormat;
 import io.gdcc.xoai.dataprovider.request.RequestBuilder;
 import io.gdcc.xoai.dataprovider.request.RequestBuilder.RawRequest;
-import io.gdcc.xoai.dataprovider.repository.ItemRepository;
 import io.gdcc.xoai.dataprovider.repository.SetRepository;
 import io.gdcc.xoai.model.oaipmh.DeletedRecord;
 import io.gdcc.xoai.model.oaipmh.OAIPMH;
@@ -88,6 +87,10 @@ public class OAIServlet extends HttpServlet {
     @ConfigProperty(name = "dataverse.oai.server.maxrecords", defaultValue="10")
     private Integer maxListRecords;
     
+    @Inject
+    @ConfigProperty(name = "dataverse.oai.server.prefetch-threads", defaultValue="4")
+    private Integer prefetchThreads;
+    
     private static final Logger logger = Logger.getLogger("edu.harvard.iq.dataverse.harvest.server.web.servlet.OAIServlet");
     // If we are going to stick with this solution - of providing a minimalist 
     // xml record containing a link to the proprietary json metadata API for 
@@ -113,7 +116,7 @@ public class OAIServlet extends HttpServlet {
     
     private Context xoaiContext;
     private SetRepository setRepository;
-    private ItemRepository itemRepository;
+    private DataverseXoaiItemRepository itemRepository;
     private RepositoryConfiguration repositoryConfiguration;
     private Repository xoaiRepository;
     private DataProvider dataProvider;
@@ -128,7 +131,7 @@ public class OAIServlet extends HttpServlet {
         }
         
         setRepository = new DataverseXoaiSetRepository(setService);
-        itemRepository = new DataverseXoaiItemRepository(recordService, datasetService, SystemConfig.getDataverseSiteUrlStatic());
+        itemRepository = new DataverseXoaiItemRepository(recordService, datasetService, SystemConfig.getDataverseSiteUrlStatic(), prefetchThreads);
 
         repositoryConfiguration = createRepositoryConfiguration(); 
                                 
@@ -139,6 +142,14 @@ public class OAIServlet extends HttpServlet {
         dataProvider = new DataProvider(getXoaiContext(), getXoaiRepository());
     }
     
+    @Override
+    public void destroy() {
+        if (itemRepository != null) {
+            itemRepository.close();
+        }
+        super.destroy();
+    }
+    
     private Context createContext() {
         
         Context context = new Context();
@@ -20,12 +20,20 @@ import io.gdcc.xoai.dataprovider.repository.ResultsPage;
 import io.gdcc.xoai.model.oaipmh.ResumptionToken;
 import io.gdcc.xoai.model.oaipmh.results.record.Metadata;
 import io.gdcc.xoai.xml.EchoElement;
+import edu.harvard.iq.dataverse.dataaccess.StorageIO;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -41,8 +49,43 @@ public class DataverseXoaiItemRepository implements ItemRepository {
     private final OAIRecordServiceBean recordService;
     private final DatasetServiceBean datasetService;
     private final String serverUrl; 
+    private final MetadataPrefetcher prefetcher;
+    
+    /**
+     * The last record served on a page, by the (set, from, until, offset) of 
+     * the resumption token that asks for the next page. The resumption 
+     * tokens of XOAI only carry the offset, so this is where the keyset of the
+     * next page is kept. A token whose page start is not known (e.g. after a 
+     * restart, or when handled by another server) falls back to the offset.
+     */
+    private final Map<String, PageStart> pageStarts = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PageStart> eldest) {
+            return size() > MAX_PAGE_STARTS;
+        }
+    });
+    private static final int MAX_PAGE_STARTS = 1000;
+    
+    private static class PageStart {
+        final String afterGlobalId;
+        final Long afterId;
+
+        PageStart(String afterGlobalId, Long afterId) {
+            this.afterGlobalId = afterGlobalId;
+            this.afterId = afterId;
+        }
+    }
 
     public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl) {
+        this(recordService, datasetService, serverUrl, 1);
+    }
+
+    /**
+     * @param prefetchThreads how many cached metadata exports are read at the 
+     * same time, when serving a page of ListRecords
+     */
+    public DataverseXoaiItemRepository (OAIRecordServiceBean recordService, DatasetServiceBean datasetService, String serverUrl, int prefetchThreads) {
+        this.prefetcher = new MetadataPrefetcher(prefetchThreads);
         this.recordService = recordService;
         this.datasetService = datasetService;
         this.serverUrl = serverUrl; 
@@ -133,25 +176,39 @@ public class DataverseXoaiItemRepository implements ItemRepository {
                 + ", from=" + from
                 + ", until=" + until);
 
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until);
+        long total = recordService.countOaiRecordsBySetName(setSpec, from, until);
         
         List<DataverseXoaiItem> xoaiItems = new ArrayList<>();
 
-        if (oaiRecords != null && !oaiRecords.isEmpty()) {
-            logger.fine("total " + oaiRecords.size() + " records returned");
+        if (total > 0) {
+            logger.fine("total " + total + " records in the set");
             
-            for (int i = offset; i < offset + maxResponseLength && i < oaiRecords.size(); i++) {
-                OAIRecord record = oaiRecords.get(i);
-                DataverseXoaiItem xoaiItem = new DataverseXoaiItem(record);
-                
-                if (fullItems) {
-                    // If we are cooking "full" Items (for the ListRecords verb),
-                    // add the metadata to the item object (if not a deleted
-                    // record, if available, etc.):
-                    xoaiItem = addMetadata(xoaiItem, metadataFormat);
+            // If we served the previous page, we know the last record on it, 
+            // and can pick up right after it, rather than counting off 
+            // offset records again:
+            PageStart pageStart = offset > 0 ? pageStarts.get(pageStartKey(setSpec, from, until, offset)) : null;
+            List<OAIRecord> oaiRecords = recordService.findOaiRecordsBySetName(setSpec, from, until,
+                    pageStart == null ? null : pageStart.afterGlobalId,
+                    pageStart == null ? null : pageStart.afterId,
+                    offset, maxResponseLength + 1);
+            
+            if (oaiRecords != null) {
+                // (one record more than the page is looked up, to tell 
+                // whether there is a next page)
+                hasMore = oaiRecords.size() > maxResponseLength;
+                for (OAIRecord record : hasMore ? oaiRecords.subList(0, maxResponseLength) : oaiRecords) {
+                    xoaiItems.add(new DataverseXoaiItem(record));
                 }
-                
-                xoaiItems.add(xoaiItem);
+            }
+            
+            if (fullItems) {
+                // If we are cooking "full" Items (for the ListRecords verb),
+                // add the metadata to the item objects (if not deleted
+                // records, if available, etc.):
+                long start = System.currentTimeMillis();
+                addMetadata(xoaiItems, metadataFormat);
+                logger.fine("metadata of " + xoaiItems.size() + " items (" + metadataFormat.getPrefix() 
+                        + ") looked up in " + (System.currentTimeMillis() - start) + " ms");
             }
             
             // Run a second pass, looking for records in this set that occur
@@ -159,9 +216,12 @@ public class DataverseXoaiItemRepository implements ItemRepository {
             // formatted output in the header:
             addExtraSets(xoaiItems, setSpec, from, until);
             
-            hasMore = offset + maxResponseLength < oaiRecords.size();
+            if (hasMore) {
+                OAIRecord last = xoaiItems.get(xoaiItems.size() - 1).getOaiRecord();
+                pageStarts.put(pageStartKey(setSpec, from, until, offset + xoaiItems.size()), new PageStart(last.getGlobalId(), last.getId()));
+            }
             
-            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, oaiRecords.size());
+            ResultsPage<DataverseXoaiItem> result = new ResultsPage(resumptionToken, hasMore, xoaiItems, (int) total);
             logger.fine("returning result with " + xoaiItems.size() + " items.");
             return result;
         }
@@ -169,11 +229,15 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         return new ResultsPage(resumptionToken, false, xoaiItems, 0);
     }
     
-    private void addExtraSets(Object xoaiItemsList, String setSpec, Instant from, Instant until) {
-        
-        List<DataverseXoaiItem> xoaiItems = (List<DataverseXoaiItem>)xoaiItemsList;
+    private static String pageStartKey(String setSpec, Instant from, Instant until, long offset) {
+        return setSpec + "|" + from + "|" + until + "|" + offset;
+    }
+    
+    private void addExtraSets(List<DataverseXoaiItem> xoaiItems, String setSpec, Instant from, Instant until) {
         
-        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until);
+        // Only the records of the items on this page need to be looked up:
+        List<String> globalIds = xoaiItems.stream().map(DataverseXoaiItem::getIdentifier).collect(Collectors.toList());
+        List<OAIRecord> oaiRecords = recordService.findOaiRecordsNotInThisSet(setSpec, from, until, globalIds);
         
         if (oaiRecords == null || oaiRecords.isEmpty()) {
             return;
@@ -200,7 +264,90 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         }
     }
     
+    /**
+     * Adds the metadata to a page of items. The cached exports are read in
+     * parallel (see {@link MetadataPrefetcher}); only the exports that 
+     * cannot be read as they are (e.g. missing ones, that have to be 
+     * generated) are looked up one by one.
+     */
+    private void addMetadata(List<DataverseXoaiItem> xoaiItems, MetadataFormat metadataFormat) {
+        String metadataPrefix = metadataFormat.getPrefix();
+        List<Dataset> datasets = new ArrayList<>(xoaiItems.size());
+        List<MetadataPrefetcher.ExportReader> readers = new ArrayList<>(xoaiItems.size());
+        
+        for (DataverseXoaiItem xoaiItem : xoaiItems) {
+            Dataset dataset = findDataset(xoaiItem);
+            MetadataPrefetcher.ExportReader reader = null;
+            if (dataset != null && !"dataverse_json".equals(metadataPrefix)) {
+                try {
+                    StorageIO<Dataset> storageIO = ExportService.getInstance().getCachedExportStorageIO(dataset, metadataPrefix);
+                    if (storageIO != null) {
+                        String exportName = ExportService.getCachedExportName(metadataPrefix);
+                        reader = () -> storageIO.getAuxFileAsInputStream(exportName);
+                    }
+                } catch (IOException ex) {
+                    // will be looked up again below
+                }
+            }
+            datasets.add(dataset);
+            readers.add(reader);
+        }
+        
+        List<Future<byte[]>> exports = prefetcher.prefetch(readers);
+        
+        for (int i = 0; i < xoaiItems.size(); i++) {
+            DataverseXoaiItem xoaiItem = xoaiItems.get(i);
+            Dataset dataset = datasets.get(i);
+            if (dataset == null) {
+                continue;
+            }
+            byte[] export = null;
+            try {
+                export = exports.get(i).get();
+            } catch (ExecutionException ex) {
+                logger.fine("failed to read the cached " + metadataPrefix + " export of " + xoaiItem.getIdentifier() 
+                        + ": " + ex.getCause());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                Metadata metadata = export != null 
+                        ? Metadata.copyFromStream(new ByteArrayInputStream(export)) 
+                        : getDatasetMetadata(dataset, metadataPrefix);
+                xoaiItem.withDataset(dataset).withMetadata(metadata);
+            } catch (IOException ex) {
+                // This is not supposed to happen in normal operations; 
+                // since by design only the datasets for which the metadata
+                // records have been pre-generated ("exported") should be 
+                // served as "OAI Record". But, things happen. If for one
+                // reason or another that cached metadata file is no longer there, 
+                // we are not going to serve any metadata for this oaiRecord, 
+                // BUT we are going to include it marked as "deleted"
+                // (because skipping it could potentially mess up the
+                // counts and offsets, in a resumption token scenario.
+                xoaiItem.getOaiRecord().setRemoved(true);
+            }
+        }
+    }
+    
     private DataverseXoaiItem addMetadata(DataverseXoaiItem xoaiItem, MetadataFormat metadataFormat) {
+        Dataset dataset = findDataset(xoaiItem);
+        if (dataset != null) {
+            try {
+                Metadata metadata = getDatasetMetadata(dataset, metadataFormat.getPrefix());
+                xoaiItem.withDataset(dataset).withMetadata(metadata);
+            } catch (IOException ex) {
+                // The same as above - serving it as "deleted":
+                xoaiItem.getOaiRecord().setRemoved(true);
+            }
+        }
+        return xoaiItem;
+    }
+    
+    /**
+     * @return the dataset of a live record; null for a "deleted" one
+     */
+    private Dataset findDataset(DataverseXoaiItem xoaiItem) {
         // This may be a "deleted" record - i.e., a oaiRecord kept in 
         // the OAI set for a dataset that's no longer in this Dataverse. 
         // (it serves to tell the remote client to delete it from their 
@@ -208,35 +355,19 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         // If this is the case here, there's nothing we need to do for this item.
         // If not, if it's a live record, let's try to look up the dataset and 
         // open the pre-generated metadata stream.
-
-        if (!xoaiItem.isDeleted()) {
-            Dataset dataset = datasetService.findByGlobalId(xoaiItem.getIdentifier());
-            if (dataset != null) {
-                try {
-                    Metadata metadata = getDatasetMetadata(dataset, metadataFormat.getPrefix());
-                    xoaiItem.withDataset(dataset).withMetadata(metadata);
-                } catch (IOException ex) {
-                    // This is not supposed to happen in normal operations; 
-                    // since by design only the datasets for which the metadata
-                    // records have been pre-generated ("exported") should be 
-                    // served as "OAI Record". But, things happen. If for one
-                    // reason or another that cached metadata file is no longer there, 
-                    // we are not going to serve any metadata for this oaiRecord, 
-                    // BUT we are going to include it marked as "deleted"
-                    // (because skipping it could potentially mess up the
-                    // counts and offsets, in a resumption token scenario.
-                    xoaiItem.getOaiRecord().setRemoved(true);
-                }
-            } else {
-                // If dataset (somehow) no longer exists (again, this is 
-                // not supposed to happen), we will serve the oaiRecord, 
-                // marked as "deleted" and without any metadata. 
-                // We can't just skip it, because that could mess up the
-                // counts and offsets, in a resumption token scenario.
-                xoaiItem.getOaiRecord().setRemoved(true);
-            }
+        if (xoaiItem.isDeleted()) {
+            return null;
         }
-        return xoaiItem;
+        Dataset dataset = datasetService.findByGlobalId(xoaiItem.getIdentifier());
+        if (dataset == null) {
+            // If dataset (somehow) no longer exists (again, this is 
+            // not supposed to happen), we will serve the oaiRecord, 
+            // marked as "deleted" and without any metadata. 
+            // We can't just skip it, because that could mess up the
+            // counts and offsets, in a resumption token scenario.
+            xoaiItem.getOaiRecord().setRemoved(true);
+        }
+        return dataset;
     }
     
     private Metadata getDatasetMetadata(Dataset dataset, String metadataPrefix) throws ExportException, IOException {
@@ -260,6 +391,10 @@ public class DataverseXoaiItemRepository implements ItemRepository {
         return metadata;
     }
     
+    public void close() {
+        prefetcher.close();
+    }
+    
     private String customDataverseJsonApiUri(String identifier) {
         String ret = serverUrl  
                 + "/api/datasets/export?exporter=dataverse_json&amp;persistentId="
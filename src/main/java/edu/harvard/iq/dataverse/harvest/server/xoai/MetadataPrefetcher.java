@@ -0,0 +1,91 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the pre-generated (cached) metadata exports of a page of OAI records
+ * in parallel. With the exports on remote storage (S3, Swift), serving a
+ * ListRecords page then takes about as long as its slowest reads, rather
+ * than the sum of one round trip per record.
+ */
+public class MetadataPrefetcher implements AutoCloseable {
+
+    /**
+     * Opens one cached export; returns null if there is none.
+     */
+    @FunctionalInterface
+    public interface ExportReader {
+        InputStream open() throws IOException;
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * @param threads how many exports are read at the same time; with 1 or
+     * less, they are read one by one, by the calling thread.
+     */
+    public MetadataPrefetcher(int threads) {
+        if (threads > 1) {
+            AtomicInteger count = new AtomicInteger();
+            ThreadFactory threadFactory = runnable -> {
+                Thread thread = new Thread(runnable, "oai-metadata-prefetch-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            executor = Executors.newFixedThreadPool(threads, threadFactory);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Starts reading the exports. Unless they are read by the calling thread,
+     * returns without waiting for them.
+     *
+     * @param readers null entries are skipped
+     * @return the content of each export, in the order of the readers; null
+     * for a null reader or a missing export. A failed read completes its
+     * future exceptionally.
+     */
+    public List<Future<byte[]>> prefetch(List<ExportReader> readers) {
+        List<Future<byte[]>> contents = new ArrayList<>(readers.size());
+        for (ExportReader reader : readers) {
+            if (reader == null) {
+                contents.add(CompletableFuture.completedFuture(null));
+            } else if (executor == null) {
+                CompletableFuture<byte[]> content = new CompletableFuture<>();
+                try {
+                    content.complete(read(reader));
+                } catch (IOException | RuntimeException ex) {
+                    content.completeExceptionally(ex);
+                }
+                contents.add(content);
+            } else {
+                contents.add(executor.submit(() -> read(reader)));
+            }
+        }
+        return contents;
+    }
+
+    private byte[] read(ExportReader reader) throws IOException {
+        try (InputStream in = reader.open()) {
+            return in == null ? null : in.readAllBytes();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
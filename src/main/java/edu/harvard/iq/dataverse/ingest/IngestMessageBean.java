@@ -23,11 +23,9 @@ package edu.harvard.iq.dataverse.ingest;
 import edu.harvard.iq.dataverse.*;
 import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
-import edu.harvard.iq.dataverse.util.BundleUtil;
 
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.util.Iterator;
 import java.util.logging.Logger;
 import jakarta.ejb.ActivationConfigProperty;
 import jakarta.ejb.EJB;
@@ -56,10 +54,9 @@ import jakarta.jms.ObjectMessage;
 public class IngestMessageBean implements MessageListener {
     private static final Logger logger = Logger.getLogger(IngestMessageBean.class.getCanonicalName());
     @EJB DatasetServiceBean datasetService;
-    @EJB DataFileServiceBean datafileService;
-    @EJB IngestServiceBean ingestService;
     @EJB UserNotificationServiceBean userNotificationService;
     @EJB AuthenticationServiceBean authenticationServiceBean;
+    @EJB IngestScheduler ingestScheduler;
 
    
     public IngestMessageBean() {
@@ -88,75 +85,17 @@ public class IngestMessageBean implements MessageListener {
 
             authenticatedUser = authenticationServiceBean.findByID(ingestMessage.getAuthenticatedUserId());
 
-            Iterator<Long> iter = ingestMessage.getFileIds().iterator();
-            Long datafile_id = null;
-
-            boolean ingestWithErrors = false;
+            // The files are ingested by the workers of the scheduler; this
+            // waits until they are all done, so that the message is not
+            // acknowledged before that. (If the scheduler is shut down first,
+            // this throws, and the message is delivered again later.)
+            IngestScheduler.Result result = ingestScheduler.ingest(ingestMessage).join();
+            boolean ingestWithErrors = result.isIngestWithErrors();
 
             StringBuilder sbIngestedFiles = new StringBuilder();
             sbIngestedFiles.append("<ul>");
-            
-            while (iter.hasNext()) {
-                datafile_id = iter.next();
-
-                logger.fine("Start ingest job;");
-                try {
-
-                    DataFile datafile = datafileService.find(datafile_id);
-
-                    if (ingestService.ingestAsTabular(datafile_id)) {
-                        //Thread.sleep(10000);
-                        logger.fine("Finished ingest job;");
-                        // We used to list the successfully ingested files in the "success"
-                        // and "mixed success and failure" emails. Now we never list successfully
-                        // ingested files so this line is commented out.
-                        // sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                    } else {
-                        logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
-                        sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-                        ingestWithErrors = true;
-                    }
-
-                } catch (Exception ex) {
-                    //ex.printStackTrace();
-                    // TODO: 
-                    // this solution is working - but it would be cleaner to instead
-                    // make sure that all the exceptions are interrupted and appropriate
-                    // action taken still on the ingest service side. 
-                    // -- L.A. Aug. 13 2014; 
-                    logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
-                    if (datafile_id != null) {
-                        logger.fine("looking up datafile for id " + datafile_id);
-                        DataFile datafile = datafileService.find(datafile_id);
-                        if (datafile != null) {
-
-                            ingestWithErrors = true;
-
-                            sbIngestedFiles.append(String.format("<li>%s</li>", datafile.getCurrentName()));
-
-                            datafile.SetIngestProblem();
-                            IngestReport errorReport = new IngestReport();
-                            errorReport.setFailure();
-                            if (ex.getMessage() != null) {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
-                            } else {
-                                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
-                            }
-                            errorReport.setDataFile(datafile);
-                            datafile.setIngestReport(errorReport);
-                            datafile.setDataTables(null);
-
-                            logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
-                            datafile = datafileService.save(datafile);
-
-                            if (ingestMessage.getDatasetId() != null) {
-                                //logger.info("attempting to remove dataset lock for dataset " + dataset.getId());
-                                //datasetService.removeDatasetLock(dataset.getId());
-                                ingestService.sendFailNotification(ingestMessage.getDatasetId());
-                            }
-                        }
-                    }
-                }
+            for (String failedFile : result.getFailedFiles()) {
+                sbIngestedFiles.append(String.format("<li>%s</li>", failedFile));
             }
 
             sbIngestedFiles.append("</ul>");
@@ -180,8 +119,10 @@ public class IngestMessageBean implements MessageListener {
                 // Remove the dataset lock: 
                 // (note that the assumption here is that all of the datafiles
                 // packed into this IngestMessage belong to the same dataset) 
+                // (unless the files of another message are still being
+                // ingested)
                 Dataset dataset = datasetService.find(ingestMessage.getDatasetId());
-                if (dataset != null && dataset.getId() != null) {
+                if (dataset != null && dataset.getId() != null && !ingestScheduler.isIngestInProgress(dataset.getId())) {
                     datasetService.removeDatasetLocks(dataset, DatasetLock.Reason.Ingest);
                 }
             } catch (Exception ex) {
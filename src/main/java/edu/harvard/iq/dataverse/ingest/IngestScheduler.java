@@ -0,0 +1,424 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.DataFileServiceBean;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import edu.harvard.iq.dataverse.util.BundleUtil;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.EJB;
+import jakarta.ejb.Singleton;
+
+/**
+ * Runs the tabular ingest of the files queued by the {@link IngestMessageBean}
+ * on a pool of worker threads, rather than one file after another on the
+ * thread that received the message.
+ *
+ * The files of a dataset are still ingested one at a time, in the order of
+ * the message (smallest first), since each of them updates the UNF of the
+ * dataset version; if another message comes in for a dataset that is being
+ * ingested, its files are only started once the first message is done. The
+ * files of different datasets are ingested at the same time: a dataset only
+ * ever has one file waiting for a worker, so the datasets take their turns,
+ * and one with hundreds of files does not hold up the others until it is
+ * done. Files up to a given size go to a separate, "fast" lane, so that they
+ * are not stuck behind the big ones either.
+ *
+ * How many files are waiting, how long they waited and how fast each format
+ * is ingested is kept in memory, for the admin API.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class IngestScheduler {
+
+    private static final Logger logger = Logger.getLogger(IngestScheduler.class.getCanonicalName());
+
+    // Defaults for the dataverse.ingest.workers.* JVM options:
+    private static final int DEFAULT_THREADS = 4;
+    private static final int DEFAULT_FAST_LANE_THREADS = 2;
+    private static final long DEFAULT_FAST_LANE_MAX_SIZE = 10485760L; // 10 MB
+
+    @EJB
+    DataFileServiceBean datafileService;
+    @EJB
+    IngestServiceBean ingestService;
+
+    /**
+     * What comes out of the ingest of the files of one message.
+     */
+    public static class Result {
+        private final List<String> failedFiles = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * @return the names of the files that could not be ingested
+         */
+        public List<String> getFailedFiles() {
+            return failedFiles;
+        }
+
+        public boolean isIngestWithErrors() {
+            return !failedFiles.isEmpty();
+        }
+    }
+
+    /**
+     * The file of a job that is to be ingested next.
+     */
+    static class FileTask {
+        final Long id;
+        final long size;
+        final String format;
+
+        FileTask(Long id, long size, String format) {
+            this.id = id;
+            this.size = size;
+            this.format = format != null ? format : "unknown";
+        }
+    }
+
+    /**
+     * The files of one message, ingested one after another.
+     */
+    private class Job {
+        final Long datasetId;
+        final Deque<Long> fileIds;
+        final Result result = new Result();
+        final CompletableFuture<Result> done = new CompletableFuture<>();
+
+        Job(Long datasetId, List<Long> fileIds) {
+            this.datasetId = datasetId;
+            this.fileIds = new ArrayDeque<>(fileIds);
+        }
+    }
+
+    /**
+     * How many files went through a lane, and how long they waited for a
+     * worker.
+     */
+    private static class LaneStats {
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong totalWaitMillis = new AtomicLong();
+        final AtomicLong maxWaitMillis = new AtomicLong();
+
+        void started(long waitMillis) {
+            files.incrementAndGet();
+            totalWaitMillis.addAndGet(waitMillis);
+            maxWaitMillis.accumulateAndGet(waitMillis, Math::max);
+        }
+    }
+
+    /**
+     * How many files of a format were ingested, and how fast.
+     */
+    private static class FormatStats {
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+    }
+
+    private ThreadPoolExecutor lane;
+    private ThreadPoolExecutor fastLane;
+    private long fastLaneMaxSize;
+    // the jobs of each dataset being ingested, the running one first
+    // (guarded by itself)
+    private final Map<Long, Deque<Job>> jobsByDataset = new HashMap<>();
+    private final LaneStats laneStats = new LaneStats();
+    private final LaneStats fastLaneStats = new LaneStats();
+    private final ConcurrentMap<String, FormatStats> formatStats = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        configure(JvmSettings.INGEST_WORKERS_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_THREADS),
+                JvmSettings.INGEST_WORKERS_FAST_LANE_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_FAST_LANE_THREADS),
+                JvmSettings.INGEST_WORKERS_FAST_LANE_MAX_SIZE.lookupOptional(Long.class).orElse(DEFAULT_FAST_LANE_MAX_SIZE));
+    }
+
+    void configure(int threads, int fastLaneThreads, long fastLaneMaxSize) {
+        lane = newLane("ingest-worker-", Math.max(1, threads));
+        // (with no fast lane, all the files go to the one lane)
+        fastLane = fastLaneThreads > 0 ? newLane("ingest-fast-lane-worker-", fastLaneThreads) : null;
+        this.fastLaneMaxSize = fastLaneMaxSize;
+        logger.info("Tabular ingest with " + lane.getMaximumPoolSize() + " worker thread(s)"
+                + (fastLane == null ? "" : " and " + fastLaneThreads + " more for the files up to " + fastLaneMaxSize + " bytes"));
+    }
+
+    private static ThreadPoolExecutor newLane(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+    }
+
+    /**
+     * Stops the workers, and fails the jobs that are not done, so that no
+     * one waits for them forever; the files of the ones still queued are
+     * never started.
+     */
+    @PreDestroy
+    public void shutdown() {
+        List<Runnable> dropped = new ArrayList<>(lane.shutdownNow());
+        if (fastLane != null) {
+            dropped.addAll(fastLane.shutdownNow());
+        }
+        List<Job> unfinished = new ArrayList<>();
+        synchronized (jobsByDataset) {
+            jobsByDataset.values().forEach(unfinished::addAll);
+            jobsByDataset.clear();
+        }
+        if (!unfinished.isEmpty()) {
+            logger.warning("Shutting down with " + unfinished.size() + " ingest job(s) not done, "
+                    + dropped.size() + " file(s) of which were waiting for a worker");
+        }
+        for (Job job : unfinished) {
+            job.done.completeExceptionally(new RejectedExecutionException("The ingest was shut down before the files of dataset " + job.datasetId + " were done"));
+        }
+    }
+
+    /**
+     * Queues the files of the message for ingest; returns without waiting
+     * for them.
+     *
+     * @return completed once all the files have been ingested (or failed)
+     */
+    public CompletableFuture<Result> ingest(IngestMessage ingestMessage) {
+        Job job = new Job(ingestMessage.getDatasetId(), ingestMessage.getFileIds());
+        boolean first;
+        synchronized (jobsByDataset) {
+            Deque<Job> jobs = jobsByDataset.computeIfAbsent(job.datasetId, id -> new ArrayDeque<>());
+            jobs.add(job);
+            first = jobs.size() == 1;
+        }
+        if (first) {
+            next(job);
+        }
+        return job.done;
+    }
+
+    /**
+     * @return whether any files of the dataset are being or waiting to be
+     * ingested
+     */
+    public boolean isIngestInProgress(Long datasetId) {
+        synchronized (jobsByDataset) {
+            return jobsByDataset.containsKey(datasetId);
+        }
+    }
+
+    /**
+     * Queues the next file of the job, or, if there are none left, finishes
+     * it and starts the next job of its dataset.
+     */
+    private void next(Job job) {
+        while (true) {
+            Long fileId = job.fileIds.poll();
+            if (fileId == null) {
+                break;
+            }
+            FileTask task;
+            try {
+                task = describe(fileId);
+            } catch (RuntimeException ex) {
+                logger.log(Level.WARNING, "Could not look up the file id " + fileId + " queued for ingest", ex);
+                continue;
+            }
+            if (task == null) {
+                logger.warning("The file id " + fileId + " queued for ingest no longer exists");
+                continue;
+            }
+            boolean fast = fastLane != null && task.size <= fastLaneMaxSize;
+            long queued = System.currentTimeMillis();
+            try {
+                (fast ? fastLane : lane).execute(() -> {
+                    (fast ? fastLaneStats : laneStats).started(System.currentTimeMillis() - queued);
+                    run(job, task);
+                });
+                return;
+            } catch (RejectedExecutionException ex) {
+                // (shutting down)
+                logger.warning("Could not queue the file id " + fileId + " for ingest: " + ex.getMessage());
+                job.result.getFailedFiles().add(String.valueOf(fileId));
+            }
+        }
+
+        Job nextJob;
+        synchronized (jobsByDataset) {
+            Deque<Job> jobs = jobsByDataset.get(job.datasetId);
+            // (none if the job was failed by shutdown())
+            if (jobs != null) {
+                jobs.remove(job);
+                nextJob = jobs.peek();
+                if (nextJob == null) {
+                    jobsByDataset.remove(job.datasetId);
+                }
+            } else {
+                nextJob = null;
+            }
+        }
+        job.done.complete(job.result);
+        if (nextJob != null) {
+            next(nextJob);
+        }
+    }
+
+    private void run(Job job, FileTask task) {
+        FormatStats stats = formatStats.computeIfAbsent(task.format, format -> new FormatStats());
+        long start = System.nanoTime();
+        try {
+            String failedFile = ingestFile(task.id, job.datasetId);
+            if (failedFile != null) {
+                job.result.getFailedFiles().add(failedFile);
+                stats.failures.incrementAndGet();
+            }
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Unexpected failure of the ingest of the file id " + task.id, ex);
+            job.result.getFailedFiles().add(String.valueOf(task.id));
+            stats.failures.incrementAndGet();
+        } finally {
+            stats.files.incrementAndGet();
+            stats.bytes.addAndGet(task.size);
+            stats.nanos.addAndGet(System.nanoTime() - start);
+            next(job);
+        }
+    }
+
+    /**
+     * @return the size and the (original) format of the file, or null if it
+     * does not exist
+     */
+    FileTask describe(Long fileId) {
+        DataFile dataFile = datafileService.find(fileId);
+        if (dataFile == null) {
+            return null;
+        }
+        return new FileTask(fileId, dataFile.getFilesize(), dataFile.getContentType());
+    }
+
+    /**
+     * Ingests the file, and saves an ingest report if that failed with an
+     * exception.
+     *
+     * @return null if the file was ingested, or its name if not
+     */
+    String ingestFile(Long datafile_id, Long datasetId) {
+        logger.fine("Start ingest job;");
+        try {
+            if (ingestService.ingestAsTabular(datafile_id)) {
+                logger.fine("Finished ingest job;");
+                // We used to list the successfully ingested files in the "success"
+                // and "mixed success and failure" emails. Now we never list successfully
+                // ingested files.
+                return null;
+            }
+            logger.warning("Error occurred during ingest job for file id " + datafile_id + "!");
+            DataFile datafile = datafileService.find(datafile_id);
+            return datafile != null ? datafile.getCurrentName() : String.valueOf(datafile_id);
+        } catch (Exception ex) {
+            // TODO:
+            // this solution is working - but it would be cleaner to instead
+            // make sure that all the exceptions are interrupted and appropriate
+            // action taken still on the ingest service side.
+            // -- L.A. Aug. 13 2014;
+            logger.info("Unknown exception occurred  during ingest (supressed stack trace); re-setting ingest status.");
+            logger.fine("looking up datafile for id " + datafile_id);
+            DataFile datafile = datafileService.find(datafile_id);
+            if (datafile == null) {
+                return String.valueOf(datafile_id);
+            }
+            datafile.SetIngestProblem();
+            IngestReport errorReport = new IngestReport();
+            errorReport.setFailure();
+            if (ex.getMessage() != null) {
+                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.detail.message") + ex.getMessage());
+            } else {
+                errorReport.setReport(BundleUtil.getStringFromBundle("file.ingest.saveFailed.message"));
+            }
+            errorReport.setDataFile(datafile);
+            datafile.setIngestReport(errorReport);
+            datafile.setDataTables(null);
+
+            logger.info("trying to save datafile and the failed ingest report, id=" + datafile_id);
+            datafile = datafileService.save(datafile);
+
+            if (datasetId != null) {
+                ingestService.sendFailNotification(datasetId);
+            }
+            return datafile.getCurrentName();
+        }
+    }
+
+    /**
+     * @return the files waiting for a worker, and those being ingested, in
+     * each lane; how long the files waited; how many files of each format
+     * were ingested, and how many bytes per second.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new TreeMap<>();
+        int datasets;
+        int jobs = 0;
+        synchronized (jobsByDataset) {
+            datasets = jobsByDataset.size();
+            for (Deque<Job> datasetJobs : jobsByDataset.values()) {
+                jobs += datasetJobs.size();
+            }
+        }
+        stats.put("datasets", datasets);
+        stats.put("jobs", jobs);
+        stats.put("lane", getLaneStats(lane, laneStats));
+        if (fastLane != null) {
+            Map<String, Object> fastLaneStatsMap = getLaneStats(fastLane, fastLaneStats);
+            fastLaneStatsMap.put("maxFileSize", fastLaneMaxSize);
+            stats.put("fastLane", fastLaneStatsMap);
+        }
+        Map<String, Object> formats = new TreeMap<>();
+        formatStats.forEach((format, formatStat) -> {
+            Map<String, Object> formatStatsMap = new TreeMap<>();
+            long nanos = formatStat.nanos.get();
+            formatStatsMap.put("files", formatStat.files.get());
+            formatStatsMap.put("failures", formatStat.failures.get());
+            formatStatsMap.put("bytes", formatStat.bytes.get());
+            formatStatsMap.put("seconds", nanos / 1e9);
+            formatStatsMap.put("bytesPerSecond", nanos > 0 ? Math.round(formatStat.bytes.get() / (nanos / 1e9)) : 0L);
+            formats.put(format, formatStatsMap);
+        });
+        stats.put("formats", formats);
+        return stats;
+    }
+
+    private static Map<String, Object> getLaneStats(ThreadPoolExecutor executor, LaneStats laneStats) {
+        Map<String, Object> stats = new TreeMap<>();
+        long files = laneStats.files.get();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("active", executor.getActiveCount());
+        stats.put("started", files);
+        stats.put("meanWaitMillis", files > 0 ? laneStats.totalWaitMillis.get() / files : 0L);
+        stats.put("maxWaitMillis", laneStats.maxWaitMillis.get());
+        return stats;
+    }
+}
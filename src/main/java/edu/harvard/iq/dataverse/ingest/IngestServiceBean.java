@@ -47,7 +47,8 @@ import edu.harvard.iq.dataverse.dataaccess.DataAccessOption;
 import edu.harvard.iq.dataverse.dataaccess.StorageIO;
 import edu.harvard.iq.dataverse.dataaccess.ImageThumbConverter;
 import edu.harvard.iq.dataverse.dataaccess.S3AccessIO;
-import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
+import edu.harvard.iq.dataverse.dataaccess.ColumnarTabularFile;
+import edu.harvard.iq.dataverse.dataaccess.TabularColumnScanner;
 import edu.harvard.iq.dataverse.datasetutility.FileExceedsMaxSizeException;
 import static edu.harvard.iq.dataverse.datasetutility.FileSizeChecker.bytesToHumanReadable;
 import edu.harvard.iq.dataverse.datavariable.SummaryStatistic;
@@ -71,6 +72,7 @@ import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReade
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.sav.SAVFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.por.PORFileReaderSpi;
+import edu.harvard.iq.dataverse.settings.FeatureFlags;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.storageuse.StorageUseServiceBean;
 import edu.harvard.iq.dataverse.storageuse.UploadSessionQuotaLimit;
@@ -112,6 +114,10 @@ import java.util.ListIterator;
 import java.util.logging.Logger;
 import java.util.Hashtable;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import jakarta.ejb.EJB;
 import jakarta.ejb.Stateless;
 import jakarta.inject.Named;
@@ -166,6 +172,14 @@ public class IngestServiceBean {
     private static String dateTimeFormat_ymdhmsS = "yyyy-MM-dd HH:mm:ss.SSS";
     private static String dateFormat_ymd = "yyyy-MM-dd";
     
+    // Defaults for calculating the summary statistics and UNFs on the 
+    // ingested tab files; these can be overwritten with the 
+    // dataverse.ingest.summary-stats.* JVM options. The cells limit is 
+    // the number of values that will be held in memory at once (i.e., 
+    // 20M cells is 160MB worth of double values). 
+    private static final long DEFAULT_SUMSTATS_MAX_CELLS = 20000000L;
+    private static final int DEFAULT_SUMSTATS_THREADS = 4;
+    
     // This method tries to permanently store new files in storage (on the filesystem,
     // in an S3 bucket, etc.).
     // Then it adds the files that *have been successfully saved* to the 
@@ -717,108 +731,262 @@ public class IngestServiceBean {
         /*
         logger.info("Skipping summary statistics and UNF.");
          */
-        produceDiscreteNumericSummaryStatistics(dataFile, generatedTabularFile); 
-        produceContinuousSummaryStatistics(dataFile, generatedTabularFile);
-        produceCharacterSummaryStatistics(dataFile, generatedTabularFile);
+        produceStatistics(dataFile, generatedTabularFile, true, false);
         
         recalculateDataFileUNF(dataFile);
         recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
     }
     
-    public void produceContinuousSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+    /**
+     * Calculates the summary statistics, UNFs *and* the category frequencies,
+     * all in the same pass(es) through the generated tab file.
+     */
+    public void produceSummaryAndFrequencyStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+        produceStatistics(dataFile, generatedTabularFile, true, true);
         
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalContinuous()) {
-                logger.fine("subsetting continuous vector");
-
-                if ("float".equals(dataFile.getDataTable().getDataVariables().get(i).getFormat())) {
-                    Float[] variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(),
-                            dataFile.getDataTable().isStoredWithVariableHeader());
-                    logger.fine("Calculating summary statistics on a Float vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                    // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Float vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
-                } else {
-                    Double[] variableVector = TabularSubsetGenerator.subsetDoubleVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            dataFile.getDataTable().getCaseQuantity().intValue(), 
-                            dataFile.getDataTable().isStoredWithVariableHeader());
-                    logger.fine("Calculating summary statistics on a Double vector;");
-                    calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                    // calculate the UNF while we are at it:
-                    logger.fine("Calculating UNF on a Double vector;");
-                    calculateUNF(dataFile, i, variableVector);
-                    variableVector = null; 
+        recalculateDataFileUNF(dataFile);
+        recalculateDatasetVersionUNF(dataFile.getFileMetadata().getDatasetVersion());
+    }
+    
+    /**
+     * Instead of re-reading the tab file once for every variable (as we used to
+     * do, via the TabularSubsetGenerator.subset*Vector() methods), the file is 
+     * read once, with the values of all the variables collected in their 
+     * primitive column vectors at the same time. If the table is too big for 
+     * all the columns to be held in memory at once, the variables are split 
+     * into groups, with one pass through the file per group. The summary 
+     * statistics and UNFs are then calculated on the vectors in parallel.
+     */
+    private void produceStatistics(DataFile dataFile, File generatedTabularFile, boolean summaryStats, boolean frequencies) throws IOException {
+        DataTable dataTable = dataFile.getDataTable();
+        List<DataVariable> vars = dataTable.getDataVariables();
+        int caseQuantity = dataTable.getCaseQuantity().intValue();
+        
+        List<ColumnStatisticsJob> jobs = new ArrayList<>();
+        
+        for (int i = 0; i < dataTable.getVarQuantity(); i++) {
+            DataVariable var = vars.get(i);
+            ColumnStatisticsJob job = new ColumnStatisticsJob(i, var);
+            
+            if (summaryStats) {
+                if (var.isIntervalContinuous()) {
+                    if ("float".equals(var.getFormat())) {
+                        job.numericVector = new TabularColumnScanner.FloatColumnVector(i, caseQuantity);
+                    } else {
+                        job.numericVector = new TabularColumnScanner.DoubleColumnVector(i, caseQuantity);
+                    }
+                } else if (var.isIntervalDiscrete() && var.isTypeNumeric()) {
+                    job.numericVector = new TabularColumnScanner.LongColumnVector(i, caseQuantity);
+                }
+                if (var.isTypeCharacter()) {
+                    job.stringVector = new TabularColumnScanner.StringColumnVector(i, caseQuantity);
+                }
+            }
+            if (frequencies && var.getCategories().size() > 0) {
+                job.frequencyCounter = new TabularColumnScanner.FrequencyCounter(i, var.isTypeNumeric());
+            }
+            
+            if (job.hasWork()) {
+                jobs.add(job);
+            }
+        }
+        
+        if (jobs.isEmpty()) {
+            return;
+        }
+        
+        long maxCells = JvmSettings.INGEST_SUMSTATS_MAX_CELLS.lookupOptional(Long.class).orElse(DEFAULT_SUMSTATS_MAX_CELLS);
+        int numThreads = JvmSettings.INGEST_SUMSTATS_THREADS.lookupOptional(Integer.class)
+                .orElse(Math.min(DEFAULT_SUMSTATS_THREADS, Runtime.getRuntime().availableProcessors()));
+        
+        TabularColumnScanner scanner = new TabularColumnScanner(caseQuantity, dataTable.isStoredWithVariableHeader());
+        
+        ExecutorService executor = numThreads > 1 && jobs.size() > 1 ? Executors.newFixedThreadPool(numThreads) : null;
+        
+        try {
+            for (List<ColumnStatisticsJob> group : groupColumnStatisticsJobs(jobs, caseQuantity, maxCells)) {
+                List<TabularColumnScanner.ColumnConsumer> consumers = new ArrayList<>();
+                for (ColumnStatisticsJob job : group) {
+                    job.addConsumers(consumers);
+                }
+                logger.fine("scanning the tab file for " + group.size() + " variables (" + consumers.size() + " column vectors/counters)");
+                
+                try (FileInputStream in = new FileInputStream(generatedTabularFile)) {
+                    scanner.scan(in, consumers);
+                }
+                
+                calculateColumnStatistics(group, executor);
+                
+                // All the results are assigned on this thread, once the 
+                // calculations are done:
+                for (ColumnStatisticsJob job : group) {
+                    if (job.sumStats != null) {
+                        assignContinuousSummaryStatistics(job.variable, job.sumStats);
+                    }
+                    if (job.numericVector != null || job.stringVector != null) {
+                        if (job.unf != null) {
+                            job.variable.setUnf(job.unf);
+                        } else {
+                            logger.warning("failed to calculate UNF signature for variable " + job.varnum);
+                        }
+                    }
+                    if (job.frequencyCounter != null) {
+                        assignFrequencies(job.variable, job.frequencyCounter);
+                    }
+                    // Let go of the vectors, before the next group is scanned:
+                    job.numericVector = null; 
+                    job.stringVector = null; 
+                    job.frequencyCounter = null; 
                 }
-                logger.fine("Done! (continuous);");
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
     }
     
-    public void produceDiscreteNumericSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
+    private void calculateColumnStatistics(List<ColumnStatisticsJob> group, ExecutorService executor) throws IOException {
+        if (executor == null || group.size() < 2) {
+            for (ColumnStatisticsJob job : group) {
+                calculateColumnStatistics(job);
+            }
+            return;
+        }
         
-        //TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
+        List<Future<Void>> futures = new ArrayList<>();
+        for (ColumnStatisticsJob job : group) {
+            futures.add(executor.submit(() -> {
+                calculateColumnStatistics(job);
+                return null;
+            }));
+        }
         
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isIntervalDiscrete()
-                    && dataFile.getDataTable().getDataVariables().get(i).isTypeNumeric()) {
-                logger.fine("subsetting discrete-numeric vector");
-
-                Long[] variableVector = TabularSubsetGenerator.subsetLongVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(), 
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                // We are discussing calculating the same summary stats for 
-                // all numerics (the same kind of sumstats that we've been calculating
-                // for numeric continuous type)  -- L.A. Jul. 2014
-                calculateContinuousSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a Long vector");
-                calculateUNF(dataFile, i, variableVector);
-                logger.fine("Done! (discrete numeric)");
-                variableVector = null; 
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calculating summary statistics", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("Failed to calculate summary statistics: " + ee.getCause().getMessage(), ee.getCause());
         }
     }
     
-    public void produceCharacterSummaryStatistics(DataFile dataFile, File generatedTabularFile) throws IOException {
-
-        /* 
-            At this point it's still not clear what kinds of summary stats we
-            want for character types. Though we are pretty confident we don't 
-            want to keep doing what we used to do in the past, i.e. simply 
-            store the total counts for all the unique values; even if it's a 
-            very long vector, and *every* value in it is unique. (As a result 
-            of this, our Categorical Variable Value table is the single 
-            largest in the production database. With no evidence whatsoever, 
-            that this information is at all useful. 
-                -- L.A. Jul. 2014 
+    private void calculateColumnStatistics(ColumnStatisticsJob job) throws IOException {
+        if (job.numericVector instanceof TabularColumnScanner.FloatColumnVector) {
+            TabularColumnScanner.FloatColumnVector floatVector = (TabularColumnScanner.FloatColumnVector) job.numericVector;
+            logger.fine("Calculating summary statistics on a Float vector;");
+            job.sumStats = SumStatCalculator.calculateSummaryStatistics(floatVector.getValues(), floatVector.getMissing());
+            // calculate the UNF while we are at it:
+            logger.fine("Calculating UNF on a Float vector;");
+            job.unf = calculateUNF(job.varnum, floatVector.toBoxedArray());
+        } else if (job.numericVector instanceof TabularColumnScanner.DoubleColumnVector) {
+            TabularColumnScanner.DoubleColumnVector doubleVector = (TabularColumnScanner.DoubleColumnVector) job.numericVector;
+            logger.fine("Calculating summary statistics on a Double vector;");
+            job.sumStats = SumStatCalculator.calculateSummaryStatistics(doubleVector.getValues(), doubleVector.getMissing());
+            logger.fine("Calculating UNF on a Double vector;");
+            job.unf = calculateUNF(job.varnum, doubleVector.toBoxedArray());
+        } else if (job.numericVector instanceof TabularColumnScanner.LongColumnVector) {
+            TabularColumnScanner.LongColumnVector longVector = (TabularColumnScanner.LongColumnVector) job.numericVector;
+            // We are discussing calculating the same summary stats for 
+            // all numerics (the same kind of sumstats that we've been calculating
+            // for numeric continuous type)  -- L.A. Jul. 2014
+            job.sumStats = SumStatCalculator.calculateSummaryStatistics(longVector.getValues(), longVector.getMissing());
+            logger.fine("Calculating UNF on a Long vector");
+            job.unf = calculateUNF(job.varnum, longVector.toBoxedArray());
+        }
         
-        TabularSubsetGenerator subsetGenerator = new TabularSubsetGenerator();
-        */
+        if (job.stringVector != null) {
+            //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
+            logger.fine("Calculating UNF on a String vector");
+            job.unf = calculateUNF(job.variable, job.varnum, job.stringVector.getValues());
+        }
+    }
+    
+    private static List<List<ColumnStatisticsJob>> groupColumnStatisticsJobs(List<ColumnStatisticsJob> jobs, int caseQuantity, long maxCells) {
+        List<List<ColumnStatisticsJob>> groups = new ArrayList<>();
+        List<ColumnStatisticsJob> current = new ArrayList<>();
+        long currentCells = 0;
         
-        for (int i = 0; i < dataFile.getDataTable().getVarQuantity(); i++) {
-            if (dataFile.getDataTable().getDataVariables().get(i).isTypeCharacter()) {
-
-                logger.fine("subsetting character vector");
-                String[] variableVector = TabularSubsetGenerator.subsetStringVector(
-                        new FileInputStream(generatedTabularFile), 
-                        i, 
-                        dataFile.getDataTable().getCaseQuantity().intValue(),
-                        dataFile.getDataTable().isStoredWithVariableHeader());
-                //calculateCharacterSummaryStatistics(dataFile, i, variableVector);
-                // calculate the UNF while we are at it:
-                logger.fine("Calculating UNF on a String vector");
-                calculateUNF(dataFile, i, variableVector);
-                logger.fine("Done! (character)");
-                variableVector = null; 
+        for (ColumnStatisticsJob job : jobs) {
+            long jobCells = (long) caseQuantity * job.numberOfVectors();
+            if (!current.isEmpty() && currentCells + jobCells > maxCells) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentCells = 0;
+            }
+            current.add(job);
+            currentCells += jobCells;
+        }
+        groups.add(current);
+        
+        logger.fine("calculating summary statistics for " + jobs.size() + " variables in " + groups.size() + " pass(es) through the tab file");
+        return groups;
+    }
+    
+    private static class ColumnStatisticsJob {
+        final int varnum;
+        final DataVariable variable;
+        TabularColumnScanner.ColumnVector numericVector;
+        TabularColumnScanner.StringColumnVector stringVector;
+        TabularColumnScanner.FrequencyCounter frequencyCounter;
+        double[] sumStats;
+        String unf;
+        
+        ColumnStatisticsJob(int varnum, DataVariable variable) {
+            this.varnum = varnum;
+            this.variable = variable;
+        }
+        
+        boolean hasWork() {
+            return numericVector != null || stringVector != null || frequencyCounter != null;
+        }
+        
+        int numberOfVectors() {
+            return (numericVector != null ? 1 : 0) + (stringVector != null ? 1 : 0);
+        }
+        
+        void addConsumers(List<TabularColumnScanner.ColumnConsumer> consumers) {
+            if (numericVector != null) {
+                consumers.add(numericVector);
+            }
+            if (stringVector != null) {
+                consumers.add(stringVector);
+            }
+            if (frequencyCounter != null) {
+                consumers.add(frequencyCounter);
+            }
+        }
+    }
+
+    /**
+     * Saves the column-oriented copy of the ingested tab file as an aux 
+     * object (see ColumnarTabularFile). This is an optimization only - a 
+     * failure here does not fail the ingest. 
+     */
+    private void saveColumnarTabularFile(StorageIO<DataFile> dataAccess, DataFile dataFile, File tabFile) {
+        File columnarFile = null;
+        try {
+            columnarFile = File.createTempFile("tempColumnarFile", ".tmp");
+            ColumnarTabularFile.create(tabFile, 
+                    dataFile.getDataTable().getVarQuantity().intValue(), 
+                    dataFile.getDataTable().getCaseQuantity().intValue(), 
+                    dataFile.getDataTable().isStoredWithVariableHeader(), 
+                    columnarFile);
+            try (FileInputStream in = new FileInputStream(columnarFile)) {
+                dataAccess.saveInputStreamAsAux(in, ColumnarTabularFile.AUX_TAG, columnarFile.length());
+            }
+            logger.fine("Saved the columnar copy of the tabular file as aux object " + ColumnarTabularFile.AUX_TAG);
+        } catch (IOException ioex) {
+            logger.warning("Failed to save the columnar copy of the tabular file (datafile id=" + dataFile.getId() + "): " + ioex.getMessage());
+        } finally {
+            if (columnarFile != null) {
+                columnarFile.delete();
             }
         }
     }
@@ -831,48 +999,64 @@ public class IngestServiceBean {
     }
 
     public static void produceFrequencies(File generatedTabularFile, List<DataVariable> vars) throws IOException {
-
+        // All the category frequencies are counted in one pass through the file:
+        List<TabularColumnScanner.FrequencyCounter> counters = new ArrayList<>();
+        
         for (int i = 0; i < vars.size(); i++) {
-
-            Collection<VariableCategory> cats = vars.get(i).getCategories();
-            int caseQuantity = vars.get(i).getDataTable().getCaseQuantity().intValue();
-            boolean isNumeric = vars.get(i).isTypeNumeric();
-            boolean skipVariableHeaderLine = vars.get(i).getDataTable().isStoredWithVariableHeader();
-            Object[] variableVector = null;
-            if (cats.size() > 0) {
-                if (isNumeric) {
-                    variableVector = TabularSubsetGenerator.subsetFloatVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
-                else {
-                    variableVector = TabularSubsetGenerator.subsetStringVector(
-                            new FileInputStream(generatedTabularFile), 
-                            i, 
-                            caseQuantity,
-                            skipVariableHeaderLine);
-                }
-                if (variableVector != null) {
-                    Hashtable<Object, Double> freq = calculateFrequency(variableVector);
-                    for (VariableCategory cat : cats) {
-                        Object catValue;
-                        if (isNumeric) {
-                            catValue = new Float(cat.getValue());
-                        } else {
-                            catValue = cat.getValue();
-                        }
-                        Double numberFreq = freq.get(catValue);
-                        if (numberFreq != null) {
-                            cat.setFrequency(numberFreq);
-                        } else {
-                            cat.setFrequency(0D);
-                        }
-                    }
-                } else {
-                    logger.fine("variableVector is null for variable " + vars.get(i).getName());
-                }
+            if (vars.get(i).getCategories().size() > 0) {
+                counters.add(new TabularColumnScanner.FrequencyCounter(i, vars.get(i).isTypeNumeric()));
+            }
+        }
+        
+        if (counters.isEmpty()) {
+            return;
+        }
+        
+        DataTable dataTable = vars.get(0).getDataTable();
+        TabularColumnScanner scanner = new TabularColumnScanner(dataTable.getCaseQuantity().intValue(), dataTable.isStoredWithVariableHeader());
+        try (FileInputStream in = new FileInputStream(generatedTabularFile)) {
+            scanner.scan(in, counters);
+        }
+        
+        for (TabularColumnScanner.FrequencyCounter counter : counters) {
+            assignFrequencies(vars.get(counter.getColumn()), counter);
+        }
+    }
+    
+    /**
+     * Same as above, but reading only the columns of the categorical variables
+     * from the columnar copy of the tab file.
+     */
+    public static void produceFrequencies(ColumnarTabularFile columnarFile, List<DataVariable> vars) throws IOException {
+        List<TabularColumnScanner.FrequencyCounter> counters = new ArrayList<>();
+        
+        for (int i = 0; i < vars.size(); i++) {
+            if (vars.get(i).getCategories().size() > 0) {
+                counters.add(new TabularColumnScanner.FrequencyCounter(i, vars.get(i).isTypeNumeric()));
+            }
+        }
+        
+        columnarFile.scan(counters);
+        
+        for (TabularColumnScanner.FrequencyCounter counter : counters) {
+            assignFrequencies(vars.get(counter.getColumn()), counter);
+        }
+    }
+    
+    private static void assignFrequencies(DataVariable var, TabularColumnScanner.FrequencyCounter counter) {
+        Map<Object, Double> freq = counter.getFrequencies();
+        for (VariableCategory cat : var.getCategories()) {
+            Object catValue;
+            if (counter.isNumeric()) {
+                catValue = Float.valueOf(cat.getValue());
+            } else {
+                catValue = cat.getValue();
+            }
+            Double numberFreq = freq.get(catValue);
+            if (numberFreq != null) {
+                cat.setFrequency(numberFreq);
+            } else {
+                cat.setFrequency(0D);
             }
         }
     }
@@ -1092,8 +1276,7 @@ public class IngestServiceBean {
                 dataFile.getDataTable().setStoredWithVariableHeader(storingWithVariableHeader);
                 
                 try {
-                    produceSummaryStatistics(dataFile, tabFile);
-                    produceFrequencyStatistics(dataFile, tabFile);
+                    produceSummaryAndFrequencyStatistics(dataFile, tabFile);
                     postIngestTasksSuccessful = true;
                 } catch (IOException postIngestEx) {
 
@@ -1185,6 +1368,10 @@ public class IngestServiceBean {
                     // Reset the file size: 
                     dataFile.setFilesize(dataAccess.getSize());
                     
+                    if (FeatureFlags.INGEST_COLUMNAR_STORE.enabled()) {
+                        saveColumnarTabularFile(dataAccess, dataFile, tabFile);
+                    }
+                    
                     dataFile = fileService.save(dataFile);
                     logger.fine("saved data file after updating the size");
 
@@ -1911,11 +2098,6 @@ public class IngestServiceBean {
         return contVarFields;
     }
     
-    private void calculateContinuousSummaryStatistics(DataFile dataFile, int varnum, Number[] dataVector) throws IOException {
-        double[] sumStats = SumStatCalculator.calculateSummaryStatistics(dataVector);
-        assignContinuousSummaryStatistics(dataFile.getDataTable().getDataVariables().get(varnum), sumStats);
-    }
-    
     private void assignContinuousSummaryStatistics(DataVariable variable, double[] sumStats) throws IOException {
         if (sumStats == null || sumStats.length != variableService.summaryStatisticTypes.length) {
             throw new IOException ("Wrong number of summary statistics types calculated! ("+sumStats.length+")");
@@ -1935,7 +2117,7 @@ public class IngestServiceBean {
 
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, Double[] dataVector) {
+    private String calculateUNF(int varnum, Double[] dataVector) {
         String unf = null;
         try {
             unf = UNFUtil.calculateUNF(dataVector);
@@ -1945,14 +2127,10 @@ public class IngestServiceBean {
             logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (numeric, continuous) variable " + varnum);
         }
         
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
+        return unf;
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, Long[] dataVector) {
+    private String calculateUNF(int varnum, Long[] dataVector) {
         String unf = null;
         try {
             unf = UNFUtil.calculateUNF(dataVector);
@@ -1962,23 +2140,19 @@ public class IngestServiceBean {
             logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (numeric, discrete) variable " + varnum);
         }
         
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
+        return unf;
     }
     
-    private void calculateUNF(DataFile dataFile, int varnum, String[] dataVector) throws IOException {
+    private String calculateUNF(DataVariable variable, int varnum, String[] dataVector) throws IOException {
         String unf = null;
         
         String[] dateFormats = null; 
         
         // Special handling for Character strings that encode dates and times:
         
-        if ("time".equals(dataFile.getDataTable().getDataVariables().get(varnum).getFormatCategory())) {
+        if ("time".equals(variable.getFormatCategory())) {
             dateFormats = new String[dataVector.length];
-            String savedDateTimeFormat = dataFile.getDataTable().getDataVariables().get(varnum).getFormat();
+            String savedDateTimeFormat = variable.getFormat();
             String timeFormat = null;
             if (savedDateTimeFormat != null && !savedDateTimeFormat.equals("")) {
                 timeFormat = savedDateTimeFormat;
@@ -2035,9 +2209,9 @@ public class IngestServiceBean {
                     dateFormats[i] = timeFormat;
                 }
             }
-        } else if ("date".equals(dataFile.getDataTable().getDataVariables().get(varnum).getFormatCategory())) {
+        } else if ("date".equals(variable.getFormatCategory())) {
             dateFormats = new String[dataVector.length];
-            String savedDateFormat = dataFile.getDataTable().getDataVariables().get(varnum).getFormat();
+            String savedDateFormat = variable.getFormat();
             for (int i = 0; i < dataVector.length; i++) {
                 if (dataVector[i] != null) {
                     if (savedDateFormat != null && !savedDateFormat.equals("")) {
@@ -2062,11 +2236,7 @@ public class IngestServiceBean {
             logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for (character) variable " + varnum);
         }
         
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
+        return unf;
     }
     
     // Calculating UNFs from *floats*, not *doubles* - this is to test dataverse
@@ -2077,7 +2247,7 @@ public class IngestServiceBean {
     // TODO: remove this from the final production 4.0!
     // -- L.A., Jul 2014
     
-    private void calculateUNF(DataFile dataFile, int varnum, Float[] dataVector) {
+    private String calculateUNF(int varnum, Float[] dataVector) {
         String unf = null;
         try {
             unf = UNFUtil.calculateUNF(dataVector);
@@ -2087,11 +2257,7 @@ public class IngestServiceBean {
             logger.warning("UNF Exception: thrown when attempted to calculate UNF signature for numeric, \"continuous\" (float) variable" + varnum);
         }
         
-        if (unf != null) {
-            dataFile.getDataTable().getDataVariables().get(varnum).setUnf(unf);
-        } else {
-            logger.warning("failed to calculate UNF signature for variable " + varnum);
-        }
+        return unf;
     }
     
     // This method takes a list of file ids, checks the format type of the ingested 
@@ -28,6 +28,7 @@ import static java.lang.System.*;
 import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
+import org.apache.commons.lang3.StringUtils;
 
 /**
  * An abstract superclass for reading and writing of a statistical data file.
@@ -161,7 +162,12 @@ public abstract class TabularDataFileReader {
          * structure! 
          * But before we escape anything, all the back slashes 
          * already in the string need to be escaped themselves.
+         * (Most strings have none of these characters; they are only
+         * quoted, without running the regular expressions below.)
          */
+        if (rawString != null && StringUtils.containsNone(rawString, '\\', '"', '\t', '\n', '\r')) {
+            return "\"" + rawString + "\"";
+        }
         String escapedString = rawString.replace("\\", "\\\\");
         // escape quotes: 
         escapedString = escapedString.replaceAll("\"", Matcher.quoteReplacement("\\\""));
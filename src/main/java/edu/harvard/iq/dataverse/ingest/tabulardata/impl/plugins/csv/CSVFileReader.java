@@ -28,6 +28,7 @@ import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataFileReader;
 import edu.harvard.iq.dataverse.ingest.tabulardata.spi.TabularDataFileReaderSpi;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.BundleUtil;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -48,6 +49,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.lang3.StringUtils;
@@ -69,11 +74,19 @@ public class CSVFileReader extends TabularDataFileReader {
     private static final Logger logger = Logger.getLogger(CSVFileReader.class.getPackage().getName());
     private static final int DIGITS_OF_PRECISION_DOUBLE = 15;
     private static final String FORMAT_IEEE754 = "%+#." + DIGITS_OF_PRECISION_DOUBLE + "e";
+    // The most values held in memory at once while the variable types are
+    // being worked out in parallel (twice that, as the next batch of records
+    // is read while the last one is being examined):
+    private static final int MAX_BATCH_CELLS = 1000000;
     private MathContext doubleMathContext;
     private CSVFormat inFormat;
+    private int numThreads;
+    int maxBatchCells = MAX_BATCH_CELLS;
     //private final Set<Character> firstNumCharSet = new HashSet<>();
 
     // DATE FORMATS
+    // (SimpleDateFormat is not thread-safe: these are only ever cloned, for
+    // every variable whose values are parsed with them; see VariableTypeGuess)
     private static SimpleDateFormat[] DATE_FORMATS = new SimpleDateFormat[]{
         new SimpleDateFormat("yyyy-MM-dd"), //new SimpleDateFormat("yyyy/MM/dd"),
     //new SimpleDateFormat("MM/dd/yyyy"),
@@ -95,6 +108,16 @@ public class CSVFileReader extends TabularDataFileReader {
         } else if (delim == '\t'){
             inFormat = CSVFormat.TDF;
         }
+        numThreads = JvmSettings.INGEST_CSV_THREADS.lookupOptional(Integer.class).orElse(1);
+    }
+
+    /**
+     * @param numThreads the number of threads examining the values of the
+     * variables, to work out their types, in the first pass; 1 to examine them
+     * on the reading thread
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
     }
 
     private void init() throws IOException {
@@ -174,35 +197,34 @@ public class CSVFileReader extends TabularDataFileReader {
         dataTable.setVarQuantity((long) variableList.size());
         dataTable.setDataVariables(variableList);
 
-        boolean[] isNumericVariable = new boolean[headers.size()];
-        boolean[] isIntegerVariable = new boolean[headers.size()];
-        boolean[] isTimeVariable = new boolean[headers.size()];
-        boolean[] isDateVariable = new boolean[headers.size()];
+        VariableTypeGuess[] guesses = new VariableTypeGuess[headers.size()];
 
         for (i = 0; i < headers.size(); i++) {
             // OK, let's assume that every variable is numeric;
             // but we'll go through the file and examine every value; the
             // moment we find a value that's not a legit numeric one, we'll
             // assume that it is in fact a String.
-            isNumericVariable[i] = true;
-            isIntegerVariable[i] = true;
-            isDateVariable[i] = true;
-            isTimeVariable[i] = true;
+            guesses[i] = new VariableTypeGuess();
         }
 
         // First, "learning" pass.
         // (we'll save the incoming stream in another temp file:)
-        SimpleDateFormat[] selectedDateTimeFormat = new SimpleDateFormat[headers.size()];
-        SimpleDateFormat[] selectedDateFormat = new SimpleDateFormat[headers.size()];
-
+        // The records are read one at a time, never all at once; when several
+        // threads are examining the values, they are handed batches of a 
+        // bounded number of records, each thread a different set of variables.
         File firstPassTempFile = File.createTempFile("firstpass-", ".csv");
 
+        ExecutorService executor = numThreads > 1 && headers.size() > 1 ? Executors.newFixedThreadPool(Math.min(numThreads, headers.size())) : null;
+        int batchSize = Math.max(1, maxBatchCells / Math.max(1, headers.size()));
+        List<CSVRecord> batch = new ArrayList<>();
+        List<Future<Void>> batchInProgress = new ArrayList<>();
+
         try (CSVPrinter csvFilePrinter = new CSVPrinter(
                 // TODO allow other parsers of tabular data to use this parser by changin inFormat
                 new FileWriter(firstPassTempFile.getAbsolutePath()), inFormat)) {
             //Write  headers
             csvFilePrinter.printRecord(headers.keySet());
-            for (CSVRecord record : parser.getRecords()) {
+            for (CSVRecord record : parser) {
                 // Checks if #records = #columns in header
                 if (!record.isConsistent()) {
                     List<String> args = Arrays.asList(new String[]{"" + (parser.getCurrentLineNumber() - 1),
@@ -211,117 +233,31 @@ public class CSVFileReader extends TabularDataFileReader {
                     throw new IOException(BundleUtil.getStringFromBundle("ingest.csv.recordMismatch", args));
                 }
 
-                for (i = 0; i < headers.size(); i++) {
-                    String varString = record.get(i);
-                    isIntegerVariable[i] = isIntegerVariable[i]
-                                           && varString != null
-                                           && (varString.isEmpty()
-                                               || varString.equals("null")
-                                               || (StringUtils.isNumeric(varString)
-                                                    || (varString.substring(0,1).matches("[+-]") 
-                                                        && StringUtils.isNumeric(varString.substring(1)))));
-                    if (isNumericVariable[i]) {
-                        // If variable might be "numeric" test to see if this value is a parsable number:
-                        if (varString != null && !varString.isEmpty()) {
-
-                            boolean isNumeric = false;
-                            boolean isInteger = false;
-
-                            if (varString.equalsIgnoreCase("NaN")
-                                || varString.equalsIgnoreCase("NA")
-                                || varString.equalsIgnoreCase("Inf")
-                                || varString.equalsIgnoreCase("+Inf")
-                                || varString.equalsIgnoreCase("-Inf")
-                                || varString.equalsIgnoreCase("null")) {
-                                continue;
-                            } else {
-                                try {
-                                    Double testDoubleValue = new Double(varString);
-                                    continue;
-                                } catch (NumberFormatException ex) {
-                                    // the token failed to parse as a double
-                                    // so the column is a string variable.
-                                }
-                            }
-                            isNumericVariable[i] = false;
-                        }
+                if (executor == null) {
+                    for (i = 0; i < headers.size(); i++) {
+                        guesses[i].check(record.get(i));
                     }
-
-                    // If this is not a numeric column, see if it is a date collumn
-                    // by parsing the cell as a date or date-time value:
-                    if (!isNumericVariable[i]) {
-
-                        Date dateResult = null;
-
-                        if (isTimeVariable[i]) {
-                            if (varString != null && !varString.isEmpty()) {
-                                boolean isTime = false;
-
-                                if (selectedDateTimeFormat[i] != null) {
-                                    ParsePosition pos = new ParsePosition(0);
-                                    dateResult = selectedDateTimeFormat[i].parse(varString, pos);
-
-                                    if (dateResult != null && pos.getIndex() == varString.length()) {
-                                        // OK, successfully parsed a value!
-                                        isTime = true;
-                                    }
-                                } else {
-                                    for (SimpleDateFormat format : TIME_FORMATS) {
-                                        ParsePosition pos = new ParsePosition(0);
-                                        dateResult = format.parse(varString, pos);
-                                        if (dateResult != null && pos.getIndex() == varString.length()) {
-                                            // OK, successfully parsed a value!
-                                            isTime = true;
-                                            selectedDateTimeFormat[i] = format;
-                                            break;
-                                        }
-                                    }
-                                }
-                                if (!isTime) {
-                                    isTimeVariable[i] = false;
-                                    // if the token didn't parse as a time value,
-                                    // we will still try to parse it as a date, below.
-                                    // unless this column is NOT a date.
-                                } else {
-                                    // And if it is a time value, we are going to assume it's
-                                    // NOT a date.
-                                    isDateVariable[i] = false;
-                                }
-                            }
-                        }
-
-                        if (isDateVariable[i]) {
-                            if (varString != null && !varString.isEmpty()) {
-                                boolean isDate = false;
-
-                                // TODO:
-                                // Strictly speaking, we should be doing the same thing
-                                // here as with the time formats above; select the
-                                // first one that works, then insist that all the
-                                // other values in this column match it... but we
-                                // only have one, as of now, so it should be ok.
-                                // -- L.A. 4.0 beta
-                                for (SimpleDateFormat format : DATE_FORMATS) {
-                                    // Strict parsing - it will throw an
-                                    // exception if it doesn't parse!
-                                    format.setLenient(false);
-                                    try {
-                                        format.parse(varString);
-                                        isDate = true;
-                                        selectedDateFormat[i] = format;
-                                        break;
-                                    } catch (ParseException ex) {
-                                        //Do nothing
-                                    }
-                                }
-                                isDateVariable[i] = isDate;
-                            }
-                        }
+                } else {
+                    batch.add(record);
+                    if (batch.size() == batchSize) {
+                        // (the values of each variable must be examined in 
+                        // the order they appear in)
+                        waitFor(batchInProgress);
+                        batchInProgress = checkInParallel(guesses, batch, executor);
+                        batch = new ArrayList<>();
                     }
                 }
 
                 csvFilePrinter.printRecord(record);
             }
+            if (executor != null) {
+                waitFor(batchInProgress);
+                waitFor(checkInParallel(guesses, batch, executor));
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
         dataTable.setCaseQuantity(parser.getRecordNumber());
         parser.close();
@@ -329,22 +265,22 @@ public class CSVFileReader extends TabularDataFileReader {
 
         // Re-type the variables that we've determined are numerics:
         for (i = 0; i < headers.size(); i++) {
-            if (isNumericVariable[i]) {
+            if (guesses[i].isNumeric) {
                 dataTable.getDataVariables().get(i).setTypeNumeric();
 
-                if (isIntegerVariable[i]) {
+                if (guesses[i].isInteger) {
                     dataTable.getDataVariables().get(i).setIntervalDiscrete();
                 } else {
                     dataTable.getDataVariables().get(i).setIntervalContinuous();
                 }
-            } else if (isDateVariable[i] && selectedDateFormat[i] != null) {
+            } else if (guesses[i].isDate && guesses[i].selectedDateFormat != null) {
                 // Dates are still Strings, i.e., they are "character" and "discrete";
                 // But we add special format values for them:
                 dataTable.getDataVariables().get(i).setFormat(DATE_FORMATS[0].toPattern());
                 dataTable.getDataVariables().get(i).setFormatCategory("date");
-            } else if (isTimeVariable[i] && selectedDateTimeFormat[i] != null) {
+            } else if (guesses[i].isTime && guesses[i].selectedDateTimeFormat != null) {
                 // Same for time values:
-                dataTable.getDataVariables().get(i).setFormat(selectedDateTimeFormat[i].toPattern());
+                dataTable.getDataVariables().get(i).setFormat(guesses[i].selectedDateTimeFormat.toPattern());
                 dataTable.getDataVariables().get(i).setFormatCategory("time");
             }
         }
@@ -371,7 +307,7 @@ public class CSVFileReader extends TabularDataFileReader {
 
                 for (i = 0; i < headers.size(); i++) {
                     String varString = record.get(i);
-                    if (isNumericVariable[i]) {
+                    if (guesses[i].isNumeric) {
                         if (varString == null || varString.isEmpty() || varString.equalsIgnoreCase("NA")) {
                             // Missing value - represented as an empty string in
                             // the final tab file
@@ -389,7 +325,7 @@ public class CSVFileReader extends TabularDataFileReader {
                         } else if (varString.equalsIgnoreCase("null")) {
                             // By request from Gus - "NULL" is recognized as a
                             // numeric zero:
-                            caseRow[i] = isIntegerVariable[i] ? "0" : "0.0";
+                            caseRow[i] = guesses[i].isInteger ? "0" : "0.0";
                         } else {
                             /* No re-formatting is done on any other numeric values.
                              * We'll save them as they were, for archival purposes.
@@ -433,7 +369,7 @@ public class CSVFileReader extends TabularDataFileReader {
                             }
                              */
                         }
-                    } else if (isTimeVariable[i] || isDateVariable[i]) {
+                    } else if (guesses[i].isTime || guesses[i].isDate) {
                         // Time and Dates are stored NOT quoted (don't ask).
                         if (varString != null) {
                             // Dealing with quotes:
@@ -483,4 +419,169 @@ public class CSVFileReader extends TabularDataFileReader {
         return (int) linecount;
     }
 
+
+    /*
+     * Has the values of the batch of records examined by the executor: each
+     * thread examines all the values of a group of variables.
+     */
+    private List<Future<Void>> checkInParallel(VariableTypeGuess[] guesses, List<CSVRecord> batch, ExecutorService executor) {
+        List<Future<Void>> futures = new ArrayList<>();
+        int groups = Math.min(numThreads, guesses.length);
+        for (int group = 0; group < groups; group++) {
+            int firstVariable = group;
+            futures.add(executor.submit(() -> {
+                for (int i = firstVariable; i < guesses.length; i += groups) {
+                    for (CSVRecord record : batch) {
+                        guesses[i].check(record.get(i));
+                    }
+                }
+                return null;
+            }));
+        }
+        return futures;
+    }
+
+    private void waitFor(List<Future<Void>> futures) throws IOException {
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while examining the values of the variables", ie);
+        } catch (ExecutionException ee) {
+            throw new IOException("Failed to examine the values of the variables: " + ee.getCause().getMessage(), ee.getCause());
+        }
+    }
+
+    /**
+     * What has been learned, in the first pass, about the type of a variable
+     * from the values examined so far. Each variable has its own date and
+     * time formats, so that the variables can be examined in parallel.
+     */
+    private static class VariableTypeGuess {
+        boolean isNumeric = true;
+        boolean isInteger = true;
+        boolean isTime = true;
+        boolean isDate = true;
+        SimpleDateFormat selectedDateTimeFormat;
+        SimpleDateFormat selectedDateFormat;
+
+        private final SimpleDateFormat[] timeFormats = new SimpleDateFormat[TIME_FORMATS.length];
+        private final SimpleDateFormat[] dateFormats = new SimpleDateFormat[DATE_FORMATS.length];
+
+        VariableTypeGuess() {
+            for (int i = 0; i < TIME_FORMATS.length; i++) {
+                timeFormats[i] = (SimpleDateFormat) TIME_FORMATS[i].clone();
+            }
+            for (int i = 0; i < DATE_FORMATS.length; i++) {
+                dateFormats[i] = (SimpleDateFormat) DATE_FORMATS[i].clone();
+                // Strict parsing - it will throw an
+                // exception if it doesn't parse!
+                dateFormats[i].setLenient(false);
+            }
+        }
+
+        void check(String varString) {
+            isInteger = isInteger
+                        && varString != null
+                        && (varString.isEmpty()
+                            || varString.equals("null")
+                            || (StringUtils.isNumeric(varString)
+                                || ((varString.charAt(0) == '+' || varString.charAt(0) == '-')
+                                    && StringUtils.isNumeric(varString.substring(1)))));
+            if (isNumeric) {
+                // If variable might be "numeric" test to see if this value is a parsable number:
+                if (varString != null && !varString.isEmpty()) {
+
+                    if (varString.equalsIgnoreCase("NaN")
+                        || varString.equalsIgnoreCase("NA")
+                        || varString.equalsIgnoreCase("Inf")
+                        || varString.equalsIgnoreCase("+Inf")
+                        || varString.equalsIgnoreCase("-Inf")
+                        || varString.equalsIgnoreCase("null")) {
+                        return;
+                    } else {
+                        try {
+                            Double.parseDouble(varString);
+                            return;
+                        } catch (NumberFormatException ex) {
+                            // the token failed to parse as a double
+                            // so the column is a string variable.
+                        }
+                    }
+                    isNumeric = false;
+                }
+            }
+
+            // If this is not a numeric column, see if it is a date collumn
+            // by parsing the cell as a date or date-time value:
+            if (!isNumeric) {
+
+                Date dateResult = null;
+
+                if (isTime) {
+                    if (varString != null && !varString.isEmpty()) {
+                        boolean isTimeValue = false;
+
+                        if (selectedDateTimeFormat != null) {
+                            ParsePosition pos = new ParsePosition(0);
+                            dateResult = selectedDateTimeFormat.parse(varString, pos);
+
+                            if (dateResult != null && pos.getIndex() == varString.length()) {
+                                // OK, successfully parsed a value!
+                                isTimeValue = true;
+                            }
+                        } else {
+                            for (SimpleDateFormat format : timeFormats) {
+                                ParsePosition pos = new ParsePosition(0);
+                                dateResult = format.parse(varString, pos);
+                                if (dateResult != null && pos.getIndex() == varString.length()) {
+                                    // OK, successfully parsed a value!
+                                    isTimeValue = true;
+                                    selectedDateTimeFormat = format;
+                                    break;
+                                }
+                            }
+                        }
+                        if (!isTimeValue) {
+                            isTime = false;
+                            // if the token didn't parse as a time value,
+                            // we will still try to parse it as a date, below.
+                            // unless this column is NOT a date.
+                        } else {
+                            // And if it is a time value, we are going to assume it's
+                            // NOT a date.
+                            isDate = false;
+                        }
+                    }
+                }
+
+                if (isDate) {
+                    if (varString != null && !varString.isEmpty()) {
+                        boolean isDateValue = false;
+
+                        // TODO:
+                        // Strictly speaking, we should be doing the same thing
+                        // here as with the time formats above; select the
+                        // first one that works, then insist that all the
+                        // other values in this column match it... but we
+                        // only have one, as of now, so it should be ok.
+                        // -- L.A. 4.0 beta
+                        for (SimpleDateFormat format : dateFormats) {
+                            try {
+                                format.parse(varString);
+                                isDateValue = true;
+                                selectedDateFormat = format;
+                                break;
+                            } catch (ParseException ex) {
+                                //Do nothing
+                            }
+                        }
+                        isDate = isDateValue;
+                    }
+                }
+            }
+        }
+    }
 }
@@ -4,6 +4,7 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.logging.Logger;
 
@@ -12,6 +13,9 @@ public class DataReader {
     private BufferedInputStream stream;
     private int DEFAULT_BUFFER_SIZE = 8192;// * 2;
     private byte[] buffer;
+    // the same buffer, for decoding the numeric values in place, in the byte
+    // order of the file:
+    private ByteBuffer view;
     private int buffer_size;
     private long byte_offset;
     private int buffer_byte_offset;
@@ -22,11 +26,12 @@ public class DataReader {
     }
 
     public DataReader(BufferedInputStream stream, int size) throws IOException {
-        if (buffer_size > 0) {
+        if (size > 0) {
             this.DEFAULT_BUFFER_SIZE = size;
         }
         this.stream = stream;
         buffer = new byte[DEFAULT_BUFFER_SIZE];
+        view = ByteBuffer.wrap(buffer);
         byte_offset = 0;
         buffer_byte_offset = 0;
 
@@ -35,6 +40,7 @@ public class DataReader {
 
     public void setLSF(boolean lsf) {
         LSF = lsf;
+        view.order(lsf ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
     }
 
     // this returns the *absolute* byte offest in the stream. 
@@ -134,13 +140,45 @@ public class DataReader {
     }
 
     /*
-     * Checks that LSF is not null, and sets the buffer byte order accordingly
+     * Makes sure that the next n bytes are in the buffer, moving the bytes
+     * left in it to its start and reading more from the stream if needed, 
+     * and returns the offset of the first of them in the buffer. 
+     * This is what lets the methods below decode the values in place, 
+     * without copying them into a newly allocated array first; n may not
+     * be larger than the buffer. 
      */
-    private void checkLSF(ByteBuffer buffer) throws IOException{
+    private int fill(int n) throws IOException {
+        if (buffer_size - buffer_byte_offset >= n) {
+            return buffer_byte_offset;
+        }
+        if (n > buffer.length) {
+            throw new IOException("DataReader.fill called to buffer more bytes than the buffer size.");
+        }
+        // (the size is -1 if the stream was empty to begin with)
+        int remaining = Math.max(buffer_size - buffer_byte_offset, 0);
+        if (buffer_byte_offset > 0) {
+            System.arraycopy(buffer, buffer_byte_offset, buffer, 0, remaining);
+            byte_offset += buffer_byte_offset;
+            buffer_byte_offset = 0;
+        }
+        buffer_size = remaining;
+        while (buffer_size < n) {
+            int bytes_read = stream.read(buffer, buffer_size, buffer.length - buffer_size);
+            if (bytes_read < 1) {
+                throw new IOException("reached the end of data stream prematurely.");
+            }
+            buffer_size += bytes_read;
+        }
+        return 0;
+    }
+
+    /*
+     * Checks that LSF is not null, i.e. that the byte order of the buffer view
+     * has been set.
+     */
+    private void checkLSF() throws IOException {
         if (LSF == null) {
             throw new IOException("Byte order not determined for reading numeric values.");
-        } else if (LSF) {
-            buffer.order(ByteOrder.LITTLE_ENDIAN);
         }
     }
 
@@ -207,42 +245,39 @@ public class DataReader {
     }
 
     public short readShort() throws IOException {
-        ByteBuffer byte_buffer = ByteBuffer.wrap(readBytes(2));
-        checkLSF(byte_buffer);
-        return byte_buffer.getShort();
+        checkLSF();
+        short ret = view.getShort(fill(2));
+        buffer_byte_offset += 2;
+        return ret;
     }
 
     public int readInt() throws IOException {
-        ByteBuffer byte_buffer = ByteBuffer.wrap(readBytes(4));
-        checkLSF(byte_buffer);
-        return byte_buffer.getInt();
+        checkLSF();
+        int ret = view.getInt(fill(4));
+        buffer_byte_offset += 4;
+        return ret;
     }
 
     public long readULong(int n) throws IOException {
-        byte[] raw_bytes = readBytes(n);
-        if (LSF == null) {
-            throw new IOException("Byte order not determined for reading numeric values.");
-        }
+        checkLSF();
 
         if (n != 2 && n != 4 && n != 6 && n != 8) {
             throw new IOException("Unsupported number of bytes in an integer: " + n);
         }
+        int offset = fill(n);
         long ret = 0;
-        short unsigned_byte_value;
 
         for (int i = 0; i < n; i++) {
+            int unsigned_byte_value;
             if (LSF) {
-                unsigned_byte_value = raw_bytes[i];
+                unsigned_byte_value = buffer[offset + i] & 0xFF;
             } else {
-                unsigned_byte_value = raw_bytes[n - i - 1];
-            }
-
-            if (unsigned_byte_value < 0) {
-                unsigned_byte_value += 256;
+                unsigned_byte_value = buffer[offset + n - i - 1] & 0xFF;
             }
 
             ret += unsigned_byte_value * (1L << (8 * i));
         }
+        buffer_byte_offset += n;
         if(ret < 0){
             throw new IOException("Sorry for hoping this wouldn't be used with values over 2^63-1");
         }
@@ -251,15 +286,17 @@ public class DataReader {
 
     // Floating point reader methods: 
     public double readDouble() throws IOException {
-        ByteBuffer byte_buffer = ByteBuffer.wrap(readBytes(8));
-        checkLSF(byte_buffer);
-        return byte_buffer.getDouble();
+        checkLSF();
+        double ret = view.getDouble(fill(8));
+        buffer_byte_offset += 8;
+        return ret;
     }
 
     public float readFloat() throws IOException {
-        ByteBuffer byte_buffer = ByteBuffer.wrap(readBytes(4));
-        checkLSF(byte_buffer);
-        return byte_buffer.getFloat();
+        checkLSF();
+        float ret = view.getFloat(fill(4));
+        buffer_byte_offset += 4;
+        return ret;
     }
 
 
@@ -272,6 +309,16 @@ public class DataReader {
      * a String as is. 
      */
     public String readString(int n) throws IOException {
+        if (n > 0 && n <= buffer.length) {
+            // (decoded straight from the buffer, up to the first zero)
+            int offset = fill(n);
+            int length = 0;
+            while (length < n && buffer[offset + length] != 0) {
+                length++;
+            }
+            buffer_byte_offset += n;
+            return new String(buffer, offset, length, StandardCharsets.US_ASCII);
+        }
 
         String ret = new String(readBytes(n), "US-ASCII");
 
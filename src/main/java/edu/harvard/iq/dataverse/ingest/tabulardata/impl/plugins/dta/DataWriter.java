@@ -0,0 +1,134 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The counterpart of the {@link DataReader}, for writing the tab-delimited
+ * file: the values are encoded as UTF-8 straight into a buffer, that is
+ * written out when full (rather than after every line, as an autoflushing
+ * PrintWriter would). Integer values are formatted without creating any
+ * strings; floating point values are formatted with Float.toString() and
+ * Double.toString(), so that they come out exactly as they always have.
+ */
+public class DataWriter implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+    // long enough for any long, sign included:
+    private static final int MAX_LONG_LENGTH = 20;
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream stream;
+    private final byte[] buffer;
+    private int count;
+
+    public DataWriter(OutputStream stream) {
+        this(stream, DEFAULT_BUFFER_SIZE);
+    }
+
+    public DataWriter(OutputStream stream, int size) {
+        this.stream = stream;
+        this.buffer = new byte[Math.max(size, MAX_LONG_LENGTH)];
+    }
+
+    /*
+     * Writes the string, UTF-8 encoded; null is written as an empty string,
+     * as StringUtils.join() does.
+     */
+    public void write(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // not plain ASCII; let the encoder deal with the rest of it:
+                write(value.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            if (count == buffer.length) {
+                flushBuffer();
+            }
+            buffer[count++] = (byte) c;
+        }
+    }
+
+    public void write(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            // (cannot be negated)
+            write(Long.toString(value));
+            return;
+        }
+        if (buffer.length - count < MAX_LONG_LENGTH) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            buffer[count++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = count + digits - 1; i >= count; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count += digits;
+    }
+
+    public void write(float value) throws IOException {
+        write(Float.toString(value));
+    }
+
+    public void write(double value) throws IOException {
+        write(Double.toString(value));
+    }
+
+    public void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - count) {
+            flushBuffer();
+        }
+        if (bytes.length > buffer.length) {
+            stream.write(bytes);
+            return;
+        }
+        System.arraycopy(bytes, 0, buffer, count, bytes.length);
+        count += bytes.length;
+    }
+
+    public void writeTab() throws IOException {
+        if (count == buffer.length) {
+            flushBuffer();
+        }
+        buffer[count++] = '\t';
+    }
+
+    // The line separator of the platform, as PrintWriter.println() writes it.
+    public void writeNewLine() throws IOException {
+        write(LINE_SEPARATOR);
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            stream.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        stream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -5,8 +5,6 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.text.ParseException;
@@ -734,19 +732,27 @@ public class NewDTAFileReader extends TabularDataFileReader {
         // save the temp tab-delimited file in the return ingest object:        
         ingesteddata.setTabDelimitedFile(tabDelimitedDataFile);
 
-        FileOutputStream fileOutTab = new FileOutputStream(tabDelimitedDataFile);
-        PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+        DataWriter out = new DataWriter(new FileOutputStream(tabDelimitedDataFile));
 
         // add the variable header here, if needed
         if (variableHeaderLine != null) {
-            pwout.println(variableHeaderLine); 
+            out.write(variableHeaderLine);
+            out.writeNewLine();
         }
-        
+
+        // What is known of each column is looked up once, rather than for 
+        // every value:
+        boolean[] isDateTimeColumn = new boolean[nvar];
+        boolean[] isStringColumn = new boolean[nvar];
+        for (int columnCounter = 0; columnCounter < nvar; columnCounter++) {
+            String formatCategory = dataTable.getDataVariables().get(columnCounter).getFormatCategory();
+            isDateTimeColumn[columnCounter] = "time".equals(formatCategory) || "date".equals(formatCategory);
+            isStringColumn[columnCounter] = variableTypes[columnCounter] != null && variableTypes[columnCounter].matches("^STR[1-9][0-9]*");
+        }
+
         logger.fine("Beginning to read data stream.");
 
         for (int i = 0; i < nobs; i++) {
-            Object[] dataRow = new Object[nvar];
-
             // TODO: 
             // maybe intercept any potential exceptions here, and add more 
             // diagnostic info, before re-throwing...
@@ -756,11 +762,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
                 String varType = variableTypes[columnCounter];
 
                 // 4.0 Check if this is a time/date variable: 
-                boolean isDateTimeDatum = false;
-                String formatCategory = dataTable.getDataVariables().get(columnCounter).getFormatCategory();
-                if (formatCategory != null && (formatCategory.equals("time") || formatCategory.equals("date"))) {
-                    isDateTimeDatum = true;
-                }
+                boolean isDateTimeDatum = isDateTimeColumn[columnCounter];
 
                 String variableFormat = dateVariableFormats[columnCounter];
 
@@ -768,64 +770,46 @@ public class NewDTAFileReader extends TabularDataFileReader {
                     throw new IOException("Undefined variable type encountered in readData()");
                 }
 
+                if (columnCounter > 0) {
+                    out.writeTab();
+                }
+
+                // (missing values are written as MissingValueForTabDelimitedFile, 
+                // i.e. as nothing at all)
                 if (varType.equals("Byte")) { // signed
                     byte byte_datum = reader.readByte();
 
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column byte =" + byte_datum);
-                    if (byte_datum >= BYTE_MISSING_VALUE) {
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column byte MV=" + byte_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-                    } else {
-                        dataRow[columnCounter] = byte_datum;
-                        logger.fine(i + "-th row " + columnCounter
-                                + "-th column byte value=" + byte_datum);
+                    if (byte_datum < BYTE_MISSING_VALUE) {
+                        out.write(byte_datum);
                     }
 
                     byte_offset++;
                 } else if (varType.equals("Integer")) { // signed
-                    short short_datum = (short) reader.readShort();
-
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column stata int =" + short_datum);
-
-                    if (short_datum >= INT_MISSIG_VALUE) {
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column stata long missing value=" + short_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-                    } else {
+                    short short_datum = reader.readShort();
 
+                    if (short_datum < INT_MISSIG_VALUE) {
                         if (isDateTimeDatum) {
 
                             DecodedDateTime ddt = decodeDateTimeData("short", variableFormat, Short.toString(short_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            out.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                         } else {
-                            dataRow[columnCounter] = short_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "-th column \"integer\" value=" + short_datum);
+                            out.write(short_datum);
                         }
                     }
                     byte_offset += 2;
                 } else if (varType.equals("Long")) { // stata-Long = java's int: 4 byte
                     int int_datum = reader.readInt();
 
-                    if (int_datum >= LONG_MISSING_VALUE) {
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-                    } else {
+                    if (int_datum < LONG_MISSING_VALUE) {
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("int", variableFormat, Integer.toString(int_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            out.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
 
                         } else {
-                            dataRow[columnCounter] = int_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "-th column \"long\" value=" + int_datum);
+                            out.write(int_datum);
                         }
 
                     }
@@ -834,24 +818,16 @@ public class NewDTAFileReader extends TabularDataFileReader {
 
                     float float_datum = reader.readFloat();
 
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column float =" + float_datum);
-                    if (FLOAT_MISSING_VALUE_SET.contains(float_datum)) {
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column float missing value=" + float_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-
-                    } else {
+                    // (all the missing values are at least 0x1.000p127f; 
+                    // the set is only consulted - and the value boxed - for those)
+                    if (!(float_datum >= FLOAT_MISSING_VALUES.get(0) && FLOAT_MISSING_VALUE_SET.contains(float_datum))) {
 
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("float", variableFormat, doubleNumberFormatter.format(float_datum));
-                            logger.fine(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            out.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                         } else {
-                            dataRow[columnCounter] = float_datum;
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "=th column float value:" + float_datum);
+                            out.write(float_datum);
                             // This may be temporary - but for now (as in, while I'm testing 
                             // 4.0 ingest against 3.* ingest, I need to be able to tell if a 
                             // floating point value was a single, or double float in the 
@@ -865,57 +841,43 @@ public class NewDTAFileReader extends TabularDataFileReader {
                 } else if (varType.equals("Double")) { // STATA double 8 bytes
 
                     double double_datum = reader.readDouble();
-                    if (DOUBLE_MISSING_VALUE_SET.contains(double_datum)) {
-                        logger.finer(i + "-th row " + columnCounter
-                                + "=th column double missing value=" + double_datum);
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-                    } else {
+                    // (same as with the floats, above)
+                    if (!(double_datum >= DOUBLE_MISSING_VALUE_LIST.get(0) && DOUBLE_MISSING_VALUE_SET.contains(double_datum))) {
 
                         if (isDateTimeDatum) {
                             DecodedDateTime ddt = decodeDateTimeData("double", variableFormat, doubleNumberFormatter.format(double_datum));
-                            logger.finer(i + "-th row , decodedDateTime " + ddt.decodedDateTime + ", format=" + ddt.format);
-                            dataRow[columnCounter] = ddt.decodedDateTime;
+                            out.write(ddt.decodedDateTime);
                             dataTable.getDataVariables().get(columnCounter).setFormat(ddt.format);
                         } else {
-                            logger.fine(i + "-th row " + columnCounter
-                                    + "=th column double value:" + double_datum); //doubleNumberFormatter.format(double_datum));
-
-                            dataRow[columnCounter] = double_datum; //doubleNumberFormatter.format(double_datum);
+                            out.write(double_datum);
                         }
 
                     }
                     byte_offset += 8;
-                } else if (varType.matches("^STR[1-9][0-9]*")) {
+                } else if (isStringColumn[columnCounter]) {
                     // String case
                     int strVarLength = variableByteLengths[columnCounter];
-                    logger.fine(i + "-th row " + columnCounter
-                            + "=th column is a string (" + strVarLength + " bytes)");
                     // In STATA13+, STRF strings *MUST*
                     // be limited to ASCII. UTF8 strings can be stored as 
                     // STRLs. 
                     String string_datum = reader.readString(strVarLength);
-                    if (string_datum.equals("")) {
-
-                        logger.fine(i + "-th row " + columnCounter
-                                + "=th column string missing value=" + string_datum);
-
-                        /* Note: 
-                         * In Stata, an empty string ("") in a String vector is 
-                         * the notation for a missing value.
-                         * So in the resulting tab file it should be stored as such,
-                         * and not as an empty string (that would be "\"\""). 
-                         * (This of course means that it's simply not possible 
-                         * to store actual empty strings in Stata)
-                         */
-                        dataRow[columnCounter] = MissingValueForTabDelimitedFile;
-                    } else {
+
+                    /* Note: 
+                     * In Stata, an empty string ("") in a String vector is 
+                     * the notation for a missing value.
+                     * So in the resulting tab file it should be stored as such,
+                     * and not as an empty string (that would be "\"\""). 
+                     * (This of course means that it's simply not possible 
+                     * to store actual empty strings in Stata)
+                     */
+                    if (!string_datum.equals("")) {
                         /*
                          * Some special characters, like new lines and tabs need to 
                          * be escaped - otherwise they will break our TAB file 
                          * structure! 
                          */
 
-                        dataRow[columnCounter] = escapeCharacterString(string_datum);
+                        out.write(escapeCharacterString(string_datum));
                     }
                     byte_offset += strVarLength;
                 } else if (varType.equals("STRL")) {
@@ -940,9 +902,11 @@ public class NewDTAFileReader extends TabularDataFileReader {
                         o = reader.readULong(6);
                         byte_offset += 6;
                     }
-                    // create v,o pair; save, for now:
-                    String voPair = v + "," + o;
-                    dataRow[columnCounter] = voPair;
+                    // write the v,o pair; to be replaced with the string
+                    // it stands for, once the STRLs section has been read:
+                    out.write(v);
+                    out.write(",");
+                    out.write(o);
 
                     // TODO: 
                     // would it make sense to validate v and o here? 
@@ -950,6 +914,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
                     // or, if o == numObs, v <= columnCounter; 
                     // -- per the Stata 13+ spec...
                     if (!(v == columnCounter + 1 && o == i + 1)) {
+                        String voPair = v + "," + o;
                         if (!cachedGSOs.containsKey(voPair)) {
                             cachedGSOs.put(voPair, "");
                             // this means we need to cache this GSO, when 
@@ -970,14 +935,11 @@ public class NewDTAFileReader extends TabularDataFileReader {
                 throw new IOException("Unexpected number of bytes read for data row " + i + "; " + bytes_per_row + " expected, " + byte_offset + " read.");
             }
 
-            // Dump the row of data to the tab-delimited file:
-            pwout.println(StringUtils.join(dataRow, "\t"));
-
-            logger.fine("finished reading " + i + "-th row");
+            out.writeNewLine();
 
         }  // for (rows)
 
-        pwout.close();
+        out.close();
 
         reader.readClosingTag(TAG_DATA);
         logger.fine("NewDTA Ingest: readData(): end.");
@@ -1000,8 +962,7 @@ public class NewDTAFileReader extends TabularDataFileReader {
             scanner.useDelimiter("\\n");
 
             File finalTabFile = File.createTempFile("finalTabfile.", ".tab");
-            FileOutputStream fileOutTab = new FileOutputStream(finalTabFile);
-            PrintWriter pwout = new PrintWriter(new OutputStreamWriter(fileOutTab, "utf8"), true);
+            DataWriter out = new DataWriter(new FileOutputStream(finalTabFile));
 
             logger.fine("Setting the tab-delimited file to " + finalTabFile.getName());
             ingesteddata.setTabDelimitedFile(finalTabFile);
@@ -1065,12 +1026,13 @@ public class NewDTAFileReader extends TabularDataFileReader {
                         }
                     }
                     // Dump the row of data to the tab-delimited file:
-                    pwout.println(StringUtils.join(line, "\t"));
+                    out.write(StringUtils.join(line, "\t"));
+                    out.writeNewLine();
                 }
             }
 
             scanner.close();
-            pwout.close();
+            out.close();
 
             reader.readClosingTag(TAG_STRLS);
         } else {
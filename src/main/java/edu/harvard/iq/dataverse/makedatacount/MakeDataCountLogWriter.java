@@ -0,0 +1,288 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
+import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
+
+/**
+ * Writes the Make Data Count log entries in the background, rather than in
+ * the requests: the entries are queued (without locking), and a single
+ * thread appends them to the log of the day they were made, as many at a
+ * time as have been queued in the meantime. The log file is kept open, until
+ * the day (or the :MDCLogPath) changes.
+ *
+ * When the queue is full, the entries are dropped rather than holding up the
+ * requests; how many were is reported by {@link #getStatus()}. The entries
+ * still queued are written when the application is shut down.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MakeDataCountLogWriter {
+
+    private static final Logger logger = Logger.getLogger(MakeDataCountLogWriter.class.getCanonicalName());
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    /**
+     * An entry, with where (and for which day) it is to be written, as of
+     * when it was made.
+     */
+    private static class QueuedEntry {
+        final String logDir;
+        final LocalDate day;
+        final String line;
+
+        QueuedEntry(String logDir, LocalDate day, String line) {
+            this.logDir = logDir;
+            this.day = day;
+            this.line = line;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<QueuedEntry> queue = new ConcurrentLinkedQueue<>();
+    // the queue does not know its size without walking it
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private int queueSize;
+    private Thread writerThread;
+    private volatile boolean running;
+    private volatile boolean idle;
+
+    // only used by the writer thread
+    private Path logFile;
+    private FileChannel channel;
+
+    @PostConstruct
+    public void init() {
+        start(JvmSettings.MDC_LOG_QUEUE_SIZE.lookupOptional(Integer.class).orElse(10000));
+    }
+
+    void start(int queueSize) {
+        this.queueSize = Math.max(1, queueSize);
+        running = true;
+        writerThread = new Thread(this::run, "mdc-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes what is still queued, and closes the log, before letting the
+     * application stop.
+     */
+    @PreDestroy
+    public void stop() {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_TIMEOUT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warning("The Make Data Count log writer did not finish in time; "
+                    + queueDepth.get() + " log entries were not written");
+        } else {
+            // whatever came in as the thread was finishing:
+            QueuedEntry left;
+            while ((left = queue.poll()) != null) {
+                queueDepth.decrementAndGet();
+                LoggingUtil.saveLogFileAppendWithHeader(left.line, left.logDir,
+                        MakeDataCountLoggingServiceBean.getLogFileName(left.day), LOG_HEADER);
+                written.incrementAndGet();
+            }
+        }
+        writerThread = null;
+    }
+
+    /**
+     * Queues an entry for today's log in the given directory. Does not wait:
+     * if the queue is full, the entry is dropped. (Until the writer is
+     * started, the entry is written right away.)
+     */
+    public void log(String logDir, MakeDataCountEntry entry) {
+        log(logDir, LocalDate.now(), entry);
+    }
+
+    void log(String logDir, LocalDate day, MakeDataCountEntry entry) {
+        if (!running) {
+            LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), logDir,
+                    MakeDataCountLoggingServiceBean.getLogFileName(day), LOG_HEADER);
+            return;
+        }
+        if (queueDepth.incrementAndGet() > queueSize) {
+            queueDepth.decrementAndGet();
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                logger.warning("The Make Data Count log queue is full; " + dropped.get() + " log entries dropped so far");
+            }
+            return;
+        }
+        queue.offer(new QueuedEntry(logDir, day, entry.toString()));
+        if (idle) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    /**
+     * @return the number of entries waiting to be written
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return the number of entries dropped because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of entries that could not be written to the log
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public JsonObjectBuilder getStatus() {
+        return Json.createObjectBuilder()
+                .add("running", running)
+                .add("queueDepth", getQueueDepth())
+                .add("queueSize", queueSize)
+                .add("written", getWrittenCount())
+                .add("dropped", getDroppedCount())
+                .add("failed", getFailedCount());
+    }
+
+    private void run() {
+        List<QueuedEntry> batch = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                QueuedEntry queuedEntry;
+                while (batch.size() < MAX_BATCH_SIZE && (queuedEntry = queue.poll()) != null) {
+                    batch.add(queuedEntry);
+                }
+                if (batch.isEmpty()) {
+                    idle = true;
+                    // (an entry may have come in before the flag was up)
+                    if (running && queue.isEmpty()) {
+                        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                    }
+                    idle = false;
+                    continue;
+                }
+                queueDepth.addAndGet(-batch.size());
+                try {
+                    write(batch);
+                } catch (RuntimeException e) {
+                    failed.addAndGet(batch.size());
+                    logger.log(Level.WARNING, "Unexpected failure writing the Make Data Count log", e);
+                }
+                batch.clear();
+            }
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Appends the entries, each run of them for the same log in one write.
+     */
+    private void write(List<QueuedEntry> batch) {
+        int from = 0;
+        while (from < batch.size()) {
+            QueuedEntry first = batch.get(from);
+            int to = from + 1;
+            while (to < batch.size() && batch.get(to).day.equals(first.day)
+                    && Objects.equals(batch.get(to).logDir, first.logDir)) {
+                to++;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (QueuedEntry queuedEntry : batch.subList(from, to)) {
+                lines.append(queuedEntry.line);
+            }
+            try {
+                Path file = Paths.get(first.logDir, MakeDataCountLoggingServiceBean.getLogFileName(first.day));
+                append(file, lines.toString());
+                written.addAndGet(to - from);
+            } catch (IOException | RuntimeException e) {
+                failed.addAndGet(to - from);
+                logger.log(Level.SEVERE, "Error writing " + (to - from) + " entries to the Make Data Count log "
+                        + first.logDir + ": " + e.getMessage());
+                // (opened again next time)
+                close();
+            }
+            from = to;
+        }
+    }
+
+    private void append(Path file, String lines) throws IOException {
+        // the log may have been moved away in the meantime, e.g. once processed
+        if (channel == null || !file.equals(logFile) || !Files.exists(file)) {
+            close();
+            Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            logFile = file;
+            if (channel.size() == 0) {
+                lines = LOG_HEADER + lines;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to close the Make Data Count log " + logFile, e);
+            }
+            channel = null;
+            logFile = null;
+        }
+    }
+}
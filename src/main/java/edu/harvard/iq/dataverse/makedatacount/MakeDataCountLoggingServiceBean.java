@@ -9,11 +9,10 @@ import edu.harvard.iq.dataverse.DataFile;
 import edu.harvard.iq.dataverse.Dataset;
 import edu.harvard.iq.dataverse.DatasetVersion;
 import edu.harvard.iq.dataverse.DataverseRequestServiceBean;
-import edu.harvard.iq.dataverse.batch.util.LoggingUtil;
-import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
 import java.util.Date;
 import java.util.TimeZone;
 import jakarta.ejb.EJB;
@@ -37,14 +36,26 @@ public class MakeDataCountLoggingServiceBean {
     @EJB
     SystemConfig systemConfig;
 
+    @EJB
+    MakeDataCountLogWriter logWriter;
+
+    /**
+     * Queues the entry for the day's log; see {@link MakeDataCountLogWriter}.
+     */
     public void logEntry(MakeDataCountEntry entry) {
-        if(systemConfig.getMDCLogPath() != null) {
-            LoggingUtil.saveLogFileAppendWithHeader(entry.toString(), systemConfig.getMDCLogPath(), getLogFileName() , LOG_HEADER);
+        String logPath = systemConfig.getMDCLogPath();
+        if(logPath != null) {
+            logWriter.log(logPath, entry);
         }
     }
     
     public String getLogFileName() {
-        return "counter_"+new SimpleDateFormat("yyyy-MM-dd").format(new Timestamp(new Date().getTime()))+".log";
+        return getLogFileName(LocalDate.now());
+    }
+
+    static String getLogFileName(LocalDate day) {
+        // (LocalDate.toString() is yyyy-MM-dd)
+        return "counter_" + day + ".log";
     }
     
     public static class MakeDataCountEntry {
@@ -0,0 +1,127 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchProgress;
+import java.util.Date;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+
+/**
+ * Live progress and throughput counters of an "index all" run over one
+ * partition: first the dataverses, one at a time, then the datasets, in
+ * parallel.
+ */
+public class IndexBatchProgress extends BatchProgress {
+
+    public static final String KIND = "indexAll";
+    public static final String DATAVERSES = "dataverses";
+    public static final String DATASETS = "datasets";
+    public static final String DATAVERSES_INDEXED = "dataversesIndexed";
+    public static final String DATASETS_INDEXED = "datasetsIndexed";
+    public static final String FAILURES = "failures";
+    // the only option of a run, which must match for it to be resumed
+    public static final String SKIP_INDEXED = "skipIndexed";
+
+    public enum Phase { DATAVERSES, DATASETS, FINISHED }
+
+    private final long numPartitions;
+    private final long partitionId;
+
+    private volatile Phase phase = Phase.DATAVERSES;
+    private volatile long dataversesToIndex;
+    private volatile long datasetsToIndex;
+
+    public IndexBatchProgress(long numPartitions, long partitionId) {
+        super(KIND, jobKey(numPartitions, partitionId), new Date());
+        this.numPartitions = numPartitions;
+        this.partitionId = partitionId;
+    }
+
+    /**
+     * Continues where a previous run left off.
+     */
+    public IndexBatchProgress(BatchCheckpoint checkpoint) {
+        super(checkpoint);
+        this.numPartitions = getNumPartitions(checkpoint);
+        this.partitionId = getPartitionId(checkpoint);
+        if (checkpoint.getLastId(DATASETS) != null) {
+            phase = Phase.DATASETS;
+        }
+    }
+
+    public static String jobKey(long numPartitions, long partitionId) {
+        return numPartitions + ":" + partitionId;
+    }
+
+    public static long getNumPartitions(BatchCheckpoint checkpoint) {
+        return Long.parseLong(checkpoint.getJobKey().split(":")[0]);
+    }
+
+    public static long getPartitionId(BatchCheckpoint checkpoint) {
+        return Long.parseLong(checkpoint.getJobKey().split(":")[1]);
+    }
+
+    public static String options(boolean skipIndexed) {
+        return skipIndexed ? SKIP_INDEXED : null;
+    }
+
+    public long getNumPartitions() {
+        return numPartitions;
+    }
+
+    public long getPartitionId() {
+        return partitionId;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * @param dataversesToIndex the number of dataverses left to index when
+     * this run (or resumed run) started
+     */
+    public void setDataversesToIndex(long dataversesToIndex) {
+        this.dataversesToIndex = dataversesToIndex;
+    }
+
+    public void setDatasetsToIndex(long datasetsToIndex) {
+        this.datasetsToIndex = datasetsToIndex;
+    }
+
+    public void dataverseIndexed(boolean success) {
+        increment(success ? DATAVERSES_INDEXED : FAILURES);
+    }
+
+    public void datasetIndexed(boolean success) {
+        increment(success ? DATASETS_INDEXED : FAILURES);
+    }
+
+    public JsonObjectBuilder toJson() {
+        long previousDataversesIndexed = getTotal(DATAVERSES_INDEXED) - getCount(DATAVERSES_INDEXED);
+        long previousDatasetsIndexed = getTotal(DATASETS_INDEXED) - getCount(DATASETS_INDEXED);
+        JsonObjectBuilder json = Json.createObjectBuilder()
+                .add("numPartitions", numPartitions)
+                .add("partitionId", partitionId)
+                .add("phase", phase.name())
+                .add("elapsedSeconds", getElapsedMillis() / 1000)
+                .add("dataversesToIndex", previousDataversesIndexed + dataversesToIndex)
+                .add("dataversesIndexed", getTotal(DATAVERSES_INDEXED))
+                .add("datasetsToIndex", previousDatasetsIndexed + datasetsToIndex)
+                .add("datasetsIndexed", getTotal(DATASETS_INDEXED))
+                .add("datasetsInProgress", getInProgress(DATASETS))
+                .add("failures", getTotal(FAILURES))
+                .add("datasetsPerSecond", getPerSecond(getCount(DATASETS_INDEXED)));
+        if (getLastId(DATASETS) != null) {
+            json.add("lastDatasetId", getLastId(DATASETS));
+        }
+        if (getLastId(DATAVERSES) != null) {
+            json.add("lastDataverseId", getLastId(DATAVERSES));
+        }
+        return json;
+    }
+}
@@ -4,10 +4,18 @@ import edu.harvard.iq.dataverse.DatasetServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseServiceBean;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpointServiceBean;
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpointer;
+import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
+import edu.harvard.iq.dataverse.util.json.JsonPrinter;
+import edu.harvard.iq.dataverse.util.json.NullSafeJsonBuilder;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -30,6 +38,14 @@ public class IndexBatchServiceBean {
 
     private static final Logger logger = Logger.getLogger(IndexBatchServiceBean.class.getCanonicalName());
 
+    private static final int DEFAULT_INDEX_ALL_THREADS = 4;
+    private static final int DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
+    // How many ids are read from the database at a time
+    private static final int ID_PAGE_SIZE = 1000;
+
+    // "index all" runs in progress on this server, by partition
+    private static final Map<String, IndexBatchProgress> INDEX_ALL_IN_PROGRESS = new ConcurrentHashMap<>();
+
     @PersistenceContext(unitName = "VDCNet-ejbPU")
     private EntityManager em;
 
@@ -45,6 +61,8 @@ public class IndexBatchServiceBean {
     DvObjectServiceBean dvObjectService;
     @EJB
     SystemConfig systemConfig;
+    @EJB
+    BatchCheckpointServiceBean checkpointService;
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexStatus() {
@@ -108,27 +126,51 @@ public class IndexBatchServiceBean {
     
     @Asynchronous
     public Future<JsonObjectBuilder> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, boolean previewOnly) {
+        return indexAllOrSubset(numPartitions, partitionId, skipIndexed, previewOnly, false);
+    }
+
+    /**
+     * @param resume If true, and an earlier run over the same partition was
+     * interrupted, continue after the last dataverse and dataset that run
+     * recorded as indexed instead of starting over. Either way, nothing is
+     * done while the checkpoint of the partition is in use (see
+     * {@link #findCheckpointInUse(long, long)}).
+     */
+    @Asynchronous
+    public Future<JsonObjectBuilder> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, boolean previewOnly, boolean resume) {
         JsonObjectBuilder response = Json.createObjectBuilder();
-        indexAllOrSubset(numPartitions, partitionId, skipIndexed);
+        doIndexAllOrSubset(numPartitions, partitionId, skipIndexed, resume);
         String status = "indexAllOrSubset has begun";
         response.add("responseFromIndexAllOrSubset", status);
         return new AsyncResult<>(response);
     }
 
-    public JsonObjectBuilder indexAllOrSubsetPreview(long numPartitions, long partitionId, boolean skipIndexed) {
+    /**
+     * @param resume If true, only what a resumed run would still index (see
+     * {@link #indexAllOrSubset(long, long, boolean, boolean, boolean)}) is
+     * listed.
+     */
+    public JsonObjectBuilder indexAllOrSubsetPreview(long numPartitions, long partitionId, boolean skipIndexed, boolean resume) {
         JsonObjectBuilder response = Json.createObjectBuilder();
         JsonObjectBuilder previewOfWorkload = Json.createObjectBuilder();
         JsonObjectBuilder dvContainerIds = Json.createObjectBuilder();
         
-        List<Long> dataverseIds = dataverseService.findDataverseIdsForIndexing(skipIndexed);
+        BatchCheckpoint checkpoint = findCheckpointToResume(numPartitions, partitionId, skipIndexed, resume);
+        IndexBatchProgress progress = checkpoint == null ? new IndexBatchProgress(numPartitions, partitionId) : new IndexBatchProgress(checkpoint);
+
+        List<Long> dataverseIds = List.of();
+        if (progress.getPhase() == IndexBatchProgress.Phase.DATAVERSES) {
+            long afterId = getAfterId(progress, IndexBatchProgress.DATAVERSES);
+            dataverseIds = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed, afterId, 0);
+        }
         
         JsonArrayBuilder dataverseIdsJson = Json.createArrayBuilder();
-        //List<Dataverse> dataverses = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
         for (Long id : dataverseIds) {
             dataverseIdsJson.add(id);
         }
         
-        List<Long> datasetIds = datasetService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
+        long afterDatasetId = getAfterId(progress, IndexBatchProgress.DATASETS);
+        List<Long> datasetIds = datasetService.findAllOrSubset(numPartitions, partitionId, skipIndexed, afterDatasetId, 0);
 
         JsonArrayBuilder datasetIdsJson = Json.createArrayBuilder();
         for (Long id : datasetIds) {
@@ -140,11 +182,25 @@ public class IndexBatchServiceBean {
         previewOfWorkload.add("dataverseCount", dataverseIds.size());
         previewOfWorkload.add("datasetCount", datasetIds.size());
         previewOfWorkload.add("partitionId", partitionId);
+        if (checkpoint != null && checkpoint.getLastUpdateTime() != null) {
+            previewOfWorkload.add("resumedFromCheckpointOf", JsonPrinter.format(checkpoint.getLastUpdateTime()));
+        }
         response.add("previewOfPartitionWorkload", previewOfWorkload);
         return response;
     }
 
     public Future<String> indexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed) {
+        return new AsyncResult<>(doIndexAllOrSubset(numPartitions, partitionId, skipIndexed, false));
+    }
+
+    /**
+     * Indexes the dataverses, then the datasets, of one partition in
+     * ascending id order. Datasets are indexed in parallel by a bounded pool
+     * of workers. How far the run got is recorded in an
+     * {@link BatchCheckpoint} every so often, so that an interrupted run
+     * can be resumed.
+     */
+    private String doIndexAllOrSubset(long numPartitions, long partitionId, boolean skipIndexed, boolean resume) {
         long indexAllTimeBegin = System.currentTimeMillis();
         String status;
 
@@ -176,48 +232,177 @@ public class IndexBatchServiceBean {
             resultOfClearingIndexTimes = "Solr index was not cleared before indexing.";
         }
 
-        // List<Dataverse> dataverses = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed);
-        // Note: no support for "partitions" in this experimental branch. 
-        // The method below returns the ids of all the unindexed dataverses.
-        List<Long> dataverseIds = dataverseIds = dataverseService.findDataverseIdsForIndexing(skipIndexed);
-        
-        int dataverseIndexCount = 0;
-        int dataverseFailureCount = 0;
-        //for (Dataverse dataverse : dataverses) {
-        for (Long id : dataverseIds) {
-            try {
-                dataverseIndexCount++;
-                Dataverse dataverse = dataverseService.find(id);
-                logger.info("indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ", persistentId=" + dataverse.getAlias() + ")");
-                Future<String> result = indexService.indexDataverseInNewTransaction(dataverse);
-                dataverse = null;
-            } catch (Exception e) {
-                //We want to keep running even after an exception so throw some more info into the log
-                dataverseFailureCount++;
-                logger.info("FAILURE indexing dataverse " + dataverseIndexCount + " of " + dataverseIds.size() + " (id=" + id + ") Exception info: " + e.getMessage());
-            }
+        BatchCheckpoint inUse = findCheckpointInUse(numPartitions, partitionId);
+        if (inUse != null) {
+            status = "index all of partition " + partitionId + " of " + numPartitions + " was last recorded at " + inUse.getLastUpdateTime()
+                    + " and may still be running, on this or another server; not starting another one";
+            logger.warning(status);
+            return status;
         }
 
-        int datasetIndexCount = 0;
-        int datasetFailureCount = 0;
-        List<Long> datasetIds = datasetService.findAllOrSubsetOrderByFilesOwned(skipIndexed);
-        for (Long id : datasetIds) {
-            datasetIndexCount++;
-            logger.info("indexing dataset " + datasetIndexCount + " of " + datasetIds.size() + " (id=" + id + ")");
-            indexService.indexDatasetInNewTransaction(id);
+        BatchCheckpoint checkpoint = findCheckpointToResume(numPartitions, partitionId, skipIndexed, resume);
+        IndexBatchProgress progress = checkpoint == null ? new IndexBatchProgress(numPartitions, partitionId) : new IndexBatchProgress(checkpoint);
+        if (INDEX_ALL_IN_PROGRESS.putIfAbsent(progress.getJobKey(), progress) != null) {
+            status = "index all of partition " + partitionId + " of " + numPartitions + " is already running";
+            logger.warning(status);
+            return status;
+        }
+
+        BatchCheckpointer checkpointer = null;
+        try {
+            if (checkpoint == null) {
+                checkpoint = checkpointService.start(progress, IndexBatchProgress.options(skipIndexed));
+            } else {
+                logger.info("resuming index all of partition " + partitionId + " of " + numPartitions + " after dataverse id "
+                        + checkpoint.getLastId(IndexBatchProgress.DATAVERSES) + " and dataset id " + checkpoint.getLastId(IndexBatchProgress.DATASETS));
+                resultOfClearingIndexTimes = "Resumed from the checkpoint of " + checkpoint.getLastUpdateTime() + ".";
+            }
+            checkpointer = new BatchCheckpointer(checkpointService, progress, checkpoint, getCheckpointIntervalMillis(),
+                    "index all of partition " + partitionId + " of " + numPartitions, logger);
+
+            if (progress.getPhase() == IndexBatchProgress.Phase.DATAVERSES) {
+                indexDataversesOfPartition(numPartitions, partitionId, skipIndexed, progress, checkpointer);
+                progress.setPhase(IndexBatchProgress.Phase.DATASETS);
+                checkpointer.save();
+            }
+            indexDatasetsOfPartition(numPartitions, partitionId, skipIndexed, progress, checkpointer);
+            logger.info("done iterating through all datasets");
+
+            progress.setPhase(IndexBatchProgress.Phase.FINISHED);
+            checkpointer.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            checkpointer.save();
+            status = "index all of partition " + partitionId + " of " + numPartitions + " was interrupted; it can be resumed after dataset id "
+                    + progress.getLastId(IndexBatchProgress.DATASETS);
+            logger.warning(status);
+            return status;
+        } finally {
+            INDEX_ALL_IN_PROGRESS.remove(progress.getJobKey());
         }
-        logger.info("done iterating through all datasets");
 
         long indexAllTimeEnd = System.currentTimeMillis();
         String timeElapsed = "index all took " + (indexAllTimeEnd - indexAllTimeBegin) + " milliseconds";
         logger.info(timeElapsed);
-        if (datasetFailureCount + dataverseFailureCount > 0){
-            String failureMessage = "There were index failures. " + dataverseFailureCount + " dataverse(s) and " + datasetFailureCount + " dataset(s) failed to index. Please check the log for more information.";
-            logger.info(failureMessage);            
+        if (progress.getCount(IndexBatchProgress.FAILURES) > 0) {
+            String failureMessage = "There were index failures. " + progress.getCount(IndexBatchProgress.FAILURES) + " dataverse(s) and dataset(s) failed to index. Please check the log for more information.";
+            logger.info(failureMessage);
         }
-        status = dataverseIndexCount + " dataverses and " + datasetIndexCount + " datasets indexed. " + timeElapsed + ". " + resultOfClearingIndexTimes + "\n";
+        status = progress.getCount(IndexBatchProgress.DATAVERSES_INDEXED) + " dataverses and " + progress.getCount(IndexBatchProgress.DATASETS_INDEXED) + " datasets indexed. " + timeElapsed + ". " + resultOfClearingIndexTimes + "\n";
         logger.info(status);
-        return new AsyncResult<>(status);
+        return status;
+    }
+
+    /**
+     * @return the checkpoint of the unfinished earlier run over the same
+     * partition, if it is to be resumed, or null
+     */
+    private BatchCheckpoint findCheckpointToResume(long numPartitions, long partitionId, boolean skipIndexed, boolean resume) {
+        return resume ? checkpointService.findToResume(IndexBatchProgress.KIND, IndexBatchProgress.jobKey(numPartitions, partitionId),
+                IndexBatchProgress.options(skipIndexed)) : null;
+    }
+
+    /**
+     * @return the checkpoint of the partition if a run is still recording it
+     * (see {@link BatchCheckpoint#isInUse(long)}), or null
+     */
+    public BatchCheckpoint findCheckpointInUse(long numPartitions, long partitionId) {
+        return checkpointService.findInUse(IndexBatchProgress.KIND, IndexBatchProgress.jobKey(numPartitions, partitionId), getCheckpointIntervalMillis());
+    }
+
+    private static long getAfterId(IndexBatchProgress progress, String stream) {
+        return progress.getLastId(stream) == null ? 0 : progress.getLastId(stream);
+    }
+
+    private void indexDataversesOfPartition(long numPartitions, long partitionId, boolean skipIndexed,
+            IndexBatchProgress progress, BatchCheckpointer checkpointer) {
+        long afterId = getAfterId(progress, IndexBatchProgress.DATAVERSES);
+        progress.setDataversesToIndex(dataverseService.countForIndexing(numPartitions, partitionId, skipIndexed, afterId));
+
+        List<Long> dataverseIds;
+        while (!(dataverseIds = dataverseService.findAllOrSubset(numPartitions, partitionId, skipIndexed, afterId, ID_PAGE_SIZE)).isEmpty()) {
+            for (Long id : dataverseIds) {
+                progress.started(IndexBatchProgress.DATAVERSES, id);
+                try {
+                    Dataverse dataverse = dataverseService.find(id);
+                    logger.fine("indexing dataverse id=" + id + ", alias=" + dataverse.getAlias());
+                    indexService.indexDataverseInNewTransaction(dataverse);
+                    progress.dataverseIndexed(true);
+                } catch (Exception e) {
+                    //We want to keep running even after an exception so throw some more info into the log
+                    progress.dataverseIndexed(false);
+                    logger.info("FAILURE indexing dataverse (id=" + id + ") Exception info: " + e.getMessage());
+                } finally {
+                    progress.done(IndexBatchProgress.DATAVERSES, id);
+                }
+                checkpointer.saveIfDue();
+            }
+            afterId = dataverseIds.get(dataverseIds.size() - 1);
+        }
+    }
+
+    private void indexDatasetsOfPartition(long numPartitions, long partitionId, boolean skipIndexed,
+            IndexBatchProgress progress, BatchCheckpointer checkpointer) throws InterruptedException {
+        progress.setDatasetsToIndex(datasetService.countForIndexing(numPartitions, partitionId, skipIndexed,
+                getAfterId(progress, IndexBatchProgress.DATASETS)));
+
+        int numThreads = Math.max(1, JvmSettings.SOLR_INDEX_ALL_THREADS.lookupOptional(Integer.class).orElse(DEFAULT_INDEX_ALL_THREADS));
+        checkpointer.runInParallel(IndexBatchProgress.DATASETS,
+                afterId -> datasetService.findAllOrSubset(numPartitions, partitionId, skipIndexed, afterId, ID_PAGE_SIZE),
+                numThreads, id -> {
+                    try {
+                        logger.fine("indexing dataset id=" + id);
+                        indexService.indexDatasetInNewTransaction(id);
+                        progress.datasetIndexed(true);
+                    } catch (Exception e) {
+                        progress.datasetIndexed(false);
+                        logger.info("FAILURE indexing dataset (id=" + id + ") Exception info: " + e.getMessage());
+                    }
+                });
+    }
+
+    private long getCheckpointIntervalMillis() {
+        return 1000L * Math.max(1, JvmSettings.SOLR_INDEX_ALL_CHECKPOINT_INTERVAL.lookupOptional(Integer.class).orElse(DEFAULT_CHECKPOINT_INTERVAL_SECONDS));
+    }
+
+    /**
+     * @return the live counters of the "index all" runs in progress on this
+     * server, and the checkpoints of all runs recorded in the database.
+     */
+    public JsonObjectBuilder getIndexAllProgress() {
+        JsonArrayBuilder running = Json.createArrayBuilder();
+        for (IndexBatchProgress progress : INDEX_ALL_IN_PROGRESS.values()) {
+            running.add(progress.toJson());
+        }
+        long checkpointIntervalMillis = getCheckpointIntervalMillis();
+        JsonArrayBuilder checkpoints = Json.createArrayBuilder();
+        for (BatchCheckpoint checkpoint : checkpointService.findAll(IndexBatchProgress.KIND)) {
+            boolean runningHere = INDEX_ALL_IN_PROGRESS.containsKey(checkpoint.getJobKey());
+            checkpoints.add(NullSafeJsonBuilder.jsonObjectBuilder()
+                    .add("numPartitions", IndexBatchProgress.getNumPartitions(checkpoint))
+                    .add("partitionId", IndexBatchProgress.getPartitionId(checkpoint))
+                    .add("state", checkpoint.getState(runningHere, checkpointIntervalMillis))
+                    .add("skipIndexed", IndexBatchProgress.SKIP_INDEXED.equals(checkpoint.getOptions()))
+                    .add("lastDataverseId", checkpoint.getLastId(IndexBatchProgress.DATAVERSES))
+                    .add("lastDatasetId", checkpoint.getLastId(IndexBatchProgress.DATASETS))
+                    .add("dataversesIndexed", checkpoint.getCounter(IndexBatchProgress.DATAVERSES_INDEXED))
+                    .add("datasetsIndexed", checkpoint.getCounter(IndexBatchProgress.DATASETS_INDEXED))
+                    .add("failures", checkpoint.getCounter(IndexBatchProgress.FAILURES))
+                    .add("startTime", JsonPrinter.format(checkpoint.getStartTime()))
+                    .add("lastUpdateTime", JsonPrinter.format(checkpoint.getLastUpdateTime()))
+                    .add("finishTime", JsonPrinter.format(checkpoint.getFinishTime())));
+        }
+        return Json.createObjectBuilder()
+                .add("running", running)
+                .add("checkpoints", checkpoints);
+    }
+
+    /**
+     * Forgets all the "index all" checkpoints, so that the next run of every
+     * partition starts from the beginning.
+     */
+    public int deleteIndexAllCheckpoints() {
+        return checkpointService.deleteAll(IndexBatchProgress.KIND);
     }
         
     @Asynchronous
@@ -34,6 +34,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.logging.Logger;
@@ -947,11 +948,9 @@ public class IndexServiceBean {
                         
                         if(cvocMap.containsKey(dsfType.getId())) {
                             List<String> vals = dsf.getValues_nondisplay();
-                            Set<String> searchStrings = new HashSet<String>();
-                            for (String val: vals) {
-                                searchStrings.add(val);
-                                searchStrings.addAll(datasetFieldService.getStringsFor(val));
-                            }
+                            Set<String> searchStrings = new HashSet<String>(vals);
+                            // (the values of all the terms are looked up at once)
+                            searchStrings.addAll(datasetFieldService.getStringsFor(vals));
                             solrInputDocument.addField(solrFieldSearchable, searchStrings);
                             if (dsfType.getSolrField().isFacetable()) {
                                 solrInputDocument.addField(solrFieldFacetable, vals);
@@ -1447,15 +1446,21 @@ public class IndexServiceBean {
     private String addOrUpdateDataset(IndexableDataset indexableDataset, Set<Long> datafilesInDraftVersion) throws  SolrServerException, IOException {   
         final SolrInputDocuments docs = toSolrDocs(indexableDataset, datafilesInDraftVersion);
 
+        // The documents go out with those of other datasets being indexed at the
+        // same time. Waiting for them to be sent keeps this dataset from being
+        // indexed again (see getNextToIndex) while they are still buffered.
         try {
-            solrClientService.getSolrClient().add(docs.getDocuments());
-            solrClientService.getSolrClient().commit();
-        } catch (SolrServerException | IOException ex) {
-            if (ex.getCause() instanceof SolrServerException) {
-                throw new SolrServerException(ex);
-            } else if (ex.getCause() instanceof IOException) {
-                throw new IOException(ex);
+            solrClientService.getIndexBuffer().submit(docs.getDocuments()).get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw new IOException(ex.getCause());
             }
+            // (including what SolrJ throws unchecked, e.g. a RemoteSolrException
+            // when Solr answers with an error)
+            throw new SolrServerException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while sending the documents of dataset " + docs.getDatasetId() + " to Solr", ex);
         }
         return docs.getMessage();
     }
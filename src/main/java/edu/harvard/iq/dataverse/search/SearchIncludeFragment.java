@@ -472,6 +472,10 @@ public class SearchIncludeFragment implements java.io.Serializable {
              * solrSearchResult.setCitation method but only the dataset card in
              * the UI (currently) shows this "citation" field.
              */
+            long cardsStart = System.currentTimeMillis();
+            List<SolrSearchResult> dataverseCards = new ArrayList<>();
+            List<SolrSearchResult> datasetCards = new ArrayList<>();
+            List<SolrSearchResult> fileCards = new ArrayList<>();
             for (SolrSearchResult solrSearchResult : searchResults) {
                 if (solrSearchResult.getEntityId() == null) {
                     // avoiding EJBException a la https://redmine.hmdc.harvard.edu/issues/3809
@@ -484,7 +488,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                 // (we'll review this later!)
                 
                 if (solrSearchResult.getType().equals("dataverses")) {
-                    dataverseService.populateDvSearchCard(solrSearchResult);
+                    dataverseCards.add(solrSearchResult);
                     
                     /*
                     Dataverses cannot be harvested yet.
@@ -493,7 +497,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }*/
 
                 } else if (solrSearchResult.getType().equals("datasets")) {
-                    datasetVersionService.populateDatasetSearchCard(solrSearchResult);
+                    datasetCards.add(solrSearchResult);
 
                     // @todo - the 3 lines below, should they be moved inside
                     // searchServiceBean.search()?
@@ -503,7 +507,7 @@ public class SearchIncludeFragment implements java.io.Serializable {
                     }
                     
                 } else if (solrSearchResult.getType().equals("files")) {
-                    dataFileService.populateFileSearchCard(solrSearchResult);
+                    fileCards.add(solrSearchResult);
 
                     /**
                      * @todo: show DataTable variables
@@ -511,8 +515,16 @@ public class SearchIncludeFragment implements java.io.Serializable {
                 }
             }
 
-            
+            // The cards of each type are populated all at once, in a few
+            // queries, rather than with a query (or several) per card:
+            int cardQueries = dataverseService.populateDvSearchCards(dataverseCards)
+                    + datasetVersionService.populateDatasetSearchCards(datasetCards)
+                    + dataFileService.populateFileSearchCards(fileCards);
+            long cardsEnd = System.currentTimeMillis();
+
             setDisplayCardValues();
+            logger.fine("Search page of " + searchResults.size() + " cards: card data looked up in " + cardQueries + " queries, "
+                    + (cardsEnd - cardsStart) + " ms; card images in " + (System.currentTimeMillis() - cardsEnd) + " ms");
             
             if (settingsWrapper.displayChronologicalDateFacets()) {
                 Set<String> facetsToSort = new HashSet<String>();
@@ -1372,6 +1384,17 @@ public class SearchIncludeFragment implements java.io.Serializable {
     
     public void setDisplayCardValues() {
 
+        // the dataverse logos, all at once:
+        Set<Long> dataverseIds = new HashSet<>();
+        for (SolrSearchResult result : searchResultsList) {
+            if (result.getType().equals("dataverses")) {
+                dataverseIds.add(result.getEntityId());
+            }
+        }
+        if (!dataverseIds.isEmpty()) {
+            thumbnailServiceWrapper.prefetchDataverseLogos(dataverseIds);
+        }
+
         Set<Long> harvestedDatasetIds = null;
         for (SolrSearchResult result : searchResultsList) {
             //logger.info("checking DisplayImage for the search result " + i++);
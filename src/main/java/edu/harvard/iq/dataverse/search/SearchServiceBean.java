@@ -8,7 +8,11 @@ import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
 import edu.harvard.iq.dataverse.Dataverse;
 import edu.harvard.iq.dataverse.DataverseFacet;
 import edu.harvard.iq.dataverse.DataverseMetadataBlockFacet;
+import edu.harvard.iq.dataverse.DvObject;
 import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.PermissionCache;
+import edu.harvard.iq.dataverse.RequestPermissionCache;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
 import edu.harvard.iq.dataverse.authorization.groups.Group;
 import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
 import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
@@ -23,15 +27,18 @@ import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.MissingResourceException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -39,6 +46,8 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.EJBTransactionRolledbackException;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionRolledbackLocalException;
+import jakarta.enterprise.context.ContextNotActiveException;
+import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.persistence.NoResultException;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -77,6 +86,8 @@ public class SearchServiceBean {
     SystemConfig systemConfig;
     @EJB
     SolrClientService solrClientService;
+    @Inject
+    RequestPermissionCache requestPermissionCache;
     
     /**
      * Import note: "onlyDatatRelatedToMe" relies on filterQueries for providing
@@ -553,9 +564,6 @@ public class SearchServiceBean {
 //            logger.info(id + ": " + description);
             solrSearchResult.setId(id);
             solrSearchResult.setEntityId(entityid);
-            if (retrieveEntities) {
-                solrSearchResult.setEntity(dvObjectService.findDvObject(entityid));
-            }
             solrSearchResult.setIdentifier(identifier);
             solrSearchResult.setPersistentUrl(persistentUrl);
             solrSearchResult.setType(type);
@@ -697,6 +705,22 @@ public class SearchServiceBean {
             solrSearchResult.setParent(parent);
             solrSearchResults.add(solrSearchResult);
         }
+        if (retrieveEntities) {
+            // all at once, rather than one query per result:
+            long entitiesStart = System.currentTimeMillis();
+            Set<Long> entityIds = new HashSet<>();
+            for (SolrSearchResult solrSearchResult : solrSearchResults) {
+                if (solrSearchResult.getEntityId() != null) {
+                    entityIds.add(solrSearchResult.getEntityId());
+                }
+            }
+            Map<Long, DvObject> entities = dvObjectService.findDvObjects(entityIds);
+            for (SolrSearchResult solrSearchResult : solrSearchResults) {
+                solrSearchResult.setEntity(entities.get(solrSearchResult.getEntityId()));
+            }
+            logger.fine("Retrieved " + entities.size() + " of " + solrSearchResults.size() + " search result entities in "
+                    + (System.currentTimeMillis() - entitiesStart) + " ms");
+        }
         Map<String, List<String>> spellingSuggestionsByToken = new HashMap<>();
         SpellCheckResponse spellCheckResponse = queryResponse.getSpellCheckResponse();
         if (spellCheckResponse != null) {
@@ -1000,19 +1024,8 @@ public class SearchServiceBean {
         // Yes, see if GuestUser is part of any groups such as IP Groups.
         // ----------------------------------------------------
         if (user instanceof GuestUser) {
-            String groupsFromProviders = "";
-            Set<Group> groups = groupService.collectAncestors(groupService.groupsFor(dataverseRequest));
-            StringBuilder sb = new StringBuilder();
-            for (Group group : groups) {
-                logger.fine("found group " + group.getIdentifier() + " with alias " + group.getAlias());
-                String groupAlias = group.getAlias();
-                if (groupAlias != null && !groupAlias.isEmpty()) {
-                    sb.append(" OR ");
-                    // i.e. group_builtIn/all-users, ip/ipGroup3
-                    sb.append(IndexServiceBean.getGroupPrefix()).append(groupAlias);
-                }
-            }
-            groupsFromProviders = sb.toString();
+            // i.e. group_builtIn/all-users, ip/ipGroup3
+            String groupsFromProviders = getGroupsFilter(dataverseRequest);
             logger.fine("groupsFromProviders:" + groupsFromProviders);
             String guestWithGroups = "{!join from=" + SearchFields.DEFINITION_POINT + " to=id}" + SearchFields.DISCOVERABLE_BY + ":(" + IndexServiceBean.getPublicGroupString() + groupsFromProviders + ")";
             logger.fine(guestWithGroups);
@@ -1093,19 +1106,8 @@ public class SearchServiceBean {
          * A JOIN on "permission documents" will determine if the user can find
          * a given "content document" (dataset version, etc) in Solr.
          */
-        String groupsFromProviders = "";
-        Set<Group> groups = groupService.collectAncestors(groupService.groupsFor(dataverseRequest));
-        StringBuilder sb = new StringBuilder();
-        for (Group group : groups) {
-            logger.fine("found group " + group.getIdentifier() + " with alias " + group.getAlias());
-            String groupAlias = group.getAlias();
-            if (groupAlias != null && !groupAlias.isEmpty()) {
-                sb.append(" OR ");
-                // i.e. group_builtIn/all-users, group_builtIn/authenticated-users, group_1-explictGroup1, group_shib/2
-                sb.append(IndexServiceBean.getGroupPrefix() + groupAlias);
-            }
-        }
-        groupsFromProviders = sb.toString();
+        // i.e. group_builtIn/all-users, group_builtIn/authenticated-users, group_1-explictGroup1, group_shib/2
+        String groupsFromProviders = getGroupsFilter(dataverseRequest);
 
         logger.fine(groupsFromProviders);
         if (true) {
@@ -1123,5 +1125,63 @@ public class SearchServiceBean {
 
     }
 
+    /**
+     * Finds the groups of the request (and the groups these are in), which
+     * takes a few queries, so only once per request - or for longer, see
+     * {@link PermissionCache}. The IP groups are looked up once per source
+     * address, rather than once per user and address.
+     *
+     * @return the groups, as the " OR group_..." part of the permission
+     * filter query.
+     */
+    private String getGroupsFilter(DataverseRequest dataverseRequest) {
+        PermissionCache cache = permissionCache();
+        Set<RoleAssignee> ipGroups = dataverseRequest.getSourceAddress() == null ? Collections.emptySet()
+                : cache.assignees("search-address:" + dataverseRequest.getSourceAddress(),
+                        () -> new HashSet<>(groupService.collectAncestors(new HashSet<>(groupService.ipGroupsFor(dataverseRequest)))));
+        // (guests from addresses in the same IP groups share their filter)
+        return cache.searchGroupFilter(dataverseRequest.getUser().getIdentifier() + "|" + PermissionCache.keyOf(ipGroups), () -> {
+            Set<Group> groups = groupService.collectAncestors(groupService.groupsForIgnoringAddress(dataverseRequest));
+            for (RoleAssignee ipGroup : ipGroups) {
+                groups.add((Group) ipGroup);
+            }
+            return getGroupsFilter(groups);
+        });
+    }
+
+    /**
+     * @return the groups, as the " OR group_..." part of the permission
+     * filter query - in order, so that the same groups always make the same
+     * filter query, which Solr can then reuse from its filterCache rather
+     * than doing the join again.
+     */
+    static String getGroupsFilter(Collection<Group> groups) {
+        Set<String> groupAliases = new TreeSet<>();
+        for (Group group : groups) {
+            logger.fine("found group " + group.getIdentifier() + " with alias " + group.getAlias());
+            String groupAlias = group.getAlias();
+            if (groupAlias != null && !groupAlias.isEmpty()) {
+                groupAliases.add(groupAlias);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String groupAlias : groupAliases) {
+            sb.append(" OR ").append(IndexServiceBean.getGroupPrefix()).append(groupAlias);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the permission cache of the current request, or, outside of a
+     * request, one for just this search.
+     */
+    private PermissionCache permissionCache() {
+        try {
+            return requestPermissionCache.getCache();
+        } catch (ContextNotActiveException e) {
+            return new PermissionCache(0, PermissionCache.shared(RequestPermissionCache.getSharedTtlMillis()));
+        }
+    }
+
 }
 
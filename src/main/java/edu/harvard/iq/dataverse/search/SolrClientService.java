@@ -8,7 +8,9 @@ package edu.harvard.iq.dataverse.search;
 import edu.harvard.iq.dataverse.settings.JvmSettings;
 import edu.harvard.iq.dataverse.util.SystemConfig;
 import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.impl.HttpSolrClient;
+import org.apache.solr.common.SolrInputDocument;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -16,6 +18,7 @@ import jakarta.ejb.EJB;
 import jakarta.ejb.Singleton;
 import jakarta.inject.Named;
 import java.io.IOException;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -27,6 +30,8 @@ import java.util.logging.Logger;
  * classes that need it. 
  * This ensures that we are using one client only - as recommended by the 
  * documentation. 
+ * It also owns the {@link SolrIndexBuffer} that dataset documents are sent
+ * through, in batches.
  */
 @Named
 @Singleton
@@ -36,10 +41,26 @@ public class SolrClientService {
     @EJB
     SystemConfig systemConfig;
     
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_BATCH_MAX_WAIT_MILLIS = 50;
+    private static final int DEFAULT_BATCH_QUEUE_SIZE = 1000;
+    private static final int DEFAULT_COMMIT_WITHIN_MILLIS = 1000;
+
     private SolrClient solrClient;
+    private SolrIndexBuffer indexBuffer;
     
     @PostConstruct
     public void init() {
+        initSolrClient();
+
+        int commitWithin = JvmSettings.SOLR_COMMIT_WITHIN.lookupOptional(Integer.class).orElse(DEFAULT_COMMIT_WITHIN_MILLIS);
+        indexBuffer = new SolrIndexBuffer(documents -> sendBatch(documents, commitWithin),
+                JvmSettings.SOLR_BATCH_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_BATCH_SIZE),
+                JvmSettings.SOLR_BATCH_MAX_WAIT.lookupOptional(Integer.class).orElse(DEFAULT_BATCH_MAX_WAIT_MILLIS),
+                JvmSettings.SOLR_BATCH_QUEUE_SIZE.lookupOptional(Integer.class).orElse(DEFAULT_BATCH_QUEUE_SIZE));
+    }
+
+    private void initSolrClient() {
         // Get from MPCONFIG. Might be configured by a sysadmin or simply return the default shipped with
         // resources/META-INF/microprofile-config.properties.
         String protocol = JvmSettings.SOLR_PROT.lookup();
@@ -48,9 +69,26 @@ public class SolrClientService {
         String urlString = protocol + "://" + systemConfig.getSolrHostColonPort() + path;
         solrClient = new HttpSolrClient.Builder(urlString).build();
     }
+
+    /**
+     * Relies on Solr to commit within the given time, unless it is 0 or less,
+     * in which case every batch is committed explicitly.
+     */
+    private void sendBatch(List<SolrInputDocument> documents, int commitWithin) throws SolrServerException, IOException {
+        if (commitWithin > 0) {
+            getSolrClient().add(documents, commitWithin);
+        } else {
+            getSolrClient().add(documents);
+            getSolrClient().commit();
+        }
+    }
     
     @PreDestroy
     public void close() {
+        if (indexBuffer != null) {
+            indexBuffer.close();
+            indexBuffer = null;
+        }
         if (solrClient != null) {
             try {
                 solrClient.close();
@@ -65,11 +103,18 @@ public class SolrClientService {
     public SolrClient getSolrClient() {
         // Should never happen - but? 
         if (solrClient == null) {
-            init(); 
+            initSolrClient(); 
         }
         return solrClient;
     }
 
+    /**
+     * @return the buffer created in {@link #init()}
+     */
+    public SolrIndexBuffer getIndexBuffer() {
+        return indexBuffer;
+    }
+
     public void setSolrClient(SolrClient solrClient) {
         this.solrClient = solrClient;
     }
@@ -0,0 +1,272 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jakarta.json.Json;
+import jakarta.json.JsonObjectBuilder;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * Write-behind buffer for Solr documents. The documents submitted by any
+ * number of threads (e.g. for different datasets being indexed at the same
+ * time) are coalesced into batches that are sent to Solr by a single
+ * background thread. A batch is sent as soon as it holds
+ * {@code batchSize} documents, or {@code maxWaitMillis} after its first
+ * document was submitted, whichever comes first.
+ *
+ * Each submission gets a {@link Future} that completes once its documents
+ * have been sent. Indexing waits for it, so that a dataset is never being
+ * indexed again while documents from its previous indexing are still
+ * buffered - see {@link IndexServiceBean#asyncIndexDataset}.
+ *
+ * @see SolrClientService
+ */
+public class SolrIndexBuffer implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(SolrIndexBuffer.class.getCanonicalName());
+
+    /**
+     * Sends one batch of documents to Solr.
+     */
+    @FunctionalInterface
+    public interface BatchSender {
+        void send(List<SolrInputDocument> documents) throws SolrServerException, IOException;
+    }
+
+    private static class Submission {
+        final Collection<SolrInputDocument> documents;
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        final long submittedAt = System.nanoTime();
+
+        Submission(Collection<SolrInputDocument> documents) {
+            this.documents = documents;
+        }
+    }
+
+    private static final long CLOSE_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final BatchSender sender;
+    private final int batchSize;
+    private final long maxWaitNanos;
+    private final BlockingQueue<Submission> queue;
+    private final Thread flusher;
+    private volatile boolean closed = false;
+
+    private final AtomicLong queuedDocuments = new AtomicLong();
+    private final AtomicLong submissionsSent = new AtomicLong();
+    private final AtomicLong batchesSent = new AtomicLong();
+    private final AtomicLong documentsSent = new AtomicLong();
+    private final AtomicLong batchesFailed = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+    private final AtomicLong totalSendNanos = new AtomicLong();
+
+    /**
+     * @param batchSize the number of documents after which a batch is sent
+     * right away
+     * @param maxWaitMillis how long a batch waits for more documents
+     * @param queueCapacity how many submissions can be waiting to be sent
+     * before {@link #submit(Collection)} blocks
+     */
+    public SolrIndexBuffer(BatchSender sender, int batchSize, long maxWaitMillis, int queueCapacity) {
+        this.sender = sender;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+        this.flusher = new Thread(this::run, "solr-index-buffer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues the documents to be sent with the next batch. Blocks while the
+     * queue is full.
+     *
+     * @return completes when the documents have been sent, or exceptionally
+     * with the {@link SolrServerException}, {@link IOException} or
+     * {@link RuntimeException} that sending them failed with.
+     */
+    public Future<Void> submit(Collection<SolrInputDocument> documents) throws InterruptedException {
+        Submission submission = new Submission(documents);
+        if (closed) {
+            submission.sent.completeExceptionally(new IOException("The Solr index buffer has been closed"));
+            return submission.sent;
+        }
+        queuedDocuments.addAndGet(documents.size());
+        queue.put(submission);
+        if (closed && !flusher.isAlive() && queue.remove(submission)) {
+            // lost the race with close()
+            queuedDocuments.addAndGet(-documents.size());
+            submission.sent.completeExceptionally(new IOException("The Solr index buffer has been closed"));
+        }
+        return submission.sent;
+    }
+
+    private void run() {
+        List<Submission> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Submission first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int size = first.documents.size();
+                long deadline = first.submittedAt + maxWaitNanos;
+                while (size < batchSize) {
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) {
+                        break;
+                    }
+                    // wakes up regularly to notice close(), which should not wait for the batch to fill up
+                    Submission next = queue.poll(Math.min(wait, CLOSE_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        if (closed) {
+                            break;
+                        }
+                        continue;
+                    }
+                    batch.add(next);
+                    size += next.documents.size();
+                }
+                sendBatch(batch, size);
+            } catch (InterruptedException e) {
+                logger.warning("Solr index buffer interrupted");
+                for (Submission submission : batch) {
+                    submission.sent.completeExceptionally(new IOException("The Solr index buffer was interrupted"));
+                }
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends the documents of the submissions together. If that fails, they
+     * are sent again one submission at a time, so that the documents Solr
+     * rejects (e.g. with a 400) fail only the submission they came with.
+     */
+    private void sendBatch(List<Submission> batch, int size) {
+        List<SolrInputDocument> documents = new ArrayList<>(size);
+        for (Submission submission : batch) {
+            documents.addAll(submission.documents);
+        }
+        Exception failure = send(documents);
+        queuedDocuments.addAndGet(-size);
+        submissionsSent.addAndGet(batch.size());
+
+        if (failure != null && batch.size() > 1) {
+            logger.info("Sending the " + batch.size() + " submissions of the failed batch one at a time");
+            for (Submission submission : batch) {
+                sent(submission, send(new ArrayList<>(submission.documents)));
+            }
+        } else {
+            for (Submission submission : batch) {
+                sent(submission, failure);
+            }
+        }
+    }
+
+    /**
+     * @return what sending the documents failed with, or null
+     */
+    private Exception send(List<SolrInputDocument> documents) {
+        long start = System.nanoTime();
+        Exception failure = null;
+        try {
+            sender.send(documents);
+        } catch (SolrServerException | IOException | RuntimeException e) {
+            failure = e;
+            batchesFailed.incrementAndGet();
+            logger.log(Level.WARNING, "Failed to send a batch of " + documents.size() + " documents to Solr", e);
+        }
+        totalSendNanos.addAndGet(System.nanoTime() - start);
+        if (failure == null) {
+            batchesSent.incrementAndGet();
+            documentsSent.addAndGet(documents.size());
+        }
+        maxBatchSize.accumulateAndGet(documents.size(), Math::max);
+        return failure;
+    }
+
+    private void sent(Submission submission, Exception failure) {
+        long latency = System.nanoTime() - submission.submittedAt;
+        totalLatencyNanos.addAndGet(latency);
+        maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        if (failure == null) {
+            submission.sent.complete(null);
+        } else {
+            submission.sent.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * @return the number of documents waiting to be sent
+     */
+    public long getQueuedDocuments() {
+        return queuedDocuments.get();
+    }
+
+    public long getBatchesSent() {
+        return batchesSent.get();
+    }
+
+    public long getDocumentsSent() {
+        return documentsSent.get();
+    }
+
+    public long getBatchesFailed() {
+        return batchesFailed.get();
+    }
+
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public JsonObjectBuilder getMetrics() {
+        long batches = batchesSent.get();
+        long submissions = Math.max(1, submissionsSent.get());
+        return Json.createObjectBuilder()
+                .add("queuedDocuments", getQueuedDocuments())
+                .add("queuedSubmissions", queue.size())
+                .add("batchesSent", batches)
+                .add("batchesFailed", getBatchesFailed())
+                .add("documentsSent", getDocumentsSent())
+                .add("averageBatchSize", batches == 0 ? 0 : (double) getDocumentsSent() / batches)
+                .add("maxBatchSize", getMaxBatchSize())
+                .add("averageSendMillis", TimeUnit.NANOSECONDS.toMillis(totalSendNanos.get() / Math.max(1, batches + getBatchesFailed())))
+                .add("averageLatencyMillis", TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / submissions))
+                .add("maxLatencyMillis", TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+    }
+
+    /**
+     * Sends what is still queued, then stops the background thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Submission left;
+        while ((left = queue.poll()) != null) {
+            left.sent.completeExceptionally(new IOException("The Solr index buffer was closed before the documents could be sent"));
+        }
+    }
+}
@@ -36,6 +36,14 @@ public enum FeatureFlags {
      * @since Dataverse @TODO:
      */
     API_BEARER_AUTH("api-bearer-auth"),
+    /**
+     * Enables saving a column-oriented, binary copy of every ingested tabular file as an auxiliary object. When
+     * present, it is used for variable subsetting and frequency calculations instead of re-reading the whole
+     * tab-delimited file.
+     * @apiNote Raise flag by setting "dataverse.feature.ingest-columnar-store"
+     * @since Dataverse @TODO:
+     */
+    INGEST_COLUMNAR_STORE("ingest-columnar-store"),
     ;
     
     final String flag;
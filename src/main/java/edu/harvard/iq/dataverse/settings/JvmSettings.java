@@ -51,6 +51,13 @@ public enum JvmSettings {
     DOCROOT_DIRECTORY(SCOPE_FILES, "docroot"),
     GUESTBOOK_AT_REQUEST(SCOPE_FILES, "guestbook-at-request"),
     GLOBUS_CACHE_MAXAGE(SCOPE_FILES, "globus-cache-maxage"),
+    SCOPE_ZIP_DOWNLOAD(SCOPE_FILES, "zip-download"),
+    ZIP_DOWNLOAD_PREFETCH(SCOPE_ZIP_DOWNLOAD, "prefetch"),
+    ZIP_DOWNLOAD_PREFETCH_MAX_SIZE(SCOPE_ZIP_DOWNLOAD, "prefetch-max-size"),
+    SCOPE_GUESTBOOK_WRITER(SCOPE_FILES, "guestbook-writer"),
+    GUESTBOOK_WRITER_ENABLED(SCOPE_GUESTBOOK_WRITER, "enabled"),
+    GUESTBOOK_WRITER_BATCH_SIZE(SCOPE_GUESTBOOK_WRITER, "batch-size"),
+    GUESTBOOK_WRITER_QUEUE_SIZE(SCOPE_GUESTBOOK_WRITER, "queue-size"),
     
     // SOLR INDEX SETTINGS
     SCOPE_SOLR(PREFIX, "solr"),
@@ -59,6 +66,14 @@ public enum JvmSettings {
     SOLR_PROT(SCOPE_SOLR, "protocol"),
     SOLR_CORE(SCOPE_SOLR, "core"),
     SOLR_PATH(SCOPE_SOLR, "path"),
+    SCOPE_SOLR_INDEX_ALL(SCOPE_SOLR, "index-all"),
+    SOLR_INDEX_ALL_THREADS(SCOPE_SOLR_INDEX_ALL, "threads"),
+    SOLR_INDEX_ALL_CHECKPOINT_INTERVAL(SCOPE_SOLR_INDEX_ALL, "checkpoint-interval"),
+    SOLR_COMMIT_WITHIN(SCOPE_SOLR, "commit-within"),
+    SCOPE_SOLR_BATCH(SCOPE_SOLR, "batch"),
+    SOLR_BATCH_SIZE(SCOPE_SOLR_BATCH, "size"),
+    SOLR_BATCH_MAX_WAIT(SCOPE_SOLR_BATCH, "max-wait"),
+    SOLR_BATCH_QUEUE_SIZE(SCOPE_SOLR_BATCH, "queue-size"),
 
     // RSERVE CONNECTION
     SCOPE_RSERVE(PREFIX, "rserve"),
@@ -68,10 +83,57 @@ public enum JvmSettings {
     RSERVE_PASSWORD(SCOPE_RSERVE, "password"),
     RSERVE_TEMPDIR(SCOPE_RSERVE, "tempdir"),
     
+    // INGEST SETTINGS
+    SCOPE_INGEST(PREFIX, "ingest"),
+    SCOPE_INGEST_SUMSTATS(SCOPE_INGEST, "summary-stats"),
+    INGEST_SUMSTATS_THREADS(SCOPE_INGEST_SUMSTATS, "threads"),
+    INGEST_SUMSTATS_MAX_CELLS(SCOPE_INGEST_SUMSTATS, "max-cells"),
+    SCOPE_INGEST_CSV(SCOPE_INGEST, "csv"),
+    INGEST_CSV_THREADS(SCOPE_INGEST_CSV, "threads"),
+    SCOPE_INGEST_WORKERS(SCOPE_INGEST, "workers"),
+    INGEST_WORKERS_THREADS(SCOPE_INGEST_WORKERS, "threads"),
+    INGEST_WORKERS_FAST_LANE_THREADS(SCOPE_INGEST_WORKERS, "fast-lane-threads"),
+    INGEST_WORKERS_FAST_LANE_MAX_SIZE(SCOPE_INGEST_WORKERS, "fast-lane-max-size"),
+    
     // API SETTINGS
     SCOPE_API(PREFIX, "api"),
     API_SIGNING_SECRET(SCOPE_API, "signing-secret"),
     API_ALLOW_INCOMPLETE_METADATA(SCOPE_API, "allow-incomplete-metadata"),
+    SCOPE_API_TOKEN_CACHE(SCOPE_API, "token-cache"),
+    API_TOKEN_CACHE_MAX_SIZE(SCOPE_API_TOKEN_CACHE, "max-size"),
+    API_TOKEN_CACHE_TTL(SCOPE_API_TOKEN_CACHE, "ttl"),
+    API_TOKEN_CACHE_CHECK_INTERVAL(SCOPE_API_TOKEN_CACHE, "check-interval"),
+
+    // HARVEST SETTINGS
+    SCOPE_HARVEST(PREFIX, "harvest"),
+    HARVEST_MAX_CONCURRENT_REQUESTS(SCOPE_HARVEST, "max-concurrent-requests"),
+    HARVEST_MAX_REQUESTS_PER_SECOND(SCOPE_HARVEST, "max-requests-per-second"),
+    HARVEST_REQUEST_TIMEOUT(SCOPE_HARVEST, "request-timeout"),
+
+    // EXPORT SETTINGS
+    SCOPE_EXPORT_ALL(PREFIX, "export-all"),
+    EXPORT_ALL_THREADS(SCOPE_EXPORT_ALL, "threads"),
+    EXPORT_ALL_CHECKPOINT_INTERVAL(SCOPE_EXPORT_ALL, "checkpoint-interval"),
+
+    // PERMISSIONS SETTINGS
+    SCOPE_PERMISSIONS(PREFIX, "permissions"),
+    PERMISSIONS_CACHE_TTL(SCOPE_PERMISSIONS, "cache-ttl"),
+
+    // EXTERNAL VOCABULARY SETTINGS
+    SCOPE_CVOC(PREFIX, "cvoc"),
+    SCOPE_CVOC_CACHE(SCOPE_CVOC, "cache"),
+    CVOC_CACHE_MAX_SIZE(SCOPE_CVOC_CACHE, "max-size"),
+    CVOC_CACHE_TTL(SCOPE_CVOC_CACHE, "ttl"),
+    CVOC_FETCH_THREADS(SCOPE_CVOC, "fetch-threads"),
+    SCOPE_CVOC_REFRESH(SCOPE_CVOC, "refresh"),
+    CVOC_REFRESH_AGE(SCOPE_CVOC_REFRESH, "age"),
+    CVOC_REFRESH_BATCH_SIZE(SCOPE_CVOC_REFRESH, "batch-size"),
+
+    // DATABASE SETTINGS CACHE
+    SCOPE_SETTINGS(PREFIX, "settings"),
+    SCOPE_SETTINGS_CACHE(SCOPE_SETTINGS, "cache"),
+    SETTINGS_CACHE_ENABLED(SCOPE_SETTINGS_CACHE, "enabled"),
+    SETTINGS_CACHE_CHECK_INTERVAL(SCOPE_SETTINGS_CACHE, "check-interval"),
 
     // SIGNPOSTING SETTINGS
     SCOPE_SIGNPOSTING(PREFIX, "signposting"),
@@ -207,6 +269,10 @@ public enum JvmSettings {
     OIDC_PKCE_METHOD(SCOPE_OIDC_PKCE, "method"),
     OIDC_PKCE_CACHE_MAXSIZE(SCOPE_OIDC_PKCE, "max-cache-size"),
     OIDC_PKCE_CACHE_MAXAGE(SCOPE_OIDC_PKCE, "max-cache-age"),
+    SCOPE_OIDC_BEARER(SCOPE_OIDC, "bearer"),
+    OIDC_BEARER_VALIDATE_JWT(SCOPE_OIDC_BEARER, "validate-jwt"),
+    OIDC_BEARER_CACHE_MAXSIZE(SCOPE_OIDC_BEARER, "max-cache-size"),
+    OIDC_BEARER_CACHE_MAXAGE(SCOPE_OIDC_BEARER, "max-cache-age"),
 
     // UI SETTINGS
     SCOPE_UI(PREFIX, "ui"),
@@ -227,6 +293,10 @@ public enum JvmSettings {
     // STORAGE USE SETTINGS
     SCOPE_STORAGEUSE(PREFIX, "storageuse"),
     STORAGEUSE_DISABLE_UPDATES(SCOPE_STORAGEUSE, "disable-storageuse-increments"),
+
+    // MAKE DATA COUNT SETTINGS
+    SCOPE_MDC(PREFIX, "mdc"),
+    MDC_LOG_QUEUE_SIZE(SCOPE_MDC, "log-queue-size"),
     ;
 
     private static final String SCOPE_SEPARATOR = ".";
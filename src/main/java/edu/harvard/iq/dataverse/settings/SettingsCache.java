@@ -0,0 +1,230 @@
+package edu.harvard.iq.dataverse.settings;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Keeps all the rows of the setting table in memory, so that reading a
+ * setting (see {@link SettingsServiceBean#get(String)}) is a lookup in a map
+ * rather than a query.
+ *
+ * The settings are reloaded once a setting has been changed on this server,
+ * after the transaction is over; a transaction that changed a setting reads
+ * the settings from the database until then. The other servers of a cluster
+ * are told by way of a version stamp in the database, increased by a trigger
+ * whenever the table is changed, which each server checks every few seconds.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SettingsCache {
+
+    private static final Logger logger = Logger.getLogger(SettingsCache.class.getCanonicalName());
+
+    /**
+     * The settings, as they were when loaded.
+     */
+    public static final class Snapshot {
+        private final Map<String, String> contents;
+        private final long version;
+
+        Snapshot(Map<String, String> contents, long version) {
+            this.contents = contents;
+            this.version = version;
+        }
+
+        /**
+         * @return the content of the setting with no language, or null
+         */
+        public String get(String name) {
+            return contents.get(name);
+        }
+
+        /**
+         * @return the content of the setting in that language, or null
+         */
+        public String get(String name, String lang) {
+            return contents.get(key(name, lang));
+        }
+
+        int size() {
+            return contents.size();
+        }
+
+        private static String key(String name, String lang) {
+            // (a text column cannot hold a NUL character)
+            return lang == null ? name : name + '\u0000' + lang;
+        }
+    }
+
+    @PersistenceContext(unitName = "VDCNet-ejbPU")
+    EntityManager em;
+
+    @Resource
+    TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    private boolean enabled;
+    private long checkIntervalMillis;
+    private final AtomicLong nextVersionCheck = new AtomicLong();
+    // null until (re)loaded
+    private volatile Snapshot snapshot;
+    // increased whenever the snapshot is dropped, so that a snapshot loaded
+    // in the meantime is not kept
+    private final AtomicLong generation = new AtomicLong();
+    private final Object loadLock = new Object();
+
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile long lastReloadMillis;
+    private volatile Instant lastReloadTime;
+
+    @PostConstruct
+    public void init() {
+        configure(JvmSettings.SETTINGS_CACHE_ENABLED.lookupOptional(Boolean.class).orElse(true),
+                JvmSettings.SETTINGS_CACHE_CHECK_INTERVAL.lookupOptional(Integer.class).orElse(5));
+    }
+
+    void configure(boolean enabled, int checkIntervalSeconds) {
+        if (!enabled) {
+            logger.info("The database settings are not cached");
+        }
+        this.enabled = enabled;
+        checkIntervalMillis = checkIntervalSeconds * 1000L;
+        drop();
+    }
+
+    /**
+     * @return the settings, or null if they are to be read from the database:
+     * when the cache is disabled, or when a setting was changed in the current
+     * transaction
+     */
+    public Snapshot getSnapshot() {
+        if (!enabled || isChangedInThisTransaction()) {
+            return null;
+        }
+        checkVersion();
+        Snapshot current = snapshot;
+        return current != null ? current : load();
+    }
+
+    /**
+     * Reloads the settings on this server once the current transaction is
+     * over, and reads them from the database until then. (The other servers
+     * learn of the change from the trigger of the setting table.)
+     */
+    public void invalidate() {
+        drop();
+        if (transactionSynchronizationRegistry == null || transactionSynchronizationRegistry.getTransactionKey() == null) {
+            return;
+        }
+        if (transactionSynchronizationRegistry.getResource(SettingsCache.class) == null) {
+            transactionSynchronizationRegistry.putResource(SettingsCache.class, Boolean.TRUE);
+            transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+                @Override
+                public void beforeCompletion() {
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    // (committed or not, the settings loaded by other
+                    // threads in the meantime may be out of date)
+                    drop();
+                }
+            });
+        }
+    }
+
+    /**
+     * How many times the settings were loaded, how long it took the last time,
+     * and when.
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("reloads", reloads.get());
+        Snapshot current = snapshot;
+        if (current != null) {
+            stats.put("settings", current.size());
+            stats.put("version", current.version);
+        }
+        if (lastReloadTime != null) {
+            stats.put("lastReloadTime", lastReloadTime.toString());
+            stats.put("lastReloadMillis", lastReloadMillis);
+        }
+        return stats;
+    }
+
+    private boolean isChangedInThisTransaction() {
+        return transactionSynchronizationRegistry != null
+                && transactionSynchronizationRegistry.getTransactionKey() != null
+                && transactionSynchronizationRegistry.getResource(SettingsCache.class) != null;
+    }
+
+    private void drop() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    /**
+     * Drops the settings if the version stamp has changed since they were
+     * loaded - at most once per check interval, by one thread.
+     */
+    private void checkVersion() {
+        long now = System.currentTimeMillis();
+        long next = nextVersionCheck.get();
+        if (now < next || !nextVersionCheck.compareAndSet(next, now + checkIntervalMillis)) {
+            return;
+        }
+        Snapshot current = snapshot;
+        if (current != null && readVersion() != current.version) {
+            drop();
+        }
+    }
+
+    private Snapshot load() {
+        synchronized (loadLock) {
+            Snapshot current = snapshot;
+            if (current != null) {
+                // (loaded by another thread in the meantime)
+                return current;
+            }
+            long loadedGeneration = generation.get();
+            long start = System.nanoTime();
+            // (read before the settings: a change committed in between is
+            // seen at the next version check)
+            long version = readVersion();
+            List<Setting> settings = em.createNamedQuery("Setting.findAll", Setting.class).getResultList();
+            Map<String, String> contents = new HashMap<>(settings.size() * 2);
+            for (Setting setting : settings) {
+                if (setting.getContent() != null) {
+                    contents.putIfAbsent(Snapshot.key(setting.getName(), setting.getLang()), setting.getContent());
+                }
+            }
+            current = new Snapshot(contents, version);
+            if (generation.get() == loadedGeneration) {
+                snapshot = current;
+            }
+            reloads.incrementAndGet();
+            lastReloadMillis = (System.nanoTime() - start) / 1000000;
+            lastReloadTime = Instant.now();
+            logger.fine(() -> "Loaded " + contents.size() + " settings (version " + version + ") in " + lastReloadMillis + " ms");
+            return current;
+        }
+    }
+
+    private long readVersion() {
+        return ((Number) em.createNativeQuery("SELECT version FROM settingscacheversion").getSingleResult()).longValue();
+    }
+}
@@ -31,6 +31,7 @@ import java.util.logging.Logger;
 
 /**
  * Service bean accessing a persistent hash map, used as settings in the application.
+ * The settings are read from memory (see {@link SettingsCache}).
  * @author michael
  */
 @Stateless
@@ -666,12 +667,19 @@ public class SettingsServiceBean {
     @EJB
     ActionLogServiceBean actionLogSvc;
     
+    @EJB
+    SettingsCache settingsCache;
+    
     /**
      * Basic functionality - get the name, return the setting, or {@code null}.
      * @param name of the setting
      * @return the actual setting, or {@code null}.
      */
     public String get( String name ) {
+        SettingsCache.Snapshot settings = settingsCache.getSnapshot();
+        if (settings != null) {
+            return settings.get(name);
+        }
         List<Setting> tokens = em.createNamedQuery("Setting.findByName", Setting.class)
                 .setParameter("name", name )
                 .getResultList();
@@ -804,6 +812,11 @@ public class SettingsServiceBean {
     }
 
     public String get(String name, String lang, String defaultValue ) {
+        SettingsCache.Snapshot settings = settingsCache.getSnapshot();
+        if (settings != null) {
+            String val = settings.get(name, lang);
+            return (val!=null) ? val : defaultValue;
+        }
         List<Setting> tokens = em.createNamedQuery("Setting.findByNameAndLang", Setting.class)
                 .setParameter("name", name )
                 .setParameter("lang", lang )
@@ -841,6 +854,7 @@ public class SettingsServiceBean {
         }
         
         s = em.merge(s);
+        settingsCache.invalidate();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                             .setInfo(name + ": " + content));
         return s;
@@ -865,6 +879,7 @@ public class SettingsServiceBean {
         }
         
         em.merge(s);
+        settingsCache.invalidate();
         actionLogSvc.log( new ActionLogRecord(ActionLogRecord.ActionType.Setting, "set")
                 .setInfo(name + ": " +lang + ": " + content));
         return s;
@@ -913,6 +928,7 @@ public class SettingsServiceBean {
         em.createNamedQuery("Setting.deleteByName")
                 .setParameter("name", name)
                 .executeUpdate();
+        settingsCache.invalidate();
     }
 
     public void delete( String name, String lang ) {
@@ -922,6 +938,7 @@ public class SettingsServiceBean {
                 .setParameter("name", name)
                 .setParameter("lang", lang)
                 .executeUpdate();
+        settingsCache.invalidate();
     }
     
     public Set<Setting> listAll() {
@@ -21,6 +21,7 @@
 package edu.harvard.iq.dataverse.util;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -39,9 +40,6 @@ public class SumStatCalculator {
     public static double[] calculateSummaryStatistics(Number[] x){
         logger.fine("entering calculate summary statistics ("+x.length+" Number values);");
         
-        double[] nx = new double[8];
-        //("mean", "medn", "mode", "vald", "invd", "min", "max", "stdev");
-
         Float testNanValue = new Float(Float.NaN);
         Number testNumberValue = testNanValue;
         if (Double.isNaN(testNumberValue.doubleValue())) {
@@ -49,16 +47,65 @@ public class SumStatCalculator {
         }
         
         int invalid = countInvalidValues(x);
-        nx[4] = invalid;
-        logger.fine("counted invalid values: "+nx[4]);
-        nx[3] = x.length - invalid;
-        logger.fine("counted valid values: "+nx[3]);
-        
         
         //double[] newx = prepareForSummaryStats(x);
         double[] newx = prepareForSummaryStatsAlternative(x, x.length - invalid);
         logger.fine("prepared double vector for summary stats calculation ("+newx.length+" double values);");        
         
+        return calculateSummaryStatistics(newx, invalid);
+    }  
+
+    /**
+     * Same as above, but for a vector stored in a primitive array, with the 
+     * missing values flagged in the BitSet supplied (as produced by 
+     * TabularColumnScanner). NaNs are counted as invalid values, same as the 
+     * missing values. 
+     */
+    public static double[] calculateSummaryStatistics(double[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" double values);");
+        double[] newx = new double[x.length - missing.cardinality()];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!missing.get(i) && !Double.isNaN(x[i])) {
+                newx[c++] = x[i];
+            }
+        }
+        return calculateSummaryStatistics(Arrays.copyOf(newx, c), x.length - c);
+    }
+    
+    public static double[] calculateSummaryStatistics(float[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" float values);");
+        double[] newx = new double[x.length - missing.cardinality()];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!missing.get(i) && !Float.isNaN(x[i])) {
+                newx[c++] = x[i];
+            }
+        }
+        return calculateSummaryStatistics(Arrays.copyOf(newx, c), x.length - c);
+    }
+    
+    public static double[] calculateSummaryStatistics(long[] x, BitSet missing) {
+        logger.fine("entering calculate summary statistics ("+x.length+" long values);");
+        double[] newx = new double[x.length - missing.cardinality()];
+        int c = 0;
+        for (int i = 0; i < x.length; i++) {
+            if (!missing.get(i)) {
+                newx[c++] = x[i];
+            }
+        }
+        return calculateSummaryStatistics(newx, x.length - c);
+    }
+    
+    private static double[] calculateSummaryStatistics(double[] newx, int invalid) {
+        double[] nx = new double[8];
+        //("mean", "medn", "mode", "vald", "invd", "min", "max", "stdev");
+        
+        nx[4] = invalid;
+        logger.fine("counted invalid values: "+nx[4]);
+        nx[3] = newx.length;
+        logger.fine("counted valid values: "+nx[3]);
+        
         ////nx[0] = StatUtils.mean(newx);
         nx[0] = calculateMean(newx);
         logger.fine("calculated mean: "+nx[0]);
@@ -74,7 +121,7 @@ public class SumStatCalculator {
         nx[7] = Math.sqrt(StatUtils.variance(newx));
         logger.fine("calculated stdev: "+nx[7]);
         return nx;
-    }  
+    }
 
     private static double[] prepareForSummaryStats(Number[] x) {
         Double[] z = numberToDouble(x);
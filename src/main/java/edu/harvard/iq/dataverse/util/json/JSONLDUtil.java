@@ -459,6 +459,7 @@ public class JSONLDUtil {
                 extVocab=true;
             }
             List<DatasetFieldValue> vals = dsf.getDatasetFieldValues();
+            List<String> externalTerms = new ArrayList<>();
 
             for (JsonString strVal : valArray.getValuesAs(JsonString.class)) {
                 String strValue = strVal.getString();
@@ -466,7 +467,7 @@ public class JSONLDUtil {
                     if(!datasetFieldSvc.isValidCVocValue(dsft, strValue)) {
                         throw new BadRequestException("Invalid values submitted for " + dsft.getName() + " which is limited to specific vocabularies.");
                     }
-                    datasetFieldSvc.registerExternalTerm(cvocMap.get(dsft.getId()), strValue);
+                    externalTerms.add(strValue);
                 }
                 DatasetFieldValue datasetFieldValue = new DatasetFieldValue();
 
@@ -476,6 +477,10 @@ public class JSONLDUtil {
                 datasetFieldValue.setDatasetField(dsf);
 
             }
+            if (!externalTerms.isEmpty()) {
+                // (retrieved from the external service all at once)
+                datasetFieldSvc.registerExternalTerms(cvocMap.get(dsft.getId()), externalTerms);
+            }
             dsf.setDatasetFieldValues(vals);
         }
     }
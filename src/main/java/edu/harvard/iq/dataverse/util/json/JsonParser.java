@@ -855,6 +855,7 @@ public class JsonParser {
             } catch (ClassCastException cce) {
                 throw new JsonParseException("Invalid values submitted for " + dft.getName() + ". It should be an array of values.");
             }
+            List<String> externalTerms = new ArrayList<>();
             for (JsonString val : json.getJsonArray("value").getValuesAs(JsonString.class)) {
                 DatasetFieldValue datasetFieldValue = new DatasetFieldValue();
                 datasetFieldValue.setDisplayOrder(vals.size() - 1);
@@ -863,10 +864,14 @@ public class JsonParser {
                     if(!datasetFieldSvc.isValidCVocValue(dft, datasetFieldValue.getValue())) {
                         throw new JsonParseException("Invalid values submitted for " + dft.getName() + " which is limited to specific vocabularies.");
                     }
-                    datasetFieldSvc.registerExternalTerm(cvocMap.get(dft.getId()), datasetFieldValue.getValue());
+                    externalTerms.add(datasetFieldValue.getValue());
                 }
                 vals.add(datasetFieldValue);
             }
+            if (!externalTerms.isEmpty()) {
+                // (retrieved from the external service all at once)
+                datasetFieldSvc.registerExternalTerms(cvocMap.get(dft.getId()), externalTerms);
+            }
 
         } else {
             try {json.getString("value");}
@@ -1001,6 +1006,8 @@ public class JsonParser {
         harvestingClient.setMetadataPrefix(obj.getString("metadataFormat",null));
         harvestingClient.setHarvestingSet(obj.getString("set",null));
         harvestingClient.setCustomHttpHeaders(obj.getString("customHeaders", null));
+        harvestingClient.setMaxConcurrentRequests(obj.containsKey("maxConcurrentRequests") && !obj.isNull("maxConcurrentRequests") ? obj.getInt("maxConcurrentRequests") : null);
+        harvestingClient.setMaxRequestsPerSecond(obj.containsKey("maxRequestsPerSecond") && !obj.isNull("maxRequestsPerSecond") ? obj.getInt("maxRequestsPerSecond") : null);
 
         return dataverseAlias;
     }
@@ -949,6 +949,8 @@ public class JsonPrinter {
                 add("schedule", harvestingClient.isScheduled() ? harvestingClient.getScheduleDescription() : "none").
                 add("status", harvestingClient.isHarvestingNow() ? "inProgress" : "inActive").
                 add("customHeaders", harvestingClient.getCustomHttpHeaders()).
+                add("maxConcurrentRequests", harvestingClient.getMaxConcurrentRequests() == null ? null : harvestingClient.getMaxConcurrentRequests().longValue()).
+                add("maxRequestsPerSecond", harvestingClient.getMaxRequestsPerSecond() == null ? null : harvestingClient.getMaxRequestsPerSecond().longValue()).
                 add("lastHarvest", harvestingClient.getLastHarvestTime() == null ? null : harvestingClient.getLastHarvestTime().toString()).
                 add("lastResult", harvestingClient.getLastResult()).
                 add("lastSuccessful", harvestingClient.getLastSuccessfulHarvestTime() == null ? null : harvestingClient.getLastSuccessfulHarvestTime().toString()).
@@ -0,0 +1 @@
+ALTER TABLE datasetversion ADD COLUMN IF NOT EXISTS differencesummary TEXT;
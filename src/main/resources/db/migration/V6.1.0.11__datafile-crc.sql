@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS datafilecrc (
+    id SERIAL NOT NULL,
+    datafile_id BIGINT NOT NULL,
+    original BOOLEAN NOT NULL DEFAULT FALSE,
+    crc BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    UNIQUE (datafile_id, original),
+    FOREIGN KEY (datafile_id) REFERENCES dvobject (id) ON DELETE CASCADE
+);
@@ -0,0 +1,47 @@
+-- The number of downloads (guestbook responses other than access requests)
+-- of each file and each dataset, per day, kept up to date by a trigger, so
+-- that the counts shown on the pages do not have to count the responses.
+-- (The responses with no time are counted on day "infinity".)
+CREATE TABLE IF NOT EXISTS downloadcount (
+    dvobject_id BIGINT NOT NULL,
+    responsedate DATE NOT NULL,
+    downloads BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (dvobject_id, responsedate)
+);
+
+DELETE FROM downloadcount;
+
+INSERT INTO downloadcount (dvobject_id, responsedate, downloads)
+SELECT dataset_id, COALESCE(responsetime::date, 'infinity'::date), COUNT(*)
+FROM guestbookresponse
+WHERE dataset_id IS NOT NULL AND eventtype <> 'AccessRequest'
+GROUP BY 1, 2;
+
+INSERT INTO downloadcount (dvobject_id, responsedate, downloads)
+SELECT datafile_id, COALESCE(responsetime::date, 'infinity'::date), COUNT(*)
+FROM guestbookresponse
+WHERE datafile_id IS NOT NULL AND eventtype <> 'AccessRequest'
+GROUP BY 1, 2;
+
+CREATE OR REPLACE FUNCTION updatedownloadcounts() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP IN ('DELETE', 'UPDATE') AND OLD.eventtype <> 'AccessRequest' THEN
+        UPDATE downloadcount SET downloads = downloads - 1
+        WHERE dvobject_id IN (OLD.dataset_id, OLD.datafile_id)
+            AND responsedate = COALESCE(OLD.responsetime::date, 'infinity'::date);
+    END IF;
+    IF TG_OP IN ('INSERT', 'UPDATE') AND NEW.eventtype <> 'AccessRequest' THEN
+        INSERT INTO downloadcount (dvobject_id, responsedate, downloads)
+        SELECT ids.id, COALESCE(NEW.responsetime::date, 'infinity'::date), 1
+        FROM (VALUES (NEW.dataset_id), (NEW.datafile_id)) AS ids(id)
+        WHERE ids.id IS NOT NULL
+        ON CONFLICT (dvobject_id, responsedate) DO UPDATE SET downloads = downloadcount.downloads + 1;
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS guestbookresponse_downloadcount ON guestbookresponse;
+CREATE TRIGGER guestbookresponse_downloadcount
+    AFTER INSERT OR DELETE OR UPDATE OF eventtype, dataset_id, datafile_id, responsetime ON guestbookresponse
+    FOR EACH ROW EXECUTE FUNCTION updatedownloadcounts();
@@ -0,0 +1,9 @@
+-- A version stamp of the API tokens, increased whenever a token is changed or
+-- removed, so that each server of a cluster knows to forget the tokens it has
+-- cached (see ApiTokenCache).
+CREATE TABLE IF NOT EXISTS apitokencacheversion (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    version BIGINT NOT NULL
+);
+
+INSERT INTO apitokencacheversion (id, version) VALUES (1, 0) ON CONFLICT DO NOTHING;
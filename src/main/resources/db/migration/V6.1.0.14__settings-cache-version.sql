@@ -0,0 +1,21 @@
+-- A version stamp of the settings, increased by a trigger whenever the
+-- setting table is changed (by the application or not), so that each server
+-- of a cluster knows to reload the settings it has cached (see SettingsCache).
+CREATE TABLE IF NOT EXISTS settingscacheversion (
+    id INTEGER PRIMARY KEY CHECK (id = 1),
+    version BIGINT NOT NULL
+);
+
+INSERT INTO settingscacheversion (id, version) VALUES (1, 0) ON CONFLICT DO NOTHING;
+
+CREATE OR REPLACE FUNCTION updatesettingscacheversion() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE settingscacheversion SET version = version + 1;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS setting_settingscacheversion ON setting;
+CREATE TRIGGER setting_settingscacheversion
+    AFTER INSERT OR DELETE OR UPDATE OR TRUNCATE ON setting
+    FOR EACH STATEMENT EXECUTE FUNCTION updatesettingscacheversion();
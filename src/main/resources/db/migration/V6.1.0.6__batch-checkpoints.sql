@@ -0,0 +1,23 @@
+CREATE TABLE IF NOT EXISTS batchcheckpoint (
+    id SERIAL NOT NULL,
+    kind VARCHAR(255) NOT NULL,
+    jobkey VARCHAR(255) NOT NULL,
+    options VARCHAR(255),
+    starttime TIMESTAMP,
+    lastupdatetime TIMESTAMP,
+    finishtime TIMESTAMP,
+    PRIMARY KEY (id),
+    UNIQUE (kind, jobkey)
+);
+
+CREATE TABLE IF NOT EXISTS batchcheckpoint_lastids (
+    batchcheckpoint_id BIGINT NOT NULL REFERENCES batchcheckpoint (id) ON DELETE CASCADE,
+    lastids_key VARCHAR(255),
+    lastids BIGINT
+);
+
+CREATE TABLE IF NOT EXISTS batchcheckpoint_counters (
+    batchcheckpoint_id BIGINT NOT NULL REFERENCES batchcheckpoint (id) ON DELETE CASCADE,
+    counters_key VARCHAR(255),
+    counters BIGINT
+);
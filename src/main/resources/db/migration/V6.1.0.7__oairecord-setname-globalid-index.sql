@@ -0,0 +1,2 @@
+-- OAI-PMH ListRecords/ListIdentifiers pages through a set ordered by globalid, id
+CREATE INDEX IF NOT EXISTS index_oairecord_setname_globalid_id ON oairecord (setname, globalid, id);
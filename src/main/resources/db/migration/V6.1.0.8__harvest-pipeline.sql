@@ -0,0 +1,8 @@
+ALTER TABLE harvestingclient ADD COLUMN IF NOT EXISTS maxconcurrentrequests INTEGER;
+ALTER TABLE harvestingclient ADD COLUMN IF NOT EXISTS maxrequestspersecond INTEGER;
+
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS listedrecordcount BIGINT;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS fetchedrecordcount BIGINT;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS listingmillis BIGINT;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS fetchmillis BIGINT;
+ALTER TABLE clientharvestrun ADD COLUMN IF NOT EXISTS importmillis BIGINT;
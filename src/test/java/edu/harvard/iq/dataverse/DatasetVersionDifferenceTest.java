@@ -0,0 +1,122 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatasetVersionDifferenceTest {
+
+    private static DatasetVersion makeVersion(List<FileMetadata> fileMetadatas) {
+        DatasetVersion version = new DatasetVersion();
+        version.setDatasetFields(new ArrayList<>());
+        version.setFileMetadatas(fileMetadatas);
+        return version;
+    }
+
+    private static FileMetadata copy(FileMetadata fmd) {
+        FileMetadata copy = new FileMetadata();
+        copy.setId(MocksFactory.nextId());
+        copy.setLabel(fmd.getLabel());
+        copy.setDataFile(fmd.getDataFile());
+        return copy;
+    }
+
+    @Test
+    public void testFileDifferences() {
+        List<DataFile> files = MocksFactory.makeFiles(6);
+        List<FileMetadata> original = new ArrayList<>();
+        files.forEach(file -> original.add(file.getFileMetadata()));
+
+        List<FileMetadata> updated = new ArrayList<>();
+        // files 0 and 1 are unchanged, file 2 is renamed
+        updated.add(copy(original.get(1)));
+        updated.add(copy(original.get(0)));
+        FileMetadata renamed = copy(original.get(2));
+        renamed.setLabel("renamed.txt");
+        updated.add(renamed);
+        // file 3 is removed, file 4 is replaced, and one file is added
+        DataFile replacement = MocksFactory.makeDataFile();
+        replacement.setPreviousDataFileId(files.get(4).getId());
+        updated.add(replacement.getFileMetadata());
+        updated.add(copy(original.get(5)));
+        DataFile added = new DataFile();
+        added.setContentType("text/plain");
+        FileMetadata addedMetadata = MocksFactory.addFileMetadata(added);
+        addedMetadata.setId(null);
+        updated.add(addedMetadata);
+
+        DatasetVersionDifference difference = new DatasetVersionDifference(makeVersion(updated), makeVersion(original));
+
+        assertEquals(List.of(addedMetadata), difference.getAddedFiles());
+        assertEquals(List.of(original.get(3)), difference.getRemovedFiles());
+        assertEquals(2, difference.getChangedFileMetadata().size());
+        assertSame(renamed, difference.getChangedFileMetadata().get(1));
+        assertTrue(difference.getDetailDataByBlock().isEmpty());
+
+        // renamed, removed and added; the replaced file is listed apart
+        assertEquals(3, difference.getDatasetFilesDiffList().size());
+        assertEquals(1, difference.getDatasetFilesReplacementList().size());
+        assertEquals(files.get(4).getId().toString(), difference.getDatasetFilesReplacementList().get(0).getFile1Id());
+        assertEquals(replacement.getId().toString(), difference.getDatasetFilesReplacementList().get(0).getFile2Id());
+
+        DatasetVersionDifferenceSummary summary = difference.getSummary();
+        assertEquals(1, summary.getFilesAdded());
+        assertEquals(1, summary.getFilesRemoved());
+        assertEquals(1, summary.getFilesReplaced());
+        assertEquals(1, summary.getFilesChanged());
+        assertFalse(summary.isTermsOfAccessChanged());
+    }
+
+    @Test
+    public void testChangedFieldsAreGroupedByBlock() {
+        DatasetFieldType type = MocksFactory.makeDatasetFieldType();
+        type.getMetadataBlock().setId(MocksFactory.nextId());
+
+        DatasetField originalField = new DatasetField();
+        originalField.setDatasetFieldType(type);
+        originalField.setSingleValue("before");
+        DatasetVersion originalVersion = makeVersion(new ArrayList<>());
+        originalVersion.getDatasetFields().add(originalField);
+
+        DatasetField newField = new DatasetField();
+        newField.setDatasetFieldType(type);
+        newField.setSingleValue("after");
+        DatasetVersion newVersion = makeVersion(new ArrayList<>());
+        newVersion.getDatasetFields().add(newField);
+
+        DatasetVersionDifference difference = new DatasetVersionDifference(newVersion, originalVersion);
+
+        assertEquals(1, difference.getDetailDataByBlock().size());
+        assertSame(originalField, difference.getDetailDataByBlock().get(0).get(0)[0]);
+        assertSame(newField, difference.getDetailDataByBlock().get(0).get(0)[1]);
+        assertTrue(difference.getDatasetFilesDiffList().isEmpty());
+    }
+
+    @Test
+    public void testSummaryJsonRoundTrip() {
+        DatasetFieldType type = MocksFactory.makeDatasetFieldType();
+        DatasetField originalField = new DatasetField();
+        originalField.setDatasetFieldType(type);
+        originalField.setSingleValue("before");
+        DatasetVersion originalVersion = makeVersion(new ArrayList<>());
+        originalVersion.setId(MocksFactory.nextId());
+        originalVersion.getDatasetFields().add(originalField);
+        DatasetVersion newVersion = makeVersion(new ArrayList<>());
+
+        DatasetVersionDifferenceSummary summary = new DatasetVersionDifference(newVersion, originalVersion).getSummary();
+        DatasetVersionDifferenceSummary read = DatasetVersionDifferenceSummary.fromJson(summary.toJson().toString());
+
+        assertEquals(summary.toJson(), read.toJson());
+        assertEquals(originalVersion.getId(), read.getOriginalVersionId());
+        assertEquals(1, read.getBlockSummaries().size());
+        assertEquals(type.getMetadataBlock().getName(), read.getBlockSummaries().get(0).getName());
+        assertEquals(1, read.getBlockSummaries().get(0).getDeleted());
+        assertEquals(0, read.getFilesAdded());
+    }
+}
@@ -0,0 +1,75 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.search.SolrSearchResult;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+
+@ExtendWith(MockitoExtension.class)
+public class DataverseServiceBeanTest {
+
+    @Mock
+    private EntityManager em;
+
+    @InjectMocks
+    private DataverseServiceBean dataverseService;
+
+    private static SolrSearchResult card(long id, String parentId) {
+        SolrSearchResult card = new SolrSearchResult("myQuery", "myName");
+        card.setEntityId(id);
+        card.setType("dataverses");
+        Map<String, String> parent = new HashMap<>();
+        parent.put("id", parentId);
+        card.setParent(parent);
+        return card;
+    }
+
+    @Test
+    public void testPopulateDvSearchCardsInOneQuery() {
+        Query query = Mockito.mock(Query.class);
+        Mockito.when(em.createNativeQuery(anyString())).thenReturn(query);
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, null, "root", null});
+        rows.add(new Object[]{2L, "Harvard", "first", "root"});
+        rows.add(new Object[]{3L, null, "second", "first"});
+        Mockito.when(query.getResultList()).thenReturn(rows);
+
+        SolrSearchResult root = card(1, null);
+        SolrSearchResult first = card(2, "1");
+        SolrSearchResult second = card(3, "2");
+        SolrSearchResult gone = card(4, "1");
+
+        int queries = dataverseService.populateDvSearchCards(List.of(root, first, second, gone));
+
+        assertEquals(1, queries);
+        Mockito.verify(em, Mockito.times(1)).createNativeQuery(anyString());
+        assertEquals("root", root.getDataverseAlias());
+        assertNull(root.getDataverseParentAlias());
+        assertEquals("Harvard", first.getDataverseAffiliation());
+        assertEquals("first", first.getDataverseAlias());
+        assertEquals("root", first.getDataverseParentAlias());
+        assertEquals("first", second.getDataverseParentAlias());
+        // (no longer in the database)
+        assertNull(gone.getDataverseAlias());
+    }
+
+    @Test
+    public void testPopulateNoDvSearchCards() {
+        assertEquals(0, dataverseService.populateDvSearchCards(List.of()));
+        Mockito.verifyNoInteractions(em);
+    }
+}
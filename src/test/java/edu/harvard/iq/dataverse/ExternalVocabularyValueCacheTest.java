@@ -0,0 +1,146 @@
+package edu.harvard.iq.dataverse;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Retrieves terms from a stub vocabulary service, answering after a short
+ * delay.
+ */
+public class ExternalVocabularyValueCacheTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private ExternalVocabularyValueCache cache;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/terms", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+                String term = exchange.getRequestURI().getPath().replaceFirst(".*/", "");
+                int count = requests.computeIfAbsent(term, t -> new AtomicInteger()).incrementAndGet();
+                int status = 200;
+                if (term.startsWith("missing")) {
+                    status = 404;
+                } else if (term.startsWith("busy") && count == 1) {
+                    // (the first time only)
+                    status = 504;
+                }
+                byte[] body = ("{\"termName\":\"" + term + "\"}").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                inFlight.decrementAndGet();
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/terms/";
+
+        cache = new ExternalVocabularyValueCache();
+        cache.configure(100, 600, 8);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cache.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testTermsAreRetrievedAtTheSameTime() {
+        Map<String, String> retrievalUris = new LinkedHashMap<>();
+        for (int i = 0; i < 16; i++) {
+            retrievalUris.put("https://orcid.org/" + i, baseUrl + "term" + i);
+        }
+
+        long start = System.nanoTime();
+        Map<String, String> responses = cache.fetch(retrievalUris);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(16, responses.size());
+        assertEquals("{\"termName\":\"term3\"}", responses.get("https://orcid.org/3"));
+        assertEquals(8, maxInFlight.get());
+        // rather than 16 x 50 ms, one after another
+        assertTrue(millis < 600, "took " + millis + " ms");
+    }
+
+    @Test
+    public void testFailedTermsAreLeftOut() {
+        Map<String, String> retrievalUris = new LinkedHashMap<>();
+        retrievalUris.put("https://orcid.org/1", baseUrl + "term1");
+        retrievalUris.put("https://orcid.org/2", baseUrl + "missing2");
+        retrievalUris.put("https://orcid.org/3", "not a url");
+
+        Map<String, String> responses = cache.fetch(retrievalUris);
+
+        assertEquals(1, responses.size());
+        assertTrue(responses.containsKey("https://orcid.org/1"));
+    }
+
+    @Test
+    public void testGatewayTimeoutIsRetried() {
+        Map<String, String> responses = cache.fetch(Map.of("https://orcid.org/1", baseUrl + "busy1"));
+
+        assertEquals("{\"termName\":\"busy1\"}", responses.get("https://orcid.org/1"));
+        assertEquals(2, requests.get("busy1").get());
+    }
+
+    @Test
+    public void testOneByOne() {
+        cache.close();
+        cache.configure(100, 600, 1);
+        Map<String, String> retrievalUris = new LinkedHashMap<>();
+        for (int i = 0; i < 4; i++) {
+            retrievalUris.put("https://orcid.org/" + i, baseUrl + "term" + i);
+        }
+
+        assertEquals(4, cache.fetch(retrievalUris).size());
+        assertEquals(1, maxInFlight.get());
+    }
+
+    @Test
+    public void testTermsWithoutAValueAreCachedToo() {
+        assertNull(cache.getIfPresent("https://orcid.org/1"));
+
+        cache.put("https://orcid.org/1", null);
+
+        assertTrue(cache.getIfPresent("https://orcid.org/1").isEmpty());
+    }
+
+    @Test
+    public void testNothingIsCachedWhenDisabled() {
+        cache.close();
+        cache.configure(0, 600, 8);
+
+        cache.put("https://orcid.org/1", null);
+
+        assertNull(cache.getIfPresent("https://orcid.org/1"));
+    }
+}
@@ -0,0 +1,180 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.actionlogging.ActionLogRecord;
+import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.engine.command.impl.CreateGuestbookResponseCommand;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GuestbookResponseWriterTest {
+
+    /**
+     * Keeps what would be saved.
+     */
+    private static class StubGuestbookResponseService extends GuestbookResponseServiceBean {
+        final List<GuestbookResponse> saved = Collections.synchronizedList(new ArrayList<>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final List<GuestbookResponse> savedRightAway = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void save(GuestbookResponse guestbookResponse) {
+            savedRightAway.add(guestbookResponse);
+            saved.add(guestbookResponse);
+        }
+
+        @Override
+        public void saveAll(List<GuestbookResponse> guestbookResponses) {
+            batchSizes.add(guestbookResponses.size());
+            saved.addAll(guestbookResponses);
+        }
+    }
+
+    private final GuestbookResponseWriter writer = new GuestbookResponseWriter();
+
+    @AfterEach
+    public void stopWriter() {
+        writer.stop();
+    }
+
+    private static DataFile makeDataFile(long id) {
+        DataFile dataFile = new DataFile();
+        dataFile.setId(id);
+        return dataFile;
+    }
+
+    @Test
+    public void testResponsesAreSavedInBatches() {
+        StubGuestbookResponseService service = new StubGuestbookResponseService();
+        writer.guestbookResponseService = service;
+        writer.start(10, 1000);
+
+        // the same response, for several files, as for a multiple file download
+        GuestbookResponse guestbookResponse = new GuestbookResponse();
+        guestbookResponse.setEventType(GuestbookResponse.DOWNLOAD);
+        for (long id = 1; id <= 100; id++) {
+            guestbookResponse.setDataFile(makeDataFile(id));
+            writer.write(guestbookResponse);
+        }
+        writer.stop();
+
+        assertEquals(100, service.saved.size());
+        assertTrue(service.savedRightAway.isEmpty());
+        assertTrue(service.batchSizes.stream().allMatch(size -> size <= 10));
+        Set<Long> fileIds = new HashSet<>();
+        for (GuestbookResponse saved : service.saved) {
+            assertFalse(saved == guestbookResponse, "the responses should be copied");
+            assertNotNull(saved.getResponseTime());
+            assertEquals(GuestbookResponse.DOWNLOAD, saved.getEventType());
+            fileIds.add(saved.getDataFile().getId());
+        }
+        assertEquals(100, fileIds.size());
+        assertEquals(0, writer.getQueueSize());
+    }
+
+    @Test
+    public void testDownloadIsWrittenToTheActionLog() {
+        StubGuestbookResponseService service = new StubGuestbookResponseService();
+        writer.guestbookResponseService = service;
+        List<ActionLogRecord> logged = new ArrayList<>();
+        writer.actionLogService = new ActionLogServiceBean() {
+            @Override
+            public void log(ActionLogRecord rec) {
+                logged.add(rec);
+            }
+        };
+        writer.start(10, 1000);
+
+        AuthenticatedUser user = MocksFactory.makeAuthenticatedUser("Jane", "Doe");
+        Dataset dataset = MocksFactory.makeDataset();
+        GuestbookResponse guestbookResponse = new GuestbookResponse();
+        guestbookResponse.setDataset(dataset);
+        guestbookResponse.setDataFile(dataset.getFiles().get(0));
+        writer.write(guestbookResponse, MocksFactory.makeRequest(user));
+        writer.stop();
+
+        assertEquals(1, service.saved.size());
+        assertEquals(1, logged.size());
+        assertEquals(ActionLogRecord.ActionType.Command, logged.get(0).getActionType());
+        assertEquals(CreateGuestbookResponseCommand.class.getCanonicalName(), logged.get(0).getActionSubType());
+        assertEquals(user.getIdentifier(), logged.get(0).getUserIdentifier());
+        assertEquals(ActionLogRecord.Result.OK, logged.get(0).getActionResult());
+        assertTrue(logged.get(0).getInfo().contains(String.valueOf(dataset.getId())));
+    }
+
+    @Test
+    public void testFailedBatchIsSavedOneByOne() {
+        StubGuestbookResponseService service = new StubGuestbookResponseService() {
+            @Override
+            public void saveAll(List<GuestbookResponse> guestbookResponses) {
+                throw new IllegalStateException("one of them is at fault");
+            }
+
+            @Override
+            public void save(GuestbookResponse guestbookResponse) {
+                if (guestbookResponse.getDataFile().getId() == 3L) {
+                    throw new IllegalStateException("this one");
+                }
+                super.save(guestbookResponse);
+            }
+        };
+        writer.guestbookResponseService = service;
+        writer.start(10, 1000);
+
+        GuestbookResponse guestbookResponse = new GuestbookResponse();
+        for (long id = 1; id <= 5; id++) {
+            guestbookResponse.setDataFile(makeDataFile(id));
+            writer.write(guestbookResponse);
+        }
+        writer.stop();
+
+        assertEquals(4, service.saved.size());
+    }
+
+    @Test
+    public void testResponsesAreSavedRightAwayWhenTheQueueIsFull() throws InterruptedException {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        StubGuestbookResponseService service = new StubGuestbookResponseService() {
+            @Override
+            public void saveAll(List<GuestbookResponse> guestbookResponses) {
+                saving.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.saveAll(guestbookResponses);
+            }
+        };
+        writer.guestbookResponseService = service;
+        writer.start(10, 1);
+
+        GuestbookResponse guestbookResponse = new GuestbookResponse();
+        guestbookResponse.setDataFile(makeDataFile(1));
+        writer.write(guestbookResponse);
+        // the writer is busy with the first one: the second one is queued,
+        // the third one has to be saved right away
+        assertTrue(saving.await(10, TimeUnit.SECONDS));
+        writer.write(guestbookResponse);
+        writer.write(guestbookResponse);
+        assertEquals(1, service.savedRightAway.size());
+
+        release.countDown();
+        writer.stop();
+        assertEquals(3, service.saved.size());
+    }
+}
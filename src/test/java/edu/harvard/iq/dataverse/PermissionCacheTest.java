@@ -0,0 +1,143 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.groups.impl.builtin.AllUsers;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+
+public class PermissionCacheTest {
+
+    @Test
+    public void testPermissionsAreLoadedOnce() {
+        PermissionCache cache = new PermissionCache(0, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            Set<Permission> permissions = cache.permissions("@user", 1L, () -> {
+                loads.incrementAndGet();
+                return EnumSet.of(Permission.DownloadFile);
+            });
+            assertEquals(EnumSet.of(Permission.DownloadFile), permissions);
+            // callers may add to what they get without affecting the cache
+            permissions.add(Permission.EditDataset);
+        }
+        assertEquals(1, loads.get());
+
+        cache.permissions("@user", 2L, () -> {
+            loads.incrementAndGet();
+            return EnumSet.noneOf(Permission.class);
+        });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testInvalidateAll() {
+        PermissionCache cache = new PermissionCache(0, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet()));
+        PermissionCache.invalidateAll();
+
+        assertEquals(Set.of(2L), cache.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet())));
+        assertEquals(Set.of(2L), cache.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet())));
+    }
+
+    @Test
+    public void testInvalidateAllAgainAfterTheTransaction() {
+        Map<Object, Object> transaction = new HashMap<>();
+        TransactionSynchronizationRegistry registry = Mockito.mock(TransactionSynchronizationRegistry.class);
+        Mockito.when(registry.getTransactionKey()).thenReturn(transaction);
+        Mockito.when(registry.getResource(any())).thenAnswer(invocation -> transaction.get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> transaction.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(registry).putResource(any(), any());
+        PermissionCache shared = new PermissionCache(60000, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        PermissionCache.invalidateAll(registry);
+        PermissionCache.invalidateAll(registry);
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        Mockito.verify(registry).registerInterposedSynchronization(synchronization.capture());
+
+        // meanwhile, another request still sees what was there before the commit
+        shared.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet()));
+        assertEquals(Set.of(1L), shared.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet())));
+
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        assertEquals(Set.of(2L), shared.releasedFileIds(1L, () -> Set.of((long) loads.incrementAndGet())));
+    }
+
+    @Test
+    public void testRequestCacheFallsBackToSharedCache() throws InterruptedException {
+        PermissionCache shared = new PermissionCache(50, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        new PermissionCache(0, shared).assignees("request:@user", () -> {
+            loads.incrementAndGet();
+            return Set.of(GuestUser.get());
+        });
+        // a later request finds it in the shared cache...
+        new PermissionCache(0, shared).assignees("request:@user", () -> {
+            loads.incrementAndGet();
+            return Set.of(GuestUser.get());
+        });
+        assertEquals(1, loads.get());
+
+        // ...until it has expired
+        Thread.sleep(100);
+        Set<RoleAssignee> assignees = new PermissionCache(0, shared).assignees("request:@user", () -> {
+            loads.incrementAndGet();
+            return Set.of(GuestUser.get());
+        });
+        assertEquals(2, loads.get());
+        assertThrows(UnsupportedOperationException.class, () -> assignees.add(AllUsers.get()));
+    }
+
+    @Test
+    public void testSearchGroupFilterIsLoadedOnce() {
+        PermissionCache shared = new PermissionCache(60000, null);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(" OR group_1", new PermissionCache(0, shared).searchGroupFilter(":guest|", () -> {
+                loads.incrementAndGet();
+                return " OR group_1";
+            }));
+        }
+        assertEquals(1, loads.get());
+
+        // e.g. a group was changed
+        PermissionCache.invalidateAll();
+        assertEquals(" OR group_2", new PermissionCache(0, shared).searchGroupFilter(":guest|", () -> {
+            loads.incrementAndGet();
+            return " OR group_2";
+        }));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testKeyIsIndependentOfOrder() {
+        Set<RoleAssignee> ras = new LinkedHashSet<>(List.of(GuestUser.get(), AllUsers.get()));
+        Set<RoleAssignee> reversed = new LinkedHashSet<>(List.of(AllUsers.get(), GuestUser.get()));
+        assertEquals(PermissionCache.keyOf(ras), PermissionCache.keyOf(reversed));
+        assertTrue(PermissionCache.keyOf(ras).contains(GuestUser.get().getIdentifier()));
+    }
+}
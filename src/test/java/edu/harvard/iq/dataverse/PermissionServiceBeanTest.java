@@ -0,0 +1,168 @@
+package edu.harvard.iq.dataverse;
+
+import edu.harvard.iq.dataverse.authorization.DataverseRole;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.RoleAssignee;
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import edu.harvard.iq.dataverse.authorization.groups.GroupServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.authorization.users.GuestUser;
+import edu.harvard.iq.dataverse.engine.command.DataverseRequest;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+
+/**
+ * The permissions checked over many objects at once must be those checked
+ * one by one.
+ */
+public class PermissionServiceBeanTest {
+
+    private final List<RoleAssignment> assignments = new ArrayList<>();
+    private AuthenticatedUser member;
+    private AuthenticatedUser nonMember;
+    private Group researchers;
+    private Dataverse root;
+    private Dataverse child;
+    private Dataset inRoot;
+    private Dataset inChild;
+    private DataFile grantedToMember;
+
+    @BeforeEach
+    public void setUp() {
+        member = MocksFactory.makeAuthenticatedUser("Group", "Member");
+        nonMember = MocksFactory.makeAuthenticatedUser("Not", "Member");
+        researchers = Mockito.mock(Group.class);
+        Mockito.when(researchers.getIdentifier()).thenReturn("&explicit/1-researchers");
+
+        // the child collection does not inherit the permissions of the root
+        root = MocksFactory.makeDataverse();
+        child = MocksFactory.makeDataverse();
+        child.setOwner(root);
+        child.setPermissionRoot(true);
+        inRoot = makeDataset(root);
+        inChild = makeDataset(child);
+
+        DataverseRole fileDownloader = MocksFactory.makeRole("fileDownloader");
+        fileDownloader.clearPermissions();
+        fileDownloader.addPermission(Permission.DownloadFile);
+        DataverseRole curator = MocksFactory.makeRole("curator");
+
+        // granted to the group on the root, so on all the files of inRoot
+        assignments.add(new RoleAssignment(fileDownloader, researchers, root, null));
+        // and to the member on one file of inChild, and to the non-member on another
+        grantedToMember = inChild.getFiles().get(0);
+        assignments.add(new RoleAssignment(fileDownloader, member, grantedToMember, null));
+        assignments.add(new RoleAssignment(fileDownloader, nonMember, inChild.getFiles().get(3), null));
+        // granted to the group on a dataset
+        assignments.add(new RoleAssignment(curator, researchers, inChild, null));
+    }
+
+    @Test
+    public void testFilesAreCheckedAsOneByOne() {
+        List<DataFile> files = new ArrayList<>(inRoot.getFiles());
+        files.addAll(inChild.getFiles());
+        for (DataverseRequest req : requests()) {
+            assertSameAsOneByOne(req, files, Permission.DownloadFile);
+        }
+    }
+
+    @Test
+    public void testDatasetsAreCheckedAsOneByOne() {
+        for (DataverseRequest req : requests()) {
+            assertSameAsOneByOne(req, List.of(inRoot, inChild), Permission.ViewUnpublishedDataset);
+            assertSameAsOneByOne(req, List.of(inRoot, inChild, root, child), Permission.EditDataset);
+        }
+    }
+
+    @Test
+    public void testGroupGrantedRoles() {
+        Map<DvObject, Boolean> permitted = newPermissionService().hasPermissionsFor(MocksFactory.makeRequest(member),
+                List.of(inRoot.getFiles().get(1), inChild.getFiles().get(1), grantedToMember, inChild), EnumSet.of(Permission.DownloadFile));
+
+        assertTrue(permitted.get(inRoot.getFiles().get(1)));
+        assertFalse(permitted.get(inChild.getFiles().get(1)));
+        assertTrue(permitted.get(grantedToMember));
+        assertFalse(permitted.get(inChild));
+        assertTrue(newPermissionService().hasPermissionsFor(MocksFactory.makeRequest(member), List.of(inChild), EnumSet.of(Permission.EditDataset)).get(inChild));
+        assertFalse(newPermissionService().hasPermissionsFor(MocksFactory.makeRequest(nonMember), List.of(inChild), EnumSet.of(Permission.EditDataset)).get(inChild));
+    }
+
+    private void assertSameAsOneByOne(DataverseRequest req, Collection<? extends DvObject> dvos, Permission required) {
+        Map<DvObject, Boolean> all = newPermissionService().hasPermissionsFor(req, dvos, EnumSet.of(required));
+
+        assertEquals(new ArrayList<>(dvos), new ArrayList<>(all.keySet()));
+        PermissionServiceBean oneByOne = newPermissionService();
+        for (DvObject dvo : dvos) {
+            assertEquals(oneByOne.hasPermissionsFor(req, dvo, EnumSet.of(required)), all.get(dvo),
+                    req.getUser().getIdentifier() + " " + required + " on " + dvo);
+        }
+    }
+
+    private List<DataverseRequest> requests() {
+        return List.of(MocksFactory.makeRequest(member), MocksFactory.makeRequest(nonMember), MocksFactory.makeRequest(GuestUser.get()));
+    }
+
+    /**
+     * @return a dataset whose files alternate between restricted and public
+     */
+    private Dataset makeDataset(Dataverse owner) {
+        Dataset dataset = MocksFactory.makeDataset();
+        dataset.setOwner(owner);
+        for (int i = 0; i < dataset.getFiles().size(); i++) {
+            dataset.getFiles().get(i).setOwner(dataset);
+            dataset.getFiles().get(i).setRestricted(i % 2 == 0);
+        }
+        return dataset;
+    }
+
+    /**
+     * @return a service with a cache of its own, whose role assignments and
+     * groups are those of this test
+     */
+    @SuppressWarnings("unchecked")
+    private PermissionServiceBean newPermissionService() {
+        PermissionServiceBean permissionService = new PermissionServiceBean();
+
+        permissionService.roleService = Mockito.mock(DataverseRoleServiceBean.class);
+        Mockito.when(permissionService.roleService.directRoleAssignments(any(Set.class), any(Collection.class))).thenAnswer(invocation -> {
+            Set<String> ids = identifiers(invocation.getArgument(0));
+            Collection<DvObject> dvos = invocation.getArgument(1);
+            return assignments.stream()
+                    .filter(ra -> ids.contains(ra.getAssigneeIdentifier()) && dvos.contains(ra.getDefinitionPoint()))
+                    .collect(Collectors.toList());
+        });
+        Mockito.when(permissionService.roleService.directRoleAssignmentsOnChildren(any(Set.class), any(DvObject.class))).thenAnswer(invocation -> {
+            Set<String> ids = identifiers(invocation.getArgument(0));
+            DvObject owner = invocation.getArgument(1);
+            return assignments.stream()
+                    .filter(ra -> ids.contains(ra.getAssigneeIdentifier()) && owner.equals(ra.getDefinitionPoint().getOwner()))
+                    .collect(Collectors.toList());
+        });
+
+        permissionService.groupService = Mockito.mock(GroupServiceBean.class);
+        Mockito.when(permissionService.groupService.groupsFor(any(DataverseRequest.class), any(DvObject.class)))
+                .thenAnswer(invocation -> ((DataverseRequest) invocation.getArgument(0)).getUser() == member ? Set.of(researchers) : Set.of());
+
+        permissionService.requestPermissionCache = Mockito.mock(RequestPermissionCache.class);
+        Mockito.when(permissionService.requestPermissionCache.getCache()).thenReturn(new PermissionCache(0, null));
+        return permissionService;
+    }
+
+    private static Set<String> identifiers(Set<? extends RoleAssignee> ras) {
+        return ras.stream().map(RoleAssignee::getIdentifier).collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,176 @@
+package edu.harvard.iq.dataverse.authorization;
+
+import edu.harvard.iq.dataverse.authorization.users.ApiToken;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.util.testing.Tags;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+
+public class AuthenticationServiceBeanTest {
+
+    private static final Logger logger = Logger.getLogger(AuthenticationServiceBeanTest.class.getCanonicalName());
+
+    private static final String TOKEN = "6bd9c9d8-0000-4b6e-a1de-5cdf3b6b1f0e";
+
+    private AuthenticationServiceBean sut;
+    private ApiTokenCache apiTokenCache;
+    private AuthenticatedUser user;
+    private ApiToken apiToken;
+    // the round trips to the database
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger version = new AtomicInteger();
+    private long roundTripNanos = 0;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        user = new AuthenticatedUser();
+        user.setId(42L);
+        apiToken = new ApiToken();
+        apiToken.setTokenString(TOKEN);
+        apiToken.setAuthenticatedUser(user);
+        apiToken.setExpireTime(new Timestamp(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+
+        EntityManager em = Mockito.mock(EntityManager.class);
+        TypedQuery<ApiToken> tokenQuery = Mockito.mock(TypedQuery.class);
+        Mockito.when(em.createNamedQuery("ApiToken.findByTokenString", ApiToken.class)).thenReturn(tokenQuery);
+        Mockito.when(tokenQuery.setParameter(anyString(), any())).thenReturn(tokenQuery);
+        Mockito.when(tokenQuery.getSingleResult()).thenAnswer(invocation -> {
+            // the token, then (as EclipseLink does not join it) its user
+            roundTrip();
+            roundTrip();
+            return apiToken;
+        });
+        Mockito.when(em.find(eq(AuthenticatedUser.class), any())).thenAnswer(invocation -> {
+            roundTrip();
+            return user;
+        });
+        Query versionQuery = Mockito.mock(Query.class);
+        Mockito.when(em.createNativeQuery("SELECT version FROM apitokencacheversion")).thenReturn(versionQuery);
+        Mockito.when(versionQuery.getSingleResult()).thenAnswer(invocation -> {
+            roundTrip();
+            return (long) version.get();
+        });
+        Query bumpQuery = Mockito.mock(Query.class);
+        Mockito.when(em.createNativeQuery("UPDATE apitokencacheversion SET version = version + 1")).thenReturn(bumpQuery);
+        Mockito.when(bumpQuery.executeUpdate()).thenAnswer(invocation -> version.incrementAndGet());
+
+        apiTokenCache = new ApiTokenCache();
+        apiTokenCache.em = em;
+        apiTokenCache.configure(1000, 600, 0);
+
+        sut = new AuthenticationServiceBean();
+        sut.em = em;
+        sut.apiTokenCache = apiTokenCache;
+    }
+
+    private void roundTrip() {
+        queries.incrementAndGet();
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+
+    @Test
+    public void testCachedTokenOnlyNeedsTheUser() {
+        assertSame(user, sut.lookupUser(TOKEN));
+        int queriesBefore = queries.get();
+
+        assertSame(user, sut.lookupUser(TOKEN));
+
+        // the version stamp (checked each time here) and the user
+        assertEquals(2, queries.get() - queriesBefore);
+    }
+
+    @Test
+    public void testDeactivatedUserIsRejectedEvenIfCached() {
+        assertSame(user, sut.lookupUser(TOKEN));
+
+        user.setDeactivated(true);
+
+        assertNull(sut.lookupUser(TOKEN));
+    }
+
+    @Test
+    public void testDisabledTokenIsRejected() {
+        apiToken.setDisabled(true);
+
+        assertNull(sut.lookupUser(TOKEN));
+        assertNull(sut.lookupUser(TOKEN));
+    }
+
+    @Test
+    public void testTokenChangedOnAnotherServerIsForgotten() {
+        assertSame(user, sut.lookupUser(TOKEN));
+        assertTrue(apiTokenCache.get(TOKEN) != null);
+
+        // as if the token was disabled, elsewhere
+        apiToken.setDisabled(true);
+        version.incrementAndGet();
+
+        assertNull(sut.lookupUser(TOKEN));
+    }
+
+    @Test
+    public void testInvalidatedTokenIsForgotten() {
+        assertSame(user, sut.lookupUser(TOKEN));
+
+        apiTokenCache.invalidate(apiToken);
+
+        assertNull(apiTokenCache.get(TOKEN));
+        assertEquals(1, version.get());
+    }
+
+    /**
+     * Compares the throughput of the API token lookups with and without the
+     * cache, with a database round trip of 100 microseconds. Not a unit test,
+     * hence not run by default; run with
+     * {@code mvn test -Dtest=AuthenticationServiceBeanTest -DtestsToExclude=}
+     */
+    @Test
+    @Tag(Tags.NOT_ESSENTIAL_UNITTESTS)
+    public void benchmarkLookupUser() {
+        roundTripNanos = TimeUnit.MICROSECONDS.toNanos(100);
+
+        apiTokenCache.configure(0, 0, 0);
+        double uncached = lookupsPerSecond();
+        // as configured by default: the version stamp is checked every 5 seconds
+        apiTokenCache.configure(10000, 600, 5);
+        double cached = lookupsPerSecond();
+
+        logger.info(String.format("API token lookups per second: %.0f without the cache, %.0f with the cache", uncached, cached));
+        assertTrue(cached > uncached);
+    }
+
+    private double lookupsPerSecond() {
+        // warm up
+        for (int i = 0; i < 1000; i++) {
+            sut.lookupUser(TOKEN);
+        }
+        int lookups = 5000;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            sut.lookupUser(TOKEN);
+        }
+        return lookups / ((System.nanoTime() - start) / 1e9);
+    }
+}
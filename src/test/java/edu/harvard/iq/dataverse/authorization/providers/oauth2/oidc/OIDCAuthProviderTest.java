@@ -0,0 +1,226 @@
+package edu.harvard.iq.dataverse.authorization.providers.oauth2.oidc;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JOSEObjectType;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.nimbusds.oauth2.sdk.ResponseType;
+import com.nimbusds.oauth2.sdk.id.Issuer;
+import com.nimbusds.oauth2.sdk.token.BearerAccessToken;
+import com.nimbusds.openid.connect.sdk.SubjectType;
+import com.nimbusds.openid.connect.sdk.op.OIDCProviderMetadata;
+import com.sun.net.httpserver.HttpServer;
+import edu.harvard.iq.dataverse.authorization.UserRecordIdentifier;
+import edu.harvard.iq.dataverse.authorization.exceptions.AuthorizationSetupException;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OIDCAuthProviderTest {
+
+    private static final String ISSUER = "https://idp.example.org/realms/test";
+    private static final String CLIENT_ID = "test";
+
+    private static HttpServer jwksServer;
+    private static URI jwksUri;
+    private static RSAKey signingKey;
+    private static final AtomicInteger jwksRequests = new AtomicInteger();
+
+    /**
+     * A provider that does not need a real IdP: the metadata is made up, the keys are served locally, and the user
+     * info is only given for one opaque token.
+     */
+    static class TestOIDCAuthProvider extends OIDCAuthProvider {
+        final AtomicInteger userInfoRequests = new AtomicInteger();
+
+        TestOIDCAuthProvider() throws AuthorizationSetupException {
+            super(CLIENT_ID, "secret", ISSUER, false, "S256");
+        }
+
+        @Override
+        OIDCProviderMetadata getMetadata(Issuer issuer) {
+            OIDCProviderMetadata metadata = new OIDCProviderMetadata(issuer, List.of(SubjectType.PUBLIC), jwksUri);
+            metadata.setResponseTypes(List.of(ResponseType.CODE));
+            return metadata;
+        }
+
+        @Override
+        Optional<UserRecordIdentifier> getUserIdentifierFromUserInfo(BearerAccessToken accessToken) {
+            userInfoRequests.incrementAndGet();
+            if ("opaque-token".equals(accessToken.getValue())) {
+                return Optional.of(new UserRecordIdentifier(getId(), "opaque-user"));
+            }
+            return Optional.empty();
+        }
+    }
+
+    private TestOIDCAuthProvider sut;
+
+    @BeforeAll
+    static void serveKeys() throws IOException, JOSEException {
+        signingKey = new RSAKeyGenerator(2048).keyID("key-1").generate();
+        byte[] jwks = new JWKSet(signingKey.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+
+        jwksServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        jwksServer.createContext("/jwks", exchange -> {
+            jwksRequests.incrementAndGet();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, jwks.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(jwks);
+            }
+        });
+        jwksServer.start();
+        jwksUri = URI.create("http://127.0.0.1:" + jwksServer.getAddress().getPort() + "/jwks");
+    }
+
+    @AfterAll
+    static void stopServer() {
+        jwksServer.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() throws AuthorizationSetupException {
+        sut = new TestOIDCAuthProvider();
+    }
+
+    /**
+     * @return An access token issued to our client, as Keycloak does (for another audience, with us as "azp")
+     */
+    private static BearerAccessToken jwt(RSAKey key, String issuer, String subject, long expiresInSeconds) throws JOSEException {
+        return jwt(key, claims(issuer, subject, expiresInSeconds).audience("account").claim("azp", CLIENT_ID).build());
+    }
+    
+    private static JWTClaimsSet.Builder claims(String issuer, String subject, long expiresInSeconds) {
+        return new JWTClaimsSet.Builder()
+            .issuer(issuer)
+            .subject(subject)
+            .expirationTime(new Date(System.currentTimeMillis() + expiresInSeconds * 1000));
+    }
+    
+    private static BearerAccessToken jwt(RSAKey key, JWTClaimsSet claims) throws JOSEException {
+        SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).type(JOSEObjectType.JWT).build(), claims);
+        jwt.sign(new RSASSASigner(key));
+        return new BearerAccessToken(jwt.serialize());
+    }
+
+    @Test
+    void testValidJwtIsAcceptedLocally() throws Exception {
+        int jwksRequestsBefore = jwksRequests.get();
+
+        Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(jwt(signingKey, ISSUER, "jwt-user", 300));
+        Optional<UserRecordIdentifier> again = sut.getUserIdentifier(jwt(signingKey, ISSUER, "jwt-user", 300));
+
+        assertTrue(identifier.isPresent());
+        assertEquals(sut.getId(), identifier.get().getUserRepoId());
+        assertEquals("jwt-user", identifier.get().getUserIdInRepo());
+        assertTrue(again.isPresent());
+        assertEquals(0, sut.userInfoRequests.get());
+        assertEquals(2, sut.getJwtAcceptedCount());
+        // the keys are fetched once, then cached
+        assertTrue(jwksRequests.get() - jwksRequestsBefore <= 1);
+    }
+
+    @Test
+    void testJwtForOurAudienceIsAcceptedLocally() throws Exception {
+        Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).audience(List.of("api", CLIENT_ID)).build()));
+
+        assertTrue(identifier.isPresent());
+        assertEquals(1, sut.getJwtAcceptedCount());
+    }
+
+    @Test
+    void testJwtForAnotherClientIsRejectedLocally() throws Exception {
+        Optional<UserRecordIdentifier> otherAzp = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).audience("account").claim("azp", "other-client").build()));
+        Optional<UserRecordIdentifier> otherAudience = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).audience("other-client").build()));
+        Optional<UserRecordIdentifier> noAudience = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).build()));
+
+        assertTrue(otherAzp.isEmpty());
+        assertTrue(otherAudience.isEmpty());
+        assertTrue(noAudience.isEmpty());
+        assertEquals(0, sut.userInfoRequests.get());
+        assertEquals(3, sut.getJwtRejectedCount());
+    }
+
+    @Test
+    void testIdTokenIsRejectedLocally() throws Exception {
+        // issued to our client, as ID tokens are, but not an access token
+        Optional<UserRecordIdentifier> withNonce = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).audience(CLIENT_ID).claim("azp", CLIENT_ID).claim("nonce", "n-0S6_WzA2Mj").build()));
+        Optional<UserRecordIdentifier> withAtHash = sut.getUserIdentifier(
+            jwt(signingKey, claims(ISSUER, "jwt-user", 300).audience(CLIENT_ID).claim("at_hash", "77QmUPtjPfzWtF2AnpK9RQ").build()));
+
+        assertTrue(withNonce.isEmpty());
+        assertTrue(withAtHash.isEmpty());
+        assertEquals(0, sut.userInfoRequests.get());
+        assertEquals(2, sut.getJwtRejectedCount());
+    }
+
+    @Test
+    void testExpiredJwtIsRejectedLocally() throws Exception {
+        Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(jwt(signingKey, ISSUER, "jwt-user", -3600));
+
+        assertTrue(identifier.isEmpty());
+        assertEquals(0, sut.userInfoRequests.get());
+        assertEquals(1, sut.getJwtRejectedCount());
+    }
+
+    @Test
+    void testJwtWithUnknownKeyIsRejectedLocally() throws Exception {
+        RSAKey otherKey = new RSAKeyGenerator(2048).keyID("key-2").generate();
+
+        Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(jwt(otherKey, ISSUER, "jwt-user", 300));
+
+        assertTrue(identifier.isEmpty());
+        assertEquals(0, sut.userInfoRequests.get());
+        assertEquals(1, sut.getJwtRejectedCount());
+    }
+
+    @Test
+    void testJwtOfAnotherIssuerIsCheckedWithTheProvider() throws Exception {
+        Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(jwt(signingKey, "https://other.example.org", "jwt-user", 300));
+
+        assertTrue(identifier.isEmpty());
+        assertEquals(1, sut.userInfoRequests.get());
+        assertEquals(0, sut.getJwtRejectedCount());
+    }
+
+    @Test
+    void testOpaqueTokenIsCached() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            Optional<UserRecordIdentifier> identifier = sut.getUserIdentifier(new BearerAccessToken("opaque-token"));
+            assertEquals("opaque-user", identifier.get().getUserIdInRepo());
+        }
+        // invalid tokens are not cached
+        assertTrue(sut.getUserIdentifier(new BearerAccessToken("invalid-token")).isEmpty());
+        assertTrue(sut.getUserIdentifier(new BearerAccessToken("invalid-token")).isEmpty());
+
+        assertEquals(3, sut.userInfoRequests.get());
+        assertEquals(2, sut.getBearerTokenCacheStats().hitCount());
+        assertEquals(1, sut.getBearerTokenCacheSize());
+    }
+}
@@ -0,0 +1,93 @@
+package edu.harvard.iq.dataverse.batch.checkpoint;
+
+import java.util.Date;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchProgressTest {
+
+    @Test
+    public void testLastIdIsLowWaterMark() {
+        BatchProgress progress = new BatchProgress("test", "job", new Date());
+        assertNull(progress.getLastId("datasets"));
+
+        progress.started("datasets", 3);
+        progress.started("datasets", 7);
+        progress.started("datasets", 12);
+        assertEquals(2L, progress.getLastId("datasets"));
+        assertEquals(3, progress.getInProgress("datasets"));
+
+        // 7 and 12 finishing first must not move the resume point past 3
+        progress.done("datasets", 12);
+        progress.done("datasets", 7);
+        assertEquals(2L, progress.getLastId("datasets"));
+
+        progress.done("datasets", 3);
+        assertEquals(12L, progress.getLastId("datasets"));
+        assertEquals(0, progress.getInProgress("datasets"));
+
+        progress.started("datasets", 15);
+        assertEquals(14L, progress.getLastId("datasets"));
+
+        // the streams are independent
+        assertNull(progress.getLastId("dataverses"));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() {
+        Date runStart = new Date(1000L);
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setKind("test");
+        checkpoint.setJobKey("job");
+        checkpoint.setStartTime(runStart);
+        checkpoint.setLastIds(Map.of("dataverses", 10L, "datasets", 40L));
+        checkpoint.setCounters(Map.of("done", 13L, "failures", 1L));
+
+        BatchProgress progress = new BatchProgress(checkpoint);
+        assertEquals("job", progress.getJobKey());
+        assertEquals(runStart, progress.getRunStart());
+        assertEquals(40L, progress.getLastId("datasets"));
+
+        progress.started("datasets", 43);
+        progress.started("datasets", 46);
+        progress.increment("done");
+        progress.done("datasets", 43);
+        progress.add("skipped", 4);
+        assertEquals(1, progress.getCount("done"));
+        assertEquals(14, progress.getTotal("done"));
+
+        progress.updateCheckpoint(checkpoint);
+        assertEquals(10L, checkpoint.getLastId("dataverses"));
+        assertEquals(45L, checkpoint.getLastId("datasets"));
+        assertEquals(14, checkpoint.getCounter("done"));
+        assertEquals(4, checkpoint.getCounter("skipped"));
+        assertEquals(1, checkpoint.getCounter("failures"));
+    }
+
+    @Test
+    public void testCheckpointState() {
+        long interval = 60000;
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setOptions("skipIndexed");
+        checkpoint.setLastUpdateTime(new Date());
+        assertTrue(checkpoint.isInUse(interval));
+        assertEquals("running", checkpoint.getState(true, interval));
+        assertEquals("runningElsewhere", checkpoint.getState(false, interval));
+
+        // not updated for twice the interval: abandoned
+        checkpoint.setLastUpdateTime(new Date(System.currentTimeMillis() - 2 * interval));
+        assertFalse(checkpoint.isInUse(interval));
+        assertEquals("resumable", checkpoint.getState(false, interval));
+        assertTrue(checkpoint.isResumableWith("skipIndexed"));
+        assertFalse(checkpoint.isResumableWith(null));
+
+        checkpoint.setFinishTime(new Date());
+        assertEquals("finished", checkpoint.getState(true, interval));
+        assertFalse(checkpoint.isResumableWith("skipIndexed"));
+    }
+}
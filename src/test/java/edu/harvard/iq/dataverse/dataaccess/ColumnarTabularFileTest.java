@@ -0,0 +1,105 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ColumnarTabularFileTest {
+
+    private static final String TAB_DATA = "1\t\"Belle\"\t36.5\t1e3\n"
+            + "2\t\"Lola \\\"the cat\\\"\"\t\t-inf\n"
+            + "\t\"tab\\there\"\tNaN\t2\n"
+            + "-40\t\t-0.0\tx\n";
+
+    private static final int NUM_CASES = 4;
+    private static final int NUM_COLUMNS = 4;
+
+    @TempDir
+    Path tempDir;
+
+    private File createColumnarFile(String tabData, boolean withHeader) throws IOException {
+        File tabFile = tempDir.resolve("data.tab").toFile();
+        Files.writeString(tabFile.toPath(), tabData, StandardCharsets.UTF_8);
+        File columnarFile = tempDir.resolve("data.tab.columnar").toFile();
+        ColumnarTabularFile.create(tabFile, NUM_COLUMNS, NUM_CASES, withHeader, columnarFile);
+        return columnarFile;
+    }
+
+    @Test
+    public void testSubsetMatchesSubsetGenerator() throws IOException {
+        File columnarFile = createColumnarFile(TAB_DATA, false);
+        List<Integer> columns = List.of(3, 0, 2, 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ColumnarTabularFile columnar = ColumnarTabularFile.open(columnarFile.toPath())) {
+            assertEquals(NUM_COLUMNS, columnar.getNumColumns());
+            assertEquals(NUM_CASES, columnar.getNumCases());
+            assertNull(columnar.getHeaderNames());
+            columnar.subset(columns, out);
+        }
+
+        File expected = tempDir.resolve("expected.tab").toFile();
+        new TabularSubsetGenerator().subsetFile(tempDir.resolve("data.tab").toString(), expected.getAbsolutePath(), columns, (long) NUM_CASES);
+
+        assertEquals(Files.readString(expected.toPath(), StandardCharsets.UTF_8), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testHeaderAndEncodings() throws IOException {
+        File columnarFile = createColumnarFile("id\tname\tscore\tother\n" + TAB_DATA, true);
+
+        try (ColumnarTabularFile columnar = ColumnarTabularFile.open(columnarFile.toPath())) {
+            assertArrayEquals(new String[]{"id", "name", "score", "other"}, columnar.getHeaderNames());
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            columnar.subset(List.of(2, 0), out);
+            assertEquals("score\tid\n36.5\t1\n\t2\nNaN\t\n-0.0\t-40\n", out.toString(StandardCharsets.UTF_8));
+        }
+
+        // id is stored as longs, score as doubles, the others as raw tokens:
+        byte[] bytes = Files.readAllBytes(columnarFile.toPath());
+        int index = ColumnarTabularFile.FIXED_HEADER_LENGTH;
+        assertEquals(ColumnarTabularFile.ENCODING_LONG, bytes[index]);
+        assertEquals(ColumnarTabularFile.ENCODING_TOKENS, bytes[index + ColumnarTabularFile.INDEX_ENTRY_LENGTH]);
+        assertEquals(ColumnarTabularFile.ENCODING_DOUBLE, bytes[index + 2 * ColumnarTabularFile.INDEX_ENTRY_LENGTH]);
+        assertEquals(ColumnarTabularFile.ENCODING_TOKENS, bytes[index + 3 * ColumnarTabularFile.INDEX_ENTRY_LENGTH]);
+    }
+
+    @Test
+    public void testScanMatchesTabularColumnScanner() throws IOException {
+        File columnarFile = createColumnarFile(TAB_DATA, false);
+
+        TabularColumnScanner.StringColumnVector fromColumnar = new TabularColumnScanner.StringColumnVector(1, NUM_CASES);
+        TabularColumnScanner.DoubleColumnVector doublesFromColumnar = new TabularColumnScanner.DoubleColumnVector(2, NUM_CASES);
+        try (ColumnarTabularFile columnar = ColumnarTabularFile.open(columnarFile.toPath())) {
+            columnar.scan(List.of(fromColumnar, doublesFromColumnar));
+        }
+
+        TabularColumnScanner.StringColumnVector fromTab = new TabularColumnScanner.StringColumnVector(1, NUM_CASES);
+        TabularColumnScanner.DoubleColumnVector doublesFromTab = new TabularColumnScanner.DoubleColumnVector(2, NUM_CASES);
+        new TabularColumnScanner(NUM_CASES, false).scan(Files.newInputStream(tempDir.resolve("data.tab")), List.of(fromTab, doublesFromTab));
+
+        assertArrayEquals(fromTab.getValues(), fromColumnar.getValues());
+        assertArrayEquals(doublesFromTab.toBoxedArray(), doublesFromColumnar.toBoxedArray());
+        assertEquals("tab\there", fromColumnar.getValues()[2]);
+    }
+
+    @Test
+    public void testNotAColumnarFile() throws IOException {
+        Path notColumnar = tempDir.resolve("not.columnar");
+        Files.writeString(notColumnar, "this is not a columnar file, but it is long enough to have a header");
+        assertThrows(IOException.class, () -> ColumnarTabularFile.open(notColumnar));
+    }
+}
@@ -0,0 +1,180 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import edu.harvard.iq.dataverse.DataFile;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataFileZipperTest {
+
+    /**
+     * Serves the files from memory, taking a little while to open each one.
+     */
+    private static class StubZipper extends DataFileZipper {
+        final Map<Long, String> names = new HashMap<>();
+        final Map<Long, byte[]> contents = new HashMap<>();
+        final Map<Long, Boolean> closed = new ConcurrentHashMap<>();
+        final AtomicInteger opening = new AtomicInteger();
+        final AtomicInteger maxOpening = new AtomicInteger();
+
+        StubZipper(ByteArrayOutputStream out) {
+            super(out);
+        }
+
+        DataFile add(String name, byte[] content) {
+            DataFile dataFile = MocksFactory.makeDataFile();
+            names.put(dataFile.getId(), name);
+            contents.put(dataFile.getId(), content);
+            return dataFile;
+        }
+
+        @Override
+        OpenedFile openFile(DataFile dataFile, boolean getOriginal, int readAheadSize) throws IOException {
+            maxOpening.accumulateAndGet(opening.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                opening.decrementAndGet();
+            }
+            InputStream in = new ByteArrayInputStream(contents.get(dataFile.getId())) {
+                @Override
+                public void close() {
+                    closed.put(dataFile.getId(), true);
+                }
+            };
+            OpenedFile openedFile = new OpenedFile(dataFile, names.get(dataFile.getId()), null, in, null);
+            openedFile.readAhead(readAheadSize);
+            return openedFile;
+        }
+    }
+
+    private static Map<String, ZipEntry> readZip(byte[] zip, Map<String, byte[]> contents) throws IOException {
+        Map<String, ZipEntry> entries = new LinkedHashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new ByteArrayInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                entries.put(entry.getName(), entry);
+                contents.put(entry.getName(), in.readAllBytes());
+            }
+        }
+        return entries;
+    }
+
+    private static byte[] text(int size) {
+        return "a line of text\n".repeat(size / 15 + 1).substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testPrecompressedFilesAreNotDeflated() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StubZipper zipper = new StubZipper(out);
+        byte[] gzip = new byte[3000];
+        new Random(1).nextBytes(gzip);
+        byte[] zip = new byte[5000];
+        new Random(2).nextBytes(zip);
+        List<DataFile> files = new ArrayList<>();
+        files.add(zipper.add("small.csv", text(3000)));
+        files.add(zipper.add("small.gz", gzip));
+        files.add(zipper.add("large.zip", zip));
+        files.add(zipper.add("small.csv", text(100)));
+
+        zipper.prefetch(files, false, 2, 4096);
+        for (DataFile file : files) {
+            zipper.addFileToZipStream(file);
+        }
+        zipper.finalizeZipStream();
+
+        Map<String, byte[]> contents = new HashMap<>();
+        Map<String, ZipEntry> entries = readZip(out.toByteArray(), contents);
+        assertEquals(List.of("small.csv", "small.gz", "large.zip", "small_1.csv", "MANIFEST.TXT"), new ArrayList<>(entries.keySet()));
+        assertEquals(ZipEntry.DEFLATED, entries.get("small.csv").getMethod());
+        assertEquals(ZipEntry.STORED, entries.get("small.gz").getMethod());
+        // too large to be read ahead in full: deflated, with no compression
+        assertEquals(ZipEntry.DEFLATED, entries.get("large.zip").getMethod());
+        assertEquals(new String(text(3000), StandardCharsets.UTF_8), new String(contents.get("small.csv"), StandardCharsets.UTF_8));
+        assertArrayEquals(gzip, contents.get("small.gz"));
+        assertArrayEquals(zip, contents.get("large.zip"));
+        assertEquals(100, contents.get("small_1.csv").length);
+        assertTrue(new String(contents.get("MANIFEST.TXT"), StandardCharsets.UTF_8).contains("large.zip (application/octet-stream) 5000 bytes."));
+    }
+
+    @Test
+    public void testFilesAreOpenedAheadOfTime() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StubZipper zipper = new StubZipper(out);
+        List<DataFile> files = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            // file3 is only read ahead in part
+            files.add(zipper.add("file" + i + ".txt", text(i == 3 ? 2000 : 100 + i)));
+        }
+
+        zipper.prefetch(files, false, 4, 1024);
+        for (DataFile file : files) {
+            // file3 is left out, e.g. for being over the size limit
+            if (!file.equals(files.get(3))) {
+                zipper.addFileToZipStream(file);
+            }
+        }
+        zipper.finalizeZipStream();
+
+        assertTrue(zipper.maxOpening.get() > 1, "files should be opened at the same time");
+        assertTrue(zipper.maxOpening.get() <= 4);
+        Map<String, byte[]> contents = new HashMap<>();
+        Map<String, ZipEntry> entries = readZip(out.toByteArray(), contents);
+        assertEquals(12, entries.size());
+        assertFalse(entries.containsKey("file3.txt"));
+        assertEquals(109, contents.get("file9.txt").length);
+        // the file left out was closed nonetheless
+        assertTrue(zipper.closed.containsKey(files.get(3).getId()));
+    }
+
+    @Test
+    public void testIsPrecompressed() {
+        assertTrue(DataFileZipper.isPrecompressed("data.parquet", "application/octet-stream"));
+        assertTrue(DataFileZipper.isPrecompressed("photo", "image/jpeg"));
+        assertTrue(DataFileZipper.isPrecompressed("archive.ZIP", null));
+        assertTrue(DataFileZipper.isPrecompressed("x", "application/gzip; charset=binary"));
+        assertFalse(DataFileZipper.isPrecompressed("data.tab", "text/tab-separated-values"));
+        assertFalse(DataFileZipper.isPrecompressed("scan.tif", "image/tiff"));
+        assertFalse(DataFileZipper.isPrecompressed(null, null));
+    }
+
+    @Test
+    public void testUniqueZipEntryName() {
+        assertNull(DataFileZipper.getZipFolderName(null));
+        assertNull(DataFileZipper.getZipFolderName("//"));
+        assertEquals("foo/bar", DataFileZipper.getZipFolderName("///foo/bar"));
+
+        Set<String> names = new HashSet<>();
+        assertEquals("data.tab", DataFileZipper.getUniqueZipEntryName(null, "data.tab", names));
+        assertEquals("data_1.tab", DataFileZipper.getUniqueZipEntryName("/", "data.tab", names));
+        assertEquals("foo/bar/data.tab", DataFileZipper.getUniqueZipEntryName("///foo/bar", "data.tab", names));
+        assertEquals("foo/bar/data_1.tab", DataFileZipper.getUniqueZipEntryName("foo/bar", "data.tab", names));
+        assertEquals("README", DataFileZipper.getUniqueZipEntryName("", "README", names));
+        assertEquals("README_1", DataFileZipper.getUniqueZipEntryName(null, "README", names));
+    }
+}
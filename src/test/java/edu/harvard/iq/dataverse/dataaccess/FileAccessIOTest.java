@@ -291,6 +291,17 @@ public class FileAccessIOTest {
         assertEquals("This is a test string\n", sb.toString());
     }
     
+    @Test
+    public void testGetInputStreamRange() throws IOException {
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("/tmp/files/tmp/dataset/DataFile"))) {
+            bw.write("0123456789");
+        }
+        dataFileAccess.open(DataAccessOption.READ_ACCESS);
+        try (InputStream in = dataFileAccess.getInputStream(3, 4)) {
+            assertEquals("3456", new String(in.readAllBytes()));
+        }
+    }
+
     @Test
     public void testFileIdentifierFormats() throws IOException {
         System.setProperty("dataverse.files.filetest.type", "file");
@@ -0,0 +1,78 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TabularColumnScannerTest {
+
+    private static final String TAB_FILE_WITH_HEADER = "id\tname\tscore\tweight\n"
+            + "1\t\"Belle\"\t36.5\t1.25\n"
+            + "2\t\"Lola \\\"the cat\\\"\"\t\t-inf\n"
+            + "\t\"tab\\there\\\\t\"\tinf\tNaN\n"
+            + "4\t\t1e3\tx\n"
+            + "5\t\"\"\t-0.0\t3.4028235E38\n";
+
+    private static final int NUM_CASES = 5;
+
+    private static InputStream tabFile() {
+        return new ByteArrayInputStream(TAB_FILE_WITH_HEADER.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testScanMatchesSubsetVectors() throws IOException {
+        TabularColumnScanner.LongColumnVector ids = new TabularColumnScanner.LongColumnVector(0, NUM_CASES);
+        TabularColumnScanner.StringColumnVector names = new TabularColumnScanner.StringColumnVector(1, NUM_CASES);
+        TabularColumnScanner.DoubleColumnVector scores = new TabularColumnScanner.DoubleColumnVector(2, NUM_CASES);
+        TabularColumnScanner.FloatColumnVector weights = new TabularColumnScanner.FloatColumnVector(3, NUM_CASES);
+
+        new TabularColumnScanner(NUM_CASES, true).scan(tabFile(), List.of(ids, names, scores, weights));
+
+        assertArrayEquals(TabularSubsetGenerator.subsetLongVector(tabFile(), 0, NUM_CASES, true), ids.toBoxedArray());
+        assertArrayEquals(TabularSubsetGenerator.subsetStringVector(tabFile(), 1, NUM_CASES, true), names.getValues());
+        assertArrayEquals(TabularSubsetGenerator.subsetDoubleVector(tabFile(), 2, NUM_CASES, true), scores.toBoxedArray());
+        assertArrayEquals(TabularSubsetGenerator.subsetFloatVector(tabFile(), 3, NUM_CASES, true), weights.toBoxedArray());
+
+        assertEquals("Lola \"the cat\"", names.getValues()[1]);
+        assertEquals("tab\there\\t", names.getValues()[2]);
+        assertNull(names.getValues()[3]);
+        assertEquals("", names.getValues()[4]);
+        assertEquals(Arrays.asList(2), ids.getMissing().stream().boxed().toList());
+    }
+
+    @Test
+    public void testFrequencyCounter() throws IOException {
+        TabularColumnScanner.FrequencyCounter numeric = new TabularColumnScanner.FrequencyCounter(0, true);
+        TabularColumnScanner.FrequencyCounter character = new TabularColumnScanner.FrequencyCounter(1, false);
+        String tab = "1\ta\n2\tb\n1\ta\n\ta\n";
+
+        new TabularColumnScanner(4, false).scan(new ByteArrayInputStream(tab.getBytes(StandardCharsets.UTF_8)), List.of(numeric, character));
+
+        Map<Object, Double> numericFrequencies = numeric.getFrequencies();
+        assertEquals(2, numericFrequencies.size());
+        assertEquals(2D, numericFrequencies.get(1F));
+        assertEquals(1D, numericFrequencies.get(2F));
+        assertEquals(3D, character.getFrequencies().get("a"));
+        assertEquals(1D, character.getFrequencies().get("b"));
+    }
+
+    @Test
+    public void testWrongNumberOfCases() {
+        TabularColumnScanner.LongColumnVector ids = new TabularColumnScanner.LongColumnVector(0, NUM_CASES + 1);
+        assertThrows(IOException.class, () -> new TabularColumnScanner(NUM_CASES + 1, true).scan(tabFile(), List.of(ids)));
+
+        TabularColumnScanner.LongColumnVector fewer = new TabularColumnScanner.LongColumnVector(0, NUM_CASES - 1);
+        assertThrows(IOException.class, () -> new TabularColumnScanner(NUM_CASES - 1, true).scan(tabFile(), List.of(fewer)));
+    }
+}
@@ -0,0 +1,147 @@
+package edu.harvard.iq.dataverse.dataaccess;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ZipBundleTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ZipBundle.Entry entry(String name, byte[] content, Long crc) {
+        return new ZipBundle.Entry(name, name, content.length, crc,
+                offset -> new ByteArrayInputStream(content, (int) offset, content.length - (int) offset));
+    }
+
+    private static Map<String, byte[]> contents() {
+        Random random = new Random(1);
+        Map<String, byte[]> contents = new HashMap<>();
+        byte[] random1 = new byte[100_000];
+        random.nextBytes(random1);
+        contents.put("data/random.bin", random1);
+        contents.put("empty.txt", new byte[0]);
+        contents.put("résumé.txt", "bonjour\n".getBytes(StandardCharsets.UTF_8));
+        byte[] random2 = new byte[70_000];
+        random.nextBytes(random2);
+        contents.put("data/more/random2.bin", random2);
+        return contents;
+    }
+
+    private static ZipBundle bundle(Map<String, byte[]> contents, Map<Object, Long> crcs) {
+        List<ZipBundle.Entry> entries = new ArrayList<>();
+        for (String name : List.of("data/random.bin", "empty.txt", "résumé.txt", "data/more/random2.bin")) {
+            entries.add(entry(name, contents.get(name), crcs.get(name)));
+        }
+        ZipBundle bundle = new ZipBundle(entries, Instant.parse("2024-05-01T12:30:00Z"));
+        bundle.setCrcListener((entry, crc) -> crcs.put(entry.getKey(), crc));
+        return bundle;
+    }
+
+    private static byte[] write(ZipBundle bundle, long start, long end) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bundle.write(out, start, end);
+        return out.toByteArray();
+    }
+
+    private Map<String, byte[]> unzip(byte[] zip) throws IOException {
+        Path file = tempDir.resolve("bundle.zip");
+        Files.write(file, zip);
+        Map<String, byte[]> contents = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(file.toFile())) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    byte[] content = in.readAllBytes();
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    assertEquals(crc.getValue(), entry.getCrc(), entry.getName());
+                    contents.put(entry.getName(), content);
+                }
+            }
+        }
+        return contents;
+    }
+
+    @Test
+    public void testBundleIsAZipFile() throws IOException {
+        Map<String, byte[]> contents = contents();
+        Map<Object, Long> crcs = new HashMap<>();
+        ZipBundle bundle = bundle(contents, crcs);
+        assertFalse(bundle.hasAllCrcs());
+
+        byte[] zip = write(bundle, 0, bundle.getSize());
+
+        assertTrue(bundle.hasAllCrcs());
+        assertEquals(bundle.getSize(), zip.length);
+        Map<String, byte[]> unzipped = unzip(zip);
+        assertEquals(contents.keySet(), unzipped.keySet());
+        for (String name : contents.keySet()) {
+            assertArrayEquals(contents.get(name), unzipped.get(name), name);
+        }
+        // the CRCs were worked out along the way, and make the same bundle
+        assertEquals(4, crcs.size());
+        assertTrue(bundle(contents, crcs).hasAllCrcs());
+        assertArrayEquals(zip, write(bundle(contents, crcs), 0, bundle.getSize()));
+        assertEquals(bundle.getEtag(), bundle(contents, crcs).getEtag());
+
+        contents.put("empty.txt", new byte[1]);
+        assertNotEquals(bundle.getEtag(), bundle(contents, crcs).getEtag());
+    }
+
+    @Test
+    public void testRangesMakeUpTheBundle() throws IOException {
+        Map<String, byte[]> contents = contents();
+        byte[] zip = write(bundle(contents, new HashMap<>()), 0, bundle(contents, new HashMap<>()).getSize());
+
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            // every range is written by a new bundle, with no CRC known
+            ZipBundle bundle = bundle(contents, new HashMap<>());
+            long start = random.nextInt(zip.length);
+            long end = start + random.nextInt((int) (zip.length - start) + 1);
+            byte[] range = write(bundle, start, end);
+            assertArrayEquals(Arrays.copyOfRange(zip, (int) start, (int) end), range, start + "-" + end);
+        }
+        assertThrows(IllegalArgumentException.class, () -> write(bundle(contents, new HashMap<>()), 0, zip.length + 1));
+    }
+
+    @Test
+    public void testZip64WithManyFiles() throws IOException {
+        List<ZipBundle.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 70_000; i++) {
+            entries.add(entry("f" + i, new byte[] {(byte) i}, null));
+        }
+        ZipBundle bundle = new ZipBundle(entries, Instant.parse("2024-05-01T12:30:00Z"));
+
+        Map<String, byte[]> unzipped = unzip(write(bundle, 0, bundle.getSize()));
+
+        assertEquals(70_000, unzipped.size());
+        assertArrayEquals(new byte[] {(byte) 69_999}, unzipped.get("f69999"));
+    }
+}
@@ -0,0 +1,181 @@
+package edu.harvard.iq.dataverse.engine.command.impl;
+
+import edu.harvard.iq.dataverse.DatasetServiceBean;
+import edu.harvard.iq.dataverse.DatasetVersionServiceBean;
+import edu.harvard.iq.dataverse.Dataverse;
+import edu.harvard.iq.dataverse.DvObjectServiceBean;
+import edu.harvard.iq.dataverse.GuestbookResponseServiceBean;
+import edu.harvard.iq.dataverse.PermissionCache;
+import edu.harvard.iq.dataverse.RoleAssigneeServiceBean;
+import edu.harvard.iq.dataverse.RoleAssignment;
+import edu.harvard.iq.dataverse.UserNotificationServiceBean;
+import edu.harvard.iq.dataverse.actionlogging.ActionLogServiceBean;
+import edu.harvard.iq.dataverse.authorization.AuthenticationServiceBean;
+import edu.harvard.iq.dataverse.authorization.Permission;
+import edu.harvard.iq.dataverse.authorization.providers.builtin.BuiltinUserServiceBean;
+import edu.harvard.iq.dataverse.authorization.users.AuthenticatedUser;
+import edu.harvard.iq.dataverse.confirmemail.ConfirmEmailServiceBean;
+import edu.harvard.iq.dataverse.engine.TestCommandContext;
+import edu.harvard.iq.dataverse.engine.TestDataverseEngine;
+import edu.harvard.iq.dataverse.engine.command.exception.CommandException;
+import edu.harvard.iq.dataverse.mocks.MocksFactory;
+import edu.harvard.iq.dataverse.search.IndexServiceBean;
+import edu.harvard.iq.dataverse.search.SolrIndexServiceBean;
+import edu.harvard.iq.dataverse.search.savedsearch.SavedSearchServiceBean;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class MergeInAccountCommandTest {
+
+    AuthenticatedUser consumed;
+    AuthenticatedUser ongoing;
+    RoleAssignment assignment;
+    EntityManager em;
+    TestCommandContext testCommandContext;
+
+    @BeforeEach
+    public void setUp() {
+        consumed = MocksFactory.makeAuthenticatedUser("Consumed", "User");
+        ongoing = MocksFactory.makeAuthenticatedUser("Ongoing", "User");
+        Dataverse dv = MocksFactory.makeDataverse();
+        assignment = new RoleAssignment(MocksFactory.makeRole("curator"), consumed, dv, null);
+
+        RoleAssigneeServiceBean roleAssignees = Mockito.mock(RoleAssigneeServiceBean.class);
+        Mockito.when(roleAssignees.getAssignmentsFor(consumed.getIdentifier())).thenReturn(List.of(assignment));
+
+        em = Mockito.mock(EntityManager.class);
+        TypedQuery<?> namedQuery = Mockito.mock(TypedQuery.class, Mockito.RETURNS_SELF);
+        Mockito.doReturn(namedQuery).when(em).createNamedQuery(anyString(), any());
+        Mockito.when(em.createNativeQuery(anyString())).thenReturn(Mockito.mock(Query.class));
+
+        // the other services have nothing of the consumed account to move
+        testCommandContext = new TestCommandContext() {
+            final DatasetServiceBean datasets = Mockito.mock(DatasetServiceBean.class);
+            final DatasetVersionServiceBean datasetVersion = Mockito.mock(DatasetVersionServiceBean.class);
+            final DvObjectServiceBean dvObjects = Mockito.mock(DvObjectServiceBean.class);
+            final GuestbookResponseServiceBean responses = Mockito.mock(GuestbookResponseServiceBean.class);
+            final UserNotificationServiceBean notifications = Mockito.mock(UserNotificationServiceBean.class);
+            final SavedSearchServiceBean savedSearches = Mockito.mock(SavedSearchServiceBean.class);
+            final AuthenticationServiceBean authentication = Mockito.mock(AuthenticationServiceBean.class);
+            final ConfirmEmailServiceBean confirmEmail = Mockito.mock(ConfirmEmailServiceBean.class);
+            final ActionLogServiceBean actionLog = Mockito.mock(ActionLogServiceBean.class);
+            final BuiltinUserServiceBean builtinUsers = Mockito.mock(BuiltinUserServiceBean.class);
+            final SolrIndexServiceBean solrIndex = Mockito.mock(SolrIndexServiceBean.class);
+            final IndexServiceBean index = Mockito.mock(IndexServiceBean.class);
+
+            @Override
+            public RoleAssigneeServiceBean roleAssignees() {
+                return roleAssignees;
+            }
+
+            @Override
+            public EntityManager em() {
+                return em;
+            }
+
+            @Override
+            public DatasetServiceBean datasets() {
+                return datasets;
+            }
+
+            @Override
+            public DatasetVersionServiceBean datasetVersion() {
+                return datasetVersion;
+            }
+
+            @Override
+            public DvObjectServiceBean dvObjects() {
+                return dvObjects;
+            }
+
+            @Override
+            public GuestbookResponseServiceBean responses() {
+                return responses;
+            }
+
+            @Override
+            public UserNotificationServiceBean notifications() {
+                return notifications;
+            }
+
+            @Override
+            public SavedSearchServiceBean savedSearches() {
+                return savedSearches;
+            }
+
+            @Override
+            public AuthenticationServiceBean authentication() {
+                return authentication;
+            }
+
+            @Override
+            public ConfirmEmailServiceBean confirmEmail() {
+                return confirmEmail;
+            }
+
+            @Override
+            public ActionLogServiceBean actionLog() {
+                return actionLog;
+            }
+
+            @Override
+            public BuiltinUserServiceBean builtinUsers() {
+                return builtinUsers;
+            }
+
+            @Override
+            public SolrIndexServiceBean solrIndex() {
+                return solrIndex;
+            }
+
+            @Override
+            public IndexServiceBean index() {
+                return index;
+            }
+        };
+    }
+
+    @Test
+    public void testMergeDiscardsTheCachedPermissions() throws CommandException {
+        PermissionCache shared = new PermissionCache(60000, null);
+        AtomicInteger loads = new AtomicInteger();
+        shared.permissions(ongoing.getIdentifier(), 1L, () -> {
+            loads.incrementAndGet();
+            return EnumSet.noneOf(Permission.class);
+        });
+        shared.searchGroupFilter(ongoing.getIdentifier() + "|", () -> {
+            loads.incrementAndGet();
+            return "";
+        });
+
+        new TestDataverseEngine(testCommandContext).submit(new MergeInAccountCommand(MocksFactory.makeRequest(), consumed, ongoing));
+
+        assertEquals(ongoing.getIdentifier(), assignment.getAssigneeIdentifier());
+        Mockito.verify(em).merge(assignment);
+
+        // the account now has the role of the consumed one on the collection...
+        Set<Permission> permissions = shared.permissions(ongoing.getIdentifier(), 1L, () -> {
+            loads.incrementAndGet();
+            return EnumSet.of(Permission.EditDataset);
+        });
+        assertEquals(EnumSet.of(Permission.EditDataset), permissions);
+        // ...and may be in its groups, which the search filter must reflect
+        assertEquals(" OR group_1", shared.searchGroupFilter(ongoing.getIdentifier() + "|", () -> {
+            loads.incrementAndGet();
+            return " OR group_1";
+        }));
+        assertEquals(4, loads.get());
+    }
+}
@@ -0,0 +1,60 @@
+package edu.harvard.iq.dataverse.export;
+
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import java.util.Date;
+import java.util.Map;
+import jakarta.json.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExportAllProgressTest {
+
+    @Test
+    public void testResumeKeepsRunStartAndKind() {
+        Date runStart = new Date(1000L);
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setKind(ExportAllProgress.KIND);
+        checkpoint.setJobKey(ExportAllProgress.jobKey(true));
+        checkpoint.setStartTime(runStart);
+        checkpoint.setLastIds(Map.of(ExportAllProgress.DATASETS, 40L));
+        checkpoint.setCounters(Map.of(ExportAllProgress.DATASETS_EXPORTED, 13L, ExportAllProgress.DATASETS_UP_TO_DATE, 5L,
+                ExportAllProgress.FORMATS_UP_TO_DATE, 3L, ExportAllProgress.FAILURES, 1L));
+
+        ExportAllProgress progress = new ExportAllProgress(checkpoint);
+        assertTrue(progress.isForceReExport());
+        // datasets exported since the original run started are not exported again
+        assertEquals(runStart, progress.getRunStart());
+
+        progress.setDatasetsToCheck(10);
+        progress.started(ExportAllProgress.DATASETS, 43);
+        progress.started(ExportAllProgress.DATASETS, 46);
+        progress.datasetExported(4);
+        progress.done(ExportAllProgress.DATASETS, 43);
+
+        JsonObject json = progress.toJson().build();
+        assertEquals(29, json.getInt("datasetsToCheck"));
+        assertEquals(14, json.getInt("datasetsExported"));
+        assertEquals(7, json.getInt("formatsUpToDate"));
+        assertEquals(1, json.getInt("datasetsInProgress"));
+        assertEquals(45, json.getInt("lastDatasetId"));
+    }
+
+    @Test
+    public void testDatasetExportedCounts() {
+        ExportAllProgress progress = new ExportAllProgress(false, new Date());
+        assertFalse(progress.isForceReExport());
+        assertEquals(ExportAllProgress.jobKey(false), progress.getJobKey());
+
+        progress.datasetExported(2);
+        progress.datasetExported(null);
+        progress.datasetFailed();
+
+        assertEquals(1, progress.getCount(ExportAllProgress.DATASETS_EXPORTED));
+        assertEquals(1, progress.getCount(ExportAllProgress.DATASETS_UP_TO_DATE));
+        assertEquals(2, progress.getCount(ExportAllProgress.FORMATS_UP_TO_DATE));
+        assertEquals(1, progress.getCount(ExportAllProgress.FAILURES));
+    }
+}
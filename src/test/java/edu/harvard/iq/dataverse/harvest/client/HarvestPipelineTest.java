@@ -0,0 +1,233 @@
+package edu.harvard.iq.dataverse.harvest.client;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the pipeline against a stub OAI server, answering GetRecord after a
+ * short delay.
+ */
+public class HarvestPipelineTest {
+
+    private HttpServer server;
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final List<Long> requestTimes = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/oai", exchange -> {
+            requestTimes.add(System.nanoTime());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                // (the client may send its next request as soon as it has the response)
+                inFlight.decrementAndGet();
+                String identifier = exchange.getRequestURI().getQuery().replaceFirst(".*identifier=", "");
+                byte[] body = ("<record>" + identifier + "</record>").getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(identifier.startsWith("missing") ? 404 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                inFlight.decrementAndGet();
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    private class StubStages implements HarvestPipeline.Stages<String, String> {
+        final List<String> processed = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+
+        @Override
+        public boolean isFetchNeeded(String identifier) {
+            return !identifier.startsWith("deleted");
+        }
+
+        @Override
+        public String fetch(String identifier) throws Exception {
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getAddress().getPort()
+                    + "/oai?verb=GetRecord&identifier=" + identifier)).build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("GetRecord failed for " + identifier);
+            }
+            return response.body();
+        }
+
+        @Override
+        public void process(String identifier, String record, Exception fetchFailure) throws StopHarvestException {
+            if (fetchFailure != null) {
+                failed.add(identifier);
+            } else {
+                processed.add(record == null ? identifier : record);
+            }
+        }
+    }
+
+    private static List<String> identifiers(int count) {
+        return IntStream.range(0, count).mapToObj(i -> "doi:10.5072/FK2/" + i).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testRecordsAreFetchedConcurrentlyAndProcessedInOrder() throws Exception {
+        List<String> identifiers = new ArrayList<>(identifiers(40));
+        identifiers.add(5, "deleted:1");
+        identifiers.add(10, "missing:1");
+        StubStages stages = new StubStages();
+
+        try (HarvestPipeline<String, String> pipeline = new HarvestPipeline<>(4, 0)) {
+            pipeline.run(identifiers.iterator(), stages);
+
+            assertEquals(42, pipeline.getListedCount());
+            assertEquals(40, pipeline.getFetchedCount());
+            assertEquals(1, pipeline.getFetchFailedCount());
+            assertEquals(42, pipeline.getProcessedCount());
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (String identifier : identifiers) {
+            if (identifier.startsWith("deleted")) {
+                expected.add(identifier);
+            } else if (!identifier.startsWith("missing")) {
+                expected.add("<record>" + identifier + "</record>");
+            }
+        }
+        assertEquals(expected, stages.processed);
+        assertEquals(List.of("missing:1"), stages.failed);
+        assertTrue(maxInFlight.get() > 1, "records should be fetched concurrently");
+        assertTrue(maxInFlight.get() <= 4, "no more than 4 records should be fetched at the same time");
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        try (HarvestPipeline<String, String> pipeline = new HarvestPipeline<>(4, 20)) {
+            pipeline.run(identifiers(11).iterator(), new StubStages());
+        }
+        // 11 requests at 20 per second are spread over at least 0.5 seconds
+        List<Long> times = new ArrayList<>(requestTimes);
+        Collections.sort(times);
+        assertEquals(11, times.size());
+        assertTrue(times.get(10) - times.get(0) >= 450_000_000L, "requests should be spaced out");
+    }
+
+    @Test
+    public void testStopHarvest() throws Exception {
+        StubStages stages = new StubStages() {
+            @Override
+            public void checkIfStopping() throws StopHarvestException {
+                if (processed.size() == 3) {
+                    throw new StopHarvestException("stopped");
+                }
+            }
+        };
+        try (HarvestPipeline<String, String> pipeline = new HarvestPipeline<>(2, 0)) {
+            assertThrows(StopHarvestException.class, () -> pipeline.run(identifiers(100).iterator(), stages));
+            assertEquals(3, pipeline.getProcessedCount());
+            assertTrue(pipeline.getListedCount() < 100);
+        }
+    }
+
+    @Test
+    public void testRecordsNotProcessedAreDiscarded() throws Exception {
+        List<String> discarded = Collections.synchronizedList(new ArrayList<>());
+        StubStages stages = new StubStages() {
+            @Override
+            public String fetch(String identifier) {
+                return "<record>" + identifier + "</record>";
+            }
+
+            @Override
+            public void checkIfStopping() throws StopHarvestException {
+                if (processed.size() == 3) {
+                    // (for the next records to be fetched, and waiting)
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new StopHarvestException("stopped");
+                }
+            }
+
+            @Override
+            public void discard(String identifier, String record) {
+                discarded.add(record);
+            }
+        };
+        HarvestPipeline<String, String> pipeline = new HarvestPipeline<>(4, 0);
+        try (pipeline) {
+            assertThrows(StopHarvestException.class, () -> pipeline.run(identifiers(100).iterator(), stages));
+        }
+
+        // each record fetched is either processed or discarded, once (the
+        // listing thread may still be letting go of the last one it listed)
+        for (int i = 0; i < 100 && pipeline.getFetchedCount() > stages.processed.size() + discarded.size(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(discarded.size() > 0);
+        assertEquals(pipeline.getFetchedCount(), stages.processed.size() + discarded.size());
+        assertEquals(0, discarded.stream().filter(stages.processed::contains).count());
+        assertEquals(discarded.size(), discarded.stream().distinct().count());
+    }
+
+    @Test
+    public void testListingFailure() throws Exception {
+        Iterator<String> failing = new Iterator<>() {
+            int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (next == 5) {
+                    throw new IllegalStateException("ListIdentifiers failed");
+                }
+                return true;
+            }
+
+            @Override
+            public String next() {
+                return "doi:10.5072/FK2/" + next++;
+            }
+        };
+        StubStages stages = new StubStages();
+        try (HarvestPipeline<String, String> pipeline = new HarvestPipeline<>(2, 0)) {
+            assertThrows(HarvestPipeline.HarvestListingException.class, () -> pipeline.run(failing, stages));
+        }
+        // what was listed before the failure is still harvested
+        assertEquals(5, stages.processed.size());
+    }
+}
@@ -0,0 +1,79 @@
+package edu.harvard.iq.dataverse.harvest.server.xoai;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MetadataPrefetcherTest {
+
+    private static MetadataPrefetcher.ExportReader export(String content) {
+        return () -> new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4})
+    public void testContentsComeInOrder(int threads) throws Exception {
+        try (MetadataPrefetcher prefetcher = new MetadataPrefetcher(threads)) {
+            List<MetadataPrefetcher.ExportReader> readers = Arrays.asList(
+                    export("<a/>"),
+                    null,
+                    () -> null,
+                    () -> { throw new FileNotFoundException("export_oai_dc.cached"); },
+                    export("<e/>"));
+
+            List<Future<byte[]>> contents = prefetcher.prefetch(readers);
+
+            assertEquals(5, contents.size());
+            assertArrayEquals("<a/>".getBytes(StandardCharsets.UTF_8), contents.get(0).get());
+            assertNull(contents.get(1).get());
+            assertNull(contents.get(2).get());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> contents.get(3).get());
+            assertInstanceOf(FileNotFoundException.class, e.getCause());
+            assertArrayEquals("<e/>".getBytes(StandardCharsets.UTF_8), contents.get(4).get());
+        }
+    }
+
+    @Test
+    public void testExportsAreReadInParallel() throws Exception {
+        int threads = 3;
+        CountDownLatch allReading = new CountDownLatch(threads);
+        List<MetadataPrefetcher.ExportReader> readers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            readers.add(() -> {
+                allReading.countDown();
+                // only returns once every export is being read at the same time
+                try {
+                    if (!allReading.await(5, TimeUnit.SECONDS)) {
+                        throw new FileNotFoundException("timed out");
+                    }
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return new ByteArrayInputStream(new byte[0]);
+            });
+        }
+
+        try (MetadataPrefetcher prefetcher = new MetadataPrefetcher(threads)) {
+            for (Future<byte[]> content : prefetcher.prefetch(readers)) {
+                assertEquals(0, content.get(10, TimeUnit.SECONDS).length);
+            }
+        }
+    }
+}
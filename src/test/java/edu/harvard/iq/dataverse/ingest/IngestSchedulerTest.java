@@ -0,0 +1,188 @@
+package edu.harvard.iq.dataverse.ingest;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IngestSchedulerTest {
+
+    private static final long SMALL = 1000;
+    private static final long BIG = 1000000;
+
+    /**
+     * Instead of ingesting the files, records in which order they were
+     * started, and waits for the latch of the file, if any.
+     */
+    private class TestScheduler extends IngestScheduler {
+        @Override
+        FileTask describe(Long fileId) {
+            return new FileTask(fileId, fileId >= 1000 ? BIG : SMALL, "text/csv");
+        }
+
+        @Override
+        String ingestFile(Long fileId, Long datasetId) {
+            int running = runningByDataset.computeIfAbsent(datasetId, id -> new AtomicInteger()).incrementAndGet();
+            maxRunningInADataset.accumulateAndGet(running, Math::max);
+            started.add(fileId);
+            try {
+                CountDownLatch latch = latches.get(fileId);
+                if (latch != null) {
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                runningByDataset.get(datasetId).decrementAndGet();
+            }
+            return failing.contains(fileId) ? "file" + fileId : null;
+        }
+    }
+
+    private TestScheduler scheduler;
+    private final List<Long> started = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Long, CountDownLatch> latches = new ConcurrentHashMap<>();
+    private final Set<Long> failing = ConcurrentHashMap.newKeySet();
+    private final Map<Long, AtomicInteger> runningByDataset = new ConcurrentHashMap<>();
+    private final AtomicInteger maxRunningInADataset = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        scheduler = new TestScheduler();
+        scheduler.configure(2, 1, SMALL);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        latches.values().forEach(CountDownLatch::countDown);
+        scheduler.shutdown();
+    }
+
+    private static IngestMessage message(long datasetId, long... fileIds) {
+        IngestMessage ingestMessage = new IngestMessage(1L);
+        ingestMessage.setDatasetId(datasetId);
+        for (long fileId : fileIds) {
+            ingestMessage.addFileId(fileId);
+        }
+        return ingestMessage;
+    }
+
+    @Test
+    public void testFilesOfADatasetAreIngestedInOrder() {
+        IngestScheduler.Result result = scheduler.ingest(message(1, 1, 2, 1001, 1002, 1003)).join();
+
+        assertEquals(List.of(1L, 2L, 1001L, 1002L, 1003L), started);
+        assertEquals(1, maxRunningInADataset.get());
+        assertFalse(result.isIngestWithErrors());
+        assertFalse(scheduler.isIngestInProgress(1L));
+    }
+
+    @Test
+    public void testDatasetsAreIngestedAtTheSameTime() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        latches.put(1001L, blocked);
+
+        CompletableFuture<IngestScheduler.Result> first = scheduler.ingest(message(1, 1001, 1002));
+        IngestScheduler.Result second = scheduler.ingest(message(2, 2001, 2002)).get(10, TimeUnit.SECONDS);
+
+        assertFalse(first.isDone());
+        assertFalse(second.isIngestWithErrors());
+        assertTrue(scheduler.isIngestInProgress(1L));
+        blocked.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertFalse(scheduler.isIngestInProgress(1L));
+    }
+
+    @Test
+    public void testSmallFilesAreNotStuckBehindBigOnes() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        latches.put(1001L, blocked);
+        latches.put(2001L, blocked);
+
+        // both regular workers are busy...
+        CompletableFuture<IngestScheduler.Result> first = scheduler.ingest(message(1, 1001));
+        CompletableFuture<IngestScheduler.Result> second = scheduler.ingest(message(2, 2001));
+        // ... but a small file is ingested in the fast lane, right away
+        scheduler.ingest(message(3, 3)).get(10, TimeUnit.SECONDS);
+
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+        blocked.countDown();
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+        @SuppressWarnings("unchecked")
+        Map<String, Object> fastLaneStats = (Map<String, Object>) scheduler.getStats().get("fastLane");
+        assertEquals(1L, fastLaneStats.get("started"));
+    }
+
+    @Test
+    public void testMessagesForTheSameDatasetAreIngestedOneAfterAnother() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        latches.put(1001L, blocked);
+
+        CompletableFuture<IngestScheduler.Result> first = scheduler.ingest(message(1, 1001));
+        CompletableFuture<IngestScheduler.Result> second = scheduler.ingest(message(1, 1002));
+        Thread.sleep(100);
+
+        assertEquals(List.of(1001L), started);
+        blocked.countDown();
+        CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+        assertEquals(List.of(1001L, 1002L), started);
+        assertEquals(1, maxRunningInADataset.get());
+    }
+
+    @Test
+    public void testShutdownFailsTheJobsNotDone() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        latches.put(1001L, blocked);
+        latches.put(2001L, blocked);
+
+        // both regular workers are busy...
+        List<CompletableFuture<IngestScheduler.Result>> jobs = new ArrayList<>();
+        jobs.add(scheduler.ingest(message(1, 1001, 1002)));
+        jobs.add(scheduler.ingest(message(2, 2001)));
+        // ... so these wait, for a worker or for the job before them
+        jobs.add(scheduler.ingest(message(3, 3001)));
+        jobs.add(scheduler.ingest(message(1, 1003)));
+        while (started.size() < 2) {
+            Thread.sleep(10);
+        }
+
+        scheduler.shutdown();
+
+        for (CompletableFuture<IngestScheduler.Result> job : jobs) {
+            assertThrows(ExecutionException.class, () -> job.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(Set.of(1001L, 2001L), Set.copyOf(started));
+        assertFalse(scheduler.isIngestInProgress(1L));
+    }
+
+    @Test
+    public void testFailuresAreReported() {
+        failing.add(2L);
+
+        IngestScheduler.Result result = scheduler.ingest(message(1, 1, 2, 3)).join();
+
+        assertEquals(List.of("file2"), result.getFailedFiles());
+        @SuppressWarnings("unchecked")
+        Map<String, Map<String, Object>> formats = (Map<String, Map<String, Object>>) scheduler.getStats().get("formats");
+        assertEquals(3L, formats.get("text/csv").get("files"));
+        assertEquals(1L, formats.get("text/csv").get("failures"));
+        assertEquals(3 * SMALL, formats.get("text/csv").get("bytes"));
+    }
+}
@@ -6,6 +6,7 @@
 package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.csv;
 
 import edu.harvard.iq.dataverse.DataTable;
+import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.dataaccess.TabularSubsetGenerator;
 import edu.harvard.iq.dataverse.datavariable.DataVariable.VariableInterval;
 import edu.harvard.iq.dataverse.datavariable.DataVariable.VariableType;
@@ -18,6 +19,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.logging.Logger;
 import org.dataverse.unf.UNFUtil;
@@ -393,6 +395,42 @@ public class CSVFileReaderTest {
 
     }
 
+    /**
+     * The variables are typed the same, and the same tab file is produced,
+     * when the values are examined in parallel, in (here, tiny) batches of
+     * records.
+     */
+    @Test
+    public void testReadInParallel() throws IOException {
+        String testFile = "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/csv/IngestCSV.csv";
+        CSVFileReader sequential = new CSVFileReader(new CSVFileReaderSpi(), ',');
+        sequential.setNumThreads(1);
+        CSVFileReader parallel = new CSVFileReader(new CSVFileReaderSpi(), ',');
+        parallel.setNumThreads(3);
+        // (2 records at a time)
+        parallel.maxBatchCells = 20;
+
+        TabularDataIngest expected;
+        TabularDataIngest result;
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+            expected = sequential.read(stream, true, null);
+        }
+        try (BufferedInputStream stream = new BufferedInputStream(new FileInputStream(testFile))) {
+            result = parallel.read(stream, true, null);
+        }
+
+        assertEquals(expected.getDataTable().getCaseQuantity(), result.getDataTable().getCaseQuantity());
+        for (int i = 0; i < expected.getDataTable().getDataVariables().size(); i++) {
+            DataVariable expectedVariable = expected.getDataTable().getDataVariables().get(i);
+            DataVariable variable = result.getDataTable().getDataVariables().get(i);
+            assertEquals(expectedVariable.getType(), variable.getType(), "variable " + i + ":");
+            assertEquals(expectedVariable.getInterval(), variable.getInterval(), "variable " + i + ":");
+            assertEquals(expectedVariable.getFormatCategory(), variable.getFormatCategory(), "variable " + i + ":");
+            assertEquals(expectedVariable.getFormat(), variable.getFormat(), "variable " + i + ":");
+        }
+        assertEquals(Files.readAllLines(expected.getTabDelimitedFile().toPath()), Files.readAllLines(result.getTabDelimitedFile().toPath()));
+    }
+
     /**
      * Tests CSVFileReader with a CSV with one more column than header. Tests
      * CSVFileReader with a null CSV.
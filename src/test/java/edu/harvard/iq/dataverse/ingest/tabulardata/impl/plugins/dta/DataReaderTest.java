@@ -4,6 +4,8 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -47,4 +49,43 @@ public class DataReaderTest {
         reader.setLSF(true);
         assertThrows(IOException.class, () -> reader.readULong());
     }
+
+    @Test
+    public void testReadBigEndian() throws IOException {
+        byte[] bytes = ByteBuffer.allocate(14).putShort((short) -2).putInt(123456).putDouble(0.1).array();
+        BufferedInputStream stream = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        DataReader reader = new DataReader(stream);
+        reader.setLSF(false);
+        assertEquals(-2, reader.readShort());
+        assertEquals(123456, reader.readInt());
+        assertEquals(0.1, reader.readDouble());
+        assertEquals(14, reader.getByteOffset());
+    }
+
+    @Test
+    public void testReadAcrossTheBuffer() throws IOException {
+        // a byte, then doubles: every 8th of which straddles the end of the buffer
+        ByteBuffer bytes = ByteBuffer.allocate(1 + 100 * 8 + 8).order(ByteOrder.LITTLE_ENDIAN).put((byte) 1);
+        for (int i = 0; i < 100; i++) {
+            bytes.putDouble(i / 3.0);
+        }
+        bytes.put("abc\0\0\0\0\0".getBytes(StandardCharsets.US_ASCII));
+        BufferedInputStream stream = new BufferedInputStream(new ByteArrayInputStream(bytes.array()));
+        DataReader reader = new DataReader(stream, 64);
+        reader.setLSF(true);
+        assertEquals(1, reader.readByte());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i / 3.0, reader.readDouble());
+        }
+        assertEquals("abc", reader.readString(8));
+        assertEquals(1 + 100 * 8 + 8, reader.getByteOffset());
+        assertThrows(IOException.class, () -> reader.readInt());
+    }
+
+    @Test
+    public void testReadWithoutByteOrder() throws IOException {
+        BufferedInputStream stream = new BufferedInputStream(new ByteArrayInputStream(new byte[8]));
+        DataReader reader = new DataReader(stream);
+        assertThrows(IOException.class, () -> reader.readDouble());
+    }
 }
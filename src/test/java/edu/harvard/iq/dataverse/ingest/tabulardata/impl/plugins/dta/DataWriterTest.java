@@ -0,0 +1,47 @@
+package edu.harvard.iq.dataverse.ingest.tabulardata.impl.plugins.dta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataWriterTest {
+
+    @Test
+    public void testWriteNumbers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataWriter writer = new DataWriter(bytes)) {
+            long[] values = {0, 7, -7, 10, 127, -128, 32767, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+            for (long value : values) {
+                writer.write(value);
+                writer.writeTab();
+            }
+            writer.write(0.1f);
+            writer.writeTab();
+            writer.write(1.1111111111111111E21);
+        }
+        assertEquals("0\t7\t-7\t10\t127\t-128\t32767\t-2147483648\t9223372036854775807\t-9223372036854775808\t0.1\t1.1111111111111111E21",
+                bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWriteStringsThroughTheBuffer() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+        // (a buffer smaller than what is written)
+        try (DataWriter writer = new DataWriter(bytes, 32)) {
+            for (int i = 0; i < 100; i++) {
+                String value = i % 3 == 0 ? "\"Zürich " + i + "\"" : "\"Buick " + i + "\"";
+                writer.write(value);
+                writer.write(i);
+                writer.write((String) null);
+                writer.writeNewLine();
+                expected.append(value).append(i).append(System.lineSeparator());
+            }
+            writer.write(new String(new char[100]).replace('\0', 'x'));
+            expected.append(new String(new char[100]).replace('\0', 'x'));
+        }
+        assertEquals(expected.toString(), bytes.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -4,18 +4,33 @@ import edu.harvard.iq.dataverse.DataTable;
 import edu.harvard.iq.dataverse.datavariable.DataVariable;
 import edu.harvard.iq.dataverse.datavariable.VariableCategory;
 import edu.harvard.iq.dataverse.ingest.tabulardata.TabularDataIngest;
+import edu.harvard.iq.dataverse.util.testing.Tags;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.logging.Logger;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
 public class NewDTAFileReaderTest {
+    private static final Logger logger = Logger.getLogger(NewDTAFileReaderTest.class.getCanonicalName());
+
     NewDTAFileReader instance;
     File nullDataFile = null;
     private final String base = "src/test/java/edu/harvard/iq/dataverse/ingest/tabulardata/impl/plugins/dta/";
@@ -74,6 +89,167 @@ public class NewDTAFileReaderTest {
         assertEquals(expected, FileUtils.readFileToString(result.getTabDelimitedFile()));
     }
     
+    @Test
+    public void testSyntheticData(@TempDir Path tempDir) throws IOException {
+        File dta = writeSyntheticDta(tempDir.resolve("synthetic.dta"), 1000);
+        instance = new NewDTAFileReader(null, 118);
+        TabularDataIngest result = instance.read(new BufferedInputStream(new FileInputStream(dta)), false, nullDataFile);
+        assertEquals(6, result.getDataTable().getDataVariables().size());
+        assertEquals(1000, (long) result.getDataTable().getCaseQuantity());
+        List<String> lines = FileUtils.readLines(result.getTabDelimitedFile(), StandardCharsets.UTF_8);
+        assertEquals(1000, lines.size());
+        // (every 10th row is all missing values)
+        assertEquals("\t\t\t\t\t", lines.get(0));
+        assertEquals("-49\t-14999\t-969\t0.125\t0.1\t\"s1\"", lines.get(1));
+        assertEquals("49\t-14001\t29969\t124.875\t99.9\t\"s999\"", lines.get(999));
+    }
+
+    /**
+     * Measures how fast a synthetic Stata 14 file of some 80 MB is ingested
+     * (in MB/s, and in bytes allocated per MB read); and compares decoding its
+     * data section the way the DataReader does it with copying out and
+     * wrapping every value, as it used to. Not a unit test, hence not run by
+     * default; run with
+     * {@code mvn test -Dtest=NewDTAFileReaderTest#benchmarkRead -DtestsToExclude=}
+     */
+    @Test
+    @Tag(Tags.NOT_ESSENTIAL_UNITTESTS)
+    public void benchmarkRead(@TempDir Path tempDir) throws IOException {
+        File dta = writeSyntheticDta(tempDir.resolve("synthetic.dta"), 3_000_000);
+        double megabytes = dta.length() / 1e6;
+
+        for (int run = 0; run < 3; run++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            instance = new NewDTAFileReader(null, 118);
+            TabularDataIngest result = instance.read(new BufferedInputStream(new FileInputStream(dta)), false, nullDataFile);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            logger.info(String.format("Ingested %.0f MB in %.2f s: %.1f MB/s, %.0f bytes allocated per MB", megabytes, seconds,
+                    megabytes / seconds, (allocatedBytes() - allocatedBefore) / megabytes));
+            result.getTabDelimitedFile().delete();
+        }
+
+        // the data section alone, as it is decoded now and as it was before:
+        byte[] row = syntheticRow(1);
+        byte[] data = new byte[row.length * 1_000_000];
+        for (int i = 0; i < 1_000_000; i++) {
+            System.arraycopy(syntheticRow(i), 0, data, i * row.length, row.length);
+        }
+        for (int run = 0; run < 3; run++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            long inPlace = decode(data, false);
+            logger.info(String.format("Decoded in place: %.1f MB/s, %.0f bytes allocated per MB",
+                    data.length / 1e3 / ((System.nanoTime() - start) / 1e6), (allocatedBytes() - allocatedBefore) / (data.length / 1e6)));
+            allocatedBefore = allocatedBytes();
+            start = System.nanoTime();
+            long copied = decode(data, true);
+            logger.info(String.format("Copied and wrapped: %.1f MB/s, %.0f bytes allocated per MB",
+                    data.length / 1e3 / ((System.nanoTime() - start) / 1e6), (allocatedBytes() - allocatedBefore) / (data.length / 1e6)));
+            assertEquals(copied, inPlace);
+        }
+    }
+
+    // (returns a checksum of the values, so that their decoding is not optimized away)
+    private static long decode(byte[] data, boolean copy) throws IOException {
+        DataReader reader = new DataReader(new BufferedInputStream(new ByteArrayInputStream(data)));
+        reader.setLSF(true);
+        long checksum = 0;
+        for (int i = 0; i < 1_000_000; i++) {
+            checksum += reader.readByte();
+            if (copy) {
+                checksum += ByteBuffer.wrap(reader.readBytes(2)).order(ByteOrder.LITTLE_ENDIAN).getShort();
+                checksum += ByteBuffer.wrap(reader.readBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                checksum += Float.floatToIntBits(ByteBuffer.wrap(reader.readBytes(4)).order(ByteOrder.LITTLE_ENDIAN).getFloat());
+                checksum += Double.doubleToLongBits(ByteBuffer.wrap(reader.readBytes(8)).order(ByteOrder.LITTLE_ENDIAN).getDouble());
+            } else {
+                checksum += reader.readShort();
+                checksum += reader.readInt();
+                checksum += Float.floatToIntBits(reader.readFloat());
+                checksum += Double.doubleToLongBits(reader.readDouble());
+            }
+            checksum += reader.readString(8).length();
+        }
+        return checksum;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+    /*
+     * A Stata 14 ("dta 118") file, LSF, with a byte, an int, a long, a float,
+     * a double and a str8 variable; every 10th observation is all missing 
+     * values.
+     */
+    private static File writeSyntheticDta(Path path, int nobs) throws IOException {
+        int[] types = {65530, 65529, 65528, 65527, 65526, 8};
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(path.toFile()))) {
+            ascii(out, "<stata_dta><header><release>118</release><byteorder>LSF</byteorder><K>");
+            out.write(le(2).putShort((short) types.length).array());
+            ascii(out, "</K><N>");
+            out.write(le(8).putLong(nobs).array());
+            ascii(out, "</N><label>");
+            out.write(le(2).putShort((short) 0).array());
+            ascii(out, "</label><timestamp>");
+            out.write(17);
+            ascii(out, "01 Jan 2024 00:00</timestamp></header><map>");
+            out.write(new byte[14 * 8]);
+            ascii(out, "</map><variable_types>");
+            for (int type : types) {
+                out.write(le(2).putShort((short) type).array());
+            }
+            ascii(out, "</variable_types><varnames>");
+            for (int i = 0; i < types.length; i++) {
+                out.write(fixed("var" + i, 129));
+            }
+            ascii(out, "</varnames><sortlist>");
+            out.write(new byte[(types.length + 1) * 2]);
+            ascii(out, "</sortlist><formats>");
+            for (int i = 0; i < types.length; i++) {
+                out.write(fixed("%9.0g", 57));
+            }
+            ascii(out, "</formats><value_label_names>");
+            out.write(new byte[types.length * 129]);
+            ascii(out, "</value_label_names><variable_labels>");
+            out.write(new byte[types.length * 321]);
+            ascii(out, "</variable_labels><characteristics></characteristics><data>");
+            for (int i = 0; i < nobs; i++) {
+                out.write(syntheticRow(i));
+            }
+            ascii(out, "</data><strls></strls><value_labels></value_labels></stata_dta>");
+        }
+        return path.toFile();
+    }
+
+    private static byte[] syntheticRow(int i) {
+        ByteBuffer row = le(1 + 2 + 4 + 4 + 8 + 8);
+        if (i % 10 == 0) {
+            // Stata's missing values: "."
+            row.put((byte) 101).putShort((short) 32741).putInt(2147483621).putFloat(0x1.000p127f).putDouble(0x1.000p1023);
+            row.put(new byte[8]);
+        } else {
+            row.put((byte) (i % 100 - 50)).putShort((short) (i % 30000 - 15000)).putInt(i * 31 - 1000).putFloat(i / 8f).putDouble(i / 10.0);
+            row.put(fixed("s" + (i % 1000), 8));
+        }
+        return row.array();
+    }
+
+    private static ByteBuffer le(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static byte[] fixed(String value, int length) {
+        byte[] bytes = new byte[length];
+        byte[] valueBytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(valueBytes, 0, bytes, 0, valueBytes.length);
+        return bytes;
+    }
+
+    private static void ascii(OutputStream out, String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
     @Test
     void testNull() {
         instance = new NewDTAFileReader(null, 117);
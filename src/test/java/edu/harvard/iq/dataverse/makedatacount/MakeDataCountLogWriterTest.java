@@ -0,0 +1,102 @@
+package edu.harvard.iq.dataverse.makedatacount;
+
+import edu.harvard.iq.dataverse.makedatacount.MakeDataCountLoggingServiceBean.MakeDataCountEntry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static edu.harvard.iq.dataverse.makedatacount.MakeDataCountUtil.LOG_HEADER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MakeDataCountLogWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final MakeDataCountLogWriter writer = new MakeDataCountLogWriter();
+
+    @AfterEach
+    public void stopWriter() {
+        writer.stop();
+    }
+
+    private static MakeDataCountEntry entry(int i) {
+        MakeDataCountEntry entry = new MakeDataCountEntry();
+        entry.setEventTime("event" + i);
+        return entry;
+    }
+
+    private List<String> readLog(String logDir, LocalDate day) throws IOException {
+        return Files.readAllLines(Path.of(logDir, MakeDataCountLoggingServiceBean.getLogFileName(day)), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEntriesGoToTheLogOfTheirDay() throws IOException {
+        String logDir = tempDir.resolve("mdc").toString();
+        LocalDate day1 = LocalDate.of(2024, 5, 1);
+        LocalDate day2 = day1.plusDays(1);
+        writer.start(100000);
+
+        for (int i = 0; i < 5000; i++) {
+            writer.log(logDir, i < 3000 ? day1 : day2, entry(i));
+        }
+        writer.stop();
+
+        List<String> log1 = readLog(logDir, day1);
+        List<String> log2 = readLog(logDir, day2);
+        assertEquals(LOG_HEADER.trim(), log1.get(0));
+        assertEquals(LOG_HEADER.trim(), log2.get(0));
+        assertEquals(3001, log1.size());
+        assertEquals(2001, log2.size());
+        assertTrue(log1.get(1).startsWith("event0\t"));
+        assertTrue(log2.get(2000).startsWith("event4999\t"));
+        assertEquals(5000, writer.getWrittenCount());
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testLogMovedAwayIsStartedAgain() throws IOException, InterruptedException {
+        String logDir = tempDir.toString();
+        LocalDate day = LocalDate.of(2024, 5, 1);
+        Path log = Path.of(logDir, MakeDataCountLoggingServiceBean.getLogFileName(day));
+        writer.start(100);
+
+        writer.log(logDir, day, entry(1));
+        for (int i = 0; i < 100 && writer.getWrittenCount() < 1; i++) {
+            Thread.sleep(50);
+        }
+        Files.move(log, tempDir.resolve("processed.log"));
+        writer.log(logDir, day, entry(2));
+        writer.stop();
+
+        List<String> lines = readLog(logDir, day);
+        assertEquals(2, lines.size());
+        assertEquals(LOG_HEADER.trim(), lines.get(0));
+        assertTrue(lines.get(1).startsWith("event2\t"));
+    }
+
+    @Test
+    public void testEntriesAreDroppedWhenTheQueueIsFull() throws IOException {
+        String logDir = tempDir.toString();
+        LocalDate day = LocalDate.of(2024, 5, 1);
+        writer.start(1);
+
+        for (int i = 0; i < 20000; i++) {
+            writer.log(logDir, day, entry(i));
+            assertTrue(writer.getQueueDepth() <= 1);
+        }
+        writer.stop();
+
+        // every entry was either written or counted as dropped
+        assertEquals(20000, writer.getWrittenCount() + writer.getDroppedCount());
+        assertEquals(writer.getWrittenCount() + 1, readLog(logDir, day).size());
+    }
+}
@@ -0,0 +1,37 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.batch.checkpoint.BatchCheckpoint;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class IndexBatchProgressTest {
+
+    @Test
+    public void testResumeInDatasetPhase() {
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setKind(IndexBatchProgress.KIND);
+        checkpoint.setJobKey(IndexBatchProgress.jobKey(3, 1));
+        checkpoint.setLastIds(Map.of(IndexBatchProgress.DATAVERSES, 10L, IndexBatchProgress.DATASETS, 40L));
+
+        IndexBatchProgress progress = new IndexBatchProgress(checkpoint);
+        assertEquals(3, progress.getNumPartitions());
+        assertEquals(1, progress.getPartitionId());
+        assertEquals(IndexBatchProgress.Phase.DATASETS, progress.getPhase());
+    }
+
+    @Test
+    public void testNoDatasetsYet() {
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.setKind(IndexBatchProgress.KIND);
+        checkpoint.setJobKey(IndexBatchProgress.jobKey(1, 0));
+        checkpoint.setLastIds(Map.of(IndexBatchProgress.DATAVERSES, 10L));
+
+        IndexBatchProgress progress = new IndexBatchProgress(checkpoint);
+        assertEquals(IndexBatchProgress.Phase.DATAVERSES, progress.getPhase());
+        assertEquals(10L, progress.getLastId(IndexBatchProgress.DATAVERSES));
+        assertNull(progress.getLastId(IndexBatchProgress.DATASETS));
+    }
+}
@@ -0,0 +1,26 @@
+package edu.harvard.iq.dataverse.search;
+
+import edu.harvard.iq.dataverse.authorization.groups.Group;
+import edu.harvard.iq.dataverse.authorization.groups.impl.builtin.AllUsers;
+import edu.harvard.iq.dataverse.authorization.groups.impl.builtin.AuthenticatedUsers;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SearchServiceBeanTest {
+
+    @Test
+    public void testGroupsFilterIsIndependentOfOrder() {
+        Set<Group> groups = new LinkedHashSet<>(List.of(AllUsers.get(), AuthenticatedUsers.get()));
+        Set<Group> reversed = new LinkedHashSet<>(List.of(AuthenticatedUsers.get(), AllUsers.get()));
+
+        // so that Solr can reuse the filter query from its filterCache
+        assertEquals(SearchServiceBean.getGroupsFilter(groups), SearchServiceBean.getGroupsFilter(reversed));
+        assertEquals(" OR " + IndexServiceBean.getGroupPrefix() + AllUsers.get().getAlias()
+                + " OR " + IndexServiceBean.getGroupPrefix() + AuthenticatedUsers.get().getAlias(),
+                SearchServiceBean.getGroupsFilter(groups));
+    }
+}
@@ -0,0 +1,154 @@
+package edu.harvard.iq.dataverse.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SolrIndexBufferTest {
+
+    private final List<List<SolrInputDocument>> batches = Collections.synchronizedList(new ArrayList<>());
+    private SolrIndexBuffer buffer;
+
+    @AfterEach
+    public void tearDown() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    private static List<SolrInputDocument> documents(int count) {
+        List<SolrInputDocument> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(new SolrInputDocument());
+        }
+        return documents;
+    }
+
+    @Test
+    public void testSubmissionsAreCoalesced() throws Exception {
+        CountDownLatch firstBatchSending = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        buffer = new SolrIndexBuffer(documents -> {
+            batches.add(documents);
+            firstBatchSending.countDown();
+            try {
+                releaseFirstBatch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }, 10, 1000, 100);
+
+        Future<Void> first = buffer.submit(documents(10));
+        assertTrue(firstBatchSending.await(5, TimeUnit.SECONDS));
+
+        List<Future<Void>> waiting = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            waiting.add(buffer.submit(documents(3)));
+        }
+        assertEquals(22, buffer.getQueuedDocuments());
+        releaseFirstBatch.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        for (Future<Void> future : waiting) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        // the 4 x 3 documents that piled up are sent as one batch; 4 of them
+        // go past the batch size, since submissions are not split
+        assertEquals(2, batches.size());
+        assertEquals(10, batches.get(0).size());
+        assertEquals(12, batches.get(1).size());
+        assertEquals(2, buffer.getBatchesSent());
+        assertEquals(22, buffer.getDocumentsSent());
+        assertEquals(12, buffer.getMaxBatchSize());
+        assertEquals(0, buffer.getQueuedDocuments());
+    }
+
+    @Test
+    public void testPartialBatchIsSentAfterMaxWait() throws Exception {
+        buffer = new SolrIndexBuffer(batches::add, 100, 20, 100);
+
+        buffer.submit(documents(2)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+    }
+
+    @Test
+    public void testFailureIsReportedToEverySubmission() throws Exception {
+        buffer = new SolrIndexBuffer(documents -> {
+            throw new IOException("Solr is down");
+        }, 100, 20, 100);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> buffer.submit(documents(1)).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        assertEquals(1, buffer.getBatchesFailed());
+        assertEquals(0, buffer.getDocumentsSent());
+    }
+
+    @Test
+    public void testOnlyTheSubmissionWithTheBadDocumentFails() throws Exception {
+        CountDownLatch firstBatchSending = new CountDownLatch(1);
+        CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+        buffer = new SolrIndexBuffer(documents -> {
+            batches.add(documents);
+            firstBatchSending.countDown();
+            try {
+                releaseFirstBatch.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            if (documents.stream().anyMatch(document -> document.containsKey("bad"))) {
+                // as SolrJ does when Solr answers with a 400
+                throw new IllegalArgumentException("Solr rejected a document");
+            }
+        }, 10, 1000, 100);
+
+        Future<Void> first = buffer.submit(documents(10));
+        assertTrue(firstBatchSending.await(5, TimeUnit.SECONDS));
+        Future<Void> good = buffer.submit(documents(3));
+        List<SolrInputDocument> withABadDocument = documents(3);
+        withABadDocument.get(1).addField("bad", true);
+        Future<Void> bad = buffer.submit(withABadDocument);
+        Future<Void> alsoGood = buffer.submit(documents(3));
+        releaseFirstBatch.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        good.get(5, TimeUnit.SECONDS);
+        alsoGood.get(5, TimeUnit.SECONDS);
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        // the first batch, the 9 documents together, then 3 by 3
+        assertEquals(5, batches.size());
+        assertEquals(9, batches.get(1).size());
+        assertEquals(2, buffer.getBatchesFailed());
+        assertEquals(16, buffer.getDocumentsSent());
+        assertEquals(0, buffer.getQueuedDocuments());
+    }
+
+    @Test
+    public void testCloseSendsWhatIsQueued() throws Exception {
+        buffer = new SolrIndexBuffer(batches::add, 100, 60000, 100);
+
+        Future<Void> future = buffer.submit(documents(5));
+        buffer.close();
+
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(1, batches.size());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> buffer.submit(documents(1)).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+    }
+}
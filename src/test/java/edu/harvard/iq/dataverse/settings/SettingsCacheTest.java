@@ -0,0 +1,144 @@
+package edu.harvard.iq.dataverse.settings;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+
+public class SettingsCacheTest {
+
+    private SettingsCache settingsCache;
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+    private final List<Setting> table = new ArrayList<>();
+    private final AtomicInteger version = new AtomicInteger();
+    private final AtomicInteger loads = new AtomicInteger();
+    // the resources of the current transaction, if any
+    private Map<Object, Object> transaction;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        table.add(new Setting(":InstallationName", "Test Dataverse"));
+        table.add(new Setting(":ApplicationTermsOfUse", "en", "The terms"));
+        table.add(new Setting(":ApplicationTermsOfUse", "fr", "Les conditions"));
+
+        EntityManager em = Mockito.mock(EntityManager.class);
+        TypedQuery<Setting> findAll = Mockito.mock(TypedQuery.class);
+        Mockito.when(em.createNamedQuery("Setting.findAll", Setting.class)).thenReturn(findAll);
+        Mockito.when(findAll.getResultList()).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            return new ArrayList<>(table);
+        });
+        Query versionQuery = Mockito.mock(Query.class);
+        Mockito.when(em.createNativeQuery("SELECT version FROM settingscacheversion")).thenReturn(versionQuery);
+        Mockito.when(versionQuery.getSingleResult()).thenAnswer(invocation -> (long) version.get());
+
+        transactionSynchronizationRegistry = Mockito.mock(TransactionSynchronizationRegistry.class);
+        Mockito.when(transactionSynchronizationRegistry.getTransactionKey()).thenAnswer(invocation -> transaction);
+        Mockito.when(transactionSynchronizationRegistry.getResource(any())).thenAnswer(invocation -> transaction.get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> transaction.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(transactionSynchronizationRegistry).putResource(any(), any());
+
+        settingsCache = new SettingsCache();
+        settingsCache.em = em;
+        settingsCache.transactionSynchronizationRegistry = transactionSynchronizationRegistry;
+        settingsCache.configure(true, 0);
+    }
+
+    @Test
+    public void testSettingsAreLoadedOnce() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Test Dataverse", settingsCache.getSnapshot().get(":InstallationName"));
+            assertEquals("Les conditions", settingsCache.getSnapshot().get(":ApplicationTermsOfUse", "fr"));
+            assertNull(settingsCache.getSnapshot().get(":ApplicationTermsOfUse"));
+            assertNull(settingsCache.getSnapshot().get(":NoSuchSetting"));
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(1L, settingsCache.getStats().get("reloads"));
+        assertEquals(3, settingsCache.getStats().get("settings"));
+    }
+
+    @Test
+    public void testSettingChangedOnAnotherServerIsReloaded() {
+        settingsCache.getSnapshot();
+
+        // as if set elsewhere: the trigger increases the version
+        table.add(new Setting(":FooBar", "baz"));
+        version.incrementAndGet();
+
+        assertEquals("baz", settingsCache.getSnapshot().get(":FooBar"));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void testVersionIsOnlyCheckedOncePerInterval() {
+        settingsCache.configure(true, 3600);
+        settingsCache.getSnapshot();
+
+        table.add(new Setting(":FooBar", "baz"));
+        version.incrementAndGet();
+
+        assertNull(settingsCache.getSnapshot().get(":FooBar"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testSettingChangedInATransactionIsReloadedAfterwards() {
+        settingsCache.configure(true, 3600);
+        assertNull(settingsCache.getSnapshot().get(":FooBar"));
+
+        transaction = new HashMap<>();
+        table.add(new Setting(":FooBar", "baz"));
+        settingsCache.invalidate();
+
+        // read from the database until the transaction is over
+        assertNull(settingsCache.getSnapshot());
+        ArgumentCaptor<Synchronization> synchronization = ArgumentCaptor.forClass(Synchronization.class);
+        Mockito.verify(transactionSynchronizationRegistry).registerInterposedSynchronization(synchronization.capture());
+
+        // meanwhile, in another transaction
+        transaction = null;
+        assertNull(settingsCache.getSnapshot().get(":FooBar"));
+
+        synchronization.getValue().afterCompletion(Status.STATUS_COMMITTED);
+
+        assertEquals("baz", settingsCache.getSnapshot().get(":FooBar"));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testSettingsServiceBeanReadsTheSnapshot() {
+        SettingsServiceBean settingsService = new SettingsServiceBean();
+        settingsService.settingsCache = settingsCache;
+
+        assertEquals("Test Dataverse", settingsService.getValueForKey(SettingsServiceBean.Key.InstallationName));
+        assertEquals("The terms", settingsService.getValueForKey(SettingsServiceBean.Key.ApplicationTermsOfUse, "en", null));
+        assertEquals("none", settingsService.getValueForKey(SettingsServiceBean.Key.ApplicationTermsOfUse, "de", "none"));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testNothingIsCachedWhenDisabled() {
+        settingsCache.configure(false, 0);
+
+        assertNull(settingsCache.getSnapshot());
+        assertEquals(0, loads.get());
+    }
+}